@@ -1,8 +1,25 @@
 package org.mengyun.tcctransaction.api;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
 // 默认事务上下文编辑器实现
 public class ParameterTransactionContextEditor implements TransactionContextEditor {
+    // 每个方法的 TransactionContext 参数位置只计算一次
+    private static final ConcurrentHashMap<Method, Integer> PARAM_POSITIONS = new ConcurrentHashMap<Method, Integer>();
+
+    public static int getTransactionContextParamPosition(Method method) {
+
+        Integer position = PARAM_POSITIONS.get(method);
+
+        if (position == null) {
+            position = getTransactionContextParamPosition(method.getParameterTypes());
+            PARAM_POSITIONS.putIfAbsent(method, position);
+        }
+
+        return position;
+    }
+
     // 获得事务上下文在方法参数里的位置
     public static int getTransactionContextParamPosition(Class<?>[] parameterTypes) {
 
@@ -37,7 +54,7 @@ public class ParameterTransactionContextEditor implements TransactionContextEdit
 
     @Override
     public TransactionContext get(Object target, Method method, Object[] args) {
-        int position = getTransactionContextParamPosition(method.getParameterTypes());
+        int position = getTransactionContextParamPosition(method);
 
         if (position >= 0) {
             return (TransactionContext) args[position];
@@ -49,7 +66,7 @@ public class ParameterTransactionContextEditor implements TransactionContextEdit
     @Override
     public void set(TransactionContext transactionContext, Object target, Method method, Object[] args) {
 
-        int position = getTransactionContextParamPosition(method.getParameterTypes());
+        int position = getTransactionContextParamPosition(method);
         if (position >= 0) {
             args[position] = transactionContext; // 设置方法参数
         } else {
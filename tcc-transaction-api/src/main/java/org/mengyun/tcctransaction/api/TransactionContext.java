@@ -35,7 +35,7 @@ public class TransactionContext implements Serializable {
     }
 
     public TransactionXid getXid() {
-        return xid.clone();
+        return xid;
     }
 
     public void setXid(TransactionXid xid) {
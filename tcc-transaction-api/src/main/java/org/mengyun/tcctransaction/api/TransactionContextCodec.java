@@ -0,0 +1,150 @@
+package org.mengyun.tcctransaction.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 事务上下文的二进制编码，用于跨服务传递 TransactionContext，代替 JSON。
+ * <p/>
+ * 格式：版本号(1 字节) | xid | rootXid | status(1 字节) | participantStatus(1 字节) | attachments。
+ * xid 为 UUID 形式时直接写两个 16 字节的数组，否则写长度加内容；attachments 写数量后依次写 key / value。
+ * <p/>
+ * 字符串形式为 URL 安全且不带填充的 base64，可以放到 Dubbo 隐式参数或 HTTP header 中。
+ */
+public final class TransactionContextCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final byte NULL_XID = 0;
+
+    private static final byte UUID_XID = 1;
+
+    private static final byte BYTES_XID = 2;
+
+    private static final int UUID_LENGTH = 16;
+
+    private TransactionContextCodec() {
+    }
+
+    public static byte[] encode(TransactionContext transactionContext) {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            writeXid(out, transactionContext.getXid());
+            writeXid(out, transactionContext.getRootXid());
+            out.writeByte(transactionContext.getStatus());
+            out.writeByte(transactionContext.getParticipantStatus());
+
+            Map<String, String> attachments = transactionContext.getAttachments();
+            out.writeShort(attachments.size());
+            for (Map.Entry<String, String> entry : attachments.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("encode transaction context failed", e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    public static TransactionContext decode(byte[] content) {
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(content))) {
+
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("unsupported transaction context codec version:" + version);
+            }
+
+            TransactionXid xid = readXid(in);
+            TransactionXid rootXid = readXid(in);
+            int status = in.readByte();
+            int participantStatus = in.readByte();
+
+            TransactionContext transactionContext = new TransactionContext(rootXid, xid, status, participantStatus);
+
+            int attachmentCount = in.readUnsignedShort();
+            if (attachmentCount > 0) {
+                Map<String, String> attachments = new HashMap<String, String>(attachmentCount * 2);
+                for (int i = 0; i < attachmentCount; i++) {
+                    attachments.put(in.readUTF(), in.readUTF());
+                }
+                transactionContext.setAttachments(attachments);
+            }
+
+            return transactionContext;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("decode transaction context failed", e);
+        }
+    }
+
+    public static String encodeToString(TransactionContext transactionContext) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(encode(transactionContext));
+    }
+
+    public static TransactionContext decodeFromString(String content) {
+        return decode(Base64.getUrlDecoder().decode(content));
+    }
+
+    private static void writeXid(DataOutputStream out, TransactionXid xid) throws IOException {
+
+        if (xid == null) {
+            out.writeByte(NULL_XID);
+            return;
+        }
+
+        byte[] globalTransactionId = xid.getGlobalTransactionId();
+        byte[] branchQualifier = xid.getBranchQualifier();
+
+        if (globalTransactionId.length == UUID_LENGTH && branchQualifier.length == UUID_LENGTH) {
+            out.writeByte(UUID_XID);
+        } else {
+            // 自定义唯一标识生成的 xid
+            out.writeByte(BYTES_XID);
+            out.writeShort(globalTransactionId.length);
+            out.writeShort(branchQualifier.length);
+        }
+
+        out.write(globalTransactionId);
+        out.write(branchQualifier);
+    }
+
+    private static TransactionXid readXid(DataInputStream in) throws IOException {
+
+        byte type = in.readByte();
+
+        int globalTransactionIdLength;
+        int branchQualifierLength;
+
+        switch (type) {
+            case NULL_XID:
+                return null;
+            case UUID_XID:
+                globalTransactionIdLength = UUID_LENGTH;
+                branchQualifierLength = UUID_LENGTH;
+                break;
+            case BYTES_XID:
+                globalTransactionIdLength = in.readUnsignedShort();
+                branchQualifierLength = in.readUnsignedShort();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown xid type:" + type);
+        }
+
+        byte[] globalTransactionId = new byte[globalTransactionIdLength];
+        in.readFully(globalTransactionId);
+        byte[] branchQualifier = new byte[branchQualifierLength];
+        in.readFully(branchQualifier);
+
+        return new TransactionXid(globalTransactionId, branchQualifier);
+    }
+}
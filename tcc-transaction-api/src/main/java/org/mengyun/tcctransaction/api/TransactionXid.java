@@ -3,12 +3,16 @@ package org.mengyun.tcctransaction.api;
 
 import javax.transaction.xa.Xid;
 import java.io.Serializable;
-import java.nio.ByteBuffer;
+import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Created by changmingxie on 10/26/15. 事务编号，用于唯一标识一个事务。使用 UUID 算法生成，保证唯一性。
+ * <p/>
+ * 事务编号创建后不再修改，Transaction / TransactionContext 直接共享同一个实例。
+ * toString() 的结果作为存储器的 key 使用，第一次调用后缓存；hashCode 同样缓存。
  */
 public class TransactionXid implements Xid, Serializable {
 
@@ -17,18 +21,24 @@ public class TransactionXid implements Xid, Serializable {
     private int formatId = 1; // xid 格式标识符
     private byte[] globalTransactionId; // 全局事务编号
     private byte[] branchQualifier; // 分支事务编号
+    // 每个进程一个随机种子，和 ThreadLocalRandom 的结果混合，避免不同进程的线程随机序列重复
+    private static final long NODE_SEED = new SecureRandom().nextLong();
+
+    private transient volatile String xidString;
+
+    private transient int hash;
 
     public TransactionXid() {
-        globalTransactionId = uuidToByteArray(UUID.randomUUID());
-        branchQualifier = uuidToByteArray(UUID.randomUUID());
+        globalTransactionId = randomUuidBytes();
+        branchQualifier = randomUuidBytes();
     }
 
     public TransactionXid(Object uniqueIdentity) {
 
         if (uniqueIdentity == null) {
 
-            globalTransactionId = uuidToByteArray(UUID.randomUUID());
-            branchQualifier = uuidToByteArray(UUID.randomUUID());
+            globalTransactionId = randomUuidBytes();
+            branchQualifier = randomUuidBytes();
 
         } else {
 
@@ -40,7 +50,7 @@ public class TransactionXid implements Xid, Serializable {
 
     public TransactionXid(byte[] globalTransactionId) {
         this.globalTransactionId = globalTransactionId;
-        this.branchQualifier = uuidToByteArray(UUID.randomUUID()); // 生成 分支事务编号
+        this.branchQualifier = randomUuidBytes(); // 生成 分支事务编号
     }
 
     public TransactionXid(byte[] globalTransactionId, byte[] branchQualifier) {
@@ -48,18 +58,23 @@ public class TransactionXid implements Xid, Serializable {
         this.branchQualifier = branchQualifier;
     }
 
-    private static byte[] uuidToByteArray(UUID uuid) {
-        ByteBuffer bb = ByteBuffer.wrap(new byte[16]);
-        bb.putLong(uuid.getMostSignificantBits());
-        bb.putLong(uuid.getLeastSignificantBits());
-        return bb.array();
+    // 和 UUID.randomUUID() 格式相同的 version 4 UUID，使用 ThreadLocalRandom 代替线程间竞争的 SecureRandom
+    private static byte[] randomUuidBytes() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long mostSigBits = (random.nextLong() & 0xffffffffffff0fffL) | 0x0000000000004000L;
+        long leastSigBits = ((random.nextLong() ^ NODE_SEED) & 0x3fffffffffffffffL) | 0x8000000000000000L;
+
+        byte[] bytes = new byte[16];
+        putLong(bytes, 0, mostSigBits);
+        putLong(bytes, 8, leastSigBits);
+        return bytes;
     }
 
-    private static UUID byteArrayToUUID(byte[] bytes) {
-        ByteBuffer bb = ByteBuffer.wrap(bytes);
-        long firstLong = bb.getLong();
-        long secondLong = bb.getLong();
-        return new UUID(firstLong, secondLong);
+    private static void putLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
     }
 
     @Override
@@ -72,8 +87,11 @@ public class TransactionXid implements Xid, Serializable {
         return globalTransactionId;
     }
 
+    // 只供反序列化使用
     public void setGlobalTransactionId(byte[] globalTransactionId) {
         this.globalTransactionId = globalTransactionId;
+        this.xidString = null;
+        this.hash = 0;
     }
 
     @Override
@@ -81,13 +99,28 @@ public class TransactionXid implements Xid, Serializable {
         return branchQualifier;
     }
 
+    // 只供反序列化使用
     public void setBranchQualifier(byte[] branchQualifier) {
         this.branchQualifier = branchQualifier;
+        this.xidString = null;
+        this.hash = 0;
     }
 
     @Override
     public String toString() {
 
+        String result = xidString;
+
+        if (result == null) {
+            result = buildString();
+            xidString = result;
+        }
+
+        return result;
+    }
+
+    private String buildString() {
+
         StringBuilder stringBuilder = new StringBuilder();
         if (Arrays.equals(CUSTOMIZED_TRANSACTION_ID, globalTransactionId)) {
 
@@ -122,11 +155,15 @@ public class TransactionXid implements Xid, Serializable {
     }
 
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + this.getFormatId();
-        result = prime * result + Arrays.hashCode(branchQualifier);
-        result = prime * result + Arrays.hashCode(globalTransactionId);
+        int result = hash;
+        if (result == 0) {
+            final int prime = 31;
+            result = 1;
+            result = prime * result + this.getFormatId();
+            result = prime * result + Arrays.hashCode(branchQualifier);
+            result = prime * result + Arrays.hashCode(globalTransactionId);
+            hash = result;
+        }
         return result;
     }
 
@@ -0,0 +1,42 @@
+package org.mengyun.tcctransaction.benchmark;
+
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.ParameterTransactionContextEditor;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+
+/**
+ * 压测用的事务数据构造
+ */
+public final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    // 构造带 participantCount 个参与者的根事务，参与者的调用参数与真实的 try 方法类似
+    public static Transaction newRootTransaction(int participantCount) {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+
+        for (int i = 0; i < participantCount; i++) {
+            transaction.enlistParticipant(newParticipant(transaction));
+        }
+
+        return transaction;
+    }
+
+    public static Participant newParticipant(Transaction transaction) {
+
+        Class[] parameterTypes = new Class[]{TransactionContext.class, String.class, long.class};
+        Object[] args = new Object[]{null, "ORDER-20191225-0001", 100l};
+
+        return new Participant(transaction.getRootXid(),
+                new TransactionXid(transaction.getXid().getGlobalTransactionId()),
+                new InvocationContext(BenchmarkTccService.class, "confirmRecord", parameterTypes, args),
+                new InvocationContext(BenchmarkTccService.class, "cancelRecord", parameterTypes, args),
+                ParameterTransactionContextEditor.class);
+    }
+}
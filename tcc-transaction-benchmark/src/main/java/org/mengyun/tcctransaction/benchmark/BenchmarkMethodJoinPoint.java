@@ -0,0 +1,75 @@
+package org.mengyun.tcctransaction.benchmark;
+
+import org.mengyun.tcctransaction.api.Compensable;
+import org.mengyun.tcctransaction.api.TransactionContextEditor;
+import org.mengyun.tcctransaction.interceptor.ResourceCoordinatorInterceptor;
+import org.mengyun.tcctransaction.interceptor.TransactionMethodJoinPoint;
+
+import java.lang.reflect.Method;
+
+/**
+ * 模拟 CompensableTransactionAspect -> ResourceCoordinatorAspect -> 业务方法 的切面调用链，不依赖 AspectJ 织入
+ */
+public class BenchmarkMethodJoinPoint implements TransactionMethodJoinPoint {
+
+    private final Object target;
+
+    private final Method method;
+
+    private final Compensable compensable;
+
+    private final Object[] args;
+    // 不为空时，proceed 先经过资源协调者拦截器
+    private final ResourceCoordinatorInterceptor resourceCoordinatorInterceptor;
+
+    public BenchmarkMethodJoinPoint(Object target, Method method, Object[] args, ResourceCoordinatorInterceptor resourceCoordinatorInterceptor) {
+        this.target = target;
+        this.method = method;
+        this.compensable = method.getAnnotation(Compensable.class);
+        this.args = args;
+        this.resourceCoordinatorInterceptor = resourceCoordinatorInterceptor;
+    }
+
+    @Override
+    public Compensable getCompensable() {
+        return compensable;
+    }
+
+    @Override
+    public Class<? extends TransactionContextEditor> getTransactionContextEditorClass() {
+        return compensable.transactionContextEditor();
+    }
+
+    @Override
+    public Class<?> getDeclaredClass() {
+        return target.getClass();
+    }
+
+    @Override
+    public Method getMethod() {
+        return method;
+    }
+
+    @Override
+    public Object getTarget() {
+        return target;
+    }
+
+    @Override
+    public Object[] getArgs() {
+        return args;
+    }
+
+    @Override
+    public Object proceed() throws Throwable {
+        return proceed(args);
+    }
+
+    @Override
+    public Object proceed(Object[] args) throws Throwable {
+        if (resourceCoordinatorInterceptor != null) {
+            return resourceCoordinatorInterceptor.interceptTransactionContextMethod(new BenchmarkMethodJoinPoint(target, method, args, null));
+        }
+        return method.invoke(target, args);
+    }
+}
@@ -0,0 +1,27 @@
+package org.mengyun.tcctransaction.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 压测入口，在 JMH 命令行参数的基础上默认开启 GC 分析器，输出每次调用的内存分配量（gc.alloc.rate.norm）。
+ * <p/>
+ * java -jar tcc-transaction-benchmark/target/benchmarks.jar [JMH 参数，如 TransactionSerializerBenchmark -p serializer=kryo]
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+        Options options = new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,22 @@
+package org.mengyun.tcctransaction.benchmark;
+
+import org.mengyun.tcctransaction.api.Compensable;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.ParameterTransactionContextEditor;
+
+/**
+ * 压测用的 TCC 服务，try / confirm / cancel 均为空实现，只测量框架本身的开销
+ */
+public class BenchmarkTccService {
+
+    @Compensable(confirmMethod = "confirmRecord", cancelMethod = "cancelRecord", transactionContextEditor = ParameterTransactionContextEditor.class)
+    public String record(TransactionContext transactionContext, String orderNo, long amount) {
+        return orderNo;
+    }
+
+    public void confirmRecord(TransactionContext transactionContext, String orderNo, long amount) {
+    }
+
+    public void cancelRecord(TransactionContext transactionContext, String orderNo, long amount) {
+    }
+}
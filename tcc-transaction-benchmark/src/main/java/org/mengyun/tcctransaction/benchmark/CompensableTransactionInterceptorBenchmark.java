@@ -0,0 +1,65 @@
+package org.mengyun.tcctransaction.benchmark;
+
+import org.mengyun.tcctransaction.TransactionManager;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.interceptor.CompensableTransactionInterceptor;
+import org.mengyun.tcctransaction.interceptor.ResourceCoordinatorInterceptor;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CompensableTransactionInterceptor#interceptCompensableMethod 在根事务（try + confirm）和分支事务 try 阶段的开销，
+ * 存储使用 NoopTransactionRepository 以排除存储耗时
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompensableTransactionInterceptorBenchmark {
+
+    private CompensableTransactionInterceptor compensableTransactionInterceptor;
+
+    private ResourceCoordinatorInterceptor resourceCoordinatorInterceptor;
+
+    private BenchmarkTccService target;
+
+    private Method method;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+
+        TransactionManager transactionManager = new TransactionManager();
+        transactionManager.setTransactionRepository(new NoopTransactionRepository());
+
+        compensableTransactionInterceptor = new CompensableTransactionInterceptor();
+        compensableTransactionInterceptor.setTransactionManager(transactionManager);
+
+        resourceCoordinatorInterceptor = new ResourceCoordinatorInterceptor();
+        resourceCoordinatorInterceptor.setTransactionManager(transactionManager);
+
+        target = new BenchmarkTccService();
+        method = BenchmarkTccService.class.getMethod("record", TransactionContext.class, String.class, long.class);
+    }
+
+    @Benchmark
+    public Object root() throws Throwable {
+        return compensableTransactionInterceptor.interceptCompensableMethod(
+                new BenchmarkMethodJoinPoint(target, method, new Object[]{null, "ORDER-20191225-0001", 100l}, resourceCoordinatorInterceptor));
+    }
+
+    @Benchmark
+    public Object providerTry() throws Throwable {
+
+        TransactionXid rootXid = new TransactionXid();
+        TransactionContext transactionContext = new TransactionContext(rootXid, new TransactionXid(rootXid.getGlobalTransactionId()), TransactionStatus.TRYING.getId());
+
+        return compensableTransactionInterceptor.interceptCompensableMethod(
+                new BenchmarkMethodJoinPoint(target, method, new Object[]{transactionContext, "ORDER-20191225-0001", 100l}, resourceCoordinatorInterceptor));
+    }
+}
@@ -0,0 +1,55 @@
+package org.mengyun.tcctransaction.benchmark;
+
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.repository.AbstractTransactionRepository;
+import org.mengyun.tcctransaction.repository.Page;
+
+import javax.transaction.xa.Xid;
+import java.util.Date;
+
+/**
+ * 不做任何存储的事务存储器，用于排除存储开销，单独测量拦截器和 TransactionManager 的开销
+ */
+public class NoopTransactionRepository extends AbstractTransactionRepository {
+
+    @Override
+    protected int doCreate(Transaction transaction) {
+        return 1;
+    }
+
+    @Override
+    protected int doUpdate(Transaction transaction) {
+        transaction.setVersion(transaction.getVersion() + 1);
+        return 1;
+    }
+
+    @Override
+    protected int doDelete(Transaction transaction) {
+        return 1;
+    }
+
+    @Override
+    protected Transaction doFindOne(Xid xid) {
+        return null;
+    }
+
+    @Override
+    protected Transaction doFindRootOne(Xid xid) {
+        return null;
+    }
+
+    @Override
+    protected Page<Transaction> doFindAllUnmodifiedSince(Date date, String offset, int pageSize) {
+        return new Page<Transaction>();
+    }
+
+    @Override
+    public String getDomain() {
+        return "BENCHMARK";
+    }
+
+    @Override
+    public String getRootDomain() {
+        return null;
+    }
+}
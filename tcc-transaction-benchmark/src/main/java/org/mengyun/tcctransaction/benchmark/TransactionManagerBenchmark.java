@@ -0,0 +1,51 @@
+package org.mengyun.tcctransaction.benchmark;
+
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TransactionManager 发起、添加参与者、提交根事务的开销，存储使用 NoopTransactionRepository 以排除存储耗时
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionManagerBenchmark {
+
+    @Param({"2"})
+    private int participantCount;
+
+    private TransactionManager transactionManager;
+
+    @Setup
+    public void setUp() {
+        transactionManager = new TransactionManager();
+        transactionManager.setTransactionRepository(new NoopTransactionRepository());
+    }
+
+    @Benchmark
+    public Transaction begin() {
+        Transaction transaction = transactionManager.begin();
+        transactionManager.cleanAfterCompletion(transaction);
+        return transaction;
+    }
+
+    @Benchmark
+    public Transaction beginAndCommit() {
+        Transaction transaction = transactionManager.begin();
+        try {
+            for (int i = 0; i < participantCount; i++) {
+                transactionManager.enlistParticipant(BenchmarkFixtures.newParticipant(transaction));
+            }
+            transactionManager.commit(false);
+        } finally {
+            transactionManager.cleanAfterCompletion(transaction);
+        }
+        return transaction;
+    }
+}
@@ -0,0 +1,153 @@
+package org.mengyun.tcctransaction.benchmark;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.repository.FileSystemTransactionRepository;
+import org.mengyun.tcctransaction.repository.JdbcTransactionRepository;
+import org.mengyun.tcctransaction.repository.LogStoreTransactionRepository;
+import org.mengyun.tcctransaction.repository.MemoryStoreTransactionRepository;
+import org.mengyun.tcctransaction.repository.RedisTransactionRepository;
+import org.mengyun.tcctransaction.repository.RocksDbTransactionRepository;
+import org.mengyun.tcctransaction.repository.TransactionRepository;
+import org.openjdk.jmh.annotations.*;
+import redis.clients.jedis.JedisPool;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各 TransactionRepository 实现一个事务完整生命周期（create -> update -> delete）和按 xid 查询的开销。
+ * <p/>
+ * jdbc 使用内存模式的 H2，rocksdb / filesystem / logstore 使用临时目录；redis 需要本地 redis，通过 -p repository=redis 开启，
+ * 地址由 -Dredis.host / -Dredis.port 指定。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionRepositoryBenchmark {
+
+    private static final String DOMAIN = "TCC:BENCHMARK:";
+
+    @Param({"memory", "filesystem", "logstore", "rocksdb", "jdbc"})
+    private String repository;
+
+    @Param({"3"})
+    private int participantCount;
+
+    private TransactionRepository transactionRepository;
+
+    private Transaction storedTransaction;
+
+    private File tempDirectory;
+
+    @Setup
+    public void setUp() throws Exception {
+        tempDirectory = Files.createTempDirectory("tcc-benchmark").toFile();
+        transactionRepository = createRepository();
+
+        storedTransaction = BenchmarkFixtures.newRootTransaction(participantCount);
+        transactionRepository.create(storedTransaction);
+    }
+
+    @TearDown
+    public void tearDown() {
+        transactionRepository.delete(storedTransaction);
+        transactionRepository.close();
+        deleteRecursively(tempDirectory);
+    }
+
+    @Benchmark
+    public Transaction createUpdateDelete() {
+        Transaction transaction = BenchmarkFixtures.newRootTransaction(participantCount);
+        transactionRepository.create(transaction);
+        transactionRepository.update(transaction);
+        transactionRepository.delete(transaction);
+        return transaction;
+    }
+
+    @Benchmark
+    public Transaction findByXid() {
+        return transactionRepository.findByXid(storedTransaction.getXid());
+    }
+
+    private TransactionRepository createRepository() throws Exception {
+        switch (repository) {
+            case "memory":
+                MemoryStoreTransactionRepository memoryStoreTransactionRepository = new MemoryStoreTransactionRepository();
+                memoryStoreTransactionRepository.setDomain(DOMAIN);
+                return memoryStoreTransactionRepository;
+            case "filesystem":
+                FileSystemTransactionRepository fileSystemTransactionRepository = new FileSystemTransactionRepository();
+                fileSystemTransactionRepository.setDomain(tempDirectory.getAbsolutePath());
+                fileSystemTransactionRepository.setRootDomain(tempDirectory.getAbsolutePath());
+                return fileSystemTransactionRepository;
+            case "logstore":
+                LogStoreTransactionRepository logStoreTransactionRepository = new LogStoreTransactionRepository();
+                logStoreTransactionRepository.setDomain("benchmark");
+                logStoreTransactionRepository.setLocation(tempDirectory.getAbsolutePath());
+                logStoreTransactionRepository.init();
+                return logStoreTransactionRepository;
+            case "rocksdb":
+                RocksDbTransactionRepository rocksDbTransactionRepository = new RocksDbTransactionRepository();
+                rocksDbTransactionRepository.setDomain("benchmark");
+                rocksDbTransactionRepository.setLocation(tempDirectory.getAbsolutePath());
+                rocksDbTransactionRepository.init();
+                return rocksDbTransactionRepository;
+            case "jdbc":
+                return createJdbcRepository();
+            case "redis":
+                RedisTransactionRepository redisTransactionRepository = new RedisTransactionRepository();
+                redisTransactionRepository.setDomain(DOMAIN);
+                redisTransactionRepository.setJedisPool(new JedisPool(System.getProperty("redis.host", "127.0.0.1"),
+                        Integer.parseInt(System.getProperty("redis.port", "6379"))));
+                return redisTransactionRepository;
+            default:
+                throw new IllegalArgumentException("unknown repository:" + repository);
+        }
+    }
+
+    private TransactionRepository createJdbcRepository() throws Exception {
+
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:tcc_benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1");
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS AGG_TRANSACTION");
+            statement.execute("CREATE TABLE AGG_TRANSACTION (" +
+                    "TRANSACTION_ID INT NOT NULL AUTO_INCREMENT PRIMARY KEY," +
+                    "DOMAIN VARCHAR(100)," +
+                    "GLOBAL_TX_ID VARBINARY(32) NOT NULL," +
+                    "BRANCH_QUALIFIER VARBINARY(32) NOT NULL," +
+                    "CONTENT VARBINARY(8000)," +
+                    "STATUS INT," +
+                    "TRANSACTION_TYPE INT," +
+                    "RETRIED_COUNT INT," +
+                    "CREATE_TIME DATETIME," +
+                    "LAST_UPDATE_TIME DATETIME," +
+                    "VERSION INT," +
+                    "IS_DELETE TINYINT DEFAULT 0 NOT NULL," +
+                    "UNIQUE (GLOBAL_TX_ID, BRANCH_QUALIFIER))");
+        }
+
+        JdbcTransactionRepository jdbcTransactionRepository = new JdbcTransactionRepository();
+        jdbcTransactionRepository.setDomain(DOMAIN);
+        jdbcTransactionRepository.setDataSource(dataSource);
+        return jdbcTransactionRepository;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
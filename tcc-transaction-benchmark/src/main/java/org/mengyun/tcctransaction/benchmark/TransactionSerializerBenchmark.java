@@ -0,0 +1,67 @@
+package org.mengyun.tcctransaction.benchmark;
+
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.serializer.JacksonTransactionSerializer;
+import org.mengyun.tcctransaction.serializer.JdkSerializationSerializer;
+import org.mengyun.tcctransaction.serializer.KryoTransactionSerializer;
+import org.mengyun.tcctransaction.serializer.ObjectSerializer;
+import org.mengyun.tcctransaction.serializer.RegisterableKryoTransactionSerializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各 TransactionSerializer 实现序列化 / 反序列化事务的开销
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionSerializerBenchmark {
+
+    @Param({"registerableKryo", "kryo", "jackson", "jdk"})
+    private String serializer;
+
+    @Param({"3"})
+    private int participantCount;
+
+    private ObjectSerializer<Transaction> transactionSerializer;
+
+    private Transaction transaction;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        transactionSerializer = createSerializer(serializer);
+        transaction = BenchmarkFixtures.newRootTransaction(participantCount);
+        bytes = transactionSerializer.serialize(transaction);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return transactionSerializer.serialize(transaction);
+    }
+
+    @Benchmark
+    public Transaction deserialize() {
+        return transactionSerializer.deserialize(bytes);
+    }
+
+    static ObjectSerializer<Transaction> createSerializer(String name) {
+        switch (name) {
+            case "registerableKryo":
+                return new RegisterableKryoTransactionSerializer();
+            case "kryo":
+                return new KryoTransactionSerializer();
+            case "jackson":
+                return new JacksonTransactionSerializer();
+            case "jdk":
+                return new JdkSerializationSerializer<Transaction>();
+            default:
+                throw new IllegalArgumentException("unknown serializer:" + name);
+        }
+    }
+}
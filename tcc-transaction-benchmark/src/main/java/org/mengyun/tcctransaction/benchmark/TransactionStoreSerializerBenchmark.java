@@ -0,0 +1,50 @@
+package org.mengyun.tcctransaction.benchmark;
+
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.repository.helper.TransactionStoreSerializer;
+import org.mengyun.tcctransaction.serializer.RegisterableKryoTransactionSerializer;
+import org.mengyun.tcctransaction.serializer.TransactionSerializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TransactionStoreSerializer 将事务转换为 redis hash 字段的开销
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionStoreSerializerBenchmark {
+
+    @Param({"3"})
+    private int participantCount;
+    // false: 普通格式并写入 CONTENT_VIEW，true: 紧凑格式不写 CONTENT_VIEW
+    @Param({"false", "true"})
+    private boolean compact;
+
+    private TransactionSerializer serializer = new RegisterableKryoTransactionSerializer();
+
+    private Transaction transaction;
+
+    private Map<byte[], byte[]> storedFields;
+
+    @Setup
+    public void setUp() {
+        transaction = BenchmarkFixtures.newRootTransaction(participantCount);
+        storedFields = TransactionStoreSerializer.serialize(serializer, transaction, compact, !compact);
+    }
+
+    @Benchmark
+    public Map<byte[], byte[]> serialize() {
+        return TransactionStoreSerializer.serialize(serializer, transaction, compact, !compact);
+    }
+
+    @Benchmark
+    public Transaction deserialize() {
+        return TransactionStoreSerializer.deserialize(serializer, storedFields);
+    }
+}
@@ -0,0 +1,4 @@
+package org.mengyun.tcctransaction.benchmark.jmh_generated;
+public class CompensableTransactionInterceptorBenchmark_jmhType extends CompensableTransactionInterceptorBenchmark_jmhType_B3 {
+}
+
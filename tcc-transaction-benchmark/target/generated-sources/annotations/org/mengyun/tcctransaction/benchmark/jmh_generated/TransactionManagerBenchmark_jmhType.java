@@ -0,0 +1,4 @@
+package org.mengyun.tcctransaction.benchmark.jmh_generated;
+public class TransactionManagerBenchmark_jmhType extends TransactionManagerBenchmark_jmhType_B3 {
+}
+
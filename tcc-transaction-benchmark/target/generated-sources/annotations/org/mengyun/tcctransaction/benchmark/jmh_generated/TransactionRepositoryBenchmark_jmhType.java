@@ -0,0 +1,4 @@
+package org.mengyun.tcctransaction.benchmark.jmh_generated;
+public class TransactionRepositoryBenchmark_jmhType extends TransactionRepositoryBenchmark_jmhType_B3 {
+}
+
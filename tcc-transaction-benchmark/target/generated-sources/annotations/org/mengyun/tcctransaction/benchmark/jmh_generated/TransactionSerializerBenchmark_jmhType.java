@@ -0,0 +1,4 @@
+package org.mengyun.tcctransaction.benchmark.jmh_generated;
+public class TransactionSerializerBenchmark_jmhType extends TransactionSerializerBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.mengyun.tcctransaction.benchmark.jmh_generated;
+public class TransactionStoreSerializerBenchmark_jmhType extends TransactionStoreSerializerBenchmark_jmhType_B3 {
+}
+
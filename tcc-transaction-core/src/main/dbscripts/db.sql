@@ -15,3 +15,17 @@ CREATE TABLE `TCC_TRANSACTION` (
 ) ENGINE=InnoDB AUTO_INCREMENT=1 DEFAULT CHARSET=utf8;
 
 ALTER TABLE `TCC_TRANSACTION` ADD `IS_DELETE` tinyint(1) DEFAULT 0 NOT NULL;
+-- 恢复任务按 TRANSACTION_ID 游标分页扫描，按 DOMAIN 定位后顺序读取，LAST_UPDATE_TIME 直接在索引内过滤
+ALTER TABLE `TCC_TRANSACTION` ADD INDEX `IDX_DOMAIN_ID_UPDATE_TIME` (`DOMAIN`, `TRANSACTION_ID`, `LAST_UPDATE_TIME`);
+-- JdbcTransactionRepository 开启 nextRetryTimeEnabled 时使用，恢复任务只查询已到重试时间的事务，NEXT_RETRY_TIME 和 LAST_UPDATE_TIME 都在索引内过滤
+ALTER TABLE `TCC_TRANSACTION` ADD `NEXT_RETRY_TIME` datetime DEFAULT NULL;
+ALTER TABLE `TCC_TRANSACTION` ADD INDEX `IDX_DOMAIN_ID_RETRY_TIME` (`DOMAIN`, `TRANSACTION_ID`, `NEXT_RETRY_TIME`, `LAST_UPDATE_TIME`);
+
+-- JdbcRecoveryLeaseStore 使用，分片恢复时记录存活节点和 bucket 的持有者，EXPIRE_TIME 为毫秒时间戳
+CREATE TABLE `TCC_RECOVERY_LEASE` (
+  `DOMAIN` varchar(100) NOT NULL,
+  `LEASE_KEY` varchar(200) NOT NULL,
+  `OWNER` varchar(200) NOT NULL,
+  `EXPIRE_TIME` bigint(20) NOT NULL,
+  PRIMARY KEY (`DOMAIN`, `LEASE_KEY`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
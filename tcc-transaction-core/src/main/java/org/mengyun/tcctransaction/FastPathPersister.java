@@ -0,0 +1,174 @@
+package org.mengyun.tcctransaction;
+
+import org.mengyun.tcctransaction.api.NullableTransactionContextEditor;
+import org.mengyun.tcctransaction.repository.TransactionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 快速路径持久化，根事务在 try 阶段不落库，enlistParticipant 时的 create / update 全部省略，
+ * 直到进入 confirm / cancel 前才用一次写入把事务连同 CONFIRMING / CANCELLING 状态存储下来。
+ * <p/>
+ * 分支事务在恢复时找不到根事务会被回滚，所以添加会传递事务上下文的参与者（即可能在远端创建分支事务，
+ * TransactionContextEditor 不是 NullableTransactionContextEditor）之前，根事务先写入 TRYING，分支事务开始 try 时根事务一定已经落库。
+ * <p/>
+ * 只有本地参与者的根事务在 try 阶段不落库，进程在此期间宕机时本地 try 的结果不会被 cancel，所以 try 阶段耗时超过
+ * persistThreshold 的根事务同样会被补写为 TRYING，persistThreshold 即该窗口的上限。
+ * confirm / cancel 的状态在驱动任何参与者之前已经持久化，失败或进程宕机时恢复任务都能看到该事务。
+ */
+public class FastPathPersister {
+
+    static final Logger logger = LoggerFactory.getLogger(FastPathPersister.class.getSimpleName());
+    // try 阶段超过该时长仍未结束的根事务会被持久化，单位：毫秒
+    private long persistThreshold = 1000;
+
+    private TransactionRepository transactionRepository;
+    // try 阶段还未持久化的根事务
+    private final Set<Transaction> pendingTransactions = Collections.newSetFromMap(new ConcurrentHashMap<Transaction, Boolean>());
+
+    private volatile ScheduledExecutorService persistScheduledExecutorService;
+
+    public FastPathPersister() {
+    }
+
+    // 添加参与者，根事务还未持久化时只记录在内存中
+    public void enlistParticipant(Transaction transaction, Participant participant) {
+
+        synchronized (transaction) {
+            transaction.enlistParticipant(participant);
+
+            if (transaction.getVersion() == 0l) {
+                if (isPropagated(participant) || isExpired(transaction)) {
+                    persist(transaction);
+                } else {
+                    pendingTransactions.add(transaction);
+                    ensureSchedulerInitialized();
+                }
+                return;
+            }
+        }
+
+        transactionRepository.update(transaction);
+    }
+
+    // 进入 confirm / cancel 前调用，事务在此之前必须已经修改为 CONFIRMING / CANCELLING 状态
+    public void save(Transaction transaction) {
+
+        pendingTransactions.remove(transaction);
+
+        synchronized (transaction) {
+            if (transaction.getVersion() != 0l) {
+                transactionRepository.update(transaction);
+            } else if (!transaction.getParticipants().isEmpty()) {
+                // 一次 create 直接写入终态，代替 try 阶段的 create 和多次 update
+                transactionRepository.create(transaction);
+            }
+            // 没有参与者的事务没有需要恢复的内容，不落库
+        }
+    }
+
+    // 事务结束时调用，清理未持久化的事务
+    public void release(Transaction transaction) {
+        pendingTransactions.remove(transaction);
+    }
+
+    // 是否从未持久化，从未持久化的事务 confirm / cancel 后不需要删除
+    public boolean isTransient(Transaction transaction) {
+        return transaction.getVersion() == 0l;
+    }
+
+    // 事务上下文会传递给参与者，参与者可能创建分支事务
+    private boolean isPropagated(Participant participant) {
+        return participant.getTransactionContextEditorClass() != null
+                && !NullableTransactionContextEditor.class.equals(participant.getTransactionContextEditorClass());
+    }
+
+    private boolean isExpired(Transaction transaction) {
+        return System.currentTimeMillis() - transaction.getCreateTime().getTime() >= persistThreshold;
+    }
+
+    private void persist(Transaction transaction) {
+        transactionRepository.create(transaction);
+        pendingTransactions.remove(transaction);
+    }
+
+    private void persistExpiredTransactions() {
+
+        for (Transaction transaction : pendingTransactions) {
+
+            if (!isExpired(transaction)) {
+                continue;
+            }
+
+            try {
+                synchronized (transaction) {
+                    // 可能已经被 save 持久化
+                    if (transaction.getVersion() == 0l && pendingTransactions.contains(transaction)) {
+                        persist(transaction);
+                    }
+                }
+            } catch (Throwable e) {
+                logger.warn(String.format("fast path persist failed, will retry later. xid:%s", transaction.getXid()), e);
+            }
+        }
+    }
+
+    private void ensureSchedulerInitialized() {
+
+        if (persistScheduledExecutorService == null) {
+            synchronized (this) {
+                if (persistScheduledExecutorService == null) {
+                    ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "tcc-fast-path-persister");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+
+                    long period = Math.max(10l, persistThreshold / 4);
+
+                    executorService.scheduleWithFixedDelay(new Runnable() {
+                        @Override
+                        public void run() {
+                            persistExpiredTransactions();
+                        }
+                    }, period, period, TimeUnit.MILLISECONDS);
+
+                    persistScheduledExecutorService = executorService;
+                }
+            }
+        }
+    }
+
+    public void shutdown() {
+        if (persistScheduledExecutorService != null) {
+            persistScheduledExecutorService.shutdown();
+        }
+    }
+
+    public long getPersistThreshold() {
+        return persistThreshold;
+    }
+
+    public void setPersistThreshold(long persistThreshold) {
+        this.persistThreshold = persistThreshold;
+    }
+
+    public TransactionRepository getTransactionRepository() {
+        return transactionRepository;
+    }
+
+    public void setTransactionRepository(TransactionRepository transactionRepository) {
+        this.transactionRepository = transactionRepository;
+    }
+}
@@ -0,0 +1,163 @@
+package org.mengyun.tcctransaction;
+
+import org.mengyun.tcctransaction.api.ParticipantStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 并行执行器，将 confirm / cancel 同时发送给事务中相互独立的参与者，Confirm / Cancel 阶段的耗时由所有参与者耗时之和变为最慢的那个参与者的耗时。
+ * <p/>
+ * 每个参与者执行成功后单独标记为 CONFIRM_SUCCESS / CANCEL_SUCCESS，部分参与者失败或超时时，已成功的参与者不会被恢复任务重复执行。
+ */
+public class ParallelTerminator {
+
+    static final Logger logger = LoggerFactory.getLogger(ParallelTerminator.class.getSimpleName());
+
+    private int threadPoolSize = Runtime.getRuntime().availableProcessors() * 2 + 1;
+
+    private int threadQueueSize = 1024;
+    // 所有参与者完成 confirm / cancel 的最长等待时间，单位：毫秒
+    private long terminateTimeout = 30000;
+
+    private volatile ExecutorService terminatorExecutorService;
+
+    public ParallelTerminator() {
+    }
+    // 并行提交所有还未 CONFIRM_SUCCESS 的参与者
+    public void commit(Transaction transaction) {
+        terminate(transaction, ParticipantStatus.CONFIRM_SUCCESS);
+    }
+    // 并行回滚所有还未 CANCEL_SUCCESS 的参与者
+    public void rollback(Transaction transaction) {
+        terminate(transaction, ParticipantStatus.CANCEL_SUCCESS);
+    }
+
+    private void terminate(Transaction transaction, final ParticipantStatus successStatus) {
+
+        List<Participant> pendingParticipants = new ArrayList<Participant>();
+
+        for (Participant participant : transaction.getParticipants()) {
+            if (!participant.getStatus().equals(successStatus)) {
+                pendingParticipants.add(participant);
+            }
+        }
+        // 只有一个参与者时没有并行的必要，直接在当前线程执行
+        if (pendingParticipants.size() <= 1) {
+            for (Participant participant : pendingParticipants) {
+                terminate(participant, successStatus);
+            }
+            return;
+        }
+
+        ensureExecutorInitialized();
+
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+
+        for (final Participant participant : pendingParticipants) {
+            futures.add(terminatorExecutorService.submit(new Runnable() {
+                @Override
+                public void run() {
+                    terminate(participant, successStatus);
+                }
+            }));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(terminateTimeout);
+
+        Throwable failure = null;
+
+        for (Future<?> future : futures) {
+            try {
+                future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            } catch (TimeoutException e) {
+                // 超时的参与者保持原状态，交由恢复任务重试
+                future.cancel(false);
+                if (failure == null) {
+                    failure = new SystemException(String.format("participants not terminated in %d ms, xid:%s", terminateTimeout, transaction.getXid()), e);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(false);
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+
+        if (failure != null) {
+            logger.warn(String.format("parallel terminate failed, xid:%s, status:%s", transaction.getXid(), transaction.getStatus()));
+
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            throw new SystemException(failure);
+        }
+    }
+
+    private void terminate(Participant participant, ParticipantStatus successStatus) {
+        if (successStatus.equals(ParticipantStatus.CONFIRM_SUCCESS)) {
+            participant.commit();
+        } else {
+            participant.rollback();
+        }
+        participant.setStatus(successStatus);
+    }
+
+    private void ensureExecutorInitialized() {
+
+        if (terminatorExecutorService == null) {
+            synchronized (this) {
+                if (terminatorExecutorService == null) {
+                    // 队列满时由调用线程执行，退化为顺序执行而不是丢弃
+                    terminatorExecutorService = new ThreadPoolExecutor(threadPoolSize,
+                            threadPoolSize,
+                            0l,
+                            TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<Runnable>(threadQueueSize), new ThreadPoolExecutor.CallerRunsPolicy());
+                }
+            }
+        }
+    }
+
+    public void shutdown() {
+        if (terminatorExecutorService != null) {
+            terminatorExecutorService.shutdown();
+        }
+    }
+
+    public int getThreadPoolSize() {
+        return threadPoolSize;
+    }
+
+    public void setThreadPoolSize(int threadPoolSize) {
+        this.threadPoolSize = threadPoolSize;
+    }
+
+    public int getThreadQueueSize() {
+        return threadQueueSize;
+    }
+
+    public void setThreadQueueSize(int threadQueueSize) {
+        this.threadQueueSize = threadQueueSize;
+    }
+
+    public long getTerminateTimeout() {
+        return terminateTimeout;
+    }
+
+    public void setTerminateTimeout(long terminateTimeout) {
+        this.terminateTimeout = terminateTimeout;
+    }
+
+    public void setTerminatorExecutorService(ExecutorService terminatorExecutorService) {
+        this.terminatorExecutorService = terminatorExecutorService;
+    }
+}
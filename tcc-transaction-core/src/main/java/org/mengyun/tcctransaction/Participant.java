@@ -19,7 +19,7 @@ public class Participant implements Serializable {
     private TransactionXid xid;
     private InvocationContext confirmInvocationContext; // commit 执行业务方法调用上下文
     private InvocationContext cancelInvocationContext; // rollback 执行业务方法调用上下文
-    private int status = ParticipantStatus.TRYING.getId();
+    private volatile int status = ParticipantStatus.TRYING.getId();
 
     public Participant() {
 
@@ -5,12 +5,19 @@ import org.mengyun.tcctransaction.api.TransactionContextEditor;
 import org.mengyun.tcctransaction.support.FactoryBuilder;
 import org.mengyun.tcctransaction.utils.StringUtils;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by changmingxie on 10/30/15. 执行器
  */
 public final class Terminator {
+    // 调用器缓存，参与者对象、方法、事务上下文编辑器只在第一次调用时解析
+    private static final ConcurrentHashMap<InvokerKey, Invoker> INVOKERS = new ConcurrentHashMap<InvokerKey, Invoker>();
 
     public Terminator() {
 
@@ -21,22 +28,130 @@ public final class Terminator {
 
         if (StringUtils.isNotEmpty(invocationContext.getMethodName())) {
 
-            try {
-                // 获得 参与者对象
-                Object target = FactoryBuilder.factoryOf(invocationContext.getTargetClass()).getInstance();
-                // 获得 方法
-                Method method = null;
+            Invoker invoker;
 
-                method = target.getClass().getMethod(invocationContext.getMethodName(), invocationContext.getParameterTypes());
+            try {
+                invoker = getInvoker(invocationContext, transactionContextEditorClass);
                 // 设置 事务上下文TransactionContext 到正确的方法参数位置上
-                FactoryBuilder.factoryOf(transactionContextEditorClass).getInstance().set(transactionContext, target, method, invocationContext.getArgs());
-                // 执行方法
-                return method.invoke(target, invocationContext.getArgs());
-
+                invoker.transactionContextEditor.set(transactionContext, invoker.target, invoker.method, invocationContext.getArgs());
             } catch (Exception e) {
                 throw new SystemException(e);
             }
+            // 执行方法，异常在 Invoker 中包装为 SystemException
+            return invoker.invoke(invocationContext.getArgs());
         }
         return null;
     }
+
+    private static Invoker getInvoker(InvocationContext invocationContext, Class<? extends TransactionContextEditor> transactionContextEditorClass) throws NoSuchMethodException {
+
+        InvokerKey key = new InvokerKey(invocationContext.getTargetClass(), invocationContext.getMethodName(), invocationContext.getParameterTypes(), transactionContextEditorClass);
+
+        Invoker invoker = INVOKERS.get(key);
+
+        if (invoker == null) {
+            // 获得 参与者对象
+            Object target = FactoryBuilder.factoryOf(invocationContext.getTargetClass()).getInstance();
+            // 获得 方法
+            Method method = target.getClass().getMethod(invocationContext.getMethodName(), invocationContext.getParameterTypes());
+
+            TransactionContextEditor transactionContextEditor = FactoryBuilder.factoryOf(transactionContextEditorClass).getInstance();
+
+            invoker = new Invoker(target, method, transactionContextEditor);
+
+            Invoker existed = INVOKERS.putIfAbsent(key, invoker);
+            if (existed != null) {
+                invoker = existed;
+            }
+        }
+
+        return invoker;
+    }
+
+    // 已解析的参与者方法调用器，优先通过绑定了参与者对象的 MethodHandle 调用
+    private static final class Invoker {
+
+        private final Object target;
+
+        private final Method method;
+
+        private final TransactionContextEditor transactionContextEditor;
+        // (Object[])Object，无法创建时为 null，退化为反射调用
+        private final MethodHandle methodHandle;
+
+        Invoker(Object target, Method method, TransactionContextEditor transactionContextEditor) {
+            this.target = target;
+            this.method = method;
+            this.transactionContextEditor = transactionContextEditor;
+            this.methodHandle = createMethodHandle(target, method);
+        }
+
+        Object invoke(Object[] args) {
+            try {
+                if (methodHandle != null) {
+                    return (Object) methodHandle.invokeExact(args);
+                }
+                return method.invoke(target, args);
+            } catch (Throwable e) {
+                throw new SystemException(e);
+            }
+        }
+
+        private static MethodHandle createMethodHandle(Object target, Method method) {
+            try {
+                int parameterCount = method.getParameterTypes().length;
+
+                return MethodHandles.lookup().unreflect(method)
+                        .bindTo(target)
+                        .asType(MethodType.genericMethodType(parameterCount))
+                        .asSpreader(Object[].class, parameterCount);
+            } catch (IllegalAccessException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final class InvokerKey {
+
+        private final Class<?> targetClass;
+
+        private final String methodName;
+
+        private final Class<?>[] parameterTypes;
+
+        private final Class<?> transactionContextEditorClass;
+
+        private final int hashCode;
+
+        InvokerKey(Class<?> targetClass, String methodName, Class<?>[] parameterTypes, Class<?> transactionContextEditorClass) {
+            this.targetClass = targetClass;
+            this.methodName = methodName;
+            this.parameterTypes = parameterTypes;
+            this.transactionContextEditorClass = transactionContextEditorClass;
+
+            int result = targetClass.hashCode();
+            result = 31 * result + methodName.hashCode();
+            result = 31 * result + Arrays.hashCode(parameterTypes);
+            result = 31 * result + (transactionContextEditorClass != null ? transactionContextEditorClass.hashCode() : 0);
+            this.hashCode = result;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (other == null || getClass() != other.getClass()) return false;
+
+            InvokerKey that = (InvokerKey) other;
+
+            return targetClass.equals(that.targetClass)
+                    && methodName.equals(that.methodName)
+                    && Arrays.equals(parameterTypes, that.parameterTypes)
+                    && (transactionContextEditorClass != null ? transactionContextEditorClass.equals(that.transactionContextEditorClass) : that.transactionContextEditorClass == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
 }
@@ -29,6 +29,7 @@ public class Transaction implements Serializable {
     private TransactionType transactionType; // 事务类型
     private volatile int retriedCount = 0; // 重试次数
     private Date lastUpdateTime = new Date(); // 最后更新时间
+    private Date nextRetryTime; // 下次允许恢复重试的时间，由存储器按重试次数计算
     private long version = 0;// 版本号
     private TransactionXid rootXid;
 
@@ -65,7 +66,7 @@ public class Transaction implements Serializable {
 
 
     public Xid getXid() {
-        return xid.clone();
+        return xid;
     }
 
     public TransactionStatus getStatus() {
@@ -142,6 +143,14 @@ public class Transaction implements Serializable {
         this.lastUpdateTime = date;
     }
 
+    public Date getNextRetryTime() {
+        return nextRetryTime;
+    }
+
+    public void setNextRetryTime(Date nextRetryTime) {
+        this.nextRetryTime = nextRetryTime;
+    }
+
     public Date getCreateTime() {
         return createTime;
     }
@@ -3,15 +3,20 @@ package org.mengyun.tcctransaction;
 import org.mengyun.tcctransaction.api.TransactionContext;
 import org.mengyun.tcctransaction.api.TransactionStatus;
 import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.executor.ThreadPoolTransactionExecutor;
+import org.mengyun.tcctransaction.executor.TransactionExecutor;
+import org.mengyun.tcctransaction.metrics.NoopTransactionMetrics;
+import org.mengyun.tcctransaction.metrics.TransactionMetrics;
+import org.mengyun.tcctransaction.metrics.TransactionOperation;
 import org.mengyun.tcctransaction.repository.TransactionRepository;
 import org.slf4j.LoggerFactory;
 
 import java.util.Deque;
 import java.util.LinkedList;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
 
 /**
  * Created by changmingxie on 10/26/15. 事务管理器，提供事务的获取、发起、提交、回滚，参与者的新增等等方法。
@@ -26,20 +31,22 @@ public class TransactionManager {
 
     private int threadQueueSize = 1024;
 
-    private ExecutorService asyncTerminatorExecutorService = new ThreadPoolExecutor(threadPoolSize,
-            threadPoolSize,
-            0l,
-            TimeUnit.SECONDS,
-            new ArrayBlockingQueue<>(threadQueueSize), new ThreadPoolExecutor.AbortPolicy());
+    // 异步 confirm / cancel 的执行器，拒绝时由恢复任务稍后处理
+    private TransactionExecutor asyncTerminatorExecutor = new ThreadPoolTransactionExecutor("tcc-async-terminator", threadPoolSize, threadQueueSize);
+    // 异步保存事务状态的执行器，队列满时立即拒绝并计入拒绝数，不在调用方线程执行存储 I/O
+    private TransactionExecutor asyncSaveExecutor = new ThreadPoolTransactionExecutor("tcc-async-save", threadPoolSize, threadQueueSize * 2, 60, 0);
+    // 执行器由事务管理器创建时才由 shutdown 关闭，外部注入的执行器由使用方管理
+    private boolean asyncTerminatorExecutorCreated = true;
 
-    private ExecutorService asyncSaveExecutorService = new ThreadPoolExecutor(threadPoolSize,
-            threadPoolSize,
-            0l,
-            TimeUnit.SECONDS,
-            new ArrayBlockingQueue<>(threadQueueSize * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+    private boolean asyncSaveExecutorCreated = true;
 
     private TransactionRepository transactionRepository;
+    // 不为空时，confirm / cancel 并行发送给所有参与者
+    private ParallelTerminator parallelTerminator;
+    // 不为空时，根事务在 try 阶段不落库，进入 confirm / cancel 前才持久化
+    private FastPathPersister fastPathPersister;
 
+    private TransactionMetrics transactionMetrics = NoopTransactionMetrics.INSTANCE;
 
     public TransactionManager() {
     }
@@ -47,31 +54,98 @@ public class TransactionManager {
     public void setTransactionRepository(TransactionRepository transactionRepository) {
         this.transactionRepository = transactionRepository;
     }
+
+    public ParallelTerminator getParallelTerminator() {
+        return parallelTerminator;
+    }
+
+    public void setParallelTerminator(ParallelTerminator parallelTerminator) {
+        this.parallelTerminator = parallelTerminator;
+    }
+
+    public FastPathPersister getFastPathPersister() {
+        return fastPathPersister;
+    }
+
+    public void setFastPathPersister(FastPathPersister fastPathPersister) {
+        this.fastPathPersister = fastPathPersister;
+    }
+
+    public TransactionExecutor getAsyncTerminatorExecutor() {
+        return asyncTerminatorExecutor;
+    }
+
+    public void setAsyncTerminatorExecutor(TransactionExecutor asyncTerminatorExecutor) {
+        if (asyncTerminatorExecutorCreated) {
+            this.asyncTerminatorExecutor.shutdown();
+        }
+        this.asyncTerminatorExecutor = asyncTerminatorExecutor;
+        this.asyncTerminatorExecutorCreated = false;
+        transactionMetrics.registerExecutor(asyncTerminatorExecutor);
+    }
+
+    public TransactionExecutor getAsyncSaveExecutor() {
+        return asyncSaveExecutor;
+    }
+
+    public void setAsyncSaveExecutor(TransactionExecutor asyncSaveExecutor) {
+        if (asyncSaveExecutorCreated) {
+            this.asyncSaveExecutor.shutdown();
+        }
+        this.asyncSaveExecutor = asyncSaveExecutor;
+        this.asyncSaveExecutorCreated = false;
+        transactionMetrics.registerExecutor(asyncSaveExecutor);
+    }
+
+    public TransactionMetrics getTransactionMetrics() {
+        return transactionMetrics;
+    }
+
+    public void setTransactionMetrics(TransactionMetrics transactionMetrics) {
+        this.transactionMetrics = transactionMetrics;
+        transactionMetrics.registerExecutor(asyncTerminatorExecutor);
+        transactionMetrics.registerExecutor(asyncSaveExecutor);
+    }
+
+    public void shutdown() {
+        if (asyncTerminatorExecutorCreated) {
+            asyncTerminatorExecutor.shutdown();
+        }
+        if (asyncSaveExecutorCreated) {
+            asyncSaveExecutor.shutdown();
+        }
+    }
     // 发起根事务。该方法在调用方法类型为 ParticipantRole.ROOT 并且 事务处于 Try 阶段被调用
     public Transaction begin(Object uniqueIdentify) {
+        long startTime = System.nanoTime();
         Transaction transaction = new Transaction(uniqueIdentify, TransactionType.ROOT); // 创建 根事务
 
         //for performance tuning, at create stage do not persistent
 //        transactionRepository.create(transaction); // 存储 事务
         registerTransaction(transaction); // 注册 事务
+        transactionMetrics.recordTransaction(TransactionOperation.BEGIN, System.nanoTime() - startTime, true);
         return transaction;
     }
     // 发起根事务。该方法在调用方法类型为 ParticipantRole.ROOT 并且 事务处于 Try 阶段被调用
     public Transaction begin() {
+        long startTime = System.nanoTime();
         Transaction transaction = new Transaction(TransactionType.ROOT);
         //for performance tuning, at create stage do not persistent
 //        transactionRepository.create(transaction);
         registerTransaction(transaction);
+        transactionMetrics.recordTransaction(TransactionOperation.BEGIN, System.nanoTime() - startTime, true);
         return transaction;
     }
     // 传播发起分支事务。该方法在调用方法类型为 ParticipantRole.PROVIDER 并且 事务处于 Try 阶段被调用
     public Transaction propagationNewBegin(TransactionContext transactionContext) {
+        long startTime = System.nanoTime();
         // 创建 分支事务
         Transaction transaction = new Transaction(transactionContext);
 
         //for performance tuning, at create stage do not persistent
 //        transactionRepository.create(transaction); // 存储 事务
         registerTransaction(transaction); // 注册 事务
+        transactionMetrics.recordTransaction(TransactionOperation.BEGIN, System.nanoTime() - startTime, true);
         return transaction;
     }
     // 传播获取分支事务。该方法在调用方法类型为 ParticipantRole.PROVIDER 并且 事务处于 Confirm / Cancel 阶段被调用
@@ -87,7 +161,17 @@ public class TransactionManager {
     }
     // 添加参与者到事务
     public void enlistParticipant(Participant participant) {
-        Transaction transaction = this.getCurrentTransaction(); // 获取 事务
+        enlistParticipant(this.getCurrentTransaction(), participant); // 获取 事务
+    }
+
+    // 添加参与者到指定事务，不依赖当前线程的事务队列
+    public void enlistParticipant(Transaction transaction, Participant participant) {
+
+        if (isFastPath(transaction)) {
+            fastPathPersister.enlistParticipant(transaction, participant);
+            return;
+        }
+
         transaction.enlistParticipant(participant); // 添加参与者
         // 创建/更新 事务
         if (transaction.getVersion() == 0l) {
@@ -99,26 +183,55 @@ public class TransactionManager {
     }
     // 提交事务
     public void commit(boolean asyncCommit) {
-        // 获取 事务
-        final Transaction transaction = getCurrentTransaction();
+        commit(getCurrentTransaction(), asyncCommit); // 获取 事务
+    }
+
+    // 提交指定事务
+    public void commit(Transaction transaction, boolean asyncCommit) {
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            doCommit(transaction, asyncCommit);
+            success = true;
+        } finally {
+            transactionMetrics.recordTransaction(TransactionOperation.COMMIT, System.nanoTime() - startTime, success);
+        }
+    }
+
+    //  取消事务，和 #commit() 方法基本类似。该方法在事务处于 Confirm / Cancel 阶段被调用
+    public void rollback(boolean asyncRollback) {
+        rollback(getCurrentTransaction(), asyncRollback); // 获取 事务
+    }
+
+    // 回滚指定事务
+    public void rollback(Transaction transaction, boolean asyncRollback) {
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            doRollback(transaction, asyncRollback);
+            success = true;
+        } finally {
+            transactionMetrics.recordTransaction(TransactionOperation.ROLLBACK, System.nanoTime() - startTime, success);
+        }
+    }
+
+    // 异步提交时只统计持久化和提交任务的耗时
+    private void doCommit(final Transaction transaction, boolean asyncCommit) {
         // 设置 事务状态 为 CONFIRMING
         transaction.changeStatus(TransactionStatus.CONFIRMING);
         // 更新 事务
-        transactionRepository.update(transaction);
+        saveTerminatingTransaction(transaction);
 
         if (asyncCommit) {
             try {
-                Long statTime = System.currentTimeMillis();
-
-                asyncTerminatorExecutorService.submit(new Runnable() {
+                asyncTerminatorExecutor.execute(new Runnable() {
                     @Override
                     public void run() {
                         commitTransaction(transaction); // 提交 事务
                     }
                 });
-                logger.debug("async submit cost time:" + (System.currentTimeMillis() - statTime));
-            } catch (Throwable commitException) {
-                logger.warn("compensable transaction async submit confirm failed, recovery job will try to confirm later.", commitException.getCause());
+            } catch (RejectedExecutionException commitException) {
+                logger.warn("compensable transaction async submit confirm failed, recovery job will try to confirm later.", commitException);
                 //throw new ConfirmingException(commitException);
             }
         } else {
@@ -126,24 +239,22 @@ public class TransactionManager {
         }
     }
 
-    //  取消事务，和 #commit() 方法基本类似。该方法在事务处于 Confirm / Cancel 阶段被调用
-    public void rollback(boolean asyncRollback) {
+    private void doRollback(final Transaction transaction, boolean asyncRollback) {
 
-        final Transaction transaction = getCurrentTransaction(); // 获取 事务
         transaction.changeStatus(TransactionStatus.CANCELLING); // 设置 事务状态 为 CANCELLING
 
-        transactionRepository.update(transaction); // 更新 事务
+        saveTerminatingTransaction(transaction); // 更新 事务
 
         if (asyncRollback) {
 
             try {
-                asyncTerminatorExecutorService.submit(new Runnable() {
+                asyncTerminatorExecutor.execute(new Runnable() {
                     @Override
                     public void run() {
                         rollbackTransaction(transaction);
                     }
                 });
-            } catch (Throwable rollbackException) {
+            } catch (RejectedExecutionException rollbackException) {
                 logger.warn("compensable transaction async rollback failed, recovery job will try to rollback later.", rollbackException);
                 throw new CancellingException(rollbackException);
             }
@@ -156,8 +267,12 @@ public class TransactionManager {
 
     private void commitTransaction(Transaction transaction) {
         try {
-            transaction.commit(); // 提交 事务
-            transactionRepository.delete(transaction); // 删除 事务
+            if (parallelTerminator != null) {
+                parallelTerminator.commit(transaction); // 并行提交 事务
+            } else {
+                transaction.commit(); // 提交 事务
+            }
+            deleteTerminatedTransaction(transaction); // 删除 事务
         } catch (Throwable commitException) {
 
             //try save updated transaction
@@ -174,8 +289,12 @@ public class TransactionManager {
 
     private void rollbackTransaction(Transaction transaction) {
         try {
-            transaction.rollback(); // 提交 事务
-            transactionRepository.delete(transaction); // 删除 事务
+            if (parallelTerminator != null) {
+                parallelTerminator.rollback(transaction); // 并行回滚 事务
+            } else {
+                transaction.rollback(); // 回滚 事务
+            }
+            deleteTerminatedTransaction(transaction); // 删除 事务
         } catch (Throwable rollbackException) {
 
             //try save updated transaction
@@ -189,6 +308,26 @@ public class TransactionManager {
             throw new CancellingException(rollbackException);
         }
     }
+    private boolean isFastPath(Transaction transaction) {
+        return fastPathPersister != null && transaction.getTransactionType().equals(TransactionType.ROOT);
+    }
+
+    // 进入 confirm / cancel 前持久化事务状态，必须在驱动任何参与者之前完成
+    private void saveTerminatingTransaction(Transaction transaction) {
+        if (isFastPath(transaction)) {
+            fastPathPersister.save(transaction);
+        } else {
+            transactionRepository.update(transaction);
+        }
+    }
+
+    private void deleteTerminatedTransaction(Transaction transaction) {
+        if (isFastPath(transaction) && fastPathPersister.isTransient(transaction)) {
+            return;
+        }
+        transactionRepository.delete(transaction);
+    }
+
     // 线程隔离
     public Transaction getCurrentTransaction() {
         if (isTransactionActive()) {
@@ -216,27 +355,151 @@ public class TransactionManager {
         if (isTransactionActive() && transaction != null) {
             Transaction currentTransaction = getCurrentTransaction();
             if (currentTransaction == transaction) {
-                CURRENT.get().pop();
-                if (CURRENT.get().size() == 0) {
-                    CURRENT.remove();
-                }
+                releaseTransaction(transaction);
+                detachTransaction(transaction);
             } else {
                 throw new SystemException("Illegal transaction when clean after completion");
             }
         }
     }
 
+    // 将事务从当前线程事务队列移除，但不释放事务占用的资源。异步方法在 try 返回 future 后调用，事务结束后再调用 #releaseTransaction(...)
+    public void detachTransaction(Transaction transaction) {
+        if (isTransactionActive() && transaction != null) {
+            if (getCurrentTransaction() != transaction) {
+                throw new SystemException("Illegal transaction when detach from current thread");
+            }
+            CURRENT.get().pop();
+            if (CURRENT.get().size() == 0) {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    // 释放事务结束后不再需要的资源
+    public void releaseTransaction(Transaction transaction) {
+        if (fastPathPersister != null && transaction != null) {
+            fastPathPersister.release(transaction);
+        }
+    }
+
+    // 在当前线程临时注册指定事务后执行 callable，用于异步回调中继续调用其他 TCC 服务，执行完后移除
+    public <T> T executeInTransaction(Transaction transaction, Callable<T> callable) throws Exception {
+        registerTransaction(transaction);
+        try {
+            return callable.call();
+        } finally {
+            detachTransaction(transaction);
+        }
+    }
+
+    // ---- 异步 API：事务通过参数显式传递，不注册到当前线程，返回的 future 在对应阶段完成后结束 ----
+
+    // 发起根事务，不注册到当前线程
+    public CompletableFuture<Transaction> beginAsync(Object uniqueIdentify) {
+        long startTime = System.nanoTime();
+        Transaction transaction = new Transaction(uniqueIdentify, TransactionType.ROOT);
+        transactionMetrics.recordTransaction(TransactionOperation.BEGIN, System.nanoTime() - startTime, true);
+        return CompletableFuture.completedFuture(transaction);
+    }
+
+    // 在异步保存执行器上持久化参与者，拒绝时 future 以 RejectedExecutionException 结束
+    public CompletableFuture<Void> enlistParticipantAsync(final Transaction transaction, final Participant participant) {
+        return executeAsync(asyncSaveExecutor, new Runnable() {
+            @Override
+            public void run() {
+                enlistParticipant(transaction, participant);
+            }
+        });
+    }
+
+    // 异步提交，失败时以 ConfirmingException 结束，由恢复任务稍后重试
+    public CompletableFuture<Void> commitAsync(final Transaction transaction) {
+        return commitAsync(transaction, false);
+    }
+
+    // asyncCommit 为 true 时，future 在 CONFIRMING 状态保存后结束，参与者的提交在 asyncTerminatorExecutor 中继续执行
+    public CompletableFuture<Void> commitAsync(final Transaction transaction, final boolean asyncCommit) {
+        final long startTime = System.nanoTime();
+        return executeAsync(asyncTerminatorExecutor, new Runnable() {
+            @Override
+            public void run() {
+                doCommit(transaction, asyncCommit);
+            }
+        }).whenComplete(new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void result, Throwable throwable) {
+                transactionMetrics.recordTransaction(TransactionOperation.COMMIT, System.nanoTime() - startTime, throwable == null);
+            }
+        });
+    }
+
+    // 异步回滚，失败时以 CancellingException 结束，由恢复任务稍后重试
+    public CompletableFuture<Void> rollbackAsync(final Transaction transaction) {
+        return rollbackAsync(transaction, false);
+    }
+
+    // asyncRollback 为 true 时，future 在 CANCELLING 状态保存后结束，参与者的回滚在 asyncTerminatorExecutor 中继续执行
+    public CompletableFuture<Void> rollbackAsync(final Transaction transaction, final boolean asyncRollback) {
+        final long startTime = System.nanoTime();
+        return executeAsync(asyncTerminatorExecutor, new Runnable() {
+            @Override
+            public void run() {
+                doRollback(transaction, asyncRollback);
+            }
+        }).whenComplete(new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void result, Throwable throwable) {
+                transactionMetrics.recordTransaction(TransactionOperation.ROLLBACK, System.nanoTime() - startTime, throwable == null);
+            }
+        });
+    }
+
+    // 执行器拒绝时 future 立即以 RejectedExecutionException 结束，不在调用方线程执行
+    private CompletableFuture<Void> executeAsync(TransactionExecutor executor, final Runnable task) {
+
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                    future.complete(null);
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        };
+
+        try {
+            executor.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
 
     public void changeStatus(TransactionStatus status) {
         changeStatus(status, false);
     }
 
     public void changeStatus(TransactionStatus status, boolean asyncSave) {
-        Transaction transaction = this.getCurrentTransaction();
+        changeStatus(this.getCurrentTransaction(), status, asyncSave);
+    }
+
+    public void changeStatus(Transaction transaction, TransactionStatus status, boolean asyncSave) {
         transaction.setStatus(status);
 
         if (asyncSave) {
-            asyncSaveExecutorService.submit(new AsyncSaveTask(transaction));
+            try {
+                asyncSaveExecutor.execute(new AsyncSaveTask(transaction));
+            } catch (RejectedExecutionException e) {
+                // 与保存失败相同，分支事务保持 TRYING，由根事务驱动 confirm / cancel；拒绝数计入执行器的监控指标
+                logger.warn(String.format("async save transaction rejected, xid:%s, status:%s", transaction.getXid(), status), e);
+            }
         } else {
             transactionRepository.update(transaction);
         }
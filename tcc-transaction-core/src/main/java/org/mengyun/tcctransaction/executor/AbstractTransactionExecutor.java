@@ -0,0 +1,99 @@
+package org.mengyun.tcctransaction.executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 统计提交、拒绝、等待和执行耗时，子类只负责调度。
+ */
+public abstract class AbstractTransactionExecutor implements TransactionExecutor {
+
+    static final Logger logger = LoggerFactory.getLogger(AbstractTransactionExecutor.class.getSimpleName());
+
+    private final String name;
+
+    private final LongAdder submittedCount = new LongAdder();
+
+    private final LongAdder completedCount = new LongAdder();
+
+    private final LongAdder failedCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    private final LongAdder totalWaitNanos = new LongAdder();
+
+    private final LongAdder totalExecutionNanos = new LongAdder();
+
+    private final LongAccumulator maxExecutionNanos = new LongAccumulator(Math::max, 0L);
+
+    protected AbstractTransactionExecutor(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+
+        MeasuredTask measuredTask = new MeasuredTask(task);
+
+        try {
+            doExecute(measuredTask);
+            submittedCount.increment();
+        } catch (RejectedExecutionException e) {
+            rejectedCount.increment();
+            throw e;
+        }
+    }
+
+    @Override
+    public ExecutorMetrics getMetrics() {
+        return new ExecutorMetrics(name, getQueueSize(), getActiveCount(),
+                submittedCount.sum(), completedCount.sum(), failedCount.sum(), rejectedCount.sum(),
+                totalWaitNanos.sum(), totalExecutionNanos.sum(), maxExecutionNanos.get());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // 调度任务，无法接收时抛出 RejectedExecutionException
+    protected abstract void doExecute(Runnable task);
+
+    protected abstract int getQueueSize();
+
+    protected abstract int getActiveCount();
+
+    private class MeasuredTask implements Runnable {
+
+        private final Runnable task;
+
+        private final long submitTime = System.nanoTime();
+
+        MeasuredTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+
+            long startTime = System.nanoTime();
+            totalWaitNanos.add(startTime - submitTime);
+
+            try {
+                task.run();
+            } catch (RuntimeException | Error e) {
+                // 任务自身负责记录异常日志，这里只计数
+                failedCount.increment();
+                logger.debug(String.format("task failed in executor %s", name), e);
+            } finally {
+                long executionNanos = System.nanoTime() - startTime;
+                totalExecutionNanos.add(executionNanos);
+                maxExecutionNanos.accumulate(executionNanos);
+                completedCount.increment();
+            }
+        }
+    }
+}
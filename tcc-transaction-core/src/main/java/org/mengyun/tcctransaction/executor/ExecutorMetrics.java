@@ -0,0 +1,99 @@
+package org.mengyun.tcctransaction.executor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 执行器的运行指标快照，计数类指标从执行器创建开始累计。
+ */
+public class ExecutorMetrics {
+
+    private final String name;
+    // 已提交还未开始执行的任务数
+    private final int queueSize;
+    // 正在执行的任务数
+    private final int activeCount;
+
+    private final long submittedCount;
+
+    private final long completedCount;
+    // 执行时抛出异常的任务数，包含在 completedCount 中
+    private final long failedCount;
+
+    private final long rejectedCount;
+    // 所有已开始执行的任务从提交到开始执行的等待时间之和，单位：纳秒
+    private final long totalWaitNanos;
+    // 所有已完成的任务的执行时间之和，单位：纳秒
+    private final long totalExecutionNanos;
+
+    private final long maxExecutionNanos;
+
+    public ExecutorMetrics(String name, int queueSize, int activeCount, long submittedCount, long completedCount, long failedCount,
+                           long rejectedCount, long totalWaitNanos, long totalExecutionNanos, long maxExecutionNanos) {
+        this.name = name;
+        this.queueSize = queueSize;
+        this.activeCount = activeCount;
+        this.submittedCount = submittedCount;
+        this.completedCount = completedCount;
+        this.failedCount = failedCount;
+        this.rejectedCount = rejectedCount;
+        this.totalWaitNanos = totalWaitNanos;
+        this.totalExecutionNanos = totalExecutionNanos;
+        this.maxExecutionNanos = maxExecutionNanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount;
+    }
+
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public long getTotalWaitNanos() {
+        return totalWaitNanos;
+    }
+
+    public long getTotalExecutionNanos() {
+        return totalExecutionNanos;
+    }
+
+    public long getMaxExecutionNanos() {
+        return maxExecutionNanos;
+    }
+
+    public double getAverageWaitMillis() {
+        long startedCount = completedCount + activeCount;
+        return startedCount == 0 ? 0d : (double) totalWaitNanos / startedCount / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getAverageExecutionMillis() {
+        return completedCount == 0 ? 0d : (double) totalExecutionNanos / completedCount / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s{queueSize=%d, activeCount=%d, submitted=%d, completed=%d, failed=%d, rejected=%d, avgWaitMs=%.3f, avgExecutionMs=%.3f, maxExecutionMs=%.3f}",
+                name, queueSize, activeCount, submittedCount, completedCount, failedCount, rejectedCount,
+                getAverageWaitMillis(), getAverageExecutionMillis(), (double) maxExecutionNanos / TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
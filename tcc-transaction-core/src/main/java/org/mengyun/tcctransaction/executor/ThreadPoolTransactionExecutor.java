@@ -0,0 +1,103 @@
+package org.mengyun.tcctransaction.executor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 平台线程执行器。
+ * <p/>
+ * 线程数固定为 poolSize，空闲超过 keepAliveSeconds 的线程会被回收；队列满时调用方最多等待 submitTimeout 毫秒，
+ * 仍然没有空间时抛出 RejectedExecutionException 并计入拒绝数，不会静默丢弃，也不会在调用方线程中执行。
+ */
+public class ThreadPoolTransactionExecutor extends AbstractTransactionExecutor {
+
+    private final ThreadPoolExecutor threadPoolExecutor;
+
+    public ThreadPoolTransactionExecutor(String name, int poolSize, int queueSize) {
+        this(name, poolSize, queueSize, 60, 100);
+    }
+
+    public ThreadPoolTransactionExecutor(String name, int poolSize, int queueSize, long keepAliveSeconds, final long submitTimeout) {
+
+        super(name);
+
+        threadPoolExecutor = new ThreadPoolExecutor(poolSize,
+                poolSize,
+                keepAliveSeconds,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                new NamedThreadFactory(name),
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+                        waitForQueue(task, executor, submitTimeout);
+                    }
+                });
+
+        threadPoolExecutor.allowCoreThreadTimeOut(keepAliveSeconds > 0);
+    }
+
+    @Override
+    protected void doExecute(Runnable task) {
+        threadPoolExecutor.execute(task);
+    }
+
+    @Override
+    protected int getQueueSize() {
+        return threadPoolExecutor.getQueue().size();
+    }
+
+    @Override
+    protected int getActiveCount() {
+        return threadPoolExecutor.getActiveCount();
+    }
+
+    @Override
+    public void shutdown() {
+        threadPoolExecutor.shutdown();
+    }
+
+    // 突发流量时短暂等待队列空间，超时后拒绝
+    private static void waitForQueue(Runnable task, ThreadPoolExecutor executor, long submitTimeout) {
+
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("executor has been shutdown");
+        }
+
+        BlockingQueue<Runnable> queue = executor.getQueue();
+
+        try {
+            if (submitTimeout > 0 && queue.offer(task, submitTimeout, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        throw new RejectedExecutionException(String.format("task queue is full, queue size:%d, active threads:%d", queue.size(), executor.getActiveCount()));
+    }
+
+    static class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + "-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
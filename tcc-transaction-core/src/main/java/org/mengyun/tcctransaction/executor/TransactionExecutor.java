@@ -0,0 +1,24 @@
+package org.mengyun.tcctransaction.executor;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 事务管理器异步执行 confirm / cancel 和异步保存事务状态使用的执行器。
+ * <p/>
+ * 内置 {@link ThreadPoolTransactionExecutor}（平台线程）和 {@link VirtualThreadTransactionExecutor}（JDK 21+ 虚拟线程），
+ * 也可以自行实现后通过 TransactionManager / RecoverConfiguration 的 setter 注入。
+ */
+public interface TransactionExecutor extends Executor {
+
+    /**
+     * 提交任务，无法接收时抛出 {@link java.util.concurrent.RejectedExecutionException}，由调用方决定降级方式
+     */
+    @Override
+    void execute(Runnable task);
+
+    // 当前的排队数、拒绝数、等待和执行耗时
+    ExecutorMetrics getMetrics();
+
+    // 不再接收新任务，已提交的任务继续执行
+    void shutdown();
+}
@@ -0,0 +1,20 @@
+package org.mengyun.tcctransaction.executor;
+
+/**
+ * 创建内置执行器。
+ */
+public final class TransactionExecutors {
+
+    private TransactionExecutors() {
+    }
+
+    // preferVirtualThreads 为 true 且运行在 JDK 21+ 时使用虚拟线程，否则使用平台线程
+    public static TransactionExecutor newExecutor(String name, int concurrency, int queueSize, boolean preferVirtualThreads) {
+
+        if (preferVirtualThreads && VirtualThreadTransactionExecutor.isSupported()) {
+            return new VirtualThreadTransactionExecutor(name, concurrency, queueSize);
+        }
+
+        return new ThreadPoolTransactionExecutor(name, concurrency, queueSize);
+    }
+}
@@ -0,0 +1,129 @@
+package org.mengyun.tcctransaction.executor;
+
+import org.mengyun.tcctransaction.SystemException;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 虚拟线程执行器，需要 JDK 21+，每个任务一个虚拟线程，通过反射创建，项目仍然可以在 JDK 8 上编译。
+ * <p/>
+ * 同时执行的任务数不超过 maxConcurrency，参与者的 confirm / cancel 通常是远程调用，限制并发避免压垮下游；
+ * 已提交未执行的任务超过 queueSize 时调用方最多等待 submitTimeout 毫秒，之后抛出 RejectedExecutionException。
+ */
+public class VirtualThreadTransactionExecutor extends AbstractTransactionExecutor {
+
+    private final ThreadFactory threadFactory;
+
+    private final Semaphore concurrencyPermits;
+    // 已提交未完成的任务数上限为 maxConcurrency + queueSize
+    private final Semaphore outstandingPermits;
+
+    private final long submitTimeout;
+
+    private final AtomicInteger queueSize = new AtomicInteger();
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    private volatile boolean shutdown = false;
+
+    public VirtualThreadTransactionExecutor(String name, int maxConcurrency, int queueSize) {
+        this(name, maxConcurrency, queueSize, 100);
+    }
+
+    public VirtualThreadTransactionExecutor(String name, int maxConcurrency, int queueSize, long submitTimeout) {
+        super(name);
+
+        if (!isSupported()) {
+            throw new SystemException("virtual threads require JDK 21+, current java version:" + System.getProperty("java.version"));
+        }
+
+        this.threadFactory = createVirtualThreadFactory(name + "-");
+        this.concurrencyPermits = new Semaphore(maxConcurrency);
+        this.outstandingPermits = new Semaphore(maxConcurrency + queueSize);
+        this.submitTimeout = submitTimeout;
+    }
+
+    public static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    @Override
+    protected void doExecute(final Runnable task) {
+
+        if (shutdown) {
+            throw new RejectedExecutionException("executor has been shutdown");
+        }
+
+        try {
+            if (!outstandingPermits.tryAcquire(submitTimeout, TimeUnit.MILLISECONDS)) {
+                throw new RejectedExecutionException(String.format("too many pending tasks, queue size:%d, active threads:%d", queueSize.get(), activeCount.get()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        }
+
+        queueSize.incrementAndGet();
+
+        try {
+            threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    // 虚拟线程阻塞在信号量上的开销很小，等待的虚拟线程即为排队中的任务
+                    concurrencyPermits.acquireUninterruptibly();
+                    queueSize.decrementAndGet();
+                    activeCount.incrementAndGet();
+                    try {
+                        task.run();
+                    } finally {
+                        activeCount.decrementAndGet();
+                        concurrencyPermits.release();
+                        outstandingPermits.release();
+                    }
+                }
+            }).start();
+        } catch (RuntimeException | Error e) {
+            queueSize.decrementAndGet();
+            outstandingPermits.release();
+            throw new RejectedExecutionException(e);
+        }
+    }
+
+    @Override
+    protected int getQueueSize() {
+        return queueSize.get();
+    }
+
+    @Override
+    protected int getActiveCount() {
+        return activeCount.get();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    // Thread.ofVirtual().name(prefix, 0).factory()
+    private static ThreadFactory createVirtualThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Method nameMethod = builderClass.getMethod("name", String.class, long.class);
+            builder = nameMethod.invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new SystemException(e);
+        }
+    }
+}
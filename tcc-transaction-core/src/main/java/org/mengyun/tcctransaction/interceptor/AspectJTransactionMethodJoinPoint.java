@@ -16,12 +16,24 @@ public class AspectJTransactionMethodJoinPoint implements TransactionMethodJoinP
 
     private Class declaredClass = null;
 
+    private Method method;
+
     public AspectJTransactionMethodJoinPoint(ProceedingJoinPoint pjp, Compensable compensable, Class<? extends TransactionContextEditor> transactionContextEditorClass) {
         this.pjp = pjp;
         this.compensable = compensable;
         this.transactionContextEditorClass = transactionContextEditorClass;
+        this.method = ((MethodSignature) pjp.getSignature()).getMethod();
+
+        declaredClass = ReflectionUtils.getDeclaringType(pjp.getTarget().getClass(), method.getName(), method.getParameterTypes());
+    }
+
+    public AspectJTransactionMethodJoinPoint(ProceedingJoinPoint pjp, CompensableMethodDescriptor descriptor) {
+        this.pjp = pjp;
+        this.compensable = descriptor.getCompensable();
+        this.transactionContextEditorClass = descriptor.getTransactionContextEditorClass();
+        this.method = descriptor.getMethod();
 
-        declaredClass = ReflectionUtils.getDeclaringType(pjp.getTarget().getClass(), getMethod().getName(), getMethod().getParameterTypes());
+        declaredClass = ReflectionUtils.getDeclaringType(pjp.getTarget().getClass(), method.getName(), method.getParameterTypes());
     }
 
     @Override
@@ -41,7 +53,7 @@ public class AspectJTransactionMethodJoinPoint implements TransactionMethodJoinP
 
     @Override
     public Method getMethod() {
-        return ((MethodSignature) pjp.getSignature()).getMethod();
+        return method;
     }
 
     @Override
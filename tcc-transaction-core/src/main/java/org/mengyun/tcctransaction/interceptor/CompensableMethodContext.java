@@ -4,11 +4,9 @@ import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.api.Compensable;
 import org.mengyun.tcctransaction.api.TransactionContext;
 import org.mengyun.tcctransaction.api.TransactionContextEditor;
-import org.mengyun.tcctransaction.api.UniqueIdentity;
 import org.mengyun.tcctransaction.common.ParticipantRole;
 import org.mengyun.tcctransaction.support.FactoryBuilder;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 
 /**
@@ -47,18 +45,11 @@ public class CompensableMethodContext {
     }
 
     public Object getUniqueIdentity() {
-        Annotation[][] annotations = this.getMethod().getParameterAnnotations();
+        // @UniqueIdentity 参数的位置按 Method 缓存
+        int position = pjp.getDescriptor().getUniqueIdentityParamPosition();
 
-        for (int i = 0; i < annotations.length; i++) {
-            for (Annotation annotation : annotations[i]) {
-                if (annotation.annotationType().equals(UniqueIdentity.class)) {
-
-                    Object[] params = pjp.getArgs();
-                    Object unqiueIdentity = params[i];
-
-                    return unqiueIdentity;
-                }
-            }
+        if (position >= 0) {
+            return pjp.getArgs()[position];
         }
 
         return null;
@@ -108,6 +99,10 @@ public class CompensableMethodContext {
         return ParticipantRole.NORMAL;
     }
 
+    public boolean isAsync() {
+        return pjp.getDescriptor().isAsync();
+    }
+
     public Object proceed() throws Throwable {
         return this.pjp.proceed();
     }
@@ -0,0 +1,106 @@
+package org.mengyun.tcctransaction.interceptor;
+
+import org.mengyun.tcctransaction.api.Compensable;
+import org.mengyun.tcctransaction.api.NullableTransactionContextEditor;
+import org.mengyun.tcctransaction.api.ParameterTransactionContextEditor;
+import org.mengyun.tcctransaction.api.TransactionContextEditor;
+import org.mengyun.tcctransaction.api.UniqueIdentity;
+import org.mengyun.tcctransaction.utils.ReflectionUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 切面方法的元数据，每个 Method 只在第一次调用时解析，之后切面和拦截器直接读取，不再每次反射。
+ */
+public final class CompensableMethodDescriptor {
+
+    private static final ConcurrentHashMap<Method, CompensableMethodDescriptor> DESCRIPTORS = new ConcurrentHashMap<Method, CompensableMethodDescriptor>();
+
+    private final Method method;
+
+    private final Compensable compensable;
+    // 方法上 @Compensable 指定的编辑器，未指定且参数中有 TransactionContext 时为 ParameterTransactionContextEditor
+    private final Class<? extends TransactionContextEditor> transactionContextEditorClass;
+    // TransactionContext 参数的位置，没有时为 -1
+    private final int transactionContextParamPosition;
+    // @UniqueIdentity 参数的位置，没有时为 -1
+    private final int uniqueIdentityParamPosition;
+
+    private final boolean async;
+
+    private CompensableMethodDescriptor(Method method) {
+        this.method = method;
+        this.compensable = method.getAnnotation(Compensable.class);
+
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        this.transactionContextParamPosition = ParameterTransactionContextEditor.getTransactionContextParamPosition(parameterTypes);
+
+        Class<? extends TransactionContextEditor> editorClass = NullableTransactionContextEditor.class;
+        if (compensable != null) {
+            editorClass = compensable.transactionContextEditor();
+        }
+        if (editorClass.equals(NullableTransactionContextEditor.class) && transactionContextParamPosition >= 0) {
+            editorClass = ParameterTransactionContextEditor.class;
+        }
+        this.transactionContextEditorClass = editorClass;
+
+        this.uniqueIdentityParamPosition = findUniqueIdentityParamPosition(method);
+        this.async = ReflectionUtils.isAsyncReturnType(method.getReturnType());
+    }
+
+    public static CompensableMethodDescriptor of(Method method) {
+
+        CompensableMethodDescriptor descriptor = DESCRIPTORS.get(method);
+
+        if (descriptor == null) {
+            descriptor = new CompensableMethodDescriptor(method);
+            CompensableMethodDescriptor existed = DESCRIPTORS.putIfAbsent(method, descriptor);
+            if (existed != null) {
+                descriptor = existed;
+            }
+        }
+
+        return descriptor;
+    }
+
+    private static int findUniqueIdentityParamPosition(Method method) {
+
+        Annotation[][] annotations = method.getParameterAnnotations();
+
+        for (int i = 0; i < annotations.length; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if (annotation.annotationType().equals(UniqueIdentity.class)) {
+                    return i;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public Compensable getCompensable() {
+        return compensable;
+    }
+
+    public Class<? extends TransactionContextEditor> getTransactionContextEditorClass() {
+        return transactionContextEditorClass;
+    }
+
+    public int getTransactionContextParamPosition() {
+        return transactionContextParamPosition;
+    }
+
+    public int getUniqueIdentityParamPosition() {
+        return uniqueIdentityParamPosition;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+}
@@ -1,6 +1,8 @@
 package org.mengyun.tcctransaction.interceptor;
 
 import com.alibaba.fastjson.JSON;
+import org.mengyun.tcctransaction.CancellingException;
+import org.mengyun.tcctransaction.ConfirmingException;
 import org.mengyun.tcctransaction.IllegalTransactionStatusException;
 import org.mengyun.tcctransaction.NoExistedTransactionException;
 import org.mengyun.tcctransaction.Transaction;
@@ -12,6 +14,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
 
 /**
  * Created by changmingxie on 10/30/15. 可补偿事务拦截器。通常是 发起和参与 分布式事务的各个服务标注了 @Compensable 的 Try 方法。主要是创建根事务/分支事务 Transaction 放到本地线程事务队列里、提交/回滚 Transaction
@@ -35,6 +41,9 @@ public class CompensableTransactionInterceptor {
         // else if method is @Compensable and has transaction context and no transaction ,then provider
         switch (compensableMethodContext.getParticipantRole()) {
             case ROOT: // 发起分布式事务的服务 Try 方法
+                if (compensableMethodContext.isAsync()) {
+                    return rootMethodProceedAsync(compensableMethodContext);
+                }
                 return rootMethodProceed(compensableMethodContext);
             case PROVIDER: // 除了发起分布式事务的服务之外的其他参与方 Try 方法
                 return providerMethodProceed(compensableMethodContext);
@@ -74,8 +83,65 @@ public class CompensableTransactionInterceptor {
 
         return returnValue;
     }
+    // 异步发起 TCC 整体流程。try 方法返回 future 后立即把事务从当前线程移除，future 完成后再异步提交或回滚，返回的 future 在提交或回滚后结束
+    private Object rootMethodProceedAsync(CompensableMethodContext compensableMethodContext) {
+
+        final boolean asyncConfirm = compensableMethodContext.getAnnotation().asyncConfirm();
+
+        final boolean asyncCancel = compensableMethodContext.getAnnotation().asyncCancel();
+
+        final Transaction transaction = transactionManager.begin(compensableMethodContext.getUniqueIdentity());
+
+        CompletionStage<?> tryingStage = proceedAsync(compensableMethodContext, transaction);
+
+        final CompletableFuture<Object> result = new CompletableFuture<Object>();
+
+        tryingStage.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(final Object returnValue, final Throwable tryingException) {
+                // asyncConfirm / asyncCancel 时 future 在 CONFIRMING / CANCELLING 状态保存后结束，不等待参与者提交或回滚
+                CompletableFuture<Void> terminatingFuture = tryingException == null
+                        ? transactionManager.commitAsync(transaction, asyncConfirm)
+                        : transactionManager.rollbackAsync(transaction, asyncCancel);
+
+                terminatingFuture.whenComplete(new BiConsumer<Void, Throwable>() {
+                    @Override
+                    public void accept(Void ignore, Throwable terminatingException) {
+
+                        transactionManager.releaseTransaction(transaction);
+
+                        Throwable exception = tryingException == null ? null : unwrap(tryingException);
+                        // asyncConfirm / asyncCancel 时和同步方法一致，confirm / cancel 失败交给恢复任务，不影响调用方
+                        if (terminatingException != null) {
+                            Throwable cause = unwrap(terminatingException);
+                            boolean ignored = tryingException == null
+                                    ? asyncConfirm && cause instanceof ConfirmingException
+                                    : asyncCancel && cause instanceof CancellingException;
+                            if (!ignored) {
+                                exception = cause;
+                            }
+                        }
+
+                        if (exception == null) {
+                            result.complete(returnValue);
+                        } else {
+                            result.completeExceptionally(exception);
+                        }
+                    }
+                });
+            }
+        });
+
+        return result;
+    }
+
     // 服务提供者（除了发起分布式事务的服务之外的其他参与方）参与 TCC 整体流程。
     private Object providerMethodProceed(CompensableMethodContext compensableMethodContext) throws Throwable {
+
+        if (compensableMethodContext.isAsync()
+                && TransactionStatus.valueOf(compensableMethodContext.getTransactionContext().getStatus()) == TransactionStatus.TRYING) {
+            return providerTryingProceedAsync(compensableMethodContext);
+        }
         // 本地发起远程服务 TCC confirm / cancel 阶段，调用相同方法进行事务的提交或回滚。远程服务的 CompensableTransactionInterceptor 会根据事务的状态是 CONFIRMING / CANCELLING 来调用对应方法
         Transaction transaction = null;
 
@@ -149,6 +215,47 @@ public class CompensableTransactionInterceptor {
         // 当事务处于 TransactionStatus.CONFIRMING / TransactionStatus.CANCELLING 时，返回空值
         Method method = compensableMethodContext.getMethod();
         // 为什么返回空值？Confirm / Cancel 相关方法，是通过 AOP 切面调用，只调用，不处理返回值，但是又不能没有返回值，因此直接返回空
+        if (compensableMethodContext.isAsync()) {
+            return CompletableFuture.completedFuture(null);
+        }
         return ReflectionUtils.getNullValue(method.getReturnType());
     }
+
+    // 异步方法的分支事务 Try 阶段，future 完成后再修改分支事务状态
+    private Object providerTryingProceedAsync(CompensableMethodContext compensableMethodContext) {
+
+        final Transaction transaction = transactionManager.propagationNewBegin(compensableMethodContext.getTransactionContext());
+
+        return proceedAsync(compensableMethodContext, transaction).whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object result, Throwable tryingException) {
+                if (tryingException == null) {
+                    transactionManager.changeStatus(transaction, TransactionStatus.TRY_SUCCESS, true);
+                } else {
+                    transactionManager.changeStatus(transaction, TransactionStatus.TRY_FAILED, false);
+                }
+            }
+        }).toCompletableFuture();
+    }
+
+    // 执行异步的 try 方法，返回后把事务从当前线程移除，同步抛出的异常也转换为失败的 future
+    private CompletionStage<?> proceedAsync(CompensableMethodContext compensableMethodContext, Transaction transaction) {
+        try {
+            Object returnValue = compensableMethodContext.proceed();
+            return returnValue == null ? CompletableFuture.completedFuture(null) : (CompletionStage<?>) returnValue;
+        } catch (Throwable tryingException) {
+            CompletableFuture<Object> failed = new CompletableFuture<Object>();
+            failed.completeExceptionally(tryingException);
+            return failed;
+        } finally {
+            transactionManager.detachTransaction(transaction);
+        }
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
 }
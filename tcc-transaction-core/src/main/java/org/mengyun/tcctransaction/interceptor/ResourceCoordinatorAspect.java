@@ -5,12 +5,6 @@ import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
-import org.mengyun.tcctransaction.api.Compensable;
-import org.mengyun.tcctransaction.api.NullableTransactionContextEditor;
-import org.mengyun.tcctransaction.api.ParameterTransactionContextEditor;
-import org.mengyun.tcctransaction.api.TransactionContextEditor;
-
-import java.lang.reflect.Method;
 
 /**
  * Created by changmingxie on 11/8/15. 资源协调者拦截器对应的切面。第二个切面。切入点是标注了 @Compensable 注解 || 参数列表中第一个参数是 TransactionContext 的
@@ -29,23 +23,11 @@ public abstract class ResourceCoordinatorAspect {
     @Around("transactionResourcePointcut()")
     public Object interceptTransactionResourceMethodWithCompensableAnnotation(ProceedingJoinPoint pjp) throws Throwable {
 
-        Method method = ((MethodSignature) pjp.getSignature()).getMethod();
-
-        Compensable compensable = method.getAnnotation(Compensable.class);
-
-        Class<? extends TransactionContextEditor> transactionContextEditor = NullableTransactionContextEditor.class;
-
-        if (compensable != null) {
-            transactionContextEditor = compensable.transactionContextEditor();
-        }
-        // 切入点是标注了 @Compensable 注解 || 参数列表中第一个参数是 TransactionContext 的
-        if (transactionContextEditor.equals(NullableTransactionContextEditor.class)
-                && ParameterTransactionContextEditor.hasTransactionContextParameter(method.getParameterTypes())) {
-            // 比如 order 服务的 TradeOrderServiceProxy 在远程调用 Capital 服务的 CapitalTradeOrderService#record 方法的时候被拦截，会进到这里，代理类会将 TransactionContext 传递给远端服务
-            transactionContextEditor = ParameterTransactionContextEditor.class;
-        }
+        // 切入点是标注了 @Compensable 注解 || 参数列表中第一个参数是 TransactionContext 的。
+        // 比如 order 服务的 TradeOrderServiceProxy 在远程调用 Capital 服务的 CapitalTradeOrderService#record 方法的时候被拦截，会进到这里，代理类会将 TransactionContext 传递给远端服务
+        CompensableMethodDescriptor descriptor = CompensableMethodDescriptor.of(((MethodSignature) pjp.getSignature()).getMethod());
 
-        return interceptTransactionContextMethod(new AspectJTransactionMethodJoinPoint(pjp, compensable, transactionContextEditor));
+        return interceptTransactionContextMethod(new AspectJTransactionMethodJoinPoint(pjp, descriptor));
     }
 
     public Object interceptTransactionContextMethod(TransactionMethodJoinPoint pjp) throws Throwable {
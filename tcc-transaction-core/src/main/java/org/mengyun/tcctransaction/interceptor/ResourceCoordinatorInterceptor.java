@@ -7,6 +7,9 @@ import org.mengyun.tcctransaction.TransactionManager;
 import org.mengyun.tcctransaction.api.*;
 import org.mengyun.tcctransaction.support.FactoryBuilder;
 
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+
 /**
  * Created by changmingxie on 11/8/15. 资源协调者拦截器。第二个拦截器。切入点是标注了 @Compensable 注解 || 参数列表中有 TransactionContext 类型的，其实就是远程调用其他服务的接口方法，或者是远端服务具体的实现方法（接收传过来的 TransactionContext）
  */
@@ -32,6 +35,16 @@ public class ResourceCoordinatorInterceptor { // 主要是将参与者 Participa
                 try { // 给事务参与者设置事务上下文，如果是远程调用其他服务的接口方法或者是远端服务具体的实现方法（接收传过来的 TransactionContext），会将 TransactionContext 传递到远端。比如 order 服务的 TradeOrderServiceProxy 在远程调用 Capital 服务的 CapitalTradeOrderService#record 方法的时候被将 TransactionContext 设置到参数里，远端调用的时候序列化传出去给远端接收
                     FactoryBuilder.factoryOf(participant.getTransactionContextEditorClass()).getInstance().set(new TransactionContext(transaction.getRootXid(), participant.getXid(), TransactionStatus.TRYING.getId(), ParticipantStatus.TRYING.getId()), pjp.getTarget(), pjp.getMethod(), pjp.getArgs());
                     result = pjp.proceed(pjp.getArgs());
+                    // 异步方法在 future 完成后才能确定 try 结果
+                    if (result instanceof CompletionStage && pjp.getDescriptor().isAsync()) {
+                        final Participant enlistedParticipant = participant;
+                        return ((CompletionStage<Object>) result).whenComplete(new BiConsumer<Object, Throwable>() {
+                            @Override
+                            public void accept(Object value, Throwable tryingException) {
+                                enlistedParticipant.setStatus(tryingException == null ? ParticipantStatus.TRY_SUCCESS : ParticipantStatus.TRY_FAILED);
+                            }
+                        }).toCompletableFuture();
+                    }
                     participant.setStatus(ParticipantStatus.TRY_SUCCESS);
                 } catch (Throwable e) {
                     participant.setStatus(ParticipantStatus.TRY_FAILED);
@@ -23,5 +23,10 @@ public interface TransactionMethodJoinPoint {
 
     Object proceed(Object[] args) throws Throwable;
 
+    // 按 Method 缓存的元数据
+    default CompensableMethodDescriptor getDescriptor() {
+        return CompensableMethodDescriptor.of(getMethod());
+    }
+
 
 }
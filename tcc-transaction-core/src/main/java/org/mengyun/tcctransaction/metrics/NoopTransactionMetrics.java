@@ -0,0 +1,46 @@
+package org.mengyun.tcctransaction.metrics;
+
+import org.mengyun.tcctransaction.executor.TransactionExecutor;
+
+/**
+ * 不收集任何指标。
+ */
+public final class NoopTransactionMetrics implements TransactionMetrics {
+
+    public static final NoopTransactionMetrics INSTANCE = new NoopTransactionMetrics();
+
+    private NoopTransactionMetrics() {
+    }
+
+    @Override
+    public void recordTransaction(TransactionOperation operation, long durationNanos, boolean success) {
+    }
+
+    @Override
+    public void recordRepository(String domain, RepositoryOperation operation, long durationNanos, boolean success) {
+    }
+
+    @Override
+    public void recordOptimisticLockConflict(String domain) {
+    }
+
+    @Override
+    public void recordRecoveryPage(String domain, long durationNanos, int size) {
+    }
+
+    @Override
+    public void recordRecoveryResult(String domain, RecoveryResult result) {
+    }
+
+    @Override
+    public void recordRecoveryBacklog(String domain, long backlog) {
+    }
+
+    @Override
+    public void recordRootStatusCache(String domain, boolean hit) {
+    }
+
+    @Override
+    public void registerExecutor(TransactionExecutor executor) {
+    }
+}
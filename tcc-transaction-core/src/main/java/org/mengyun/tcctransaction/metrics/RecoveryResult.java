@@ -0,0 +1,19 @@
+package org.mengyun.tcctransaction.metrics;
+
+/**
+ * 单个异常事务的恢复结果。
+ */
+public enum RecoveryResult {
+    // 已提交或回滚并删除
+    RECOVERED,
+    // 恢复时发生异常，下次调度重试
+    FAILED,
+    // 恢复时与其他线程并发修改
+    OPTIMISTIC_LOCK_CONFLICT,
+    // 超过最大重试次数，不再恢复
+    MAX_RETRY_EXCEEDED,
+    // 按重试次数退避，还没到下次重试时间
+    DELAYED,
+    // 状态为 TRYING 等不需要恢复的事务
+    SKIPPED
+}
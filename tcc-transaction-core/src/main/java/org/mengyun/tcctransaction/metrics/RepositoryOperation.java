@@ -0,0 +1,21 @@
+package org.mengyun.tcctransaction.metrics;
+
+/**
+ * 事务存储器的操作类型。
+ */
+public enum RepositoryOperation {
+
+    CREATE,
+
+    UPDATE,
+
+    DELETE,
+
+    FIND,
+
+    FIND_ROOT,
+
+    FIND_UNMODIFIED,
+
+    FIND_HEADERS_UNMODIFIED
+}
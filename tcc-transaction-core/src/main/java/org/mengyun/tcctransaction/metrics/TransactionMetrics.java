@@ -0,0 +1,36 @@
+package org.mengyun.tcctransaction.metrics;
+
+import org.mengyun.tcctransaction.executor.TransactionExecutor;
+
+/**
+ * 事务指标收集接口，TransactionManager、AbstractTransactionRepository、TransactionRecovery 在关键路径上调用。
+ * <p/>
+ * 实现类会在业务线程中被同步调用，必须是线程安全且无阻塞的。默认实现为 {@link NoopTransactionMetrics}，
+ * 接入 Micrometer 见 tcc-transaction-micrometer 模块。
+ */
+public interface TransactionMetrics {
+
+    // 记录 begin / commit / rollback 的耗时
+    void recordTransaction(TransactionOperation operation, long durationNanos, boolean success);
+
+    // 记录事务存储器单次操作的耗时
+    void recordRepository(String domain, RepositoryOperation operation, long durationNanos, boolean success);
+
+    // 乐观锁更新失败，与 UPDATE 操作数一起可以算出冲突率
+    void recordOptimisticLockConflict(String domain);
+
+    // 记录恢复任务加载一页异常事务的耗时和条数
+    void recordRecoveryPage(String domain, long durationNanos, int size);
+
+    // 记录单个异常事务的恢复结果
+    void recordRecoveryResult(String domain, RecoveryResult result);
+
+    // 一次恢复调度扫描到的异常事务总数
+    void recordRecoveryBacklog(String domain, long backlog);
+
+    // 恢复分支事务时查询根事务状态缓存是否命中
+    void recordRootStatusCache(String domain, boolean hit);
+
+    // 注册执行器，实现类可以按需读取 TransactionExecutor#getMetrics
+    void registerExecutor(TransactionExecutor executor);
+}
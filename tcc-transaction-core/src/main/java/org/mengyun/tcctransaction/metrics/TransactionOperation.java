@@ -0,0 +1,13 @@
+package org.mengyun.tcctransaction.metrics;
+
+/**
+ * TransactionManager 的操作类型。
+ */
+public enum TransactionOperation {
+
+    BEGIN,
+
+    COMMIT,
+
+    ROLLBACK
+}
@@ -0,0 +1,118 @@
+package org.mengyun.tcctransaction.recovery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内置的事务恢复调度器，替代 Quartz 的固定 cron 调度，只使用一个守护线程。
+ * <p/>
+ * 每次恢复结束后根据结果决定下次执行的间隔：本次有事务被成功提交或回滚时，说明还有积压，间隔重置为 minInterval；
+ * 本次没有事务恢复成功时（没有需要恢复的事务，或者恢复全部失败），间隔翻倍，最长为 maxInterval。
+ * <p/>
+ * 在 RecoverConfiguration 中设置后，不再创建 Quartz Scheduler。
+ */
+public class AdaptiveRecoveryScheduler {
+
+    static final Logger logger = LoggerFactory.getLogger(AdaptiveRecoveryScheduler.class.getSimpleName());
+    // 有积压时的执行间隔，单位：毫秒
+    private long minInterval = 1000;
+    // 空闲时的最长执行间隔，单位：毫秒
+    private long maxInterval = 60 * 1000;
+
+    private TransactionRecovery transactionRecovery;
+
+    private int delayStartSeconds;
+
+    private ScheduledExecutorService scheduledExecutorService;
+
+    private volatile long currentInterval;
+
+    public void start() {
+
+        currentInterval = minInterval;
+
+        scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "tcc-recovery-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        scheduledExecutorService.schedule(new RecoveryTask(), delayStartSeconds, TimeUnit.SECONDS);
+    }
+
+    public void shutdown() {
+        if (scheduledExecutorService != null) {
+            scheduledExecutorService.shutdownNow();
+        }
+    }
+
+    // 根据本次恢复的事务数计算下次执行的间隔
+    long nextInterval(long interval, int recoveredCount) {
+
+        if (recoveredCount > 0) {
+            return minInterval;
+        }
+
+        return Math.max(minInterval, Math.min(interval * 2, maxInterval));
+    }
+
+    public long getCurrentInterval() {
+        return currentInterval;
+    }
+
+    public long getMinInterval() {
+        return minInterval;
+    }
+
+    public void setMinInterval(long minInterval) {
+        this.minInterval = minInterval;
+    }
+
+    public long getMaxInterval() {
+        return maxInterval;
+    }
+
+    public void setMaxInterval(long maxInterval) {
+        this.maxInterval = maxInterval;
+    }
+
+    public void setTransactionRecovery(TransactionRecovery transactionRecovery) {
+        this.transactionRecovery = transactionRecovery;
+    }
+
+    public void setDelayStartSeconds(int delayStartSeconds) {
+        this.delayStartSeconds = delayStartSeconds;
+    }
+
+    class RecoveryTask implements Runnable {
+
+        @Override
+        public void run() {
+
+            int recoveredCount = 0;
+
+            try {
+                recoveredCount = transactionRecovery.startRecover();
+            } catch (Throwable e) {
+                logger.error("transaction recovery failed.", e);
+            }
+
+            currentInterval = nextInterval(currentInterval, recoveredCount);
+
+            try {
+                scheduledExecutorService.schedule(this, currentInterval, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // 调度器已关闭
+            }
+        }
+    }
+}
@@ -10,10 +10,21 @@ public class DefaultRecoverFrequency implements RecoverFrequency {
     private int maxRetryCount = 30;
     // 单个事务恢复重试的间隔时间为 30 秒
     private int recoverDuration = 30; //30 seconds
+    // 重试间隔按重试次数翻倍的上限，小于等于 0 时与 recoverDuration 相同，即固定间隔重试不退避
+    private int maxRecoverDuration = 0;
+    // 重试间隔随机增加的最大比例，默认不增加
+    private double retryJitterRatio = 0;
     // 定时任务 cron 表达式，每 15 秒执行一次
     private String cronExpression = "0/15 * * * * ? ";
     // 按页查询，默认每页 500 个
     private int fetchPageSize = 500;
+    // 根事务状态缓存最多 10000 条，10 分钟后过期
+    private int rootStatusCacheSize = 10000;
+    private int rootStatusCacheExpireTime = 600;
+    // 同时在恢复中的事务数上限，小于等于 0 时为恢复线程数的两倍
+    private int recoveryWindowSize = 0;
+    // 单个恢复任务的超时时间为 60 秒
+    private int recoveryTaskTimeout = TransactionRecovery.CONCURRENT_RECOVERY_TIMEOUT;
 
     private int concurrentRecoveryThreadCount = Runtime.getRuntime().availableProcessors() * 2;
 
@@ -35,6 +46,24 @@ public class DefaultRecoverFrequency implements RecoverFrequency {
         this.recoverDuration = recoverDuration;
     }
 
+    @Override
+    public int getMaxRecoverDuration() {
+        return maxRecoverDuration > 0 ? maxRecoverDuration : recoverDuration;
+    }
+
+    public void setMaxRecoverDuration(int maxRecoverDuration) {
+        this.maxRecoverDuration = maxRecoverDuration;
+    }
+
+    @Override
+    public double getRetryJitterRatio() {
+        return retryJitterRatio;
+    }
+
+    public void setRetryJitterRatio(double retryJitterRatio) {
+        this.retryJitterRatio = retryJitterRatio;
+    }
+
     @Override
     public String getCronExpression() {
         return cronExpression;
@@ -60,4 +89,40 @@ public class DefaultRecoverFrequency implements RecoverFrequency {
     public void setFetchPageSize(int fetchPageSize) {
         this.fetchPageSize = fetchPageSize;
     }
-}
\ No newline at end of file
+
+    @Override
+    public int getRecoveryWindowSize() {
+        return recoveryWindowSize > 0 ? recoveryWindowSize : concurrentRecoveryThreadCount * 2;
+    }
+
+    public void setRecoveryWindowSize(int recoveryWindowSize) {
+        this.recoveryWindowSize = recoveryWindowSize;
+    }
+
+    @Override
+    public int getRecoveryTaskTimeout() {
+        return recoveryTaskTimeout;
+    }
+
+    public void setRecoveryTaskTimeout(int recoveryTaskTimeout) {
+        this.recoveryTaskTimeout = recoveryTaskTimeout;
+    }
+
+    @Override
+    public int getRootStatusCacheSize() {
+        return rootStatusCacheSize;
+    }
+
+    public void setRootStatusCacheSize(int rootStatusCacheSize) {
+        this.rootStatusCacheSize = rootStatusCacheSize;
+    }
+
+    @Override
+    public int getRootStatusCacheExpireTime() {
+        return rootStatusCacheExpireTime;
+    }
+
+    public void setRootStatusCacheExpireTime(int rootStatusCacheExpireTime) {
+        this.rootStatusCacheExpireTime = rootStatusCacheExpireTime;
+    }
+}
@@ -0,0 +1,178 @@
+package org.mengyun.tcctransaction.recovery;
+
+import org.mengyun.tcctransaction.SystemException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 基于数据库表的租约存储，每个节点和每个 bucket 各占一行，表结构见 dbscripts/db.sql 中的 TCC_RECOVERY_LEASE。
+ * <p/>
+ * 获取租约时先按持有者或过期时间条件更新，没有更新到记录时再插入，插入冲突说明已被其他节点持有。
+ */
+public class JdbcRecoveryLeaseStore implements RecoveryLeaseStore {
+
+    private static final String MEMBER_KEY_PREFIX = "MEMBER:";
+
+    private static final String BUCKET_KEY_PREFIX = "BUCKET:";
+
+    private DataSource dataSource;
+
+    private String tableName = "TCC_RECOVERY_LEASE";
+
+    @Override
+    public int heartbeat(String domain, String owner, long leaseMillis) {
+
+        long now = System.currentTimeMillis();
+
+        acquire(domain, MEMBER_KEY_PREFIX + owner, owner, now, leaseMillis);
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        try {
+            connection = getConnection();
+            // 清理已过期的节点
+            stmt = connection.prepareStatement("DELETE FROM " + tableName + " WHERE DOMAIN = ? AND LEASE_KEY LIKE ? AND EXPIRE_TIME < ?");
+            stmt.setString(1, domain);
+            stmt.setString(2, MEMBER_KEY_PREFIX + "%");
+            stmt.setLong(3, now);
+            stmt.executeUpdate();
+            closeStatement(stmt);
+
+            stmt = connection.prepareStatement("SELECT COUNT(*) FROM " + tableName + " WHERE DOMAIN = ? AND LEASE_KEY LIKE ?");
+            stmt.setString(1, domain);
+            stmt.setString(2, MEMBER_KEY_PREFIX + "%");
+
+            ResultSet resultSet = stmt.executeQuery();
+            return resultSet.next() ? resultSet.getInt(1) : 1;
+        } catch (SQLException e) {
+            throw new SystemException(e);
+        } finally {
+            closeStatement(stmt);
+            releaseConnection(connection);
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(String domain, int bucket, String owner, long leaseMillis) {
+        return acquire(domain, BUCKET_KEY_PREFIX + bucket, owner, System.currentTimeMillis(), leaseMillis);
+    }
+
+    @Override
+    public void release(String domain, int bucket, String owner) {
+        delete(domain, BUCKET_KEY_PREFIX + bucket, owner);
+    }
+
+    @Override
+    public void leave(String domain, String owner) {
+        delete(domain, MEMBER_KEY_PREFIX + owner, owner);
+    }
+
+    // 删除 owner 持有的租约，其他节点持有时不做处理
+    private void delete(String domain, String leaseKey, String owner) {
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        try {
+            connection = getConnection();
+
+            stmt = connection.prepareStatement("DELETE FROM " + tableName + " WHERE DOMAIN = ? AND LEASE_KEY = ? AND OWNER = ?");
+            stmt.setString(1, domain);
+            stmt.setString(2, leaseKey);
+            stmt.setString(3, owner);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new SystemException(e);
+        } finally {
+            closeStatement(stmt);
+            releaseConnection(connection);
+        }
+    }
+
+    private boolean acquire(String domain, String leaseKey, String owner, long now, long leaseMillis) {
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        try {
+            connection = getConnection();
+            // 自己持有或已过期时续约
+            stmt = connection.prepareStatement("UPDATE " + tableName + " SET OWNER = ?, EXPIRE_TIME = ? WHERE DOMAIN = ? AND LEASE_KEY = ? AND (OWNER = ? OR EXPIRE_TIME < ?)");
+            stmt.setString(1, owner);
+            stmt.setLong(2, now + leaseMillis);
+            stmt.setString(3, domain);
+            stmt.setString(4, leaseKey);
+            stmt.setString(5, owner);
+            stmt.setLong(6, now);
+
+            if (stmt.executeUpdate() > 0) {
+                return true;
+            }
+
+            closeStatement(stmt);
+
+            stmt = connection.prepareStatement("INSERT INTO " + tableName + "(DOMAIN,LEASE_KEY,OWNER,EXPIRE_TIME) VALUES (?,?,?,?)");
+            stmt.setString(1, domain);
+            stmt.setString(2, leaseKey);
+            stmt.setString(3, owner);
+            stmt.setLong(4, now + leaseMillis);
+
+            return stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            // 主键冲突，已被其他节点持有
+            if (e.getSQLState() != null && e.getSQLState().startsWith("23")) {
+                return false;
+            }
+            throw new SystemException(e);
+        } finally {
+            closeStatement(stmt);
+            releaseConnection(connection);
+        }
+    }
+
+    private Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    private void releaseConnection(Connection connection) {
+        try {
+            if (connection != null && !connection.isClosed()) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new SystemException(e);
+        }
+    }
+
+    private void closeStatement(Statement stmt) {
+        try {
+            if (stmt != null && !stmt.isClosed()) {
+                stmt.close();
+            }
+        } catch (SQLException e) {
+            throw new SystemException(e);
+        }
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+}
@@ -0,0 +1,92 @@
+package org.mengyun.tcctransaction.recovery;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 单 JVM 内的租约存储，用于本地调试或多个 RecoverConfiguration 共享同一进程的场景。
+ */
+public class MemoryRecoveryLeaseStore implements RecoveryLeaseStore {
+
+    private final Map<String, Map<String, Long>> members = new HashMap<String, Map<String, Long>>();
+
+    private final Map<String, Lease> leases = new HashMap<String, Lease>();
+
+    @Override
+    public synchronized int heartbeat(String domain, String owner, long leaseMillis) {
+
+        long now = System.currentTimeMillis();
+
+        Map<String, Long> domainMembers = members.get(domain);
+        if (domainMembers == null) {
+            domainMembers = new HashMap<String, Long>();
+            members.put(domain, domainMembers);
+        }
+
+        domainMembers.put(owner, now + leaseMillis);
+
+        Iterator<Long> iterator = domainMembers.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() < now) {
+                iterator.remove();
+            }
+        }
+
+        return domainMembers.size();
+    }
+
+    @Override
+    public synchronized boolean tryAcquire(String domain, int bucket, String owner, long leaseMillis) {
+
+        long now = System.currentTimeMillis();
+        String key = getLeaseKey(domain, bucket);
+
+        Lease lease = leases.get(key);
+
+        if (lease != null && !lease.owner.equals(owner) && lease.expireTime >= now) {
+            return false;
+        }
+
+        leases.put(key, new Lease(owner, now + leaseMillis));
+        return true;
+    }
+
+    @Override
+    public synchronized void release(String domain, int bucket, String owner) {
+
+        String key = getLeaseKey(domain, bucket);
+
+        Lease lease = leases.get(key);
+
+        if (lease != null && lease.owner.equals(owner)) {
+            leases.remove(key);
+        }
+    }
+
+    @Override
+    public synchronized void leave(String domain, String owner) {
+
+        Map<String, Long> domainMembers = members.get(domain);
+
+        if (domainMembers != null) {
+            domainMembers.remove(owner);
+        }
+    }
+
+    private String getLeaseKey(String domain, int bucket) {
+        return domain + ":" + bucket;
+    }
+
+    private static class Lease {
+
+        private final String owner;
+
+        private final long expireTime;
+
+        Lease(String owner, long expireTime) {
+            this.owner = owner;
+            this.expireTime = expireTime;
+        }
+    }
+}
@@ -1,6 +1,13 @@
 package org.mengyun.tcctransaction.recovery;
 
+import org.mengyun.tcctransaction.FastPathPersister;
+import org.mengyun.tcctransaction.ParallelTerminator;
+import org.mengyun.tcctransaction.SystemException;
 import org.mengyun.tcctransaction.TransactionManager;
+import org.mengyun.tcctransaction.executor.TransactionExecutor;
+import org.mengyun.tcctransaction.metrics.NoopTransactionMetrics;
+import org.mengyun.tcctransaction.metrics.TransactionMetrics;
+import org.mengyun.tcctransaction.repository.AbstractTransactionRepository;
 import org.mengyun.tcctransaction.repository.TransactionRepository;
 import org.mengyun.tcctransaction.support.TransactionConfigurator;
 import org.quartz.Scheduler;
@@ -21,6 +28,22 @@ public class RecoverConfiguration implements TransactionConfigurator {
     private RecoverFrequency recoverFrequency = DefaultRecoverFrequency.INSTANCE;
     private RecoveryLock recoveryLock = RecoveryLock.DEFAULT_LOCK;
 
+    private ParallelTerminator parallelTerminator;
+
+    private FastPathPersister fastPathPersister;
+
+    private TransactionExecutor asyncTerminatorExecutor;
+
+    private TransactionExecutor asyncSaveExecutor;
+
+    private TransactionMetrics transactionMetrics = NoopTransactionMetrics.INSTANCE;
+    // 开启后存储器保存 nextRetryTime，Redis 恢复索引改为按 nextRetryTime 排序；默认关闭，保持按最后更新时间恢复
+    private boolean retryBackoffEnabled = false;
+    // 不为空时使用内置的自适应调度器，不再创建 Quartz Scheduler
+    private AdaptiveRecoveryScheduler adaptiveRecoveryScheduler;
+    // 不为空时多个节点按 bucket 分片同时恢复
+    private ShardedRecoveryCoordinator shardedRecoveryCoordinator;
+
     private Scheduler scheduler;
 
     public RecoverConfiguration() {
@@ -30,10 +53,49 @@ public class RecoverConfiguration implements TransactionConfigurator {
     public void init() throws Exception {
         transactionManager = new TransactionManager();
         transactionManager.setTransactionRepository(transactionRepository);
+        transactionManager.setParallelTerminator(parallelTerminator);
+
+        if (asyncTerminatorExecutor != null) {
+            transactionManager.setAsyncTerminatorExecutor(asyncTerminatorExecutor);
+        }
+
+        if (asyncSaveExecutor != null) {
+            transactionManager.setAsyncSaveExecutor(asyncSaveExecutor);
+        }
+
+        transactionManager.setTransactionMetrics(transactionMetrics);
+        // 没有单独配置指标的存储器使用同一个 TransactionMetrics
+        if (transactionRepository instanceof AbstractTransactionRepository
+                && ((AbstractTransactionRepository) transactionRepository).getTransactionMetrics() == NoopTransactionMetrics.INSTANCE) {
+            ((AbstractTransactionRepository) transactionRepository).setTransactionMetrics(transactionMetrics);
+        }
+        // 存储器按重试次数计算并保存 nextRetryTime，恢复任务只查询已到重试时间的事务
+        if (retryBackoffEnabled
+                && transactionRepository instanceof AbstractTransactionRepository
+                && ((AbstractTransactionRepository) transactionRepository).getRetryBackoff() == null) {
+            ((AbstractTransactionRepository) transactionRepository).setRetryBackoff(new RetryBackoff(recoverFrequency));
+        }
+
+        if (fastPathPersister != null) {
+            // 会传递事务上下文的参与者加入前根事务已经落库，分支事务不依赖该阈值；阈值只限制本地 try 未落库的时长
+            if (fastPathPersister.getPersistThreshold() >= recoverFrequency.getRecoverDuration() * 1000l) {
+                throw new SystemException(String.format("fast path persistThreshold(%d ms) must be less than recoverDuration(%d s)",
+                        fastPathPersister.getPersistThreshold(), recoverFrequency.getRecoverDuration()));
+            }
+            fastPathPersister.setTransactionRepository(transactionRepository);
+            transactionManager.setFastPathPersister(fastPathPersister);
+        }
 
         TransactionRecovery transactionRecovery = new TransactionRecovery();
         transactionRecovery.setTransactionConfigurator(this);
 
+        if (adaptiveRecoveryScheduler != null) {
+            adaptiveRecoveryScheduler.setTransactionRecovery(transactionRecovery);
+            adaptiveRecoveryScheduler.setDelayStartSeconds(recoverFrequency.getRecoverDuration());
+            adaptiveRecoveryScheduler.start();
+            return;
+        }
+
         RecoverScheduledJob recoveryScheduledJob = new RecoverScheduledJob();
         recoveryScheduledJob.setJobName("compensableRecoverJob");
         recoveryScheduledJob.setTriggerName("compensableTrigger");
@@ -60,6 +122,26 @@ public class RecoverConfiguration implements TransactionConfigurator {
         if (scheduler != null) {
             scheduler.shutdown();
         }
+
+        if (adaptiveRecoveryScheduler != null) {
+            adaptiveRecoveryScheduler.shutdown();
+        }
+
+        if (shardedRecoveryCoordinator != null) {
+            shardedRecoveryCoordinator.shutdown();
+        }
+
+        if (parallelTerminator != null) {
+            parallelTerminator.shutdown();
+        }
+
+        if (fastPathPersister != null) {
+            fastPathPersister.shutdown();
+        }
+
+        if (transactionManager != null) {
+            transactionManager.shutdown();
+        }
     }
 
     @Override
@@ -93,4 +175,70 @@ public class RecoverConfiguration implements TransactionConfigurator {
     public void setRecoveryLock(RecoveryLock recoveryLock) {
         this.recoveryLock = recoveryLock;
     }
+
+    public ParallelTerminator getParallelTerminator() {
+        return parallelTerminator;
+    }
+
+    public void setParallelTerminator(ParallelTerminator parallelTerminator) {
+        this.parallelTerminator = parallelTerminator;
+    }
+
+    public FastPathPersister getFastPathPersister() {
+        return fastPathPersister;
+    }
+
+    public void setFastPathPersister(FastPathPersister fastPathPersister) {
+        this.fastPathPersister = fastPathPersister;
+    }
+
+    public TransactionExecutor getAsyncTerminatorExecutor() {
+        return asyncTerminatorExecutor;
+    }
+
+    public void setAsyncTerminatorExecutor(TransactionExecutor asyncTerminatorExecutor) {
+        this.asyncTerminatorExecutor = asyncTerminatorExecutor;
+    }
+
+    public TransactionExecutor getAsyncSaveExecutor() {
+        return asyncSaveExecutor;
+    }
+
+    public void setAsyncSaveExecutor(TransactionExecutor asyncSaveExecutor) {
+        this.asyncSaveExecutor = asyncSaveExecutor;
+    }
+
+    @Override
+    public TransactionMetrics getTransactionMetrics() {
+        return transactionMetrics;
+    }
+
+    public void setTransactionMetrics(TransactionMetrics transactionMetrics) {
+        this.transactionMetrics = transactionMetrics;
+    }
+
+    public boolean isRetryBackoffEnabled() {
+        return retryBackoffEnabled;
+    }
+
+    public void setRetryBackoffEnabled(boolean retryBackoffEnabled) {
+        this.retryBackoffEnabled = retryBackoffEnabled;
+    }
+
+    public AdaptiveRecoveryScheduler getAdaptiveRecoveryScheduler() {
+        return adaptiveRecoveryScheduler;
+    }
+
+    public void setAdaptiveRecoveryScheduler(AdaptiveRecoveryScheduler adaptiveRecoveryScheduler) {
+        this.adaptiveRecoveryScheduler = adaptiveRecoveryScheduler;
+    }
+
+    @Override
+    public ShardedRecoveryCoordinator getShardedRecoveryCoordinator() {
+        return shardedRecoveryCoordinator;
+    }
+
+    public void setShardedRecoveryCoordinator(ShardedRecoveryCoordinator shardedRecoveryCoordinator) {
+        this.shardedRecoveryCoordinator = shardedRecoveryCoordinator;
+    }
 }
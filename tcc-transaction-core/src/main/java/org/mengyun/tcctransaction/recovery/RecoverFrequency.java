@@ -11,8 +11,32 @@ public interface RecoverFrequency {
     int getFetchPageSize();
     // 单个事务恢复重试的间隔时间，单位：秒。
     int getRecoverDuration();
+    // 重试间隔按重试次数翻倍的上限，单位：秒。默认与 recoverDuration 相同，即不退避
+    default int getMaxRecoverDuration() {
+        return getRecoverDuration();
+    }
+    // 重试间隔随机增加的最大比例，例如 0.2 表示在退避间隔上随机增加 0~20%。默认不增加
+    default double getRetryJitterRatio() {
+        return 0;
+    }
     // 定时任务 cron 表达式
     String getCronExpression();
 
     int getConcurrentRecoveryThreadCount();
+    // 根事务状态缓存的最大条数，小于等于 0 时不缓存
+    default int getRootStatusCacheSize() {
+        return 10000;
+    }
+    // 根事务状态缓存的过期时间，单位：秒
+    default int getRootStatusCacheExpireTime() {
+        return 600;
+    }
+    // 同时在恢复中的事务数上限，超过后暂停提交新的恢复任务。默认为恢复线程数的两倍
+    default int getRecoveryWindowSize() {
+        return getConcurrentRecoveryThreadCount() * 2;
+    }
+    // 单个恢复任务的超时时间，单位：秒。等待窗口时有任务超时，则取消超时的任务并结束本次恢复
+    default int getRecoveryTaskTimeout() {
+        return TransactionRecovery.CONCURRENT_RECOVERY_TIMEOUT;
+    }
 }
@@ -0,0 +1,17 @@
+package org.mengyun.tcctransaction.recovery;
+
+/**
+ * 分片恢复的租约存储，记录各节点的存活状态和 bucket 的持有者。
+ * <p/>
+ * 过期时间取各节点的本地时间，节点之间的时钟偏差需要远小于租约时长。
+ */
+public interface RecoveryLeaseStore {
+    // 登记节点并续期，返回租约未过期的节点数（包含当前节点）
+    int heartbeat(String domain, String owner, long leaseMillis);
+    // 获取或续约 bucket 的租约。bucket 没有租约、租约已过期或持有者就是 owner 时成功
+    boolean tryAcquire(String domain, int bucket, String owner, long leaseMillis);
+    // 释放 owner 持有的 bucket 租约，其他节点持有时不做处理
+    void release(String domain, int bucket, String owner);
+    // 注销节点，其他节点下次登记时不再把它计入存活节点数
+    void leave(String domain, String owner);
+}
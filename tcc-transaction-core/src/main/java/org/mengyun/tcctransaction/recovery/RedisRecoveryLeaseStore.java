@@ -0,0 +1,100 @@
+package org.mengyun.tcctransaction.recovery;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * 基于 redis 的租约存储。每个 bucket 一个带过期时间的 key，值为持有者；存活节点记录在按过期时间排序的 ZSET 中。
+ * 获取、续约和释放都通过 lua 脚本判断持有者后执行。
+ */
+public class RedisRecoveryLeaseStore implements RecoveryLeaseStore {
+
+    private static final String DEFAULT_KEY_PREFIX = "TCC:RECOVERY:LEASE:";
+
+    private static final String HEARTBEAT_SCRIPT =
+            "redis.call('zremrangebyscore', KEYS[1], '-inf', '(' .. ARGV[2]); " +
+                    "redis.call('zadd', KEYS[1], ARGV[3], ARGV[1]); " +
+                    "redis.call('pexpire', KEYS[1], ARGV[4]); " +
+                    "return redis.call('zcard', KEYS[1]);";
+
+    private static final String ACQUIRE_SCRIPT =
+            "local owner = redis.call('get', KEYS[1]); " +
+                    "if owner == false or owner == ARGV[1] then redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[2]); return 1; end; " +
+                    "return 0;";
+
+    private static final String RELEASE_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]); end; return 0;";
+
+    private JedisPool jedisPool;
+
+    private String keyPrefix = DEFAULT_KEY_PREFIX;
+
+    @Override
+    public int heartbeat(String domain, String owner, long leaseMillis) {
+
+        long now = System.currentTimeMillis();
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            Object result = jedis.eval(HEARTBEAT_SCRIPT,
+                    Collections.singletonList(getMembersKey(domain)),
+                    Arrays.asList(owner, String.valueOf(now), String.valueOf(now + leaseMillis), String.valueOf(leaseMillis)));
+            return ((Long) result).intValue();
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(String domain, int bucket, String owner, long leaseMillis) {
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            Object result = jedis.eval(ACQUIRE_SCRIPT,
+                    Collections.singletonList(getBucketKey(domain, bucket)),
+                    Arrays.asList(owner, String.valueOf(leaseMillis)));
+            return Long.valueOf(1).equals(result);
+        }
+    }
+
+    @Override
+    public void release(String domain, int bucket, String owner) {
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.eval(RELEASE_SCRIPT,
+                    Collections.singletonList(getBucketKey(domain, bucket)),
+                    Collections.singletonList(owner));
+        }
+    }
+
+    @Override
+    public void leave(String domain, String owner) {
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.zrem(getMembersKey(domain), owner);
+        }
+    }
+
+    private String getMembersKey(String domain) {
+        return keyPrefix + domain + ":MEMBERS";
+    }
+
+    private String getBucketKey(String domain, int bucket) {
+        return keyPrefix + domain + ":BUCKET:" + bucket;
+    }
+
+    public JedisPool getJedisPool() {
+        return jedisPool;
+    }
+
+    public void setJedisPool(JedisPool jedisPool) {
+        this.jedisPool = jedisPool;
+    }
+
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    public void setKeyPrefix(String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+    }
+}
@@ -0,0 +1,54 @@
+package org.mengyun.tcctransaction.recovery;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 事务恢复的重试退避策略，参数取自 RecoverFrequency。
+ * <p/>
+ * 第 n 次重试距离上次更新的间隔为 recoverDuration * 2^n，不超过 maxRecoverDuration；
+ * 再随机增加 [0, retryJitterRatio) 比例的间隔，避免同一时间失败的事务在同一时间重试。
+ * 抖动只会延后重试，不会早于 recoverDuration，保证正在执行中的事务不会被恢复任务处理。
+ */
+public class RetryBackoff {
+
+    private final RecoverFrequency recoverFrequency;
+
+    public RetryBackoff(RecoverFrequency recoverFrequency) {
+        this.recoverFrequency = recoverFrequency;
+    }
+
+    // 不带抖动的重试间隔，单位：毫秒
+    public long getDelay(int retriedCount) {
+
+        long delay = recoverFrequency.getRecoverDuration() * 1000l;
+        long maxDelay = Math.max(recoverFrequency.getMaxRecoverDuration() * 1000l, delay);
+
+        for (int i = 0; i < retriedCount && delay > 0 && delay < maxDelay; i++) {
+            delay = delay * 2;
+        }
+
+        return Math.min(delay, maxDelay);
+    }
+
+    // 带抖动的重试间隔，单位：毫秒
+    public long getJitteredDelay(int retriedCount) {
+
+        long delay = getDelay(retriedCount);
+        double jitterRatio = recoverFrequency.getRetryJitterRatio();
+
+        if (delay <= 0 || jitterRatio <= 0) {
+            return delay;
+        }
+
+        return delay + (long) (delay * jitterRatio * ThreadLocalRandom.current().nextDouble());
+    }
+
+    public Date getNextRetryTime(int retriedCount) {
+        return new Date(System.currentTimeMillis() + getJitteredDelay(retriedCount));
+    }
+
+    public RecoverFrequency getRecoverFrequency() {
+        return recoverFrequency;
+    }
+}
@@ -0,0 +1,94 @@
+package org.mengyun.tcctransaction.recovery;
+
+import org.mengyun.tcctransaction.api.TransactionStatus;
+
+import javax.transaction.xa.Xid;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 根事务状态缓存，TRY_SUCCESS 的分支事务恢复失败后，下次恢复时不再重复查询根事务所在的存储器。
+ * <p/>
+ * 只缓存不会再变化的结论：根事务处于 CONFIRMING / CANCELLING 后不会再回到其他状态；根事务不存在说明已回滚，分支事务需要回滚。
+ * TRYING 状态的根事务仍可能提交或回滚，不缓存。
+ * <p/>
+ * 按最近访问淘汰，最多 maxSize 个，写入 expireTime 毫秒后过期。
+ */
+public class RootStatusCache {
+
+    private final int maxSize;
+
+    private final long expireTime;
+
+    private final Map<Xid, Entry> entries;
+
+    public RootStatusCache(final int maxSize, long expireTime) {
+        this.maxSize = maxSize;
+        this.expireTime = expireTime;
+        this.entries = new LinkedHashMap<Xid, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Xid, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    // 命中时返回缓存的结论，根事务不存在时返回的 Entry#getStatus() 为 null；未命中或已过期时返回 null
+    public synchronized Entry get(Xid rootXid) {
+
+        Entry entry = entries.get(rootXid);
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.expireAt <= System.currentTimeMillis()) {
+            entries.remove(rootXid);
+            return null;
+        }
+
+        return entry;
+    }
+
+    // status 为 null 表示根事务不存在
+    public synchronized void put(Xid rootXid, TransactionStatus status) {
+
+        if (status != null && status != TransactionStatus.CONFIRMING && status != TransactionStatus.CANCELLING) {
+            return;
+        }
+
+        entries.put(rootXid, new Entry(status, System.currentTimeMillis() + expireTime));
+    }
+
+    public synchronized void invalidate(Xid rootXid) {
+        entries.remove(rootXid);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getExpireTime() {
+        return expireTime;
+    }
+
+    public static class Entry {
+
+        private final TransactionStatus status;
+
+        private final long expireAt;
+
+        Entry(TransactionStatus status, long expireAt) {
+            this.status = status;
+            this.expireAt = expireAt;
+        }
+
+        public TransactionStatus getStatus() {
+            return status;
+        }
+    }
+}
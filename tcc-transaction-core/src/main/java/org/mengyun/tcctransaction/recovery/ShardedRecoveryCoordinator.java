@@ -0,0 +1,136 @@
+package org.mengyun.tcctransaction.recovery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.transaction.xa.Xid;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 分片恢复协调器，替代全局的 RecoveryLock，让集群中的多个节点同时恢复异常事务。
+ * <p/>
+ * 按 globalTransactionId 的哈希把事务分到 bucketCount 个 bucket（同一全局事务的根事务和分支事务在同一个 bucket），
+ * 每个节点每次恢复前通过 RecoveryLeaseStore 登记自己并续约，按存活节点数计算自己的份额：
+ * 先续约已持有的 bucket，超出份额的释放给新加入的节点，再获取空闲或已过期的 bucket。
+ * 节点宕机后其租约过期，由其他节点接管。
+ * <p/>
+ * leaseDuration 需要大于恢复任务的执行间隔，否则 bucket 会在节点之间频繁切换。
+ * 租约切换的瞬间两个节点可能同时恢复同一个事务，由事务存储器的乐观锁保证只有一个节点成功。
+ */
+public class ShardedRecoveryCoordinator {
+
+    static final Logger logger = LoggerFactory.getLogger(ShardedRecoveryCoordinator.class.getSimpleName());
+
+    private RecoveryLeaseStore leaseStore;
+
+    private int bucketCount = 16;
+    // 租约时长，单位：毫秒
+    private long leaseDuration = 2 * 60 * 1000;
+    // 节点标识，默认为进程名加随机串
+    private String owner = ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID().toString().substring(0, 8);
+    // 每个 domain 当前持有的 bucket
+    private final Map<String, BitSet> ownedBuckets = new HashMap<String, BitSet>();
+
+    // 续约并获取本节点本次负责恢复的 bucket
+    public synchronized BitSet acquireBuckets(String domain) {
+
+        String leaseDomain = domain == null ? "" : domain;
+
+        int nodeCount = Math.max(1, leaseStore.heartbeat(leaseDomain, owner, leaseDuration));
+        int share = (bucketCount + nodeCount - 1) / nodeCount;
+
+        BitSet owned = ownedBuckets.get(leaseDomain);
+        BitSet acquired = new BitSet(bucketCount);
+
+        if (owned != null) {
+            for (int bucket = owned.nextSetBit(0); bucket >= 0; bucket = owned.nextSetBit(bucket + 1)) {
+                if (acquired.cardinality() < share) {
+                    if (leaseStore.tryAcquire(leaseDomain, bucket, owner, leaseDuration)) {
+                        acquired.set(bucket);
+                    }
+                } else {
+                    leaseStore.release(leaseDomain, bucket, owner);
+                }
+            }
+        }
+        // 不同节点从不同位置开始获取，减少竞争
+        int start = (owner.hashCode() & Integer.MAX_VALUE) % bucketCount;
+
+        for (int i = 0; i < bucketCount && acquired.cardinality() < share; i++) {
+            int bucket = (start + i) % bucketCount;
+            if (!acquired.get(bucket) && leaseStore.tryAcquire(leaseDomain, bucket, owner, leaseDuration)) {
+                acquired.set(bucket);
+            }
+        }
+
+        ownedBuckets.put(leaseDomain, acquired);
+
+        logger.debug(String.format("recovery buckets of domain %s acquired by %s: %s, node count: %d", leaseDomain, owner, acquired, nodeCount));
+
+        return (BitSet) acquired.clone();
+    }
+
+    public int getBucket(Xid xid) {
+        return (Arrays.hashCode(xid.getGlobalTransactionId()) & Integer.MAX_VALUE) % bucketCount;
+    }
+
+    // 释放持有的 bucket 并注销节点，其他节点不需要等待租约过期即可接管
+    public synchronized void shutdown() {
+
+        for (Map.Entry<String, BitSet> entry : ownedBuckets.entrySet()) {
+            BitSet owned = entry.getValue();
+            for (int bucket = owned.nextSetBit(0); bucket >= 0; bucket = owned.nextSetBit(bucket + 1)) {
+                try {
+                    leaseStore.release(entry.getKey(), bucket, owner);
+                } catch (Exception e) {
+                    logger.warn(String.format("release recovery bucket %d of domain %s failed.", bucket, entry.getKey()), e);
+                }
+            }
+
+            try {
+                leaseStore.leave(entry.getKey(), owner);
+            } catch (Exception e) {
+                logger.warn(String.format("leave recovery domain %s failed.", entry.getKey()), e);
+            }
+        }
+
+        ownedBuckets.clear();
+    }
+
+    public RecoveryLeaseStore getLeaseStore() {
+        return leaseStore;
+    }
+
+    public void setLeaseStore(RecoveryLeaseStore leaseStore) {
+        this.leaseStore = leaseStore;
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    public void setBucketCount(int bucketCount) {
+        this.bucketCount = bucketCount;
+    }
+
+    public long getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    public void setLeaseDuration(long leaseDuration) {
+        this.leaseDuration = leaseDuration;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+}
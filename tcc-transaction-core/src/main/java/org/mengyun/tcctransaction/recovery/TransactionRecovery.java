@@ -5,19 +5,30 @@ import com.alibaba.fastjson.JSON;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.TransactionOptimisticLockException;
+import org.mengyun.tcctransaction.api.TransactionStatus;
 import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.metrics.RecoveryResult;
+import org.mengyun.tcctransaction.metrics.TransactionMetrics;
 import org.mengyun.tcctransaction.repository.LocalStorable;
 import org.mengyun.tcctransaction.repository.Page;
 import org.mengyun.tcctransaction.repository.SentinelTransactionRepository;
+import org.mengyun.tcctransaction.repository.TransactionHeader;
 import org.mengyun.tcctransaction.repository.TransactionRepository;
 import org.mengyun.tcctransaction.support.TransactionConfigurator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.transaction.xa.Xid;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
@@ -39,6 +50,8 @@ public class TransactionRecovery {
     static final Logger logger = LoggerFactory.getLogger(TransactionRecovery.class.getSimpleName());
 
     static volatile ExecutorService recoveryExecutorService = null;
+    // 预取下一页异常事务的线程池
+    static volatile ExecutorService recoveryFetchExecutorService = null;
 
     private TransactionConfigurator transactionConfigurator;
 
@@ -49,12 +62,14 @@ public class TransactionRecovery {
     private volatile int logMaxPrintCount = MAX_ERROR_COUNT_SHREDHOLD;
 
     private Lock logSync = new ReentrantLock();
+    // 根事务状态缓存，第一次查询根事务时按 RecoverFrequency 的配置创建
+    private volatile RootStatusCache rootStatusCache;
 
     public void setTransactionConfigurator(TransactionConfigurator transactionConfigurator) {
         this.transactionConfigurator = transactionConfigurator;
     }
-    // 启动恢复事务逻辑，每次定时任务调度一次
-    public void startRecover() {
+    // 启动恢复事务逻辑，每次定时任务调度一次，返回本次成功提交或回滚的事务数
+    public int startRecover() {
 
         ensureRecoveryInitialized();
 
@@ -64,98 +79,429 @@ public class TransactionRecovery {
 
             SentinelTransactionRepository sentinelTransactionRepository = (SentinelTransactionRepository) transactionRepository;
 
+            int recoveredCount = 0;
+
             if (!sentinelTransactionRepository.getSentinelController().degrade()) {
-                startRecover(sentinelTransactionRepository.getWorkTransactionRepository());
+                recoveredCount += startRecover(sentinelTransactionRepository.getWorkTransactionRepository());
             }
 
-            startRecover(sentinelTransactionRepository.getDegradedTransactionRepository());
+            recoveredCount += startRecover(sentinelTransactionRepository.getDegradedTransactionRepository());
+
+            return recoveredCount;
 
         } else {
-            startRecover(transactionRepository);
+            return startRecover(transactionRepository);
         }
     }
 
     // 每次定时任务调度一次
-    public void startRecover(TransactionRepository transactionRepository) {
-        // 本地事务存储器用本地 ReentrantLock 锁，否则用分布式锁 RedissonRecoveryLock
-        Lock recoveryLock = transactionRepository instanceof LocalStorable ? RecoveryLock.DEFAULT_LOCK : transactionConfigurator.getRecoveryLock();
+    public int startRecover(TransactionRepository transactionRepository) {
+
+        ShardedRecoveryCoordinator shardedRecoveryCoordinator = transactionRepository instanceof LocalStorable ? null : transactionConfigurator.getShardedRecoveryCoordinator();
+        // 本地事务存储器和分片恢复用本地 ReentrantLock 锁，否则用分布式锁 RedissonRecoveryLock
+        Lock recoveryLock = transactionRepository instanceof LocalStorable || shardedRecoveryCoordinator != null ? RecoveryLock.DEFAULT_LOCK : transactionConfigurator.getRecoveryLock();
 
         if (recoveryLock.tryLock()) { // 上锁
             try {
 
-                String offset = null;
+                BitSet buckets = null;
 
-                int totalCount = 0;
-                do {
-                    // 分页加载异常事务集合
-                    Page<Transaction> page = loadErrorTransactionsByPage(transactionRepository, offset);
-
-                    if (page.getData().size() > 0) {
-                        concurrentRecoveryErrorTransactions(transactionRepository, page.getData()); // 并发恢复异常事务集合
-                        offset = page.getNextOffset();
-                        totalCount += page.getData().size();
-                    } else {
-                        break;
+                if (shardedRecoveryCoordinator != null) {
+                    // 只恢复本节点持有的 bucket 中的事务
+                    buckets = shardedRecoveryCoordinator.acquireBuckets(transactionRepository.getDomain());
+                    if (buckets.isEmpty()) {
+                        return 0;
                     }
-                } while (true);
+                }
 
-                logger.debug(String.format("total recovery count %d from repository:%s", totalCount, transactionRepository.getClass().getName()));
+                return pipelinedRecoveryErrorTransactions(transactionRepository, shardedRecoveryCoordinator, buckets);
             } catch (Throwable e) {
                 logger.error(String.format("recovery failed from repository:%s.", transactionRepository.getClass().getName()), e);
             } finally {
                 recoveryLock.unlock();
             }
         }
+
+        return 0;
+    }
+
+    private List<TransactionHeader> filterByBuckets(ShardedRecoveryCoordinator shardedRecoveryCoordinator, BitSet buckets, List<TransactionHeader> headers) {
+
+        List<TransactionHeader> result = new ArrayList<TransactionHeader>(headers.size());
+
+        for (TransactionHeader header : headers) {
+            if (buckets.get(shardedRecoveryCoordinator.getBucket(header.getXid()))) {
+                result.add(header);
+            }
+        }
+
+        return result;
     }
-    // 分页加载异常事务集合
-    private Page<Transaction> loadErrorTransactionsByPage(TransactionRepository transactionRepository, String offset) {
+
+    // 分页加载异常事务头集合，完整的事务在确定需要恢复后再加载
+    private Page<TransactionHeader> loadErrorTransactionsByPage(TransactionRepository transactionRepository, String offset) {
 
         long currentTimeInMillis = Instant.now().toEpochMilli();
 
         RecoverFrequency recoverFrequency = transactionConfigurator.getRecoverFrequency();
-        // 异常事务的定义：当前时间超过 - 事务变更时间( 最后执行时间 ) >= 事务恢复间隔( recoverFrequency#getRecoverDuration() )。这里有一点要注意，已完成的事务会从事务存储器删除。
-        return transactionRepository.findAllUnmodifiedSince(new Date(currentTimeInMillis - recoverFrequency.getRecoverDuration() * 1000), offset, recoverFrequency.getFetchPageSize());
+        // 异常事务的定义：已到 nextRetryTime；没有 nextRetryTime 的事务，当前时间 - 事务变更时间( 最后执行时间 ) >= 事务恢复间隔( recoverFrequency#getRecoverDuration() )。这里有一点要注意，已完成的事务会从事务存储器删除。
+        return transactionRepository.findAllRetryableHeaders(new Date(currentTimeInMillis - recoverFrequency.getRecoverDuration() * 1000), new Date(currentTimeInMillis), offset, recoverFrequency.getFetchPageSize());
     }
 
-    // 并发恢复 【这一页的】异常事务集合
-    private void concurrentRecoveryErrorTransactions(TransactionRepository transactionRepository, List<Transaction> transactions) throws InterruptedException, ExecutionException {
-        // 每一页在恢复的时候都会初始化一次
+    // 流水线恢复异常事务：恢复当前页的同时预取下一页；每个事务单独提交恢复任务，最多 recoveryWindowSize 个同时在恢复中，
+    // 慢事务只占用一个窗口，不会阻塞同一页的其他事务。返回成功提交或回滚的事务数
+    private int pipelinedRecoveryErrorTransactions(TransactionRepository transactionRepository, ShardedRecoveryCoordinator shardedRecoveryCoordinator, BitSet buckets) throws InterruptedException, ExecutionException {
+
         initLogStatistics();
 
-        List<RecoverTask> tasks = new ArrayList<>();
+        int windowSize = Math.max(1, transactionConfigurator.getRecoverFrequency().getRecoveryWindowSize());
+        long taskTimeout = TimeUnit.SECONDS.toMillis(transactionConfigurator.getRecoverFrequency().getRecoveryTaskTimeout());
+
+        Semaphore window = new Semaphore(windowSize);
+        Set<RecoverTask> inFlightTasks = ConcurrentHashMap.newKeySet();
+        AtomicInteger recoveredCount = new AtomicInteger();
+
+        int totalCount = 0;
+
+        Future<Page<TransactionHeader>> nextPage = fetchErrorTransactionsByPage(transactionRepository, null);
+
+        try {
+            pages:
+            do {
+                Page<TransactionHeader> page = nextPage.get();
+
+                if (page.getData().isEmpty()) {
+                    break;
+                }
+                // 预取下一页，与当前页的恢复重叠
+                nextPage = fetchErrorTransactionsByPage(transactionRepository, page.getNextOffset());
+
+                List<TransactionHeader> headers = buckets == null ? page.getData() : filterByBuckets(shardedRecoveryCoordinator, buckets, page.getData());
+                // 只根据事务头就能确定结果的事务不加载，其余事务通过一次批量查询加载
+                List<TransactionHeader> recoverableHeaders = new ArrayList<TransactionHeader>(headers.size());
+
+                for (TransactionHeader header : headers) {
+                    RecoveryResult result = checkErrorTransaction(transactionRepository, header);
+                    if (result == null) {
+                        recoverableHeaders.add(header);
+                    } else {
+                        recordRecoveryResult(transactionRepository, result);
+                    }
+                }
+
+                List<Callable<RecoveryResult>> callables = recoverableHeaders.isEmpty() ? Collections.<Callable<RecoveryResult>>emptyList() : prepareErrorTransactions(transactionRepository, recoverableHeaders);
+
+                for (Callable<RecoveryResult> callable : callables) {
+
+                    if (!acquireWindow(window, inFlightTasks)) {
+                        // 窗口被超时未完成的任务占满，剩余的事务留到下次恢复
+                        break pages;
+                    }
+
+                    RecoverTask task = new RecoverTask(callable, window, inFlightTasks, recoveredCount, taskTimeout);
+                    inFlightTasks.add(task);
+
+                    try {
+                        recoveryExecutorService.execute(task);
+                    } catch (RejectedExecutionException e) {
+                        inFlightTasks.remove(task);
+                        window.release();
+                        throw e;
+                    }
+                }
+
+                totalCount += headers.size();
+            } while (true);
+        } finally {
+            nextPage.cancel(true);
+            awaitInFlightTasks(window, windowSize, inFlightTasks);
+        }
+
+        getTransactionMetrics().recordRecoveryBacklog(transactionRepository.getDomain(), totalCount);
+        logger.debug(String.format("total recovery count %d from repository:%s", totalCount, transactionRepository.getClass().getName()));
+        return recoveredCount.get();
+    }
+
+    // 批量加载需要恢复的事务，TRY_SUCCESS 的分支事务再批量查询它们的根事务，返回使用已加载的事务和根事务状态的恢复任务
+    private List<Callable<RecoveryResult>> prepareErrorTransactions(TransactionRepository transactionRepository, List<TransactionHeader> headers) {
+
+        List<Xid> xids = new ArrayList<Xid>(headers.size());
+        for (TransactionHeader header : headers) {
+            xids.add(header.getXid());
+        }
+
+        Map<Xid, Transaction> loadedTransactions;
+
+        try {
+            loadedTransactions = transactionRepository.findByXids(xids);
+        } catch (Throwable e) {
+            // 批量加载失败时由每个任务单独加载
+            logger.warn(String.format("batch load %d transactions failed while recover.", xids.size()), e);
+            List<Callable<RecoveryResult>> callables = new ArrayList<Callable<RecoveryResult>>(headers.size());
+            for (TransactionHeader header : headers) {
+                callables.add(() -> recoverErrorTransaction(transactionRepository, header));
+            }
+            return callables;
+        }
+
+        // 按事务头的 xid 取加载结果，查询与加载之间已被删除的事务不再恢复
+        List<Transaction> transactions = new ArrayList<Transaction>(headers.size());
+        int missingCount = 0;
+
+        for (TransactionHeader header : headers) {
+            Transaction transaction = loadedTransactions.get(header.getXid());
+            if (transaction == null) {
+                missingCount++;
+            } else {
+                transactions.add(transaction);
+            }
+        }
+
+        if (missingCount > 0) {
+            logger.warn(String.format("%d of %d transactions not found while recover, maybe finished or deleted.", missingCount, headers.size()));
+        }
+
+        Set<Xid> rootXids = new HashSet<Xid>();
+
         for (Transaction transaction : transactions) {
-            tasks.add(new RecoverTask(transactionRepository, transaction));
+            if (isRootCheckRequired(transactionRepository, transaction)) {
+                rootXids.add(transaction.getRootXid());
+            }
         }
 
-        List<Future<Void>> futures = recoveryExecutorService.invokeAll(tasks, CONCURRENT_RECOVERY_TIMEOUT, TimeUnit.SECONDS);
+        Map<Xid, TransactionStatus> rootStatuses = rootXids.isEmpty() ? Collections.<Xid, TransactionStatus>emptyMap() : resolveRootStatuses(transactionRepository, rootXids);
+
+        List<Callable<RecoveryResult>> callables = new ArrayList<Callable<RecoveryResult>>(transactions.size());
 
-        for (Future future : futures) {
-            future.get();
+        for (Transaction transaction : transactions) {
+            callables.add(() -> recordRecoveryResult(transactionRepository, doRecoverErrorTransaction(transactionRepository, transaction, rootStatuses)));
         }
+
+        return callables;
     }
 
-    private void recoverErrorTransactions(TransactionRepository transactionRepository, List<Transaction> transactions) {
+    // 先查缓存，未命中的根事务一次批量查询。返回已确定的根事务状态，根事务不存在时值为 null；批量查询失败的根事务不在结果中，由每个任务单独查询
+    private Map<Xid, TransactionStatus> resolveRootStatuses(TransactionRepository transactionRepository, Set<Xid> rootXids) {
 
-        initLogStatistics();
+        Map<Xid, TransactionStatus> rootStatuses = new HashMap<Xid, TransactionStatus>();
 
-        for (Transaction transaction : transactions) {
-            recoverErrorTransaction(transactionRepository, transaction);
+        RootStatusCache cache = getRootStatusCache();
+
+        Set<Xid> missedRootXids = new HashSet<Xid>();
+
+        for (Xid rootXid : rootXids) {
+            RootStatusCache.Entry entry = getCachedRootStatus(transactionRepository, cache, rootXid);
+            if (entry != null) {
+                rootStatuses.put(rootXid, entry.getStatus());
+            } else {
+                missedRootXids.add(rootXid);
+            }
+        }
+
+        if (missedRootXids.isEmpty()) {
+            return rootStatuses;
+        }
+
+        try {
+            Map<Xid, Transaction> rootTransactions = transactionRepository.findByRootXids(missedRootXids);
+
+            for (Xid rootXid : missedRootXids) {
+                Transaction rootTransaction = rootTransactions.get(rootXid);
+                TransactionStatus status = rootTransaction == null ? null : rootTransaction.getStatus();
+                rootStatuses.put(rootXid, status);
+                if (cache != null) {
+                    cache.put(rootXid, status);
+                }
+            }
+        } catch (Throwable e) {
+            logger.warn(String.format("load %d root transactions failed while recover.", missedRootXids.size()), e);
+        }
+
+        return rootStatuses;
+    }
+
+    // 单独查询根事务状态，根事务不存在时返回 null
+    private TransactionStatus resolveRootStatus(TransactionRepository transactionRepository, Xid rootXid) {
+
+        RootStatusCache cache = getRootStatusCache();
+
+        RootStatusCache.Entry entry = getCachedRootStatus(transactionRepository, cache, rootXid);
+        if (entry != null) {
+            return entry.getStatus();
+        }
+
+        Transaction rootTransaction = transactionRepository.findByRootXid(rootXid);
+        TransactionStatus status = rootTransaction == null ? null : rootTransaction.getStatus();
+
+        if (cache != null) {
+            cache.put(rootXid, status);
+        }
+        return status;
+    }
+
+    private RootStatusCache.Entry getCachedRootStatus(TransactionRepository transactionRepository, RootStatusCache cache, Xid rootXid) {
+
+        if (cache == null) {
+            return null;
+        }
+
+        RootStatusCache.Entry entry = cache.get(rootXid);
+        getTransactionMetrics().recordRootStatusCache(transactionRepository.getDomain(), entry != null);
+        return entry;
+    }
+
+    private RootStatusCache getRootStatusCache() {
+
+        if (rootStatusCache == null) {
+            synchronized (this) {
+                RecoverFrequency recoverFrequency = transactionConfigurator.getRecoverFrequency();
+                if (rootStatusCache == null && recoverFrequency.getRootStatusCacheSize() > 0) {
+                    rootStatusCache = new RootStatusCache(recoverFrequency.getRootStatusCacheSize(), recoverFrequency.getRootStatusCacheExpireTime() * 1000L);
+                }
+            }
         }
+        return rootStatusCache;
+    }
+
+    // 需要根据根事务状态决定提交或回滚的分支事务
+    private boolean isRootCheckRequired(TransactionRepository transactionRepository, Transaction transaction) {
+        return transaction.getTransactionType() == TransactionType.BRANCH
+                && transaction.getStatus() == TransactionStatus.TRY_SUCCESS
+                && transactionRepository.getRootDomain() != null;
+    }
+
+    private Future<Page<TransactionHeader>> fetchErrorTransactionsByPage(TransactionRepository transactionRepository, String offset) {
+
+        return recoveryFetchExecutorService.submit(() -> {
+            long startTime = System.nanoTime();
+            // 分页加载异常事务集合
+            Page<TransactionHeader> page = loadErrorTransactionsByPage(transactionRepository, offset);
+            getTransactionMetrics().recordRecoveryPage(transactionRepository.getDomain(), System.nanoTime() - startTime, page.getData().size());
+            return page;
+        });
+    }
+
+    // 获取一个窗口，最多等到最早开始执行的恢复任务超时。等待超时时取消超时的任务并返回 false
+    private boolean acquireWindow(Semaphore window, Set<RecoverTask> inFlightTasks) throws InterruptedException {
+
+        if (window.tryAcquire()) {
+            return true;
+        }
+
+        long remaining = getEarliestDeadline(inFlightTasks) - System.currentTimeMillis();
+
+        if (remaining > 0 && window.tryAcquire(remaining, TimeUnit.MILLISECONDS)) {
+            return true;
+        }
+
+        cancelOverdueTasks(inFlightTasks);
+        return false;
+    }
+
+    // 等待剩余的恢复任务完成，超时后取消仍未完成的任务。
+    // 被取消后仍不响应中断的任务会一直占用线程和窗口，此时不再等待它们，同时取消还未开始的任务，留到下次恢复
+    private void awaitInFlightTasks(Semaphore window, int windowSize, Set<RecoverTask> inFlightTasks) throws InterruptedException {
+
+        while (true) {
+
+            long remaining = getEarliestDeadline(inFlightTasks) - System.currentTimeMillis();
+
+            if (window.tryAcquire(windowSize, Math.max(0, remaining), TimeUnit.MILLISECONDS)) {
+                window.release(windowSize);
+                return;
+            }
+
+            cancelOverdueTasks(inFlightTasks);
+
+            if (!hasRunningTasks(inFlightTasks)) {
+                for (RecoverTask task : inFlightTasks) {
+                    task.cancel(false);
+                }
+                logger.warn(String.format("%d recovery tasks still occupy the recovery threads after cancelled, stop waiting for them.", inFlightTasks.size()));
+                return;
+            }
+        }
+    }
+
+    // 只计算已经开始执行且未被取消的任务；没有这样的任务时返回当前时间加一个任务的超时时间
+    private long getEarliestDeadline(Set<RecoverTask> inFlightTasks) {
+
+        long earliestDeadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(transactionConfigurator.getRecoverFrequency().getRecoveryTaskTimeout());
+
+        for (RecoverTask task : inFlightTasks) {
+            if (task.isRunning()) {
+                earliestDeadline = Math.min(earliestDeadline, task.deadline);
+            }
+        }
+
+        return earliestDeadline;
+    }
+
+    private boolean hasRunningTasks(Set<RecoverTask> inFlightTasks) {
+
+        for (RecoverTask task : inFlightTasks) {
+            if (task.isRunning()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void cancelOverdueTasks(Set<RecoverTask> inFlightTasks) {
+
+        long now = System.currentTimeMillis();
+        int cancelledCount = 0;
+
+        for (RecoverTask task : inFlightTasks) {
+            if (task.isRunning() && task.deadline <= now && task.cancel(true)) {
+                cancelledCount++;
+            }
+        }
+
+        if (cancelledCount > 0) {
+            logger.warn(String.format("%d recovery tasks not finished in %d seconds, cancel them.", cancelledCount, transactionConfigurator.getRecoverFrequency().getRecoveryTaskTimeout()));
+        }
+    }
+
+    // 只有成功提交或回滚才算有进展，恢复失败或乐观锁冲突时调度间隔继续增大
+    private boolean isRecovered(RecoveryResult result) {
+        return result == RecoveryResult.RECOVERED;
+    }
+
+    private RecoveryResult recoverErrorTransaction(TransactionRepository transactionRepository, TransactionHeader header) {
+        return recordRecoveryResult(transactionRepository, doRecoverErrorTransaction(transactionRepository, header));
+    }
+
+    private RecoveryResult recordRecoveryResult(TransactionRepository transactionRepository, RecoveryResult result) {
+        getTransactionMetrics().recordRecoveryResult(transactionRepository.getDomain(), result);
+        return result;
     }
     // 调度任务按页查询出异常任务，每个异常任务封装成一个task，这是真正的异常任务恢复逻辑
-    private void recoverErrorTransaction(TransactionRepository transactionRepository, Transaction transaction) {
+    private RecoveryResult doRecoverErrorTransaction(TransactionRepository transactionRepository, TransactionHeader header) {
+
+        RecoveryResult result = checkErrorTransaction(transactionRepository, header);
+        if (result != null) {
+            return result;
+        }
+
+        return doRecoverErrorTransaction(transactionRepository, findTransactionQuietly(transactionRepository, header), Collections.<Xid, TransactionStatus>emptyMap());
+    }
+
+    // 只根据事务头判断，不需要加载事务就能确定结果时返回该结果，需要加载事务恢复时返回 null
+    private RecoveryResult checkErrorTransaction(TransactionRepository transactionRepository, TransactionHeader header) {
         // 当前事务超过最大重试次数 30
-        if (transaction.getRetriedCount() > transactionConfigurator.getRecoverFrequency().getMaxRetryCount()) {
+        if (header.getRetriedCount() > transactionConfigurator.getRecoverFrequency().getMaxRetryCount()) {
 
             logSync.lock();
             try {
                 if (triggerMaxRetryPrintCount.get() < logMaxPrintCount) { // 当前事务重试次数不到 15 次，每次打印错误日志
                     logger.error(String.format(
-                            "recover failed with max retry count,will not try again. txid:%s, status:%s,retried count:%d,transaction content:%s",
-                            transaction.getXid(),
-                            transaction.getStatus().getId(),
-                            transaction.getRetriedCount(),
-                            JSON.toJSONString(transaction)));
+                            "recover failed with max retry count,will not try again. txid:%s, status:%s,retried count:%d,transaction header:%s",
+                            header.getXid(),
+                            header.getStatus().getId(),
+                            header.getRetriedCount(),
+                            JSON.toJSONString(header)));
                     triggerMaxRetryPrintCount.incrementAndGet(); // 打印错误日志数+1
                 } else if (triggerMaxRetryPrintCount.get() == logMaxPrintCount) { // 超过 15 次后，不再打印错误日志了
                     logger.error("Too many transaction's retried count max then MaxRetryCount during one page transactions recover process , will not print errors again!");
@@ -165,9 +511,29 @@ public class TransactionRecovery {
                 logSync.unlock();
             }
             // 返回了
-            return;
+            return RecoveryResult.MAX_RETRY_EXCEEDED;
+        }
+        // 按重试次数退避，还没到下次重试时间
+        if (!isDue(header)) {
+            return RecoveryResult.DELAYED;
+        }
+        // 不需要恢复的事务不加载 CONTENT
+        if (!isRecoverable(transactionRepository, header)) {
+            return RecoveryResult.SKIPPED;
+        }
+
+        return null;
+    }
+
+    // rootStatuses 为已确定的根事务状态，不在其中的根事务单独查询
+    private RecoveryResult doRecoverErrorTransaction(TransactionRepository transactionRepository, Transaction transaction, Map<Xid, TransactionStatus> rootStatuses) {
+
+        if (transaction == null) { // 已经被删除，或者加载失败，下次恢复时再处理
+            return RecoveryResult.SKIPPED;
         }
 
+        RecoveryResult result = RecoveryResult.SKIPPED;
+
         try {
             // 根事务
             if (transaction.getTransactionType().equals(TransactionType.ROOT)) {
@@ -175,9 +541,11 @@ public class TransactionRecovery {
                 switch (transaction.getStatus()) {
                     case CONFIRMING:
                         commitTransaction(transactionRepository, transaction);
+                        result = RecoveryResult.RECOVERED;
                         break;
                     case CANCELLING:
                         rollbackTransaction(transactionRepository, transaction);
+                        result = RecoveryResult.RECOVERED;
                         break;
                     default:
                         //the transaction status is TRYING, ignore it.
@@ -191,10 +559,12 @@ public class TransactionRecovery {
                 switch (transaction.getStatus()) {
                     case CONFIRMING:
                         commitTransaction(transactionRepository, transaction);
+                        result = RecoveryResult.RECOVERED;
                         break;
                     case CANCELLING:
                     case TRY_FAILED:
                         rollbackTransaction(transactionRepository, transaction);
+                        result = RecoveryResult.RECOVERED;
                         break;
                     case TRY_SUCCESS:
 
@@ -203,19 +573,22 @@ public class TransactionRecovery {
                         }
 
                         //check the root transaction
-                        Transaction rootTransaction = transactionRepository.findByRootXid(transaction.getRootXid());
+                        TransactionStatus rootStatus = rootStatuses.containsKey(transaction.getRootXid()) ? rootStatuses.get(transaction.getRootXid()) : resolveRootStatus(transactionRepository, transaction.getRootXid());
 
-                        if (rootTransaction == null) { // 根事务被删了，分支事务也要回滚
+                        if (rootStatus == null) { // 根事务被删了，分支事务也要回滚
                             // In this case means the root transaction is already rollback.
                             // Need cancel this branch transaction.
                             rollbackTransaction(transactionRepository, transaction);
+                            result = RecoveryResult.RECOVERED;
                         } else { // 根事务还没被删（说明根事务在提交/回滚），根据根事务的状态，采取相同的提交/回滚操作
-                            switch (rootTransaction.getStatus()) {
+                            switch (rootStatus) {
                                 case CONFIRMING:
                                     commitTransaction(transactionRepository, transaction);
+                                    result = RecoveryResult.RECOVERED;
                                     break;
                                 case CANCELLING:
                                     rollbackTransaction(transactionRepository, transaction);
+                                    result = RecoveryResult.RECOVERED;
                                     break;
                                 default:
                                     break;
@@ -234,6 +607,8 @@ public class TransactionRecovery {
             if (throwable instanceof TransactionOptimisticLockException
                     || ExceptionUtils.getRootCause(throwable) instanceof TransactionOptimisticLockException) {
 
+                result = RecoveryResult.OPTIMISTIC_LOCK_CONFLICT;
+
                 logger.warn(String.format(
                         "optimisticLockException happened while recover. txid:%s, status:%d,retried count:%d",
                         transaction.getXid(),
@@ -241,6 +616,8 @@ public class TransactionRecovery {
                         transaction.getRetriedCount()));
             } else {
 
+                result = RecoveryResult.FAILED;
+
                 logSync.lock();
                 try {
                     if (recoveryFailedPrintCount.get() < logMaxPrintCount) { // 这一页的异常事务恢复时发送异常的次数不到 15 次，每次打印错误日志
@@ -258,6 +635,48 @@ public class TransactionRecovery {
                 }
             }
         }
+
+        return result;
+    }
+
+    // 优先使用存储的 nextRetryTime，没有存储时第 n 次重试距离上次更新至少间隔 recoverDuration * 2^n，不超过 maxRecoverDuration
+    private boolean isDue(TransactionHeader header) {
+
+        if (header.getNextRetryTime() != null) {
+            return header.getNextRetryTime().getTime() <= System.currentTimeMillis();
+        }
+
+        if (header.getLastUpdateTime() == null) {
+            return true;
+        }
+
+        return header.getLastUpdateTime().getTime() + new RetryBackoff(transactionConfigurator.getRecoverFrequency()).getDelay(header.getRetriedCount()) <= System.currentTimeMillis();
+    }
+
+    // 与 recoverErrorTransaction 中的分支保持一致，根据事务头判断是否需要恢复
+    private boolean isRecoverable(TransactionRepository transactionRepository, TransactionHeader header) {
+
+        switch (header.getStatus()) {
+            case CONFIRMING:
+            case CANCELLING:
+                return true;
+            case TRY_FAILED:
+                return header.getTransactionType().equals(TransactionType.BRANCH);
+            case TRY_SUCCESS:
+                return header.getTransactionType().equals(TransactionType.BRANCH) && transactionRepository.getRootDomain() != null;
+            default:
+                // the transaction status is TRYING, ignore it.
+                return false;
+        }
+    }
+
+    private Transaction findTransactionQuietly(TransactionRepository transactionRepository, TransactionHeader header) {
+        try {
+            return transactionRepository.findByXid(header.getXid());
+        } catch (Throwable e) {
+            logger.warn(String.format("load transaction failed while recover. txid:%s", header.getXid()), e);
+            return null;
+        }
     }
 
     private void rollbackTransaction(TransactionRepository transactionRepository, Transaction transaction) {
@@ -284,6 +703,12 @@ public class TransactionRecovery {
                 if (recoveryExecutorService == null) {
 
                     recoveryExecutorService = Executors.newFixedThreadPool(transactionConfigurator.getRecoverFrequency().getConcurrentRecoveryThreadCount());
+
+                    recoveryFetchExecutorService = Executors.newCachedThreadPool(runnable -> {
+                        Thread thread = new Thread(runnable, "tcc-recovery-fetch");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
                     // 如果每页个数的一半（默认250）超过了 默认打印错误日志的最大次数 15 ，就用 15，否则为 每页个数的一半
                     logMaxPrintCount = transactionConfigurator.getRecoverFrequency().getFetchPageSize() / 2
                             > MAX_ERROR_COUNT_SHREDHOLD ?
@@ -295,26 +720,61 @@ public class TransactionRecovery {
         }
     }
 
+    private TransactionMetrics getTransactionMetrics() {
+        return transactionConfigurator.getTransactionMetrics();
+    }
+
     private void initLogStatistics() {
         triggerMaxRetryPrintCount.set(0);
         recoveryFailedPrintCount.set(0);
     }
 
-    // 恢复异常事务任务
-    class RecoverTask implements Callable<Void> {
+    // 恢复异常事务任务，完成后统计结果，执行线程离开 run 后才归还窗口
+    class RecoverTask extends FutureTask<RecoveryResult> {
+
+        private final Semaphore window;
+        private final Set<RecoverTask> inFlightTasks;
+        private final AtomicInteger recoveredCount;
+        private final long timeout;
+        // 开始执行后才设置，超过该时间仍未完成的任务会被取消；在线程池队列中等待的时间不计入超时
+        private volatile long deadline;
+
+        public RecoverTask(Callable<RecoveryResult> callable, Semaphore window, Set<RecoverTask> inFlightTasks, AtomicInteger recoveredCount, long timeout) {
+            super(callable);
+            this.window = window;
+            this.inFlightTasks = inFlightTasks;
+            this.recoveredCount = recoveredCount;
+            this.timeout = timeout;
+        }
 
-        TransactionRepository transactionRepository;
-        Transaction transaction;
+        @Override
+        public void run() {
+            deadline = System.currentTimeMillis() + timeout;
+            try {
+                super.run();
+            } finally {
+                // 取消只会中断执行线程，不响应中断的任务仍占用线程，直到真正返回才归还窗口
+                inFlightTasks.remove(this);
+                window.release();
+            }
+        }
 
-        public RecoverTask(TransactionRepository transactionRepository, Transaction transaction) {
-            this.transactionRepository = transactionRepository;
-            this.transaction = transaction;
+        // 已经开始执行且未被取消
+        boolean isRunning() {
+            return deadline > 0 && !isCancelled();
         }
 
         @Override
-        public Void call() throws Exception {
-            recoverErrorTransaction(transactionRepository, transaction); // 恢复异常事务
-            return null;
+        protected void done() {
+            try {
+                if (!isCancelled() && isRecovered(get())) {
+                    recoveredCount.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logger.error("recover transaction failed.", e.getCause());
+            }
         }
     }
 
@@ -10,6 +10,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 public abstract class AbstractKVStoreTransactionRepository<T> extends AbstractTransactionRepository {
 
@@ -45,8 +47,18 @@ public abstract class AbstractKVStoreTransactionRepository<T> extends AbstractTr
 
     @Override
     protected Page<Transaction> doFindAllUnmodifiedSince(Date date, String offset, int pageSize) {
+        return doFindAllUnmodifiedSince(date, offset, pageSize, this::findTransactionsFromOneShard, Transaction::getLastUpdateTime);
+    }
+
+    @Override
+    protected Page<TransactionHeader> doFindAllHeadersUnmodifiedSince(Date date, String offset, int pageSize) {
+        return doFindAllUnmodifiedSince(date, offset, pageSize, this::findHeadersFromOneShard, TransactionHeader::getLastUpdateTime);
+    }
+
+    // 按 key 扫描所有分片，loader 根据一批 key 加载事务或事务头
+    private <E> Page<E> doFindAllUnmodifiedSince(Date date, String offset, int pageSize, BiFunction<T, Set, List<E>> loader, Function<E, Date> lastUpdateTimeGetter) {
 
-        List<Transaction> fetchedTransactions = new ArrayList<>();
+        List<E> fetchedTransactions = new ArrayList<>();
 
         String tryFetchOffset = offset;
 
@@ -54,12 +66,12 @@ public abstract class AbstractKVStoreTransactionRepository<T> extends AbstractTr
 
         do {
 
-            Page<Transaction> page = doFindAll(tryFetchOffset, pageSize - haveFetchedCount);
+            Page<E> page = doFindAll(tryFetchOffset, pageSize - haveFetchedCount, loader);
 
             tryFetchOffset = page.getNextOffset();
 
-            for (Transaction transaction : page.getData()) {
-                if (transaction.getLastUpdateTime().compareTo(date) < 0) {
+            for (E transaction : page.getData()) {
+                if (lastUpdateTimeGetter.apply(transaction).compareTo(date) < 0) {
                     fetchedTransactions.add(transaction);
                 }
             }
@@ -71,25 +83,29 @@ public abstract class AbstractKVStoreTransactionRepository<T> extends AbstractTr
             }
         } while (true);
 
-        return new Page<Transaction>(tryFetchOffset, fetchedTransactions);
+        return new Page<E>(tryFetchOffset, fetchedTransactions);
     }
 
     /*
      * offset 格式: shardIndex:cursor,eg = 0:0,1:0。maxFindCount 是每页查找的个数最大值
      * */
     protected Page<Transaction> doFindAll(String offset, int maxFindCount) {
+        return doFindAll(offset, maxFindCount, this::findTransactionsFromOneShard);
+    }
+
+    private <E> Page<E> doFindAll(String offset, int maxFindCount, BiFunction<T, Set, List<E>> loader) {
 
         ShardOffset currentShardOffset = new ShardOffset(offset);
 
         ShardOffset nextShardOffset = new ShardOffset();
 
-        Page<Transaction> page = new Page<Transaction>();
+        Page<E> page = new Page<E>();
 
         try (ShardHolder shardHolder = getShardHolder()) {
 
             List<T> allShards = shardHolder.getAllShards(); // 获取所有分片
             // 从
-            List<Transaction> transactions = findTransactionsFromShards(allShards, currentShardOffset, nextShardOffset, maxFindCount);
+            List<E> transactions = findTransactionsFromShards(allShards, currentShardOffset, nextShardOffset, maxFindCount, loader);
 
             page.setNextOffset(nextShardOffset.toString());
             page.setData(transactions);
@@ -102,9 +118,9 @@ public abstract class AbstractKVStoreTransactionRepository<T> extends AbstractTr
         }
     }
     // 在所有分片中从 currentShardOffset 的分片开始查找，直到 keyPage 的 data 不为空
-    private List<Transaction> findTransactionsFromShards(final List<T> allShards, ShardOffset currentShardOffset, ShardOffset nextShardOffset, int maxFindCount) {
+    private <E> List<E> findTransactionsFromShards(final List<T> allShards, ShardOffset currentShardOffset, ShardOffset nextShardOffset, int maxFindCount, BiFunction<T, Set, List<E>> loader) {
 
-        List<Transaction> transactions = new ArrayList<>();
+        List<E> transactions = new ArrayList<>();
 
         Set<byte[]> allKeySet = new HashSet<>();
 
@@ -122,7 +138,7 @@ public abstract class AbstractKVStoreTransactionRepository<T> extends AbstractTr
 
             if (keys.size() > 0) { // keys 的数量大于 0
                 // 根据 keys 从 currentShard 查找事务列表
-                List<Transaction> currentTransactions = findTransactionsFromOneShard(currentShard, new HashSet<>(keys));
+                List<E> currentTransactions = loader.apply(currentShard, new HashSet<>(keys));
 
                 if (CollectionUtils.isEmpty(currentTransactions)) {
                     // ignore, maybe the keys are recovered by other threads!
@@ -169,6 +185,17 @@ public abstract class AbstractKVStoreTransactionRepository<T> extends AbstractTr
     }
 
     abstract  List<Transaction> findTransactionsFromOneShard(T shard, Set keys);
+    // 根据 keys 查找事务头，默认加载完整事务后截取，能够单独读取元数据的存储器可以覆盖
+    List<TransactionHeader> findHeadersFromOneShard(T shard, Set keys) {
+
+        List<Transaction> transactions = findTransactionsFromOneShard(shard, keys);
+
+        List<TransactionHeader> headers = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            headers.add(new TransactionHeader(transaction));
+        }
+        return headers;
+    }
 
     abstract  Page findKeysFromOneShard(T shard, String currentCursor, int maxFindCount);
 
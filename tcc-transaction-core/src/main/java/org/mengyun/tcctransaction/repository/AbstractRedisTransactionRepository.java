@@ -4,19 +4,58 @@ import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.repository.helper.RedisCommands;
 import org.mengyun.tcctransaction.repository.helper.RedisHelper;
 import org.mengyun.tcctransaction.repository.helper.TransactionStoreSerializer;
+import org.mengyun.tcctransaction.repository.helper.ShardHolder;
+import org.mengyun.tcctransaction.repository.helper.ShardOffset;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.ScanParams;
 import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.params.ZAddParams;
 import redis.clients.jedis.exceptions.JedisMovedDataException;
 
 import javax.transaction.xa.Xid;
 import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 // redis 事务存储器抽象父类
 public abstract class AbstractRedisTransactionRepository extends AbstractKVStoreTransactionRepository<Jedis> {
 
     protected boolean isSupportScan = true;
+    // 开启后新建、更新事务时同时维护按最后更新时间排序的 ZSET 索引，恢复任务通过 ZRANGEBYSCORE 查找异常事务，不再 SCAN 整个 keyspace
+    // 开启前已经存在的事务需要调用 rebuildRecoveryIndex() 补建索引
+    // 设置了 RetryBackoff 时索引按 nextRetryTime 排序，恢复任务只查询已到重试时间的事务，findAllUnmodifiedSince 改为 SCAN
+    private boolean recoveryIndexEnabled = false;
+
+    // 开启后以紧凑格式存储事务，所有节点都升级到能够读取紧凑格式的版本后再开启
+    private boolean compactStoreEnabled = false;
+    // 是否写入 JSON 格式的 CONTENT_VIEW，仅供控制台展示使用
+    private boolean contentViewEnabled = true;
+
+    public boolean isRecoveryIndexEnabled() {
+        return recoveryIndexEnabled;
+    }
+
+    public void setRecoveryIndexEnabled(boolean recoveryIndexEnabled) {
+        this.recoveryIndexEnabled = recoveryIndexEnabled;
+    }
+
+    public boolean isCompactStoreEnabled() {
+        return compactStoreEnabled;
+    }
+
+    public void setCompactStoreEnabled(boolean compactStoreEnabled) {
+        this.compactStoreEnabled = compactStoreEnabled;
+    }
+
+    public boolean isContentViewEnabled() {
+        return contentViewEnabled;
+    }
+
+    public void setContentViewEnabled(boolean contentViewEnabled) {
+        this.contentViewEnabled = contentViewEnabled;
+    }
 
     @Override
     protected int doCreate(final Transaction transaction) {
@@ -47,7 +86,7 @@ public abstract class AbstractRedisTransactionRepository extends AbstractKVStore
         // 拼装 redis key，然后得到 RedisCommands
         try (RedisCommands commands = getRedisCommands(RedisHelper.getRedisKey(getDomain(), transaction.getXid()))) {
 
-            Long result = commands.del(RedisHelper.getRedisKey(getDomain(), transaction.getXid()));
+            Long result = deleteCommand(commands, transaction);
 
             return result.intValue();
         } catch (Exception e) {
@@ -86,18 +125,14 @@ public abstract class AbstractRedisTransactionRepository extends AbstractKVStore
     }
     // 通过 lua 脚本新建事务
     protected Long createByScriptCommand(RedisCommands commands, Transaction transaction) {
-        List<byte[]> params = new ArrayList<byte[]>();
 
-        for (Map.Entry<byte[], byte[]> entry : TransactionStoreSerializer.serialize(getSerializer(), transaction)
-                .entrySet()) {
-            params.add(entry.getKey()); // key 和 value 都放到 list
-            params.add(entry.getValue());
-        }
-        // commands 实现类通过 lua 脚本执行
-        Object result = commands.eval(
-                "if redis.call('exists', KEYS[1]) == 0 then redis.call('hmset', KEYS[1], unpack(ARGV)); return 1; end; return 0;"
-                        .getBytes(),
-                Arrays.asList(RedisHelper.getRedisKey(getDomain(), transaction.getXid())), // KEYS[1] 就是 redis key
+        List<byte[]> params = buildScriptParams(transaction);
+        // commands 实现类通过 lua 脚本执行，开启索引时事务和索引在同一个 lua 脚本中写入
+        Object result = commands.eval(String.format(
+                "if redis.call('exists', KEYS[1]) == 0 then redis.call('hmset', KEYS[1], unpack(ARGV%s)); %sreturn 1; end; return 0;",
+                recoveryIndexEnabled ? ", 2" : "",
+                recoveryIndexEnabled ? "redis.call('zadd', KEYS[2], ARGV[1], KEYS[1]); " : "").getBytes(),
+                getScriptKeys(transaction), // KEYS[1] 就是 redis key
                 params);
 
         return (Long) result;
@@ -108,23 +143,244 @@ public abstract class AbstractRedisTransactionRepository extends AbstractKVStore
         transaction.setLastUpdateTime(new Date());
         transaction.setVersion(transaction.getVersion() + 1);
 
+        List<byte[]> params = buildScriptParams(transaction);
+        // commands 实现类通过 lua 脚本执行，先删除当前存储格式下不再使用的字段
+        Object result = commands.eval(String.format(
+                "if redis.call('hget',KEYS[1],'VERSION') == '%s' then redis.call('hdel', KEYS[1], %s); redis.call('hmset', KEYS[1], unpack(ARGV%s)); %sreturn 1; end; return 0;",
+                transaction.getVersion() - 1,
+                getStaleFields(),
+                recoveryIndexEnabled ? ", 2" : "",
+                recoveryIndexEnabled ? "redis.call('zadd', KEYS[2], ARGV[1], KEYS[1]); " : "").getBytes(),
+                getScriptKeys(transaction),
+                params);
+
+        return (Long) result;
+    }
+
+    private List<byte[]> buildScriptParams(Transaction transaction) {
+
         List<byte[]> params = new ArrayList<byte[]>();
 
-        for (Map.Entry<byte[], byte[]> entry : TransactionStoreSerializer.serialize(getSerializer(), transaction)
+        if (recoveryIndexEnabled) {
+            params.add(getRecoveryIndexScore(transaction)); // ARGV[1] 是索引的 score
+        }
+
+        for (Map.Entry<byte[], byte[]> entry : TransactionStoreSerializer.serialize(getSerializer(), transaction, compactStoreEnabled, contentViewEnabled)
                 .entrySet()) {
-            params.add(entry.getKey());
+            params.add(entry.getKey()); // key 和 value 都放到 list
             params.add(entry.getValue());
         }
-        // commands 实现类通过 lua 脚本执行
-        Object result = commands.eval(String.format(
-                "if redis.call('hget',KEYS[1],'VERSION') == '%s' then redis.call('hmset', KEYS[1], unpack(ARGV)); return 1; end; return 0;",
-                transaction.getVersion() - 1).getBytes(),
-                Arrays.asList(RedisHelper.getRedisKey(
-                        getDomain(),
-                        transaction.getXid())),
-                params);
 
-        return (Long) result;
+        return params;
+    }
+
+    private List<byte[]> getScriptKeys(Transaction transaction) {
+
+        byte[] redisKey = RedisHelper.getRedisKey(getDomain(), transaction.getXid());
+
+        if (recoveryIndexEnabled) {
+            return Arrays.asList(redisKey, RedisHelper.getRecoveryIndexKey(getDomain()));
+        }
+
+        return Arrays.asList(redisKey);
+    }
+
+    // 当前存储格式下不再使用的字段，另一种格式写入的记录在更新时转换为当前格式
+    private String getStaleFields() {
+
+        List<String> fields = new ArrayList<String>();
+
+        if (compactStoreEnabled) {
+            fields.addAll(Arrays.asList(TransactionStoreSerializer.getExpandedHeaderFields()));
+        } else {
+            fields.add("HEADER");
+        }
+
+        if (!contentViewEnabled) {
+            fields.add("CONTENT_VIEW");
+        }
+
+        return fields.stream().map(field -> "'" + field + "'").collect(Collectors.joining(","));
+    }
+
+    // 删除事务，开启索引时同时从索引中删除
+    protected Long deleteCommand(RedisCommands commands, Transaction transaction) {
+
+        byte[] redisKey = RedisHelper.getRedisKey(getDomain(), transaction.getXid());
+
+        if (recoveryIndexEnabled) {
+            return (Long) commands.eval(
+                    "local result = redis.call('del', KEYS[1]); redis.call('zrem', KEYS[2], KEYS[1]); return result;".getBytes(),
+                    Arrays.asList(redisKey, RedisHelper.getRecoveryIndexKey(getDomain())),
+                    Collections.<byte[]>emptyList());
+        }
+
+        return commands.del(redisKey);
+    }
+
+    private byte[] getRecoveryIndexScore(Transaction transaction) {
+        if (isRetryTimeIndexed() && transaction.getNextRetryTime() != null) {
+            return String.valueOf(transaction.getNextRetryTime().getTime()).getBytes();
+        }
+        return String.valueOf(transaction.getLastUpdateTime().getTime()).getBytes();
+    }
+
+    // 索引的 score 是否为 nextRetryTime，nextRetryTime 不早于最后更新时间，此时不能再按最后更新时间查询索引
+    private boolean isRetryTimeIndexed() {
+        return recoveryIndexEnabled && getRetryBackoff() != null;
+    }
+
+    @Override
+    protected Page<Transaction> doFindAllUnmodifiedSince(Date date, String offset, int pageSize) {
+        if (recoveryIndexEnabled && !isRetryTimeIndexed()) {
+            return findAllFromRecoveryIndex(date, offset, pageSize, this::findTransactionsFromOneShard, Transaction::getXid);
+        }
+        return super.doFindAllUnmodifiedSince(date, offset, pageSize);
+    }
+
+    @Override
+    protected Page<TransactionHeader> doFindAllHeadersUnmodifiedSince(Date date, String offset, int pageSize) {
+        if (recoveryIndexEnabled && !isRetryTimeIndexed()) {
+            return findAllFromRecoveryIndex(date, offset, pageSize, this::findHeadersFromOneShard, TransactionHeader::getXid);
+        }
+        return super.doFindAllHeadersUnmodifiedSince(date, offset, pageSize);
+    }
+
+    // 设置 RetryBackoff 之前写入的事务 score 为最后更新时间，会被提前查出，由恢复任务按事务头再次判断
+    @Override
+    protected Page<TransactionHeader> doFindAllRetryableHeaders(Date unmodifiedSince, Date retryTime, String offset, int pageSize) {
+        if (isRetryTimeIndexed()) {
+            return findAllFromRecoveryIndex(new Date(retryTime.getTime() + 1), offset, pageSize, this::findHeadersFromOneShard, TransactionHeader::getXid);
+        }
+        return super.doFindAllRetryableHeaders(unmodifiedSince, retryTime, offset, pageSize);
+    }
+
+    /*
+     * 通过索引查找 score 早于 date 的事务。offset 格式与 SCAN 方式相同: shardIndex::cursor，cursor 为上一页最后一个事务的 score，
+     * 下一页从大于该 score 的位置开始，恢复过程中删除事务不会导致漏读。
+     * 索引中事务已经不存在的成员在读取时清理，整页都是这样的成员时继续读取下一页，空页只表示已经查完
+     * */
+    private <E> Page<E> findAllFromRecoveryIndex(Date date, String offset, int pageSize, BiFunction<Jedis, Set, List<E>> loader, Function<E, Xid> xidGetter) {
+
+        ShardOffset currentShardOffset = new ShardOffset(offset);
+
+        byte[] indexKey = RedisHelper.getRecoveryIndexKey(getDomain());
+        byte[] maxScore = ("(" + date.getTime()).getBytes();
+
+        try (ShardHolder<Jedis> shardHolder = getShardHolder()) {
+
+            List<Jedis> allShards = shardHolder.getAllShards();
+
+            int currentShardIndex = currentShardOffset.getShardIndex();
+            String currentCursor = currentShardOffset.getCursor();
+
+            while (currentShardIndex < allShards.size()) {
+
+                Jedis shard = allShards.get(currentShardIndex);
+
+                byte[] minScore = ShardOffset.SCAN_INIT_CURSOR.equals(currentCursor) ? "-inf".getBytes() : ("(" + currentCursor).getBytes();
+
+                Set<Tuple> tuples = shard.zrangeByScoreWithScores(indexKey, minScore, maxScore, 0, pageSize);
+
+                if (tuples.isEmpty()) { // 当前分片已经查完，查找下一个分片
+                    currentShardIndex += 1;
+                    currentCursor = ShardOffset.SCAN_INIT_CURSOR;
+                    continue;
+                }
+
+                Set<byte[]> keys = new LinkedHashSet<byte[]>();
+                Set<String> keyStrings = new HashSet<String>();
+                double lastScore = 0;
+
+                for (Tuple tuple : tuples) {
+                    keys.add(tuple.getBinaryElement());
+                    keyStrings.add(tuple.getElement());
+                    lastScore = tuple.getScore();
+                }
+
+                if (tuples.size() >= pageSize) {
+                    // 下一页从大于 lastScore 的位置开始，同一 score 的事务需要在这一页全部取出
+                    String lastScoreString = String.valueOf((long) lastScore);
+                    for (byte[] key : shard.zrangeByScore(indexKey, lastScoreString.getBytes(), lastScoreString.getBytes())) {
+                        if (keyStrings.add(new String(key))) {
+                            keys.add(key);
+                        }
+                    }
+                }
+
+                List<E> data = loader.apply(shard, keys);
+
+                if (data.size() < keys.size()) {
+                    removeDanglingIndexMembers(shard, indexKey, keys, data, xidGetter);
+                }
+
+                currentCursor = String.valueOf((long) lastScore);
+
+                if (data.isEmpty()) { // 整页都是已删除的事务，继续读取当前分片的下一页
+                    continue;
+                }
+
+                return new Page<E>(new ShardOffset(currentShardIndex, currentCursor).toString(), data);
+            }
+
+            return new Page<E>(new ShardOffset(currentShardIndex, ShardOffset.SCAN_INIT_CURSOR).toString(), Collections.<E>emptyList());
+
+        } catch (Exception e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
+    // 删除事务与删除索引之间进程宕机等情况会留下悬空的索引成员，事务确实不存在时才从索引中删除
+    private <E> void removeDanglingIndexMembers(Jedis shard, byte[] indexKey, Set<byte[]> keys, List<E> data, Function<E, Xid> xidGetter) {
+
+        Set<String> loadedKeys = new HashSet<String>();
+        for (E element : data) {
+            loadedKeys.add(new String(RedisHelper.getRedisKey(getDomain(), xidGetter.apply(element))));
+        }
+
+        Pipeline pipeline = shard.pipelined();
+        for (byte[] key : keys) {
+            if (!loadedKeys.contains(new String(key))) {
+                pipeline.eval("if redis.call('exists', KEYS[1]) == 0 then return redis.call('zrem', KEYS[2], KEYS[1]) end return 0".getBytes(),
+                        Arrays.asList(key, indexKey), Collections.<byte[]>emptyList());
+            }
+        }
+        pipeline.sync();
+    }
+
+    // 为开启索引前已经存在的事务补建索引，score 取事务的 LAST_UPDATE_TIME，索引按 nextRetryTime 排序时优先取 NEXT_RETRY_TIME
+    public void rebuildRecoveryIndex() {
+
+        byte[] indexKey = RedisHelper.getRecoveryIndexKey(getDomain());
+
+        try (ShardHolder<Jedis> shardHolder = getShardHolder()) {
+
+            for (Jedis shard : shardHolder.getAllShards()) {
+
+                String cursor = ShardOffset.SCAN_INIT_CURSOR;
+
+                do {
+                    ScanResult<String> scanResult = shard.scan(cursor, RedisHelper.buildDefaultScanParams(getDomain() + "*", RedisHelper.SCAN_COUNT));
+
+                    List<byte[]> keys = scanResult.getResult().stream().map(v -> v.getBytes()).collect(Collectors.toList());
+
+                    if (!keys.isEmpty()) {
+                        List<TransactionHeader> headers = findHeadersFromOneShard(shard, new LinkedHashSet<>(keys));
+
+                        Pipeline pipeline = shard.pipelined();
+                        for (TransactionHeader header : headers) {
+                            Date scoreTime = isRetryTimeIndexed() && header.getNextRetryTime() != null ? header.getNextRetryTime() : header.getLastUpdateTime();
+                            pipeline.zadd(indexKey, scoreTime.getTime(), RedisHelper.getRedisKey(getDomain(), header.getXid()), ZAddParams.zAddParams().nx());
+                        }
+                        pipeline.sync();
+                    }
+
+                    cursor = scanResult.getCursor();
+                } while (!ShardOffset.SCAN_INIT_CURSOR.equals(cursor));
+            }
+        } catch (Exception e) {
+            throw new TransactionIOException(e);
+        }
     }
 
     @Override
@@ -157,6 +413,40 @@ public abstract class AbstractRedisTransactionRepository extends AbstractKVStore
         return list;
     }
 
+    // 通过 hmget 只读取事务头字段，不传输和反序列化 CONTENT
+    @Override
+    List<TransactionHeader> findHeadersFromOneShard(Jedis shard, Set keys) {
+
+        byte[][] headerFields = TransactionStoreSerializer.getHeaderFields();
+
+        Pipeline pipeline = shard.pipelined();
+
+        for (final Object key : keys) {
+            pipeline.hmget((byte[]) key, headerFields);
+        }
+
+        List<Object> result = pipeline.syncAndReturnAll();
+
+        List<TransactionHeader> list = new ArrayList<TransactionHeader>();
+
+        for (Object data : result) {
+
+            if (data instanceof List) {
+                TransactionHeader header = TransactionStoreSerializer.deserializeHeader((List<byte[]>) data);
+                if (header != null) { // key 已被删除时所有字段都为空
+                    list.add(header);
+                }
+            } else if (data instanceof JedisMovedDataException) {
+                // ignore the data, this case may happen under redis cluster.
+                log.warn("ignore the data, this case may happen under redis cluster.", data);
+            } else {
+                log.warn("get transaction header failed. result is: " + (data == null ? "null" : data.toString()));
+            }
+        }
+
+        return list;
+    }
+
     @Override
     Page<byte[]> findKeysFromOneShard(Jedis shard, String currentCursor, int maxFindCount) {
 
@@ -3,31 +3,63 @@ package org.mengyun.tcctransaction.repository;
 
 import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.TransactionOptimisticLockException;
+import org.mengyun.tcctransaction.metrics.NoopTransactionMetrics;
+import org.mengyun.tcctransaction.metrics.RepositoryOperation;
+import org.mengyun.tcctransaction.metrics.TransactionMetrics;
+import org.mengyun.tcctransaction.recovery.RetryBackoff;
 
 import javax.transaction.xa.Xid;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by changmingxie on 10/30/15.
  */
 public abstract class AbstractTransactionRepository implements TransactionRepository, AutoCloseable {
 
+    private TransactionMetrics transactionMetrics = NoopTransactionMetrics.INSTANCE;
+    // 设置后新增、更新事务时按重试次数计算 nextRetryTime
+    private RetryBackoff retryBackoff;
+
     public AbstractTransactionRepository() {
     }
 
     @Override
     public int create(Transaction transaction) {
         transaction.setVersion(1l);
-        int result = doCreate(transaction);
-        return result;
+        updateNextRetryTime(transaction);
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            int result = doCreate(transaction);
+            success = true;
+            return result;
+        } finally {
+            record(RepositoryOperation.CREATE, startTime, success);
+        }
     }
 
     @Override
     public int update(Transaction transaction) {
         int result = 0;
 
-        result = doUpdate(transaction);
+        updateNextRetryTime(transaction);
+
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            result = doUpdate(transaction);
+            success = true;
+        } finally {
+            record(RepositoryOperation.UPDATE, startTime, success);
+        }
+
         if (result <= 0) { // 若更新失败后，抛出 OptimisticLockException 异常。有两种情况会导致更新失败：(1) 该事务已经被提交，被删除；(2) 乐观锁更新时，缓存的事务的版本号( Transaction.version )和存储器里的事务的版本号不同，更新失败
+            transactionMetrics.recordOptimisticLockConflict(getDomain());
             throw new TransactionOptimisticLockException();
         }
 
@@ -36,27 +68,204 @@ public abstract class AbstractTransactionRepository implements TransactionReposi
 
     @Override
     public int delete(Transaction transaction) {
-        return doDelete(transaction);
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            int result = doDelete(transaction);
+            success = true;
+            return result;
+        } finally {
+            record(RepositoryOperation.DELETE, startTime, success);
+        }
     }
 
     @Override
     public Transaction findByXid(Xid transactionXid) {
-        Transaction transaction = doFindOne(transactionXid);
-        return transaction;
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            Transaction transaction = doFindOne(transactionXid);
+            success = true;
+            return transaction;
+        } finally {
+            record(RepositoryOperation.FIND, startTime, success);
+        }
+    }
+
+    @Override
+    public int[] createAll(List<Transaction> transactions) {
+
+        if (transactions.isEmpty()) {
+            return new int[0];
+        }
+
+        for (Transaction transaction : transactions) {
+            transaction.setVersion(1l);
+            updateNextRetryTime(transaction);
+        }
+
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            int[] results = doCreates(transactions);
+            success = true;
+            return results;
+        } finally {
+            record(RepositoryOperation.CREATE, startTime, success);
+        }
+    }
+
+    @Override
+    public int[] updateAll(List<Transaction> transactions) {
+
+        if (transactions.isEmpty()) {
+            return new int[0];
+        }
+
+        for (Transaction transaction : transactions) {
+            updateNextRetryTime(transaction);
+        }
+
+        int[] results;
+
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            results = doUpdates(transactions);
+            success = true;
+        } finally {
+            record(RepositoryOperation.UPDATE, startTime, success);
+        }
+        // 批量更新不抛出乐观锁异常，由调用方按返回值处理冲突的事务
+        for (int result : results) {
+            if (result <= 0) {
+                transactionMetrics.recordOptimisticLockConflict(getDomain());
+            }
+        }
+
+        return results;
+    }
+
+    @Override
+    public int[] deleteAll(List<Transaction> transactions) {
+
+        if (transactions.isEmpty()) {
+            return new int[0];
+        }
+
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            int[] results = doDeletes(transactions);
+            success = true;
+            return results;
+        } finally {
+            record(RepositoryOperation.DELETE, startTime, success);
+        }
+    }
+
+    @Override
+    public Map<Xid, Transaction> findByXids(Collection<Xid> xids) {
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            Map<Xid, Transaction> transactions = xids.isEmpty() ? new HashMap<Xid, Transaction>() : doFinds(xids);
+            success = true;
+            return transactions;
+        } finally {
+            record(RepositoryOperation.FIND, startTime, success);
+        }
     }
 
     @Override
     public Transaction findByRootXid(Xid transactionXid) {
-        Transaction transaction = doFindRootOne(transactionXid);
-        return transaction;
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            Transaction transaction = doFindRootOne(transactionXid);
+            success = true;
+            return transaction;
+        } finally {
+            record(RepositoryOperation.FIND_ROOT, startTime, success);
+        }
+    }
+
+    @Override
+    public Map<Xid, Transaction> findByRootXids(Collection<Xid> xids) {
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            Map<Xid, Transaction> transactions = xids.isEmpty() ? new HashMap<Xid, Transaction>() : doFindRoots(xids);
+            success = true;
+            return transactions;
+        } finally {
+            record(RepositoryOperation.FIND_ROOT, startTime, success);
+        }
     }
 
     @Override
     public Page<Transaction> findAllUnmodifiedSince(Date date, String offset, int pageSize) {
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            Page<Transaction> page = doFindAllUnmodifiedSince(date, offset, pageSize);
+            success = true;
+            return page;
+        } finally {
+            record(RepositoryOperation.FIND_UNMODIFIED, startTime, success);
+        }
+    }
 
-        Page<Transaction> page = doFindAllUnmodifiedSince(date, offset, pageSize);
+    @Override
+    public Page<TransactionHeader> findAllHeadersUnmodifiedSince(Date date, String offset, int pageSize) {
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            Page<TransactionHeader> page = doFindAllHeadersUnmodifiedSince(date, offset, pageSize);
+            success = true;
+            return page;
+        } finally {
+            record(RepositoryOperation.FIND_HEADERS_UNMODIFIED, startTime, success);
+        }
+    }
+
+    @Override
+    public Page<TransactionHeader> findAllRetryableHeaders(Date unmodifiedSince, Date retryTime, String offset, int pageSize) {
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            Page<TransactionHeader> page = doFindAllRetryableHeaders(unmodifiedSince, retryTime, offset, pageSize);
+            success = true;
+            return page;
+        } finally {
+            record(RepositoryOperation.FIND_HEADERS_UNMODIFIED, startTime, success);
+        }
+    }
+
+    public TransactionMetrics getTransactionMetrics() {
+        return transactionMetrics;
+    }
 
-        return page;
+    public void setTransactionMetrics(TransactionMetrics transactionMetrics) {
+        this.transactionMetrics = transactionMetrics;
+    }
+
+    public RetryBackoff getRetryBackoff() {
+        return retryBackoff;
+    }
+
+    public void setRetryBackoff(RetryBackoff retryBackoff) {
+        this.retryBackoff = retryBackoff;
+    }
+
+    private void updateNextRetryTime(Transaction transaction) {
+        if (retryBackoff != null) {
+            transaction.setNextRetryTime(retryBackoff.getNextRetryTime(transaction.getRetriedCount()));
+        }
+    }
+
+    private void record(RepositoryOperation operation, long startTime, boolean success) {
+        transactionMetrics.recordRepository(getDomain(), operation, System.nanoTime() - startTime, success);
     }
 
     protected abstract int doCreate(Transaction transaction);
@@ -71,4 +280,74 @@ public abstract class AbstractTransactionRepository implements TransactionReposi
 
     protected abstract Page<Transaction> doFindAllUnmodifiedSince(Date date, String offset, int pageSize);
 
+    // 批量查询事务，默认逐个查询，支持批量读取的存储器可以覆盖
+    protected Map<Xid, Transaction> doFinds(Collection<Xid> xids) {
+        Map<Xid, Transaction> transactions = new HashMap<Xid, Transaction>();
+        for (Xid xid : xids) {
+            Transaction transaction = doFindOne(xid);
+            if (transaction != null) {
+                transactions.put(xid, transaction);
+            }
+        }
+        return transactions;
+    }
+
+    // 批量查询根事务，默认逐个查询，支持批量读取的存储器可以覆盖
+    protected Map<Xid, Transaction> doFindRoots(Collection<Xid> xids) {
+        Map<Xid, Transaction> transactions = new HashMap<Xid, Transaction>();
+        for (Xid xid : xids) {
+            Transaction transaction = doFindRootOne(xid);
+            if (transaction != null) {
+                transactions.put(xid, transaction);
+            }
+        }
+        return transactions;
+    }
+
+    // 分页查询事务头，默认查询完整事务后截取，能够单独读取元数据的存储器可以覆盖
+    protected Page<TransactionHeader> doFindAllHeadersUnmodifiedSince(Date date, String offset, int pageSize) {
+
+        Page<Transaction> page = doFindAllUnmodifiedSince(date, offset, pageSize);
+
+        List<TransactionHeader> headers = new ArrayList<TransactionHeader>(page.getData().size());
+        for (Transaction transaction : page.getData()) {
+            headers.add(new TransactionHeader(transaction));
+        }
+
+        return new Page<TransactionHeader>(page.getNextOffset(), headers);
+    }
+
+    // 分页查询已到重试时间的事务头，默认按最后更新时间查询，能够按 nextRetryTime 查询的存储器可以覆盖
+    protected Page<TransactionHeader> doFindAllRetryableHeaders(Date unmodifiedSince, Date retryTime, String offset, int pageSize) {
+        return doFindAllHeadersUnmodifiedSince(unmodifiedSince, offset, pageSize);
+    }
+
+    // 批量新增事务，返回值与 transactions 一一对应，负数表示该条写入失败。默认逐个写入，支持批量写入的存储器可以覆盖
+    // 覆盖实现抛出异常时，应保证该批次没有任何写入生效
+    protected int[] doCreates(List<Transaction> transactions) {
+        int[] results = new int[transactions.size()];
+        for (int i = 0; i < transactions.size(); i++) {
+            results[i] = doCreate(transactions.get(i));
+        }
+        return results;
+    }
+
+    // 批量更新事务，每个事务单独做乐观锁校验，返回值与 transactions 一一对应
+    protected int[] doUpdates(List<Transaction> transactions) {
+        int[] results = new int[transactions.size()];
+        for (int i = 0; i < transactions.size(); i++) {
+            results[i] = doUpdate(transactions.get(i));
+        }
+        return results;
+    }
+
+    // 批量删除事务，返回值与 transactions 一一对应
+    protected int[] doDeletes(List<Transaction> transactions) {
+        int[] results = new int[transactions.size()];
+        for (int i = 0; i < transactions.size(); i++) {
+            results[i] = doDelete(transactions.get(i));
+        }
+        return results;
+    }
+
 }
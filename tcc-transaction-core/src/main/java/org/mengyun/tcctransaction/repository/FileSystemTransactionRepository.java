@@ -3,6 +3,7 @@ package org.mengyun.tcctransaction.repository;
 import org.apache.commons.lang3.StringUtils;
 import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.serializer.KryoPoolSerializer;
 import org.mengyun.tcctransaction.serializer.RegisterableKryoTransactionSerializer;
 import org.mengyun.tcctransaction.serializer.TransactionSerializer;
 import org.slf4j.Logger;
@@ -13,6 +14,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
@@ -57,6 +60,17 @@ public class FileSystemTransactionRepository extends AbstractTransactionReposito
 
     private TransactionSerializer serializer = new RegisterableKryoTransactionSerializer();
 
+    public void setSerializer(TransactionSerializer serializer) {
+        this.serializer = serializer;
+    }
+    // 每个线程复用的序列化缓冲区，超过 MAX_POOLED_BUFFER_SIZE 的缓冲区用完即丢弃
+    private final ThreadLocal<ByteBuffer> writeBuffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(KryoPoolSerializer.DEFAULT_BUFFER_SIZE);
+        }
+    };
+
     @Override
     protected int doCreate(Transaction transaction) {
         writeFile(transaction); // 事务写入到文件
@@ -205,20 +219,20 @@ public class FileSystemTransactionRepository extends AbstractTransactionReposito
         // 获取文件事务存储器名称
         String file = getFullFileName(transaction.getXid());
 
+        // 先完整序列化到缓冲区再打开文件，序列化失败时不会破坏原有的事务文件
+        ByteBuffer buffer = serializeToBuffer(transaction);
+
         FileChannel channel = null;
         RandomAccessFile raf = null;
-        // 序列化
-        byte[] content = serializer.serialize(transaction);
         try {
             raf = new RandomAccessFile(file, "rw");
             channel = raf.getChannel();
-            ByteBuffer buffer = ByteBuffer.allocate(content.length);
-            buffer.put(content);
-            buffer.flip();
 
             while (buffer.hasRemaining()) {
-                channel.write(buffer); // nio write
+                channel.write(buffer);
             }
+            // 新内容比原文件短时截掉末尾的旧数据
+            channel.truncate(channel.position());
 
             channel.force(true);
         } catch (Exception e) {
@@ -233,6 +247,30 @@ public class FileSystemTransactionRepository extends AbstractTransactionReposito
             }
         }
     }
+    private ByteBuffer serializeToBuffer(Transaction transaction) {
+
+        ByteBuffer buffer = writeBuffers.get();
+
+        while (true) {
+            ((Buffer) buffer).clear();
+            try {
+                serializer.serialize(transaction, buffer);
+                break;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+
+        if (buffer.capacity() <= KryoPoolSerializer.MAX_POOLED_BUFFER_SIZE) {
+            writeBuffers.set(buffer);
+        } else {
+            writeBuffers.remove();
+        }
+
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
     // 从文件中读取事务
     private Transaction readTransaction(File file) {
 
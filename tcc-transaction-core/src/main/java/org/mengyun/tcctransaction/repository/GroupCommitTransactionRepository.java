@@ -0,0 +1,400 @@
+package org.mengyun.tcctransaction.repository;
+
+import org.mengyun.tcctransaction.SystemException;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.recovery.RetryBackoff;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.transaction.xa.Xid;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 组提交事务存储器，将多个线程并发的 create / update / delete 合并成批次，交给被装饰的事务存储器批量写入
+ * （JDBC addBatch + 一次 commit、单机 redis pipeline、RocksDB WriteBatch）。
+ * <p/>
+ * 调用方的写操作在其所在批次写入完成后才返回，返回值与异常和直接写入一致，不会改变持久化语义，只是用少量等待时间（lingerTime）换取更少的刷盘和网络往返次数。
+ * 查询直接委托给被装饰的事务存储器。
+ */
+public class GroupCommitTransactionRepository extends AbstractTransactionRepository {
+
+    static final Logger logger = LoggerFactory.getLogger(GroupCommitTransactionRepository.class.getSimpleName());
+
+    private AbstractTransactionRepository delegateTransactionRepository;
+    // 每批最多合并的写操作数
+    private int maxBatchSize = 128;
+    // 凑批的最长等待时间，单位：微秒
+    private long lingerTime = 1000;
+    // 等待写入的队列长度，队列满时调用方阻塞
+    private int queueSize = 4096;
+
+    private BlockingQueue<WriteRequest> writeRequests;
+
+    private volatile Thread flushThread;
+
+    private volatile boolean closed = false;
+
+    public GroupCommitTransactionRepository() {
+    }
+
+    public void init() {
+
+        if (delegateTransactionRepository == null) {
+            throw new SystemException("delegateTransactionRepository cann't be null");
+        }
+
+        ensureStarted();
+    }
+
+    @Override
+    protected int doCreate(Transaction transaction) {
+        return submit(WriteType.CREATE, transaction);
+    }
+
+    @Override
+    protected int doUpdate(Transaction transaction) {
+        return submit(WriteType.UPDATE, transaction);
+    }
+
+    @Override
+    protected int doDelete(Transaction transaction) {
+        return submit(WriteType.DELETE, transaction);
+    }
+
+    @Override
+    protected Transaction doFindOne(Xid xid) {
+        return delegateTransactionRepository.doFindOne(xid);
+    }
+
+    @Override
+    protected Transaction doFindRootOne(Xid xid) {
+        return delegateTransactionRepository.doFindRootOne(xid);
+    }
+
+    // 调用方已经是批量写入，不再排队凑批
+    @Override
+    protected int[] doCreates(List<Transaction> transactions) {
+        return delegateTransactionRepository.doCreates(transactions);
+    }
+
+    @Override
+    protected int[] doUpdates(List<Transaction> transactions) {
+        return delegateTransactionRepository.doUpdates(transactions);
+    }
+
+    @Override
+    protected int[] doDeletes(List<Transaction> transactions) {
+        return delegateTransactionRepository.doDeletes(transactions);
+    }
+
+    @Override
+    protected Map<Xid, Transaction> doFinds(Collection<Xid> xids) {
+        return delegateTransactionRepository.doFinds(xids);
+    }
+
+    @Override
+    protected Map<Xid, Transaction> doFindRoots(Collection<Xid> xids) {
+        return delegateTransactionRepository.doFindRoots(xids);
+    }
+
+    @Override
+    protected Page<Transaction> doFindAllUnmodifiedSince(Date date, String offset, int pageSize) {
+        return delegateTransactionRepository.doFindAllUnmodifiedSince(date, offset, pageSize);
+    }
+
+    @Override
+    protected Page<TransactionHeader> doFindAllHeadersUnmodifiedSince(Date date, String offset, int pageSize) {
+        return delegateTransactionRepository.doFindAllHeadersUnmodifiedSince(date, offset, pageSize);
+    }
+
+    @Override
+    protected Page<TransactionHeader> doFindAllRetryableHeaders(Date unmodifiedSince, Date retryTime, String offset, int pageSize) {
+        return delegateTransactionRepository.doFindAllRetryableHeaders(unmodifiedSince, retryTime, offset, pageSize);
+    }
+
+    // 被装饰的存储器按同一策略维护 nextRetryTime 相关的索引
+    @Override
+    public void setRetryBackoff(RetryBackoff retryBackoff) {
+        super.setRetryBackoff(retryBackoff);
+        if (delegateTransactionRepository != null) {
+            delegateTransactionRepository.setRetryBackoff(retryBackoff);
+        }
+    }
+
+    @Override
+    public String getDomain() {
+        return delegateTransactionRepository.getDomain();
+    }
+
+    @Override
+    public String getRootDomain() {
+        return delegateTransactionRepository.getRootDomain();
+    }
+
+    private int submit(WriteType writeType, Transaction transaction) {
+
+        if (closed) {
+            // 关闭后不再凑批，直接写入
+            return writeOne(writeType, transaction);
+        }
+
+        ensureStarted();
+
+        WriteRequest writeRequest = new WriteRequest(writeType, transaction);
+
+        try {
+            writeRequests.put(writeRequest);
+            return writeRequest.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionIOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new TransactionIOException(e.getCause());
+        }
+    }
+
+    private void ensureStarted() {
+
+        if (flushThread == null) {
+            synchronized (this) {
+                if (flushThread == null) {
+                    writeRequests = new LinkedBlockingQueue<WriteRequest>(queueSize);
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            flushLoop();
+                        }
+                    }, "tcc-group-commit-" + getDomain());
+                    thread.setDaemon(true);
+                    thread.start();
+                    flushThread = thread;
+                }
+            }
+        }
+    }
+
+    private void flushLoop() {
+
+        List<WriteRequest> batch = new ArrayList<WriteRequest>(maxBatchSize);
+
+        while (!closed || !writeRequests.isEmpty()) {
+            try {
+                WriteRequest first = writeRequests.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                writeRequests.drainTo(batch, maxBatchSize - batch.size());
+
+                long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(lingerTime);
+                // 批次未满时在 lingerTime 内继续等待后续写操作
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    WriteRequest next = remaining > 0 ? writeRequests.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    writeRequests.drainTo(batch, maxBatchSize - batch.size());
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                if (!closed) {
+                    logger.warn("group commit flush thread interrupted.");
+                }
+                // 已取出的写操作仍需写入，否则调用方会一直等待
+                flush(batch);
+            } catch (Throwable e) {
+                logger.error("group commit flush failed.", e);
+                for (WriteRequest writeRequest : batch) {
+                    writeRequest.future.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<WriteRequest> batch) {
+
+        List<WriteRequest> creates = new ArrayList<WriteRequest>();
+        List<WriteRequest> updates = new ArrayList<WriteRequest>();
+        List<WriteRequest> deletes = new ArrayList<WriteRequest>();
+
+        for (WriteRequest writeRequest : batch) {
+            switch (writeRequest.writeType) {
+                case CREATE:
+                    creates.add(writeRequest);
+                    break;
+                case UPDATE:
+                    updates.add(writeRequest);
+                    break;
+                default:
+                    deletes.add(writeRequest);
+            }
+        }
+
+        flush(WriteType.CREATE, creates);
+        flush(WriteType.UPDATE, updates);
+        flush(WriteType.DELETE, deletes);
+    }
+
+    private void flush(WriteType writeType, List<WriteRequest> writeRequests) {
+
+        if (writeRequests.isEmpty()) {
+            return;
+        }
+
+        if (writeRequests.size() == 1) {
+            flushOne(writeRequests.get(0));
+            return;
+        }
+
+        List<Transaction> transactions = new ArrayList<Transaction>(writeRequests.size());
+        for (WriteRequest writeRequest : writeRequests) {
+            transactions.add(writeRequest.transaction);
+        }
+
+        int[] results;
+
+        try {
+            results = writeBatch(writeType, transactions);
+        } catch (Throwable e) {
+            // 批量写入整体失败（如某一条主键冲突），逐条重试，避免一条写入失败影响同批次的其他调用方
+            logger.warn(String.format("group commit batch %s of %d transactions failed, retry one by one.", writeType, transactions.size()), e);
+            for (WriteRequest writeRequest : writeRequests) {
+                flushOne(writeRequest);
+            }
+            return;
+        }
+
+        for (int i = 0; i < writeRequests.size(); i++) {
+            if (results[i] < 0) {
+                writeRequests.get(i).future.completeExceptionally(new TransactionIOException(
+                        String.format("group commit %s failed, xid:%s", writeType, transactions.get(i).getXid())));
+            } else {
+                writeRequests.get(i).future.complete(results[i]);
+            }
+        }
+    }
+
+    private void flushOne(WriteRequest writeRequest) {
+        try {
+            writeRequest.future.complete(writeOne(writeRequest.writeType, writeRequest.transaction));
+        } catch (Throwable e) {
+            writeRequest.future.completeExceptionally(e);
+        }
+    }
+
+    private int writeOne(WriteType writeType, Transaction transaction) {
+        switch (writeType) {
+            case CREATE:
+                return delegateTransactionRepository.doCreate(transaction);
+            case UPDATE:
+                return delegateTransactionRepository.doUpdate(transaction);
+            default:
+                return delegateTransactionRepository.doDelete(transaction);
+        }
+    }
+
+    private int[] writeBatch(WriteType writeType, List<Transaction> transactions) {
+        switch (writeType) {
+            case CREATE:
+                return delegateTransactionRepository.doCreates(transactions);
+            case UPDATE:
+                return delegateTransactionRepository.doUpdates(transactions);
+            default:
+                return delegateTransactionRepository.doDeletes(transactions);
+        }
+    }
+
+    @Override
+    public void close() {
+
+        closed = true;
+
+        Thread thread = flushThread;
+        if (thread != null) {
+            try {
+                // 等待队列中剩余的写操作刷完
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            List<WriteRequest> remaining = new ArrayList<WriteRequest>();
+            writeRequests.drainTo(remaining);
+            flush(remaining);
+        }
+
+        try {
+            delegateTransactionRepository.close();
+        } catch (Exception e) {
+            throw new SystemException(e);
+        }
+    }
+
+    public AbstractTransactionRepository getDelegateTransactionRepository() {
+        return delegateTransactionRepository;
+    }
+
+    public void setDelegateTransactionRepository(AbstractTransactionRepository delegateTransactionRepository) {
+        this.delegateTransactionRepository = delegateTransactionRepository;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getLingerTime() {
+        return lingerTime;
+    }
+
+    public void setLingerTime(long lingerTime) {
+        this.lingerTime = lingerTime;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    private enum WriteType {
+        CREATE, UPDATE, DELETE
+    }
+
+    private static class WriteRequest {
+
+        private final WriteType writeType;
+
+        private final Transaction transaction;
+
+        private final CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+
+        WriteRequest(WriteType writeType, Transaction transaction) {
+            this.writeType = writeType;
+            this.transaction = transaction;
+        }
+    }
+}
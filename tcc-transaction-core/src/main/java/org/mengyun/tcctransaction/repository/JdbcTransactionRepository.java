@@ -3,6 +3,8 @@ package org.mengyun.tcctransaction.repository;
 import org.apache.commons.lang3.StringUtils;
 import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
 import org.mengyun.tcctransaction.serializer.RegisterableKryoTransactionSerializer;
 import org.mengyun.tcctransaction.serializer.TransactionSerializer;
 import org.mengyun.tcctransaction.utils.CollectionUtils;
@@ -12,13 +14,18 @@ import javax.transaction.xa.Xid;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by changmingxie on 10/30/15. JDBC 事务存储器，通过 JDBC 驱动，将 Transaction 存储到 MySQL / Oracle / PostgreSQL / SQLServer 等关系数据库
  */
 public class JdbcTransactionRepository extends AbstractTransactionRepository {
+    // 批量查询时每条 SQL 最多拼接的事务数
+    private static final int MAX_FIND_BATCH_SIZE = 200;
     // 领域。或者也可以称为模块名，应用名，用于唯一标识一个资源。例如，Maven 模块 xxx-order，我们可以配置该属性为 ORDER。
     private String domain;
     // 表后缀。默认存储表名为 TCC_TRANSACTION，配置表名后，为 TCC_TRANSACTION${tbSuffix}
@@ -31,6 +38,8 @@ public class JdbcTransactionRepository extends AbstractTransactionRepository {
     private DataSource dataSource;
     // 序列化
     private TransactionSerializer serializer = new RegisterableKryoTransactionSerializer();
+    // 开启后写入 NEXT_RETRY_TIME 列，恢复任务只查询已到重试时间的事务。开启前需要先给表增加 NEXT_RETRY_TIME 列和索引
+    private boolean nextRetryTimeEnabled = false;
 
     @Override
     public String getDomain() {
@@ -70,6 +79,14 @@ public class JdbcTransactionRepository extends AbstractTransactionRepository {
         this.serializer = serializer;
     }
 
+    public boolean isNextRetryTimeEnabled() {
+        return nextRetryTimeEnabled;
+    }
+
+    public void setNextRetryTimeEnabled(boolean nextRetryTimeEnabled) {
+        this.nextRetryTimeEnabled = nextRetryTimeEnabled;
+    }
+
     public DataSource getDataSource() {
         return dataSource;
     }
@@ -86,27 +103,10 @@ public class JdbcTransactionRepository extends AbstractTransactionRepository {
 
         try {
             connection = this.getConnection();
-            // SQL
-            StringBuilder builder = new StringBuilder();
-            builder.append("INSERT INTO " + getTableName() +
-                    "(GLOBAL_TX_ID,BRANCH_QUALIFIER,TRANSACTION_TYPE,CONTENT,STATUS,RETRIED_COUNT,CREATE_TIME,LAST_UPDATE_TIME,VERSION");
-            builder.append(StringUtils.isNotEmpty(domain) ? ",DOMAIN) VALUES (?,?,?,?,?,?,?,?,?,?)" : ") VALUES (?,?,?,?,?,?,?,?,?)");
-
-            stmt = connection.prepareStatement(builder.toString());
 
-            stmt.setBytes(1, transaction.getXid().getGlobalTransactionId());
-            stmt.setBytes(2, transaction.getXid().getBranchQualifier());
-            stmt.setInt(3, transaction.getTransactionType().getId());
-            stmt.setBytes(4, serializer.serialize(transaction));
-            stmt.setInt(5, transaction.getStatus().getId());
-            stmt.setInt(6, transaction.getRetriedCount());
-            stmt.setTimestamp(7, new Timestamp(transaction.getCreateTime().getTime()));
-            stmt.setTimestamp(8, new Timestamp(transaction.getLastUpdateTime().getTime()));
-            stmt.setLong(9, transaction.getVersion());
+            stmt = connection.prepareStatement(buildInsertSql());
 
-            if (StringUtils.isNotEmpty(domain)) {
-                stmt.setString(10, domain);
-            }
+            setInsertParameters(stmt, transaction);
             // 执行
             return stmt.executeUpdate();
 
@@ -132,26 +132,9 @@ public class JdbcTransactionRepository extends AbstractTransactionRepository {
         try {
             connection = this.getConnection();
 
-            StringBuilder builder = new StringBuilder();
-            builder.append("UPDATE " + getTableName() + " SET " +
-                    "CONTENT = ?,STATUS = ?,LAST_UPDATE_TIME = ?, RETRIED_COUNT = ?,VERSION = VERSION+1 WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ? AND VERSION = ?");
+            stmt = connection.prepareStatement(buildUpdateSql());
 
-            builder.append(StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
-
-            stmt = connection.prepareStatement(builder.toString());
-
-            stmt.setBytes(1, serializer.serialize(transaction));
-            stmt.setInt(2, transaction.getStatus().getId());
-            stmt.setTimestamp(3, new Timestamp(transaction.getLastUpdateTime().getTime()));
-
-            stmt.setInt(4, transaction.getRetriedCount());
-            stmt.setBytes(5, transaction.getXid().getGlobalTransactionId());
-            stmt.setBytes(6, transaction.getXid().getBranchQualifier());
-            stmt.setLong(7, currentVersion);
-
-            if (StringUtils.isNotEmpty(domain)) {
-                stmt.setString(8, domain);
-            }
+            setUpdateParameters(stmt, transaction, currentVersion);
             // 执行
             int result = stmt.executeUpdate();
 
@@ -174,28 +157,133 @@ public class JdbcTransactionRepository extends AbstractTransactionRepository {
 
         try {
             connection = this.getConnection();
-            // SQL
-            StringBuilder builder = new StringBuilder();
-            builder.append("DELETE FROM " + getTableName() +
-                    " WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ?");
 
-            builder.append(StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
+            stmt = connection.prepareStatement(buildDeleteSql());
 
-            stmt = connection.prepareStatement(builder.toString());
+            setDeleteParameters(stmt, transaction);
+            // 执行
+            return stmt.executeUpdate();
 
-            stmt.setBytes(1, transaction.getXid().getGlobalTransactionId());
-            stmt.setBytes(2, transaction.getXid().getBranchQualifier());
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        } finally {
+            closeStatement(stmt);
+            this.releaseConnection(connection);
+        }
+    }
 
-            if (StringUtils.isNotEmpty(domain)) {
-                stmt.setString(3, domain);
+    @Override
+    protected int[] doCreates(List<Transaction> transactions) {
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+        boolean autoCommit = true;
+
+        try {
+            connection = this.getConnection();
+            autoCommit = connection.getAutoCommit();
+            // 整批在一个数据库事务内提交，只产生一次 commit 刷盘
+            connection.setAutoCommit(false);
+
+            stmt = connection.prepareStatement(buildInsertSql());
+
+            for (Transaction transaction : transactions) {
+                setInsertParameters(stmt, transaction);
+                stmt.addBatch();
             }
-            // 执行
-            return stmt.executeUpdate();
+
+            int[] results = normalizeBatchResults(stmt.executeBatch());
+            connection.commit();
+            return results;
 
         } catch (SQLException e) {
+            rollback(connection);
             throw new TransactionIOException(e);
         } finally {
             closeStatement(stmt);
+            restoreAutoCommit(connection, autoCommit);
+            this.releaseConnection(connection);
+        }
+    }
+
+    @Override
+    protected int[] doUpdates(List<Transaction> transactions) {
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+        boolean autoCommit = true;
+
+        Date[] lastUpdateTimes = new Date[transactions.size()];
+        long[] currentVersions = new long[transactions.size()];
+
+        try {
+            connection = this.getConnection();
+            autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            stmt = connection.prepareStatement(buildUpdateSql());
+
+            for (int i = 0; i < transactions.size(); i++) {
+                Transaction transaction = transactions.get(i);
+
+                lastUpdateTimes[i] = transaction.getLastUpdateTime();
+                currentVersions[i] = transaction.getVersion();
+                // 设置最后更新时间 和 最新版本号
+                transaction.setLastUpdateTime(new Date());
+                transaction.setVersion(transaction.getVersion() + 1);
+
+                setUpdateParameters(stmt, transaction, currentVersions[i]);
+                stmt.addBatch();
+            }
+
+            int[] results = normalizeBatchResults(stmt.executeBatch());
+            connection.commit();
+            return results;
+
+        } catch (Throwable e) {
+            rollback(connection);
+            // 整批回滚，恢复所有已修改的事务
+            for (int i = 0; i < transactions.size() && lastUpdateTimes[i] != null; i++) {
+                transactions.get(i).setLastUpdateTime(lastUpdateTimes[i]);
+                transactions.get(i).setVersion(currentVersions[i]);
+            }
+            throw new TransactionIOException(e);
+        } finally {
+            closeStatement(stmt);
+            restoreAutoCommit(connection, autoCommit);
+            this.releaseConnection(connection);
+        }
+    }
+
+    @Override
+    protected int[] doDeletes(List<Transaction> transactions) {
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+        boolean autoCommit = true;
+
+        try {
+            connection = this.getConnection();
+            autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            stmt = connection.prepareStatement(buildDeleteSql());
+
+            for (Transaction transaction : transactions) {
+                setDeleteParameters(stmt, transaction);
+                stmt.addBatch();
+            }
+
+            int[] results = normalizeBatchResults(stmt.executeBatch());
+            connection.commit();
+            return results;
+
+        } catch (SQLException e) {
+            rollback(connection);
+            throw new TransactionIOException(e);
+        } finally {
+            closeStatement(stmt);
+            restoreAutoCommit(connection, autoCommit);
             this.releaseConnection(connection);
         }
     }
@@ -210,6 +298,40 @@ public class JdbcTransactionRepository extends AbstractTransactionRepository {
         return doFind(getRootDomain(),getRootTableName(),xid);
     }
 
+    // 按 (GLOBAL_TX_ID, BRANCH_QUALIFIER) 条件分批查询根事务，每批一次查询
+    @Override
+    protected Map<Xid, Transaction> doFindRoots(Collection<Xid> xids) {
+        return doFindsInBatches(getRootDomain(), getRootTableName(), xids);
+    }
+
+    @Override
+    protected Map<Xid, Transaction> doFinds(Collection<Xid> xids) {
+        return doFindsInBatches(getDomain(), getTableName(), xids);
+    }
+
+    // 每条 SQL 最多查询 MAX_FIND_BATCH_SIZE 个事务
+    private Map<Xid, Transaction> doFindsInBatches(String domain, String tableName, Collection<Xid> xids) {
+
+        Map<Xid, Transaction> transactions = new HashMap<Xid, Transaction>();
+
+        List<Xid> xidList = new ArrayList<Xid>(xids);
+        // 查询结果的顺序与请求不一致，按 xid 的字符串形式对应回请求的 xid
+        Map<String, Xid> requestedXids = new HashMap<String, Xid>();
+        for (Xid xid : xidList) {
+            requestedXids.put(xid.toString(), xid);
+        }
+
+        for (int i = 0; i < xidList.size(); i += MAX_FIND_BATCH_SIZE) {
+            for (Transaction transaction : doFinds(domain, tableName, xidList.subList(i, Math.min(i + MAX_FIND_BATCH_SIZE, xidList.size())))) {
+                Xid xid = requestedXids.get(transaction.getXid().toString());
+                transactions.put(xid != null ? xid : transaction.getXid(), transaction);
+            }
+        }
+
+        return transactions;
+    }
+
+    // 按 TRANSACTION_ID 游标分页，offset 为上一页最后一条记录的 TRANSACTION_ID。每页只需从索引定位到游标处向后读取，恢复过程中删除记录也不会导致漏读
     @Override
     protected Page<Transaction> doFindAllUnmodifiedSince(Date date, String offset, int pageSize) {
 
@@ -218,31 +340,79 @@ public class JdbcTransactionRepository extends AbstractTransactionRepository {
         Connection connection = null;
         PreparedStatement stmt = null;
 
-        int currentOffset = StringUtils.isEmpty(offset) ? 0 : Integer.valueOf(offset);
+        long lastTransactionId = StringUtils.isEmpty(offset) ? 0l : Long.valueOf(offset);
 
         try {
             connection = this.getConnection();
-            // SQL
-            StringBuilder builder = new StringBuilder();
 
-            builder.append("SELECT GLOBAL_TX_ID, BRANCH_QUALIFIER, CONTENT,STATUS,TRANSACTION_TYPE,CREATE_TIME,LAST_UPDATE_TIME,RETRIED_COUNT,VERSION");
-            builder.append(StringUtils.isNotEmpty(domain) ? ",DOMAIN" : "");
-            builder.append("  FROM " + getTableName() + " WHERE LAST_UPDATE_TIME < ?");  // 最后更新时间
-            builder.append(StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
-            builder.append(" ORDER BY TRANSACTION_ID ASC");
-            builder.append(String.format(" LIMIT %s, %d", currentOffset, pageSize));
+            stmt = connection.prepareStatement(buildFindAllUnmodifiedSinceSql("GLOBAL_TX_ID, BRANCH_QUALIFIER, CONTENT,STATUS,TRANSACTION_TYPE,CREATE_TIME,LAST_UPDATE_TIME,RETRIED_COUNT,VERSION,TRANSACTION_ID", false, pageSize));
 
-            stmt = connection.prepareStatement(builder.toString());
+            setFindAllUnmodifiedSinceParameters(stmt, date, null, lastTransactionId);
+            // 执行
+            ResultSet resultSet = stmt.executeQuery();
+            // 创建 Transaction，并记录最后一条的 TRANSACTION_ID 作为下一页的游标
+            while (resultSet.next()) {
+                transactions.add(constructTransaction(resultSet));
+                lastTransactionId = resultSet.getLong(10);
+            }
+        } catch (Throwable e) {
+            throw new TransactionIOException(e);
+        } finally {
+            closeStatement(stmt);
+            this.releaseConnection(connection);
+        }
 
-            stmt.setTimestamp(1, new Timestamp(date.getTime()));
+        return new Page<Transaction>(String.valueOf(lastTransactionId), transactions);
+    }
+
+    // 只查询元数据列，不读取 CONTENT，分页方式与 doFindAllUnmodifiedSince 相同
+    @Override
+    protected Page<TransactionHeader> doFindAllHeadersUnmodifiedSince(Date date, String offset, int pageSize) {
+        return doFindAllHeaders(date, null, offset, pageSize);
+    }
+
+    // 开启 NEXT_RETRY_TIME 列后按重试时间过滤，没有重试时间的事务仍按最后更新时间过滤
+    @Override
+    protected Page<TransactionHeader> doFindAllRetryableHeaders(Date unmodifiedSince, Date retryTime, String offset, int pageSize) {
+        if (nextRetryTimeEnabled) {
+            return doFindAllHeaders(unmodifiedSince, retryTime, offset, pageSize);
+        }
+        return super.doFindAllRetryableHeaders(unmodifiedSince, retryTime, offset, pageSize);
+    }
+
+    private Page<TransactionHeader> doFindAllHeaders(Date date, Date retryTime, String offset, int pageSize) {
+
+        List<TransactionHeader> headers = new ArrayList<TransactionHeader>();
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        long lastTransactionId = StringUtils.isEmpty(offset) ? 0l : Long.valueOf(offset);
+
+        try {
+            connection = this.getConnection();
+
+            stmt = connection.prepareStatement(buildFindAllUnmodifiedSinceSql("GLOBAL_TX_ID, BRANCH_QUALIFIER,STATUS,TRANSACTION_TYPE,LAST_UPDATE_TIME,RETRIED_COUNT,VERSION,TRANSACTION_ID"
+                    + (nextRetryTimeEnabled ? ",NEXT_RETRY_TIME" : ""), retryTime != null, pageSize));
+
+            setFindAllUnmodifiedSinceParameters(stmt, date, retryTime, lastTransactionId);
 
-            if (StringUtils.isNotEmpty(domain)) {
-                stmt.setString(2, domain);
-            }
-            // 执行
             ResultSet resultSet = stmt.executeQuery();
-            // 创建 Transaction
-            this.constructTransactions(resultSet, transactions);
+
+            while (resultSet.next()) {
+                TransactionHeader header = new TransactionHeader();
+                header.setXid(new TransactionXid(resultSet.getBytes(1), resultSet.getBytes(2)));
+                header.setStatus(TransactionStatus.valueOf(resultSet.getInt(3)));
+                header.setTransactionType(TransactionType.valueOf(resultSet.getInt(4)));
+                header.setLastUpdateTime(resultSet.getTimestamp(5));
+                header.setRetriedCount(resultSet.getInt(6));
+                header.setVersion(resultSet.getLong(7));
+                if (nextRetryTimeEnabled) {
+                    header.setNextRetryTime(resultSet.getTimestamp(9));
+                }
+                headers.add(header);
+                lastTransactionId = resultSet.getLong(8);
+            }
         } catch (Throwable e) {
             throw new TransactionIOException(e);
         } finally {
@@ -250,7 +420,43 @@ public class JdbcTransactionRepository extends AbstractTransactionRepository {
             this.releaseConnection(connection);
         }
 
-        return new Page<Transaction>(String.valueOf(currentOffset + transactions.size()), transactions);
+        return new Page<TransactionHeader>(String.valueOf(lastTransactionId), headers);
+    }
+
+    private String buildFindAllUnmodifiedSinceSql(String columns, boolean retryable, int pageSize) {
+
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("SELECT " + columns);
+        builder.append(StringUtils.isNotEmpty(domain) ? ",DOMAIN" : "");
+        if (retryable) {
+            builder.append("  FROM " + getTableName() + " WHERE ((NEXT_RETRY_TIME IS NULL AND LAST_UPDATE_TIME < ?) OR NEXT_RETRY_TIME <= ?)"); // 下次重试时间
+        } else {
+            builder.append("  FROM " + getTableName() + " WHERE LAST_UPDATE_TIME < ?");  // 最后更新时间
+        }
+        builder.append(StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
+        builder.append(" AND TRANSACTION_ID > ?");
+        builder.append(" ORDER BY TRANSACTION_ID ASC");
+        builder.append(String.format(" LIMIT %d", pageSize));
+
+        return builder.toString();
+    }
+
+    private void setFindAllUnmodifiedSinceParameters(PreparedStatement stmt, Date date, Date retryTime, long lastTransactionId) throws SQLException {
+
+        int i = 0;
+
+        stmt.setTimestamp(++i, new Timestamp(date.getTime()));
+
+        if (retryTime != null) {
+            stmt.setTimestamp(++i, new Timestamp(retryTime.getTime()));
+        }
+
+        if (StringUtils.isNotEmpty(domain)) {
+            stmt.setString(++i, domain);
+        }
+
+        stmt.setLong(++i, lastTransactionId);
     }
 
     private Transaction doFind(String domain, String tableName,Xid xid) {
@@ -280,7 +486,7 @@ public class JdbcTransactionRepository extends AbstractTransactionRepository {
             StringBuilder builder = new StringBuilder();
             builder.append("SELECT GLOBAL_TX_ID, BRANCH_QUALIFIER, CONTENT,STATUS,TRANSACTION_TYPE,CREATE_TIME,LAST_UPDATE_TIME,RETRIED_COUNT,VERSION");
             builder.append(StringUtils.isNotEmpty(domain) ? ",DOMAIN" : "");
-            builder.append("  FROM " + getTableName() + " WHERE");
+            builder.append("  FROM " + tableName + " WHERE (");
 
             if (!CollectionUtils.isEmpty(xids)) {
                 for (Xid xid : xids) {
@@ -290,6 +496,8 @@ public class JdbcTransactionRepository extends AbstractTransactionRepository {
                 builder.delete(builder.length() - 2, builder.length());
             }
 
+            builder.append(")");
+
             builder.append(StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
 
             stmt = connection.prepareStatement(builder.toString());
@@ -317,18 +525,140 @@ public class JdbcTransactionRepository extends AbstractTransactionRepository {
 
         return transactions;
     }
+    private String buildInsertSql() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("INSERT INTO " + getTableName() +
+                "(GLOBAL_TX_ID,BRANCH_QUALIFIER,TRANSACTION_TYPE,CONTENT,STATUS,RETRIED_COUNT,CREATE_TIME,LAST_UPDATE_TIME,VERSION");
+        builder.append(nextRetryTimeEnabled ? ",NEXT_RETRY_TIME" : "");
+        builder.append(StringUtils.isNotEmpty(domain) ? ",DOMAIN" : "");
+        builder.append(") VALUES (?,?,?,?,?,?,?,?,?");
+        builder.append(nextRetryTimeEnabled ? ",?" : "");
+        builder.append(StringUtils.isNotEmpty(domain) ? ",?)" : ")");
+        return builder.toString();
+    }
+
+    private void setInsertParameters(PreparedStatement stmt, Transaction transaction) throws SQLException {
+        int i = 0;
+        stmt.setBytes(++i, transaction.getXid().getGlobalTransactionId());
+        stmt.setBytes(++i, transaction.getXid().getBranchQualifier());
+        stmt.setInt(++i, transaction.getTransactionType().getId());
+        stmt.setBytes(++i, serializer.serialize(transaction));
+        stmt.setInt(++i, transaction.getStatus().getId());
+        stmt.setInt(++i, transaction.getRetriedCount());
+        stmt.setTimestamp(++i, new Timestamp(transaction.getCreateTime().getTime()));
+        stmt.setTimestamp(++i, new Timestamp(transaction.getLastUpdateTime().getTime()));
+        stmt.setLong(++i, transaction.getVersion());
+
+        if (nextRetryTimeEnabled) {
+            setNextRetryTime(stmt, ++i, transaction);
+        }
+
+        if (StringUtils.isNotEmpty(domain)) {
+            stmt.setString(++i, domain);
+        }
+    }
+
+    private String buildUpdateSql() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("UPDATE " + getTableName() + " SET " +
+                "CONTENT = ?,STATUS = ?,LAST_UPDATE_TIME = ?, RETRIED_COUNT = ?,VERSION = VERSION+1");
+        builder.append(nextRetryTimeEnabled ? ",NEXT_RETRY_TIME = ?" : "");
+        builder.append(" WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ? AND VERSION = ?");
+        builder.append(StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
+        return builder.toString();
+    }
+
+    private void setUpdateParameters(PreparedStatement stmt, Transaction transaction, long currentVersion) throws SQLException {
+        int i = 0;
+        stmt.setBytes(++i, serializer.serialize(transaction));
+        stmt.setInt(++i, transaction.getStatus().getId());
+        stmt.setTimestamp(++i, new Timestamp(transaction.getLastUpdateTime().getTime()));
+        stmt.setInt(++i, transaction.getRetriedCount());
+
+        if (nextRetryTimeEnabled) {
+            setNextRetryTime(stmt, ++i, transaction);
+        }
+
+        stmt.setBytes(++i, transaction.getXid().getGlobalTransactionId());
+        stmt.setBytes(++i, transaction.getXid().getBranchQualifier());
+        stmt.setLong(++i, currentVersion);
+
+        if (StringUtils.isNotEmpty(domain)) {
+            stmt.setString(++i, domain);
+        }
+    }
+
+    private void setNextRetryTime(PreparedStatement stmt, int index, Transaction transaction) throws SQLException {
+        if (transaction.getNextRetryTime() != null) {
+            stmt.setTimestamp(index, new Timestamp(transaction.getNextRetryTime().getTime()));
+        } else {
+            stmt.setNull(index, Types.TIMESTAMP);
+        }
+    }
+
+    private String buildDeleteSql() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("DELETE FROM " + getTableName() +
+                " WHERE GLOBAL_TX_ID = ? AND BRANCH_QUALIFIER = ?");
+        builder.append(StringUtils.isNotEmpty(domain) ? " AND DOMAIN = ?" : "");
+        return builder.toString();
+    }
+
+    private void setDeleteParameters(PreparedStatement stmt, Transaction transaction) throws SQLException {
+        stmt.setBytes(1, transaction.getXid().getGlobalTransactionId());
+        stmt.setBytes(2, transaction.getXid().getBranchQualifier());
+
+        if (StringUtils.isNotEmpty(domain)) {
+            stmt.setString(3, domain);
+        }
+    }
+
+    // 部分驱动批量执行时不返回具体影响行数（SUCCESS_NO_INFO），视为执行成功
+    private int[] normalizeBatchResults(int[] results) {
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == Statement.SUCCESS_NO_INFO) {
+                results[i] = 1;
+            }
+        }
+        return results;
+    }
+
+    private void rollback(Connection connection) {
+        try {
+            if (connection != null && !connection.isClosed()) {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            // ignore, 原始异常会继续抛出
+        }
+    }
+
+    private void restoreAutoCommit(Connection connection, boolean autoCommit) {
+        try {
+            if (connection != null && !connection.isClosed()) {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
     // 创建 Transaction 集合
     private void constructTransactions(ResultSet resultSet, List<Transaction> transactions) throws SQLException {
         while (resultSet.next()) {
-            byte[] transactionBytes = resultSet.getBytes(3);
-            Transaction transaction = (Transaction) serializer.deserialize(transactionBytes);
-            transaction.setStatus(TransactionStatus.valueOf(resultSet.getInt(4)));
-            transaction.setLastUpdateTime(resultSet.getDate(7));
-            transaction.setVersion(resultSet.getLong(9));
-            transaction.setRetriedCount(resultSet.getInt(8));
-            transactions.add(transaction);
+            transactions.add(constructTransaction(resultSet));
         }
     }
+
+    private Transaction constructTransaction(ResultSet resultSet) throws SQLException {
+        byte[] transactionBytes = resultSet.getBytes(3);
+        Transaction transaction = (Transaction) serializer.deserialize(transactionBytes);
+        transaction.setStatus(TransactionStatus.valueOf(resultSet.getInt(4)));
+        transaction.setLastUpdateTime(resultSet.getDate(7));
+        transaction.setVersion(resultSet.getLong(9));
+        transaction.setRetriedCount(resultSet.getInt(8));
+        return transaction;
+    }
     // 获取 Connection
     private Connection getConnection() {
         try {
@@ -1,5 +1,6 @@
 package org.mengyun.tcctransaction.repository;
 
+import org.mengyun.tcctransaction.SystemException;
 import org.mengyun.tcctransaction.repository.helper.JedisClusterCommands;
 import org.mengyun.tcctransaction.repository.helper.RedisCommands;
 import org.mengyun.tcctransaction.repository.helper.ShardHolder;
@@ -32,6 +33,15 @@ public class JedisClusterTransactionRepository extends AbstractRedisTransactionR
         this.jedisCluster = jedisCluster;
     }
 
+    // 索引 ZSET 和事务 key 不在同一个 slot，无法在同一个 lua 脚本中更新
+    @Override
+    public void setRecoveryIndexEnabled(boolean recoveryIndexEnabled) {
+        if (recoveryIndexEnabled) {
+            throw new SystemException("recovery index is not supported by redis cluster");
+        }
+        super.setRecoveryIndexEnabled(false);
+    }
+
     class JedisClusterShardHolder implements ShardHolder<Jedis> {
 
         private static final int MASTER_NODE_INDEX = 2;
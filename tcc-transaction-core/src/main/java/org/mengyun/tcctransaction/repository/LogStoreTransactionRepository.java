@@ -0,0 +1,238 @@
+package org.mengyun.tcctransaction.repository;
+
+import org.apache.commons.lang3.StringUtils;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.repository.helper.TransactionLog;
+import org.mengyun.tcctransaction.serializer.RegisterableKryoTransactionSerializer;
+import org.mengyun.tcctransaction.serializer.TransactionSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.transaction.xa.Xid;
+import java.io.File;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地日志事务存储器，事务以追加写的方式存储在 location/domain 目录下的分段日志文件中，见 {@link TransactionLog}。
+ * <p/>
+ * 与 FileSystemTransactionRepository 每个事务一个文件、每次写入单独 fsync 相比，所有写操作顺序追加到内存映射的分段文件，
+ * 并发的写操作合并为一次 fsync；更新时用内存索引中的版本号做乐观锁校验，不需要读取文件；恢复任务直接从内存索引分页读取事务头。
+ * 后台线程定期压缩有效数据占比较低的分段。
+ * <p/>
+ * rootDomain 与 domain 不同时，以只读方式打开 location/rootDomain 目录下的日志查询根事务。
+ */
+public class LogStoreTransactionRepository extends AbstractTransactionRepository implements LocalStorable {
+
+    static final Logger log = LoggerFactory.getLogger(LogStoreTransactionRepository.class.getSimpleName());
+
+    private String domain;
+
+    private String rootDomain;
+
+    private String location = "/var/log/";
+    // 分段文件大小，单位：字节
+    private int segmentSize = 64 * 1024 * 1024;
+    // 刷盘线程每次 force 前等待的时间，单位：毫秒
+    private long flushIntervalMillis = 0;
+    // 压缩任务的执行间隔，单位：秒，小于等于 0 时不压缩
+    private int compactionInterval = 60;
+    // 有效数据占比低于该值的分段会被压缩
+    private double compactionLiveRatio = 0.5d;
+
+    private TransactionSerializer serializer = new RegisterableKryoTransactionSerializer();
+
+    private TransactionLog transactionLog;
+
+    private TransactionLog rootTransactionLog;
+
+    private ScheduledExecutorService compactionExecutor;
+
+    private volatile boolean initialized = false;
+
+    public LogStoreTransactionRepository() {
+
+    }
+
+    public void init() {
+
+        if (!initialized) {
+
+            synchronized (this) {
+
+                if (!initialized) {
+
+                    transactionLog = new TransactionLog(new File(location, domain), serializer, false);
+                    transactionLog.setSegmentSize(segmentSize);
+                    transactionLog.setFlushIntervalMillis(flushIntervalMillis);
+                    transactionLog.open();
+
+                    if (StringUtils.isEmpty(rootDomain) || rootDomain.equals(domain)) {
+                        rootTransactionLog = transactionLog;
+                    } else {
+                        rootTransactionLog = new TransactionLog(new File(location, rootDomain), serializer, true);
+                        rootTransactionLog.open();
+                    }
+
+                    if (compactionInterval > 0) {
+                        compactionExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable runnable) {
+                                Thread thread = new Thread(runnable, "tcc-log-compaction-" + domain);
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+                        compactionExecutor.scheduleWithFixedDelay(new Runnable() {
+                            @Override
+                            public void run() {
+                                compact();
+                            }
+                        }, compactionInterval, compactionInterval, TimeUnit.SECONDS);
+                    }
+
+                    initialized = true;
+                }
+            }
+        }
+    }
+
+    // 压缩有效数据占比低于 compactionLiveRatio 的分段，返回压缩的分段数
+    public int compact() {
+        try {
+            return getTransactionLog().compact(compactionLiveRatio);
+        } catch (Throwable e) {
+            log.error("compact transaction log failed, domain:" + domain, e);
+            return 0;
+        }
+    }
+
+    @Override
+    protected int doCreate(Transaction transaction) {
+        return getTransactionLog().create(Collections.singletonList(transaction))[0];
+    }
+
+    @Override
+    protected int doUpdate(Transaction transaction) {
+        return getTransactionLog().update(Collections.singletonList(transaction))[0];
+    }
+
+    @Override
+    protected int doDelete(Transaction transaction) {
+        return getTransactionLog().delete(Collections.singletonList(transaction))[0];
+    }
+
+    // 一批写操作共享一次刷盘
+    @Override
+    protected int[] doCreates(List<Transaction> transactions) {
+        return getTransactionLog().create(transactions);
+    }
+
+    @Override
+    protected int[] doUpdates(List<Transaction> transactions) {
+        return getTransactionLog().update(transactions);
+    }
+
+    @Override
+    protected int[] doDeletes(List<Transaction> transactions) {
+        return getTransactionLog().delete(transactions);
+    }
+
+    @Override
+    protected Transaction doFindOne(Xid xid) {
+        return getTransactionLog().find(xid);
+    }
+
+    @Override
+    protected Transaction doFindRootOne(Xid xid) {
+        init();
+        return rootTransactionLog.find(xid);
+    }
+
+    @Override
+    protected Page<Transaction> doFindAllUnmodifiedSince(Date date, String offset, int pageSize) {
+        return getTransactionLog().findUnmodifiedSince(date, offset, pageSize);
+    }
+
+    @Override
+    protected Page<TransactionHeader> doFindAllHeadersUnmodifiedSince(Date date, String offset, int pageSize) {
+        return getTransactionLog().findHeadersUnmodifiedSince(date, offset, pageSize);
+    }
+
+    @Override
+    public void close() {
+
+        if (compactionExecutor != null) {
+            compactionExecutor.shutdown();
+            try {
+                compactionExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (rootTransactionLog != null && rootTransactionLog != transactionLog) {
+            rootTransactionLog.close();
+        }
+
+        if (transactionLog != null) {
+            transactionLog.close();
+        }
+    }
+
+    private TransactionLog getTransactionLog() {
+        init();
+        return transactionLog;
+    }
+
+    @Override
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    @Override
+    public String getRootDomain() {
+        return rootDomain;
+    }
+
+    public void setRootDomain(String rootDomain) {
+        this.rootDomain = rootDomain;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public void setCompactionInterval(int compactionInterval) {
+        this.compactionInterval = compactionInterval;
+    }
+
+    public void setCompactionLiveRatio(double compactionLiveRatio) {
+        this.compactionLiveRatio = compactionLiveRatio;
+    }
+
+    public void setSerializer(TransactionSerializer serializer) {
+        this.serializer = serializer;
+    }
+}
@@ -89,7 +89,7 @@ public class MemoryStoreTransactionRepository extends AbstractKVStoreTransaction
     protected int doUpdate(Transaction transaction) {
         trace("update", transaction);
         Transaction foundTransaction = doFindOne(transaction.getXid());
-        if (foundTransaction.getVersion() != transaction.getVersion()) {
+        if (foundTransaction == null || foundTransaction.getVersion() != transaction.getVersion()) {
             return 0;
         }
 
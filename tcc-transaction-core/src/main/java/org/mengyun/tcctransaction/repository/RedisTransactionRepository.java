@@ -1,15 +1,23 @@
 package org.mengyun.tcctransaction.repository;
 
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.repository.helper.CommandCallback;
 import org.mengyun.tcctransaction.repository.helper.JedisCommands;
 import org.mengyun.tcctransaction.repository.helper.RedisCommands;
 import org.mengyun.tcctransaction.repository.helper.RedisHelper;
 import org.mengyun.tcctransaction.repository.helper.ShardHolder;
+import org.mengyun.tcctransaction.repository.helper.TransactionStoreSerializer;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 
+import javax.transaction.xa.Xid;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by changming.xie on 2/24/16. 单机 redis 实现
@@ -65,4 +73,110 @@ public class RedisTransactionRepository extends AbstractRedisTransactionReposito
     protected RedisCommands getRedisCommands(byte[] shardKey) {
         return new JedisCommands(jedisPool.getResource());
     }
+
+    // 单机 redis 通过一次 pipeline 读取多个根事务
+    @Override
+    protected Map<Xid, Transaction> doFindRoots(final Collection<Xid> xids) {
+        return doFinds(getRootDomain(), xids);
+    }
+
+    @Override
+    protected Map<Xid, Transaction> doFinds(Collection<Xid> xids) {
+        return doFinds(getDomain(), xids);
+    }
+
+    private Map<Xid, Transaction> doFinds(final String domain, final Collection<Xid> xids) {
+
+        List<Object> results;
+
+        try (RedisCommands commands = getRedisCommands(null)) {
+            results = commands.executePipelined(new CommandCallback<List<Object>>() {
+                @Override
+                public List<Object> execute(RedisCommands commands) {
+                    for (Xid xid : xids) {
+                        commands.hgetAll(RedisHelper.getRedisKey(domain, xid));
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            throw new TransactionIOException(e);
+        }
+
+        Map<Xid, Transaction> transactions = new HashMap<Xid, Transaction>();
+        // pipeline 的结果与请求的 xid 一一对应，结果按请求的 xid 返回
+        Iterator<Xid> xidIterator = xids.iterator();
+
+        for (Object result : results) {
+            Xid xid = xidIterator.next();
+            if (result instanceof Map && ((Map<byte[], byte[]>) result).size() > 0) {
+                transactions.put(xid, TransactionStoreSerializer.deserialize(getSerializer(), (Map<byte[], byte[]>) result));
+            } else if (result instanceof Exception) {
+                throw new TransactionIOException((Exception) result);
+            }
+        }
+
+        return transactions;
+    }
+
+    // 单机 redis 所有 key 在同一个节点上，整批 lua 脚本通过一次 pipeline 发送
+    @Override
+    protected int[] doCreates(final List<Transaction> transactions) {
+        return executeBatchPipelined(new CommandCallback<List<Object>>() {
+            @Override
+            public List<Object> execute(RedisCommands commands) {
+                for (Transaction transaction : transactions) {
+                    createByScriptCommand(commands, transaction);
+                }
+                return null;
+            }
+        }, transactions.size());
+    }
+
+    @Override
+    protected int[] doUpdates(final List<Transaction> transactions) {
+        return executeBatchPipelined(new CommandCallback<List<Object>>() {
+            @Override
+            public List<Object> execute(RedisCommands commands) {
+                for (Transaction transaction : transactions) {
+                    updateByScriptCommand(commands, transaction);
+                }
+                return null;
+            }
+        }, transactions.size());
+    }
+
+    @Override
+    protected int[] doDeletes(final List<Transaction> transactions) {
+        return executeBatchPipelined(new CommandCallback<List<Object>>() {
+            @Override
+            public List<Object> execute(RedisCommands commands) {
+                for (Transaction transaction : transactions) {
+                    deleteCommand(commands, transaction);
+                }
+                return null;
+            }
+        }, transactions.size());
+    }
+
+    private int[] executeBatchPipelined(CommandCallback<List<Object>> commandCallback, int size) {
+
+        List<Object> results;
+
+        try (RedisCommands commands = getRedisCommands(null)) {
+            results = commands.executePipelined(commandCallback);
+        } catch (Exception e) {
+            throw new TransactionIOException(e);
+        }
+
+        int[] statusCodes = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            Object result = i < results.size() ? results.get(i) : null;
+            // pipeline 中单条命令失败时返回的是异常对象，用负数标记该条写入失败
+            statusCodes[i] = result instanceof Long ? ((Long) result).intValue() : -1;
+        }
+
+        return statusCodes;
+    }
 }
@@ -1,23 +1,37 @@
 package org.mengyun.tcctransaction.repository;
 
 import com.google.common.collect.Lists;
+import com.google.common.primitives.Longs;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.repository.helper.ShardHolder;
 import org.mengyun.tcctransaction.repository.helper.ShardOffset;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.DBOptions;
+import org.rocksdb.OptimisticTransactionDB;
 import org.rocksdb.Options;
+import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
+import org.rocksdb.Status;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.transaction.xa.Xid;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class RocksDbTransactionRepository extends AbstractKVStoreTransactionRepository<RocksDB> implements LocalStorable {
@@ -27,9 +41,16 @@ public class RocksDbTransactionRepository extends AbstractKVStoreTransactionRepo
         RocksDB.loadLibrary();
     }
 
-    private Options options;
+    // 单独保存事务版本号的列族，key 与事务相同，value 为 8 字节的版本号
+    private static final byte[] VERSION_COLUMN_FAMILY = "version".getBytes();
 
-    private RocksDB db;
+    private DBOptions options;
+
+    private OptimisticTransactionDB db;
+
+    private ColumnFamilyHandle defaultHandle;
+
+    private ColumnFamilyHandle versionHandle;
 
     private Options rootOptions;
 
@@ -61,9 +82,16 @@ public class RocksDbTransactionRepository extends AbstractKVStoreTransactionRepo
                     if (options == null)
                         // the Options class contains a set of configurable DB options
                         // that determines the behaviour of the database.
-                        options = new Options().setCreateIfMissing(true).setKeepLogFileNum(1l);
+                        options = new DBOptions().setCreateIfMissing(true).setCreateMissingColumnFamilies(true).setKeepLogFileNum(1l);
                     String filePath = getPath(this.location, this.getDomain());
-                    db = RocksDB.open(options, filePath);
+
+                    List<ColumnFamilyDescriptor> descriptors = Arrays.asList(
+                            new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY),
+                            new ColumnFamilyDescriptor(VERSION_COLUMN_FAMILY));
+                    List<ColumnFamilyHandle> handles = new ArrayList<ColumnFamilyHandle>(descriptors.size());
+                    db = OptimisticTransactionDB.open(options, filePath, descriptors, handles);
+                    defaultHandle = handles.get(0);
+                    versionHandle = handles.get(1);
 
                     if(this.getRootDomain() != null) {
                         rootOptions = new Options().setCreateIfMissing(true).setKeepLogFileNum(1l);
@@ -80,44 +108,197 @@ public class RocksDbTransactionRepository extends AbstractKVStoreTransactionRepo
     @Override
     protected int doCreate(Transaction transaction) {
 
-        try {
-            db.put(transaction.getXid().toString().getBytes(), getSerializer().serialize(transaction));
+        try (WriteBatch writeBatch = new WriteBatch(); WriteOptions writeOptions = new WriteOptions()) {
+            putWithVersion(writeBatch, transaction.getXid().toString().getBytes(), transaction);
+            db.write(writeOptions, writeBatch);
             return 1;
         } catch (RocksDBException e) {
             throw new TransactionIOException(e);
         }
     }
 
+    // 只读取版本号列族做乐观锁校验，不再反序列化旧的事务；提交时如果版本号被其他线程改写则冲突失败
     @Override
     protected int doUpdate(Transaction transaction) {
 
-        try {
+        byte[] key = transaction.getXid().toString().getBytes();
 
-            Transaction foundTransaction = doFindOne(transaction.getXid());
-            if(foundTransaction.getVersion() != transaction.getVersion()) {
+        Date lastUpdateTime = transaction.getLastUpdateTime();
+        long currentVersion = transaction.getVersion();
+
+        try (WriteOptions writeOptions = new WriteOptions();
+             ReadOptions readOptions = new ReadOptions();
+             org.rocksdb.Transaction rocksTransaction = db.beginTransaction(writeOptions)) {
+
+            Long storedVersion = getVersionForUpdate(rocksTransaction, readOptions, key,
+                    rocksTransaction.getForUpdate(readOptions, versionHandle, key, true));
+            if (storedVersion == null || storedVersion != currentVersion) {
                 return 0;
             }
 
-            transaction.setVersion(transaction.getVersion() + 1);
+            transaction.setVersion(currentVersion + 1);
             transaction.setLastUpdateTime(new Date());
-            db.put(transaction.getXid().toString().getBytes(), getSerializer().serialize(transaction));
+            rocksTransaction.put(defaultHandle, key, getSerializer().serialize(transaction));
+            rocksTransaction.put(versionHandle, key, Longs.toByteArray(transaction.getVersion()));
+            rocksTransaction.commit();
             return 1;
         } catch (RocksDBException e) {
+            transaction.setLastUpdateTime(lastUpdateTime);
+            transaction.setVersion(currentVersion);
+            if (isConflict(e)) {
+                return 0;
+            }
             throw new TransactionIOException(e);
         }
     }
 
+    private void putWithVersion(WriteBatch writeBatch, byte[] key, Transaction transaction) throws RocksDBException {
+        writeBatch.put(defaultHandle, key, getSerializer().serialize(transaction));
+        writeBatch.put(versionHandle, key, Longs.toByteArray(transaction.getVersion()));
+    }
+
+    // 旧数据没有版本号记录时，读取一次事务内容取得版本号，更新后即补上版本号记录
+    private Long getVersionForUpdate(org.rocksdb.Transaction rocksTransaction, ReadOptions readOptions, byte[] key, byte[] version) throws RocksDBException {
+
+        if (ArrayUtils.isNotEmpty(version)) {
+            return Longs.fromByteArray(version);
+        }
+
+        byte[] values = rocksTransaction.getForUpdate(readOptions, defaultHandle, key, true);
+        if (ArrayUtils.isNotEmpty(values)) {
+            return getSerializer().deserialize(values).getVersion();
+        }
+        return null;
+    }
+
+    private boolean isConflict(RocksDBException e) {
+        Status status = e.getStatus();
+        return status != null && (status.getCode() == Status.Code.Busy || status.getCode() == Status.Code.TryAgain);
+    }
+
     @Override
     protected int doDelete(Transaction transaction) {
 
-        try {
-            db.delete(transaction.getXid().toString().getBytes());
+        byte[] key = transaction.getXid().toString().getBytes();
+
+        try (WriteBatch writeBatch = new WriteBatch(); WriteOptions writeOptions = new WriteOptions()) {
+            writeBatch.delete(defaultHandle, key);
+            writeBatch.delete(versionHandle, key);
+            db.write(writeOptions, writeBatch);
         } catch (RocksDBException e) {
             throw new TransactionIOException(e);
         }
         return 1;
     }
 
+    @Override
+    protected int[] doCreates(List<Transaction> transactions) {
+
+        int[] results = new int[transactions.size()];
+
+        try (WriteBatch writeBatch = new WriteBatch(); WriteOptions writeOptions = new WriteOptions()) {
+
+            for (int i = 0; i < transactions.size(); i++) {
+                Transaction transaction = transactions.get(i);
+                putWithVersion(writeBatch, transaction.getXid().toString().getBytes(), transaction);
+                results[i] = 1;
+            }
+            // 整批原子写入，只写一次 WAL
+            db.write(writeOptions, writeBatch);
+            return results;
+        } catch (RocksDBException e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
+    @Override
+    protected int[] doUpdates(List<Transaction> transactions) {
+
+        int[] results = new int[transactions.size()];
+
+        byte[][] keys = new byte[transactions.size()][];
+        for (int i = 0; i < transactions.size(); i++) {
+            keys[i] = transactions.get(i).getXid().toString().getBytes();
+        }
+
+        Date[] lastUpdateTimes = new Date[transactions.size()];
+        long[] currentVersions = new long[transactions.size()];
+
+        try (WriteOptions writeOptions = new WriteOptions();
+             ReadOptions readOptions = new ReadOptions();
+             org.rocksdb.Transaction rocksTransaction = db.beginTransaction(writeOptions)) {
+
+            byte[][] versions = rocksTransaction.multiGetForUpdate(readOptions, Collections.nCopies(keys.length, versionHandle), keys);
+            // 同一批次内同一事务可能被更新多次，以批次内最新的版本号做乐观锁校验
+            Map<String, Long> batchVersions = new HashMap<String, Long>();
+
+            for (int i = 0; i < transactions.size(); i++) {
+                Transaction transaction = transactions.get(i);
+                String key = transaction.getXid().toString();
+
+                Long storedVersion = batchVersions.get(key);
+                if (storedVersion == null) {
+                    storedVersion = getVersionForUpdate(rocksTransaction, readOptions, keys[i], versions[i]);
+                }
+
+                lastUpdateTimes[i] = transaction.getLastUpdateTime();
+                currentVersions[i] = transaction.getVersion();
+
+                if (storedVersion == null || storedVersion != transaction.getVersion()) {
+                    results[i] = 0;
+                    continue;
+                }
+
+                transaction.setVersion(transaction.getVersion() + 1);
+                transaction.setLastUpdateTime(new Date());
+                rocksTransaction.put(defaultHandle, keys[i], getSerializer().serialize(transaction));
+                rocksTransaction.put(versionHandle, keys[i], Longs.toByteArray(transaction.getVersion()));
+                batchVersions.put(key, transaction.getVersion());
+                results[i] = 1;
+            }
+
+            rocksTransaction.commit();
+            return results;
+        } catch (RocksDBException e) {
+            // 整批未写入，恢复已修改的事务
+            for (int i = 0; i < transactions.size(); i++) {
+                if (results[i] == 1) {
+                    transactions.get(i).setLastUpdateTime(lastUpdateTimes[i]);
+                    transactions.get(i).setVersion(currentVersions[i]);
+                }
+            }
+            if (isConflict(e)) {
+                // 与其他线程的写入冲突，逐个更新以得到每个事务准确的结果
+                for (int i = 0; i < transactions.size(); i++) {
+                    results[i] = doUpdate(transactions.get(i));
+                }
+                return results;
+            }
+            throw new TransactionIOException(e);
+        }
+    }
+
+    @Override
+    protected int[] doDeletes(List<Transaction> transactions) {
+
+        int[] results = new int[transactions.size()];
+
+        try (WriteBatch writeBatch = new WriteBatch(); WriteOptions writeOptions = new WriteOptions()) {
+
+            for (int i = 0; i < transactions.size(); i++) {
+                byte[] key = transactions.get(i).getXid().toString().getBytes();
+                writeBatch.delete(defaultHandle, key);
+                writeBatch.delete(versionHandle, key);
+                results[i] = 1;
+            }
+
+            db.write(writeOptions, writeBatch);
+            return results;
+        } catch (RocksDBException e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
     @Override
     protected Transaction doFindOne(Xid xid) {
         return doFind(db,xid);
@@ -128,6 +309,43 @@ public class RocksDbTransactionRepository extends AbstractKVStoreTransactionRepo
         return doFind(rootDb,xid);
     }
 
+    // 通过 multiGet 一次读取多个根事务
+    @Override
+    protected Map<Xid, Transaction> doFindRoots(Collection<Xid> xids) {
+        return multiGet(rootDb, xids);
+    }
+
+    @Override
+    protected Map<Xid, Transaction> doFinds(Collection<Xid> xids) {
+        return multiGet(db, xids);
+    }
+
+    // 结果按请求的 xid 返回，multiGetAsList 的结果与 keys 一一对应
+    private Map<Xid, Transaction> multiGet(RocksDB rocksDB, Collection<Xid> xids) {
+
+        List<Xid> requestedXids = new ArrayList<Xid>(xids);
+        List<byte[]> keys = new ArrayList<byte[]>(requestedXids.size());
+        for (Xid xid : requestedXids) {
+            keys.add(xid.toString().getBytes());
+        }
+
+        Map<Xid, Transaction> transactions = new HashMap<Xid, Transaction>();
+
+        try {
+            List<byte[]> values = rocksDB.multiGetAsList(keys);
+
+            for (int i = 0; i < values.size(); i++) {
+                if (ArrayUtils.isNotEmpty(values.get(i))) {
+                    transactions.put(requestedXids.get(i), getSerializer().deserialize(values.get(i)));
+                }
+            }
+        } catch (RocksDBException e) {
+            throw new TransactionIOException(e);
+        }
+
+        return transactions;
+    }
+
     @Override
     Page<byte[]> findKeysFromOneShard(RocksDB shard, String currentCursor, int maxFindCount) {
 
@@ -204,6 +422,15 @@ public class RocksDbTransactionRepository extends AbstractKVStoreTransactionRepo
 
     public void close() {
 
+        // 列族句柄需要先于 db 关闭
+        if (versionHandle != null) {
+            versionHandle.close();
+        }
+
+        if (defaultHandle != null) {
+            defaultHandle.close();
+        }
+
         if (db != null) {
             db.close();
         }
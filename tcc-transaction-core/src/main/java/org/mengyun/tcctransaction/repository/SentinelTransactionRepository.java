@@ -3,9 +3,13 @@ package org.mengyun.tcctransaction.repository;
 import org.mengyun.tcctransaction.SystemException;
 import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.ha.SentinelController;
+import org.mengyun.tcctransaction.recovery.RetryBackoff;
 
 import javax.transaction.xa.Xid;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 public class SentinelTransactionRepository extends AbstractTransactionRepository {
 
@@ -63,6 +67,36 @@ public class SentinelTransactionRepository extends AbstractTransactionRepository
         }
     }
 
+    @Override
+    protected int[] doCreates(List<Transaction> transactions) {
+
+        if (!sentinelController.degrade()) {
+            return workTransactionRepository.doCreates(transactions);
+        } else {
+            return degradedTransactionRepository.doCreates(transactions);
+        }
+    }
+
+    @Override
+    protected int[] doUpdates(List<Transaction> transactions) {
+
+        if (!sentinelController.degrade()) {
+            return workTransactionRepository.doUpdates(transactions);
+        } else {
+            return degradedTransactionRepository.doUpdates(transactions);
+        }
+    }
+
+    @Override
+    protected int[] doDeletes(List<Transaction> transactions) {
+
+        if (!sentinelController.degrade()) {
+            return workTransactionRepository.doDeletes(transactions);
+        } else {
+            return degradedTransactionRepository.doDeletes(transactions);
+        }
+    }
+
     @Override
     protected Transaction doFindOne(Xid xid) {
         if (!sentinelController.degrade()) {
@@ -81,6 +115,24 @@ public class SentinelTransactionRepository extends AbstractTransactionRepository
         }
     }
 
+    @Override
+    protected Map<Xid, Transaction> doFinds(Collection<Xid> xids) {
+        if (!sentinelController.degrade()) {
+            return workTransactionRepository.doFinds(xids);
+        } else {
+            return degradedTransactionRepository.doFinds(xids);
+        }
+    }
+
+    @Override
+    protected Map<Xid, Transaction> doFindRoots(Collection<Xid> xids) {
+        if (!sentinelController.degrade()) {
+            return workTransactionRepository.doFindRoots(xids);
+        } else {
+            return degradedTransactionRepository.doFindRoots(xids);
+        }
+    }
+
     @Override
     protected Page<Transaction> doFindAllUnmodifiedSince(Date date, String offset, int pageSize) {
 
@@ -91,6 +143,38 @@ public class SentinelTransactionRepository extends AbstractTransactionRepository
         }
     }
 
+    @Override
+    protected Page<TransactionHeader> doFindAllHeadersUnmodifiedSince(Date date, String offset, int pageSize) {
+
+        if (!sentinelController.degrade()) {
+            return workTransactionRepository.doFindAllHeadersUnmodifiedSince(date, offset, pageSize);
+        } else {
+            return degradedTransactionRepository.doFindAllHeadersUnmodifiedSince(date, offset, pageSize);
+        }
+    }
+
+    @Override
+    protected Page<TransactionHeader> doFindAllRetryableHeaders(Date unmodifiedSince, Date retryTime, String offset, int pageSize) {
+
+        if (!sentinelController.degrade()) {
+            return workTransactionRepository.doFindAllRetryableHeaders(unmodifiedSince, retryTime, offset, pageSize);
+        } else {
+            return degradedTransactionRepository.doFindAllRetryableHeaders(unmodifiedSince, retryTime, offset, pageSize);
+        }
+    }
+
+    // 恢复任务直接查询 work 和 degraded 存储器，两者使用同一策略
+    @Override
+    public void setRetryBackoff(RetryBackoff retryBackoff) {
+        super.setRetryBackoff(retryBackoff);
+        if (workTransactionRepository != null) {
+            workTransactionRepository.setRetryBackoff(retryBackoff);
+        }
+        if (degradedTransactionRepository != null) {
+            degradedTransactionRepository.setRetryBackoff(retryBackoff);
+        }
+    }
+
     public SentinelController getSentinelController() {
         return sentinelController;
     }
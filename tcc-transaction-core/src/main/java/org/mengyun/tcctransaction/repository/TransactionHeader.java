@@ -0,0 +1,99 @@
+package org.mengyun.tcctransaction.repository;
+
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+
+import java.util.Date;
+
+/**
+ * 事务头信息，只包含事务存储时的元数据列，不包含需要反序列化的 CONTENT。
+ * 恢复任务先按页查询事务头，只对需要恢复的事务再加载完整的 Transaction。
+ */
+public class TransactionHeader {
+
+    private TransactionXid xid; // 事务编号
+
+    private TransactionStatus status; // 事务状态
+
+    private TransactionType transactionType; // 事务类型
+
+    private int retriedCount; // 重试次数
+
+    private Date lastUpdateTime; // 最后更新时间
+
+    private Date nextRetryTime; // 下次允许恢复重试的时间，存储器没有单独存储时为 null
+
+    private long version; // 版本号
+
+    public TransactionHeader() {
+
+    }
+
+    public TransactionHeader(Transaction transaction) {
+        this.xid = (TransactionXid) transaction.getXid();
+        this.status = transaction.getStatus();
+        this.transactionType = transaction.getTransactionType();
+        this.retriedCount = transaction.getRetriedCount();
+        this.lastUpdateTime = transaction.getLastUpdateTime();
+        this.nextRetryTime = transaction.getNextRetryTime();
+        this.version = transaction.getVersion();
+    }
+
+    public TransactionXid getXid() {
+        return xid;
+    }
+
+    public void setXid(TransactionXid xid) {
+        this.xid = xid;
+    }
+
+    public TransactionStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(TransactionStatus status) {
+        this.status = status;
+    }
+
+    public TransactionType getTransactionType() {
+        return transactionType;
+    }
+
+    public void setTransactionType(TransactionType transactionType) {
+        this.transactionType = transactionType;
+    }
+
+    public int getRetriedCount() {
+        return retriedCount;
+    }
+
+    public void setRetriedCount(int retriedCount) {
+        this.retriedCount = retriedCount;
+    }
+
+    public Date getLastUpdateTime() {
+        return lastUpdateTime;
+    }
+
+    public void setLastUpdateTime(Date lastUpdateTime) {
+        this.lastUpdateTime = lastUpdateTime;
+    }
+
+    public Date getNextRetryTime() {
+        return nextRetryTime;
+    }
+
+    public void setNextRetryTime(Date nextRetryTime) {
+        this.nextRetryTime = nextRetryTime;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+}
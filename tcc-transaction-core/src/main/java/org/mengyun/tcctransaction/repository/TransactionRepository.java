@@ -1,10 +1,15 @@
 package org.mengyun.tcctransaction.repository;
 
 import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionOptimisticLockException;
 
 import javax.transaction.xa.Xid;
 import java.io.Closeable;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by changmingxie on 11/12/15.
@@ -22,10 +27,67 @@ public interface TransactionRepository extends Closeable {
     int delete(Transaction transaction);
     // 获取事务
     Transaction findByXid(Xid xid);
+    // 批量新增事务，返回值与 transactions 一一对应，负数表示该条写入失败。默认逐个新增
+    default int[] createAll(List<Transaction> transactions) {
+        int[] results = new int[transactions.size()];
+        for (int i = 0; i < transactions.size(); i++) {
+            results[i] = create(transactions.get(i));
+        }
+        return results;
+    }
+    // 批量更新事务，每个事务单独做乐观锁校验，返回值与 transactions 一一对应，不大于 0 表示该事务版本冲突或已被删除，不抛出 TransactionOptimisticLockException
+    default int[] updateAll(List<Transaction> transactions) {
+        int[] results = new int[transactions.size()];
+        for (int i = 0; i < transactions.size(); i++) {
+            try {
+                results[i] = update(transactions.get(i));
+            } catch (TransactionOptimisticLockException e) {
+                results[i] = 0;
+            }
+        }
+        return results;
+    }
+    // 批量删除事务，返回值与 transactions 一一对应。默认逐个删除
+    default int[] deleteAll(List<Transaction> transactions) {
+        int[] results = new int[transactions.size()];
+        for (int i = 0; i < transactions.size(); i++) {
+            results[i] = delete(transactions.get(i));
+        }
+        return results;
+    }
+    // 批量获取事务，返回按 xid 索引的事务，不存在的事务不在结果中。默认逐个获取
+    default Map<Xid, Transaction> findByXids(Collection<Xid> xids) {
+        Map<Xid, Transaction> transactions = new HashMap<Xid, Transaction>();
+        for (Xid xid : xids) {
+            Transaction transaction = findByXid(xid);
+            if (transaction != null) {
+                transactions.put(xid, transaction);
+            }
+        }
+        return transactions;
+    }
 
     Transaction findByRootXid(Xid xid);
+    // 批量获取根事务，返回按 xid 索引的根事务，不存在的根事务不在结果中。默认逐个获取
+    default Map<Xid, Transaction> findByRootXids(Collection<Xid> xids) {
+        Map<Xid, Transaction> transactions = new HashMap<Xid, Transaction>();
+        for (Xid xid : xids) {
+            Transaction transaction = findByRootXid(xid);
+            if (transaction != null) {
+                transactions.put(xid, transaction);
+            }
+        }
+        return transactions;
+    }
     // 获取超过指定时间的事务集合
     Page<Transaction> findAllUnmodifiedSince(Date date, String offset, int pageSize);
+    // 获取超过指定时间的事务头集合，只读取元数据不反序列化 CONTENT，offset 与 findAllUnmodifiedSince 的格式相同
+    Page<TransactionHeader> findAllHeadersUnmodifiedSince(Date date, String offset, int pageSize);
+    // 获取已到重试时间的事务头集合：设置了 nextRetryTime 的事务要求不晚于 retryTime，没有设置的事务要求最后更新时间早于 unmodifiedSince。
+    // 不能按 nextRetryTime 查询的存储器返回 findAllHeadersUnmodifiedSince 的结果，由恢复任务按事务头再次判断
+    default Page<TransactionHeader> findAllRetryableHeaders(Date unmodifiedSince, Date retryTime, String offset, int pageSize) {
+        return findAllHeadersUnmodifiedSince(unmodifiedSince, offset, pageSize);
+    }
 
     @Override
     default void close() {
@@ -0,0 +1,171 @@
+package org.mengyun.tcctransaction.repository.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 事务日志的一个分段文件，文件创建时预分配为固定大小并整体映射到内存，记录只追加不修改。
+ * <p/>
+ * 文件名为 20 位的分段编号，编号递增，重建索引和压缩时按编号顺序处理。
+ * 写入由 TransactionLog 的写锁保护，读取使用 duplicate 出来的 buffer，不需要加锁。
+ */
+public class LogSegment {
+
+    static final String FILE_SUFFIX = ".log";
+
+    private final long id;
+
+    private final File file;
+
+    private final RandomAccessFile raf;
+
+    private final MappedByteBuffer buffer;
+
+    private final int capacity;
+    // 下一条记录的写入位置，也是已写入数据的长度
+    private volatile int writePosition;
+    // 仍被索引引用的记录字节数，由 TransactionLog 在写锁内维护
+    private long liveBytes;
+    // 有未刷盘的写入
+    private boolean dirty;
+
+    private LogSegment(long id, File file, RandomAccessFile raf, MappedByteBuffer buffer, int capacity) {
+        this.id = id;
+        this.file = file;
+        this.raf = raf;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    static LogSegment create(File directory, long id, int capacity) throws IOException {
+
+        File file = new File(directory, fileName(id));
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(capacity);
+            return new LogSegment(id, file, raf, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity), capacity);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    static LogSegment open(File file, boolean readOnly) throws IOException {
+
+        RandomAccessFile raf = new RandomAccessFile(file, readOnly ? "r" : "rw");
+        try {
+            int capacity = (int) raf.length();
+            MappedByteBuffer buffer = raf.getChannel().map(readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, 0, capacity);
+            return new LogSegment(parseId(file.getName()), file, raf, buffer, capacity);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    static boolean isSegmentFile(String fileName) {
+        return fileName.endsWith(FILE_SUFFIX) && fileName.length() == 20 + FILE_SUFFIX.length();
+    }
+
+    static long parseId(String fileName) {
+        return Long.parseLong(fileName.substring(0, fileName.length() - FILE_SUFFIX.length()));
+    }
+
+    static String fileName(long id) {
+        return String.format("%020d%s", id, FILE_SUFFIX);
+    }
+
+    long getId() {
+        return id;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    void setWritePosition(int writePosition) {
+        this.writePosition = writePosition;
+    }
+
+    int remaining() {
+        return capacity - writePosition;
+    }
+
+    long getLiveBytes() {
+        return liveBytes;
+    }
+
+    void addLiveBytes(long delta) {
+        this.liveBytes += delta;
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    void setDirty(boolean dirty) {
+        this.dirty = dirty;
+    }
+
+    // 在 writePosition 处追加一条完整的记录，返回记录的起始位置
+    int append(byte[] record, int offset, int length) {
+
+        int position = writePosition;
+
+        ByteBuffer target = ((ByteBuffer) buffer).duplicate();
+        ((Buffer) target).position(position);
+        target.put(record, offset, length);
+
+        writePosition = position + length;
+        dirty = true;
+        return position;
+    }
+
+    // 返回 [position, position + length) 的只读视图
+    ByteBuffer slice(int position, int length) {
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        ((Buffer) view).limit(position + length);
+        ((Buffer) view).position(position);
+        return view.slice();
+    }
+
+    // 从 position 开始清零到文件末尾，去掉上次崩溃时写了一半的记录
+    void clear(int position) {
+        ByteBuffer target = ((ByteBuffer) buffer).duplicate();
+        ((Buffer) target).position(position);
+        byte[] zeros = new byte[Math.min(64 * 1024, capacity - position)];
+        while (target.hasRemaining()) {
+            target.put(zeros, 0, Math.min(zeros.length, target.remaining()));
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    // 映射的内存由 GC 回收，正在读取的线程不受影响
+    void close() throws IOException {
+        raf.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        if (file.exists() && !file.delete()) {
+            throw new IOException("cannot delete log segment:" + file.getAbsolutePath());
+        }
+    }
+}
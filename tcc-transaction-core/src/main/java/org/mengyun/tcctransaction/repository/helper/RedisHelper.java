@@ -20,6 +20,8 @@ public class RedisHelper {
     public static String SCAN_TEST_PATTERN = "*";
 
     public static String REDIS_SCAN_INIT_CURSOR = ShardOffset.SCAN_INIT_CURSOR;
+    // 恢复索引 key 前缀，不以 domain 开头，避免被 SCAN domain* 扫描到
+    public static String RECOVERY_INDEX_KEY_PREFIX = "TCC_RECOVERY_INDEX:";
     // 创建事务的 Redis Key
     public static byte[] getRedisKey(String keyPrefix, Xid xid) {
         return new StringBuilder().append(keyPrefix).append(xid.toString()).toString().getBytes();
@@ -34,6 +36,11 @@ public class RedisHelper {
                 .getBytes();
     }
 
+    // 恢复索引的 Redis Key，每个 domain 一个 ZSET
+    public static byte[] getRecoveryIndexKey(String keyPrefix) {
+        return new StringBuilder().append(RECOVERY_INDEX_KEY_PREFIX).append(keyPrefix).toString().getBytes();
+    }
+
     public static <T> T execute(JedisPool jedisPool, JedisCallback<T> callback) {
         try (Jedis jedis = jedisPool.getResource()) { // jedis pool 获取连接
             return callback.doInJedis(jedis); // 将 jedis 传入到 callback 函数
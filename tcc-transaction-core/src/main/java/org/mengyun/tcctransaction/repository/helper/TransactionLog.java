@@ -0,0 +1,1145 @@
+package org.mengyun.tcctransaction.repository.helper;
+
+import org.apache.commons.lang3.StringUtils;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.repository.Page;
+import org.mengyun.tcctransaction.repository.TransactionHeader;
+import org.mengyun.tcctransaction.repository.TransactionIOException;
+import org.mengyun.tcctransaction.serializer.TransactionSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.transaction.xa.Xid;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * 分段追加写的事务日志。
+ * <p/>
+ * 每次新增、更新、删除都在当前分段末尾追加一条记录，内存中维护 xid -> 最新记录位置 的索引，索引中同时保存事务头，
+ * 恢复任务分页查询事务头时不需要读取文件。写入先复制到内存映射的分段中，再由刷盘线程统一 force，
+ * 同一次 force 期间到达的写操作共享下一次 force（组提交），写操作在其记录刷盘后才返回。
+ * 追加的记录在刷盘成功后才更新到索引，查询只能看到已经持久化的版本；刷盘失败时丢弃这些未发布的变更。
+ * <p/>
+ * 记录格式：crc(4) + bodyLength(4) + body，crc 为 body 的 CRC32。
+ * body：type(1) + globalTransactionId 长度(2) + globalTransactionId + branchQualifier 长度(2) + branchQualifier，
+ * PUT 记录再加上 version(8) + lastUpdateTime(8) + status(4) + transactionType(4) + retriedCount(4) + CONTENT。
+ * <p/>
+ * 打开时按分段编号顺序扫描所有记录重建索引，遇到长度为 0 或 crc 不一致的记录即认为该分段的数据到此结束。
+ * 已写满的分段中有效数据占比较低时由 compact 把仍有效的记录复制到当前分段末尾，然后删除整个分段文件。
+ * <p/>
+ * 只读模式用于读取其他应用（rootDomain）的事务日志，每次查询前增量读取新追加的记录，不加文件锁、不写入。
+ */
+public class TransactionLog implements Closeable {
+
+    static final Logger log = LoggerFactory.getLogger(TransactionLog.class.getSimpleName());
+
+    private static final byte PUT = 1;
+
+    private static final byte DELETE = 2;
+    // crc(4) + bodyLength(4)
+    private static final int RECORD_HEADER_LENGTH = 8;
+    // version(8) + lastUpdateTime(8) + status(4) + transactionType(4) + retriedCount(4)
+    private static final int PUT_METADATA_LENGTH = 28;
+
+    private static final String LOCK_FILE_NAME = "LOCK";
+
+    private static final String OFFSET_DELIMITER = ":";
+    // 按 globalTransactionId、branchQualifier 的字节序排序，恢复任务以最后一个 xid 作为分页的 offset
+    private static final Comparator<Xid> XID_COMPARATOR = new Comparator<Xid>() {
+        @Override
+        public int compare(Xid o1, Xid o2) {
+            int result = compareBytes(o1.getGlobalTransactionId(), o2.getGlobalTransactionId());
+            return result != 0 ? result : compareBytes(o1.getBranchQualifier(), o2.getBranchQualifier());
+        }
+    };
+
+    private final File directory;
+
+    private final TransactionSerializer serializer;
+
+    private final boolean readOnly;
+    // 分段文件大小，单条记录超过该大小时单独创建一个足够大的分段
+    private int segmentSize = 64 * 1024 * 1024;
+    // 刷盘线程每次 force 前等待的时间，用于凑更多的写操作，单位：毫秒，0 表示有写入时立即刷盘
+    private long flushIntervalMillis = 0;
+
+    private final ConcurrentSkipListMap<Xid, IndexEntry> index = new ConcurrentSkipListMap<Xid, IndexEntry>(XID_COMPARATOR);
+
+    private final ConcurrentSkipListMap<Long, LogSegment> segments = new ConcurrentSkipListMap<Long, LogSegment>();
+    // 已追加但还未刷盘的索引变更，按追加顺序排列，写锁保护
+    private final ArrayDeque<PendingEntry> pendingEntries = new ArrayDeque<PendingEntry>();
+    // xid -> 该 xid 最新的未刷盘变更，写入方据此做版本号校验，写锁保护
+    private final Map<Xid, PendingEntry> latestPendingEntries = new TreeMap<Xid, PendingEntry>(XID_COMPARATOR);
+    // 保护追加写、索引变更、分段的 liveBytes 和 dirty 标记
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private LogSegment activeSegment;
+    // 已追加的记录序号，写锁内递增
+    private long appendSequence;
+
+    private final Object flushMonitor = new Object();
+
+    private long requestedSequence;
+
+    private long flushedSequence;
+
+    private long failedSequence;
+
+    private Throwable flushFailure;
+
+    private Thread flushThread;
+
+    private FileLock directoryLock;
+
+    private volatile boolean closed;
+
+    public TransactionLog(File directory, TransactionSerializer serializer, boolean readOnly) {
+        this.directory = directory;
+        this.serializer = serializer;
+        this.readOnly = readOnly;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public void open() {
+
+        try {
+            if (!readOnly) {
+
+                if (!directory.exists() && !directory.mkdirs()) {
+                    throw new TransactionIOException("cannot create log directory:" + directory.getAbsolutePath());
+                }
+
+                FileChannel lockChannel = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw").getChannel();
+                try {
+                    directoryLock = lockChannel.tryLock();
+                } catch (OverlappingFileLockException e) {
+                    directoryLock = null;
+                }
+
+                if (directoryLock == null) {
+                    lockChannel.close();
+                    throw new TransactionIOException("log directory is used by another transaction log:" + directory.getAbsolutePath());
+                }
+            }
+
+            load();
+
+        } catch (IOException e) {
+            throw new TransactionIOException(e);
+        }
+
+        if (!readOnly) {
+            flushThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    flushLoop();
+                }
+            }, "tcc-log-flush-" + directory.getName());
+            flushThread.setDaemon(true);
+            flushThread.start();
+        }
+    }
+
+    // 新增事务，已存在的 xid 返回 0
+    public int[] create(List<Transaction> transactions) {
+
+        List<LogRecord> records = new ArrayList<LogRecord>(transactions.size());
+        for (Transaction transaction : transactions) {
+            records.add(encodePut(transaction));
+        }
+
+        int[] results = new int[transactions.size()];
+        long sequence = 0;
+
+        writeLock.lock();
+        try {
+            ensureWritable();
+
+            for (int i = 0; i < transactions.size(); i++) {
+
+                Xid xid = transactions.get(i).getXid();
+
+                if (getLatestEntry(xid) != null) {
+                    continue;
+                }
+
+                sequence = appendPut(records.get(i));
+                results[i] = 1;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        awaitFlush(sequence);
+        return results;
+    }
+
+    // 更新事务，索引中的版本号与传入的版本号一致时追加新版本的记录，不需要读取文件
+    public int[] update(List<Transaction> transactions) {
+
+        long[] versions = new long[transactions.size()];
+        Date[] lastUpdateTimes = new Date[transactions.size()];
+        List<LogRecord> records = new ArrayList<LogRecord>(transactions.size());
+
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction transaction = transactions.get(i);
+            versions[i] = transaction.getVersion();
+            lastUpdateTimes[i] = transaction.getLastUpdateTime();
+
+            transaction.setVersion(transaction.getVersion() + 1);
+            transaction.setLastUpdateTime(new Date());
+            records.add(encodePut(transaction));
+        }
+
+        int[] results = new int[transactions.size()];
+        long sequence = 0;
+
+        writeLock.lock();
+        try {
+            ensureWritable();
+
+            for (int i = 0; i < transactions.size(); i++) {
+
+                IndexEntry entry = getLatestEntry(transactions.get(i).getXid());
+
+                if (entry == null || entry.version != versions[i]) {
+                    continue;
+                }
+
+                sequence = appendPut(records.get(i));
+                results[i] = 1;
+            }
+        } finally {
+            writeLock.unlock();
+
+            for (int i = 0; i < transactions.size(); i++) {
+                if (results[i] <= 0) {
+                    transactions.get(i).setVersion(versions[i]);
+                    transactions.get(i).setLastUpdateTime(lastUpdateTimes[i]);
+                }
+            }
+        }
+
+        awaitFlush(sequence);
+        return results;
+    }
+
+    // 删除事务，追加一条删除记录，不存在的 xid 返回 0
+    public int[] delete(List<Transaction> transactions) {
+
+        int[] results = new int[transactions.size()];
+        long sequence = 0;
+
+        writeLock.lock();
+        try {
+            ensureWritable();
+
+            for (int i = 0; i < transactions.size(); i++) {
+
+                Xid xid = transactions.get(i).getXid();
+
+                if (getLatestEntry(xid) == null) {
+                    continue;
+                }
+
+                sequence = append(encodeDelete(xid));
+                addPendingEntry(sequence, xid, null);
+                results[i] = 1;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        awaitFlush(sequence);
+        return results;
+    }
+
+    public Transaction find(Xid xid) {
+
+        if (readOnly) {
+            refresh();
+        }
+
+        // 读取期间记录可能被压缩移动到新的分段，分段不存在时重新查询索引
+        for (int i = 0; i < 3; i++) {
+
+            IndexEntry entry = index.get(xid);
+            if (entry == null) {
+                return null;
+            }
+
+            Transaction transaction = read(entry);
+            if (transaction != null) {
+                return transaction;
+            }
+        }
+
+        writeLock.lock();
+        try {
+            IndexEntry entry = index.get(xid);
+            return entry == null ? null : read(entry);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /*
+     * 按 xid 顺序扫描索引，返回 lastUpdateTime 早于 date 的事务头，offset 为上一页最后扫描到的 xid。
+     * 事务头全部在内存中，一直扫描到凑满 pageSize 或者扫描完索引为止
+     * */
+    public Page<TransactionHeader> findHeadersUnmodifiedSince(Date date, String offset, int pageSize) {
+
+        if (readOnly) {
+            refresh();
+        }
+
+        List<TransactionHeader> headers = new ArrayList<TransactionHeader>();
+
+        String nextOffset = offset;
+
+        for (Map.Entry<Xid, IndexEntry> entry : tailIndex(offset).entrySet()) {
+
+            nextOffset = encodeOffset(entry.getKey());
+
+            if (entry.getValue().lastUpdateTime < date.getTime()) {
+                headers.add(entry.getValue().toHeader((TransactionXid) entry.getKey()));
+
+                if (headers.size() >= pageSize) {
+                    break;
+                }
+            }
+        }
+
+        return new Page<TransactionHeader>(nextOffset, headers);
+    }
+
+    public Page<Transaction> findUnmodifiedSince(Date date, String offset, int pageSize) {
+
+        Page<TransactionHeader> page = findHeadersUnmodifiedSince(date, offset, pageSize);
+
+        List<Transaction> transactions = new ArrayList<Transaction>(page.getData().size());
+        for (TransactionHeader header : page.getData()) {
+            Transaction transaction = find(header.getXid());
+            if (transaction != null) {
+                transactions.add(transaction);
+            }
+        }
+
+        return new Page<Transaction>(page.getNextOffset(), transactions);
+    }
+
+    /*
+     * 压缩有效数据占比低于 liveRatio 的已写满分段：仍被索引引用的记录复制到当前分段末尾，刷盘后删除整个分段文件。
+     * 最老的分段中的删除记录直接丢弃；其他分段中的删除记录如果 xid 没有被重新创建，需要复制到末尾，避免重建索引时更老分段中的记录复活。
+     * 由单个后台线程调用，返回压缩的分段数
+     * */
+    public int compact(double liveRatio) {
+
+        if (readOnly) {
+            return 0;
+        }
+
+        List<LogSegment> candidates = new ArrayList<LogSegment>();
+
+        writeLock.lock();
+        try {
+            for (LogSegment segment : segments.values()) {
+                if (segment != activeSegment && segment.getLiveBytes() < segment.getWritePosition() * liveRatio) {
+                    candidates.add(segment);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        int compactedCount = 0;
+
+        for (LogSegment segment : candidates) {
+
+            if (closed) {
+                break;
+            }
+
+            compact(segment);
+            compactedCount++;
+        }
+
+        return compactedCount;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public void close() {
+
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        synchronized (flushMonitor) {
+            flushMonitor.notifyAll();
+        }
+
+        if (flushThread != null) {
+            try {
+                flushThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        writeLock.lock();
+        try {
+            for (LogSegment segment : segments.values()) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    log.warn("close log segment failed, file:" + segment.getFile().getAbsolutePath(), e);
+                }
+            }
+
+            if (directoryLock != null) {
+                directoryLock.release();
+                directoryLock.channel().close();
+            }
+        } catch (IOException e) {
+            log.warn("release log directory lock failed", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // 按分段编号顺序扫描所有分段重建索引，最后一个分段作为当前写入的分段
+    private void load() throws IOException {
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        List<File> segmentFiles = new ArrayList<File>();
+        for (File file : files) {
+            if (LogSegment.isSegmentFile(file.getName())) {
+                segmentFiles.add(file);
+            }
+        }
+
+        segmentFiles.sort(new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(LogSegment.parseId(o1.getName()), LogSegment.parseId(o2.getName()));
+            }
+        });
+
+        writeLock.lock();
+        try {
+            for (int i = 0; i < segmentFiles.size(); i++) {
+
+                LogSegment segment = LogSegment.open(segmentFiles.get(i), readOnly);
+                segments.put(segment.getId(), segment);
+
+                loadSegment(segment, 0, !readOnly && i == segmentFiles.size() - 1);
+            }
+
+            if (!readOnly && !segments.isEmpty()) {
+                activeSegment = segments.lastEntry().getValue();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // 从 position 开始读取分段中的记录并更新索引，repair 为 true 时清除末尾写了一半的记录
+    private void loadSegment(final LogSegment segment, int position, boolean repair) {
+
+        ScanResult result = scan(segment, position, segment.getCapacity(), new RecordVisitor() {
+            @Override
+            public void visit(LogRecord record, int recordPosition) {
+                if (record.type == PUT) {
+                    IndexEntry previous = index.put(record.xid, new IndexEntry(record, segment.getId(), recordPosition));
+                    if (previous != null) {
+                        releaseLiveBytes(previous);
+                    }
+                    segment.addLiveBytes(record.length);
+                } else {
+                    IndexEntry previous = index.remove(record.xid);
+                    if (previous != null) {
+                        releaseLiveBytes(previous);
+                    }
+                }
+            }
+        });
+
+        segment.setWritePosition(result.position);
+
+        if (!result.clean) {
+            if (repair) {
+                log.warn(String.format("found incomplete record at %d of log segment %s, clear it", result.position, segment.getFile().getAbsolutePath()));
+                segment.clear(result.position);
+                segment.force();
+            } else if (!readOnly) {
+                log.warn(String.format("found broken record at %d of log segment %s, ignore the rest", result.position, segment.getFile().getAbsolutePath()));
+            }
+        }
+    }
+
+    // 只读模式下增量读取其他应用新追加的记录，分段被压缩删除后重新加载全部分段
+    private synchronized void refresh() {
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Set<Long> segmentIds = new HashSet<Long>();
+        for (File file : files) {
+            if (LogSegment.isSegmentFile(file.getName())) {
+                segmentIds.add(LogSegment.parseId(file.getName()));
+            }
+        }
+
+        try {
+            writeLock.lock();
+            try {
+                if (!segmentIds.containsAll(segments.keySet())) {
+
+                    for (LogSegment segment : segments.values()) {
+                        segment.close();
+                    }
+                    segments.clear();
+                    index.clear();
+
+                    load();
+                    return;
+                }
+
+                for (Long segmentId : new TreeSet<Long>(segmentIds)) {
+
+                    LogSegment segment = segments.get(segmentId);
+
+                    if (segment == null) {
+                        segment = LogSegment.open(new File(directory, LogSegment.fileName(segmentId)), true);
+                        segments.put(segmentId, segment);
+                    } else if (segment.getFile().length() > segment.getCapacity()) {
+                        // 打开时对方还没有完成预分配，重新映射
+                        LogSegment reopened = LogSegment.open(segment.getFile(), true);
+                        reopened.setWritePosition(segment.getWritePosition());
+                        reopened.addLiveBytes(segment.getLiveBytes());
+                        segment.close();
+                        segments.put(segmentId, reopened);
+                        segment = reopened;
+                    }
+
+                    loadSegment(segment, segment.getWritePosition(), false);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        } catch (IOException e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
+    private void compact(final LogSegment segment) {
+
+        final boolean oldest = segments.firstKey() == segment.getId();
+
+        final long[] sequence = new long[1];
+        final long[] movedBytes = new long[1];
+
+        scan(segment, 0, segment.getWritePosition(), new RecordVisitor() {
+            @Override
+            public void visit(LogRecord record, int recordPosition) {
+
+                writeLock.lock();
+                try {
+                    ensureWritable();
+
+                    if (record.type == PUT) {
+
+                        IndexEntry entry = getLatestEntry(record.xid);
+
+                        if (entry != null && entry.segmentId == segment.getId() && entry.position == recordPosition) {
+                            record.bytes = copyRecord(segment, recordPosition, record.length);
+                            sequence[0] = appendPut(record);
+                            movedBytes[0] += record.length;
+                        }
+
+                    } else if (!oldest && getLatestEntry(record.xid) == null) {
+                        sequence[0] = append(copyRecord(segment, recordPosition, record.length));
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        });
+
+        // 复制的记录刷盘后才能删除原分段
+        awaitFlush(sequence[0]);
+
+        writeLock.lock();
+        try {
+            segments.remove(segment.getId());
+        } finally {
+            writeLock.unlock();
+        }
+
+        try {
+            segment.delete();
+        } catch (IOException e) {
+            log.warn("delete log segment failed, file:" + segment.getFile().getAbsolutePath(), e);
+        }
+
+        log.info(String.format("compacted log segment %s, %d live bytes moved", segment.getFile().getName(), movedBytes[0]));
+    }
+
+    // 追加 PUT 记录，索引变更在刷盘后发布，调用方持有写锁
+    private long appendPut(LogRecord record) {
+
+        long sequence = append(record.bytes);
+
+        addPendingEntry(sequence, record.xid, new IndexEntry(record, activeSegment.getId(), activeSegment.getWritePosition() - record.length));
+
+        return sequence;
+    }
+
+    // 写入方看到的最新版本，包括还未刷盘的变更，调用方持有写锁
+    private IndexEntry getLatestEntry(Xid xid) {
+        PendingEntry pending = latestPendingEntries.get(xid);
+        return pending != null ? pending.entry : index.get(xid);
+    }
+
+    private void addPendingEntry(long sequence, Xid xid, IndexEntry entry) {
+        PendingEntry pending = new PendingEntry(sequence, xid, entry);
+        pendingEntries.addLast(pending);
+        latestPendingEntries.put(xid, pending);
+    }
+
+    // sequence 及之前的记录已经刷盘，把对应的变更更新到索引，调用方持有写锁
+    private void publishPendingEntries(long sequence) {
+
+        while (!pendingEntries.isEmpty() && pendingEntries.peekFirst().sequence <= sequence) {
+
+            PendingEntry pending = removeFirstPendingEntry();
+
+            IndexEntry previous = pending.entry == null ? index.remove(pending.xid) : index.put(pending.xid, pending.entry);
+            if (previous != null) {
+                releaseLiveBytes(previous);
+            }
+
+            if (pending.entry != null) {
+                LogSegment segment = segments.get(pending.entry.segmentId);
+                if (segment != null) {
+                    segment.addLiveBytes(pending.entry.length);
+                }
+            }
+        }
+    }
+
+    // sequence 及之前的记录刷盘失败，丢弃对应的变更，写入方重新以已持久化的版本做校验，调用方持有写锁
+    private void discardPendingEntries(long sequence) {
+        while (!pendingEntries.isEmpty() && pendingEntries.peekFirst().sequence <= sequence) {
+            removeFirstPendingEntry();
+        }
+    }
+
+    private PendingEntry removeFirstPendingEntry() {
+
+        PendingEntry pending = pendingEntries.pollFirst();
+
+        if (latestPendingEntries.get(pending.xid) == pending) {
+            latestPendingEntries.remove(pending.xid);
+        }
+
+        return pending;
+    }
+
+    // 追加一条记录，当前分段剩余空间不足时切换到新的分段，调用方持有写锁
+    private long append(byte[] record) {
+
+        if (activeSegment == null || activeSegment.remaining() < record.length) {
+            rollSegment(record.length);
+        }
+
+        activeSegment.append(record, 0, record.length);
+        return ++appendSequence;
+    }
+
+    private void rollSegment(int minCapacity) {
+
+        long segmentId = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+
+        try {
+            LogSegment segment = LogSegment.create(directory, segmentId, Math.max(segmentSize, minCapacity));
+            // 新分段的目录项也需要落盘
+            syncDirectory();
+
+            segments.put(segmentId, segment);
+            activeSegment = segment;
+        } catch (IOException e) {
+            throw new TransactionIOException(e);
+        }
+    }
+
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // 部分平台不支持对目录 fsync
+            log.debug("sync log directory failed", e);
+        }
+    }
+
+    private void releaseLiveBytes(IndexEntry entry) {
+        LogSegment segment = segments.get(entry.segmentId);
+        if (segment != null) {
+            segment.addLiveBytes(-entry.length);
+        }
+    }
+
+    private void ensureWritable() {
+        if (readOnly) {
+            throw new TransactionIOException("transaction log is read only:" + directory.getAbsolutePath());
+        }
+        if (closed) {
+            throw new TransactionIOException("transaction log is closed:" + directory.getAbsolutePath());
+        }
+    }
+
+    private Transaction read(IndexEntry entry) {
+
+        LogSegment segment = segments.get(entry.segmentId);
+        if (segment == null) {
+            return null;
+        }
+
+        return serializer.deserialize(segment.slice(entry.position + entry.contentOffset, entry.length - entry.contentOffset));
+    }
+
+    // 等待 sequence 及之前追加的记录刷盘
+    private void awaitFlush(long sequence) {
+
+        if (sequence <= 0) {
+            return;
+        }
+
+        synchronized (flushMonitor) {
+
+            if (sequence > requestedSequence) {
+                requestedSequence = sequence;
+                flushMonitor.notifyAll();
+            }
+
+            while (flushedSequence < sequence) {
+
+                if (failedSequence >= sequence) {
+                    throw new TransactionIOException(flushFailure);
+                }
+
+                if (closed && !flushThread.isAlive()) {
+                    throw new TransactionIOException("transaction log is closed:" + directory.getAbsolutePath());
+                }
+
+                try {
+                    flushMonitor.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new TransactionIOException(e);
+                }
+            }
+        }
+    }
+
+    private void flushLoop() {
+
+        while (!closed) {
+
+            try {
+                synchronized (flushMonitor) {
+                    while (requestedSequence <= flushedSequence && !closed) {
+                        flushMonitor.wait();
+                    }
+                }
+
+                if (flushIntervalMillis > 0 && !closed) {
+                    Thread.sleep(flushIntervalMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            flush();
+        }
+
+        flush();
+    }
+
+    // 一次 force 所有有新写入的分段，期间追加的记录由下一次 force 处理
+    private void flush() {
+
+        List<LogSegment> dirtySegments = new ArrayList<LogSegment>();
+        long sequence;
+
+        writeLock.lock();
+        try {
+            sequence = appendSequence;
+            for (LogSegment segment : segments.values()) {
+                if (segment.isDirty()) {
+                    segment.setDirty(false);
+                    dirtySegments.add(segment);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        try {
+            for (LogSegment segment : dirtySegments) {
+                segment.force();
+            }
+
+            // 先发布索引再唤醒写入方，写操作返回后即可读到自己写入的版本
+            writeLock.lock();
+            try {
+                publishPendingEntries(sequence);
+            } finally {
+                writeLock.unlock();
+            }
+
+            synchronized (flushMonitor) {
+                flushedSequence = Math.max(flushedSequence, sequence);
+                flushMonitor.notifyAll();
+            }
+        } catch (Throwable e) {
+
+            log.error("flush transaction log failed", e);
+
+            writeLock.lock();
+            try {
+                for (LogSegment segment : dirtySegments) {
+                    segment.setDirty(true);
+                }
+                discardPendingEntries(sequence);
+            } finally {
+                writeLock.unlock();
+            }
+
+            synchronized (flushMonitor) {
+                failedSequence = Math.max(failedSequence, sequence);
+                flushFailure = e;
+                flushMonitor.notifyAll();
+            }
+        }
+    }
+
+    private NavigableMap<Xid, IndexEntry> tailIndex(String offset) {
+
+        if (StringUtils.isEmpty(offset) || !offset.contains(OFFSET_DELIMITER)) {
+            return index;
+        }
+
+        String[] parts = offset.split(OFFSET_DELIMITER);
+        Base64.Decoder decoder = Base64.getUrlDecoder();
+
+        return index.tailMap(new TransactionXid(decoder.decode(parts[0]), decoder.decode(parts[1])), false);
+    }
+
+    private String encodeOffset(Xid xid) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(xid.getGlobalTransactionId()) + OFFSET_DELIMITER + encoder.encodeToString(xid.getBranchQualifier());
+    }
+
+    private LogRecord encodePut(Transaction transaction) {
+
+        LogRecord record = new LogRecord();
+        record.type = PUT;
+        record.xid = (TransactionXid) transaction.getXid();
+        record.version = transaction.getVersion();
+        record.lastUpdateTime = transaction.getLastUpdateTime().getTime();
+        record.status = transaction.getStatus().getId();
+        record.transactionType = transaction.getTransactionType().getId();
+        record.retriedCount = transaction.getRetriedCount();
+
+        byte[] content = serializer.serialize(transaction);
+
+        ByteBuffer buffer = allocateRecord(PUT, record.xid, PUT_METADATA_LENGTH + content.length);
+
+        buffer.putLong(record.version);
+        buffer.putLong(record.lastUpdateTime);
+        buffer.putInt(record.status);
+        buffer.putInt(record.transactionType);
+        buffer.putInt(record.retriedCount);
+        record.contentOffset = buffer.position();
+        buffer.put(content);
+
+        record.bytes = sealRecord(buffer);
+        record.length = record.bytes.length;
+        return record;
+    }
+
+    private byte[] encodeDelete(Xid xid) {
+        return sealRecord(allocateRecord(DELETE, xid, 0));
+    }
+
+    private ByteBuffer allocateRecord(byte type, Xid xid, int extraLength) {
+
+        byte[] globalTransactionId = xid.getGlobalTransactionId();
+        byte[] branchQualifier = xid.getBranchQualifier();
+
+        int bodyLength = 1 + 2 + globalTransactionId.length + 2 + branchQualifier.length + extraLength;
+
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_LENGTH + bodyLength);
+        buffer.putInt(0);
+        buffer.putInt(bodyLength);
+        buffer.put(type);
+        buffer.putShort((short) globalTransactionId.length);
+        buffer.put(globalTransactionId);
+        buffer.putShort((short) branchQualifier.length);
+        buffer.put(branchQualifier);
+        return buffer;
+    }
+
+    private byte[] sealRecord(ByteBuffer buffer) {
+
+        byte[] record = buffer.array();
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(record, RECORD_HEADER_LENGTH, record.length - RECORD_HEADER_LENGTH);
+        buffer.putInt(0, (int) crc32.getValue());
+
+        return record;
+    }
+
+    private byte[] copyRecord(LogSegment segment, int position, int length) {
+        byte[] record = new byte[length];
+        segment.slice(position, length).get(record);
+        return record;
+    }
+
+    // 校验并解析 buffer 中 [position, limit) 范围内的一条记录，数据不完整时返回 null
+    private static LogRecord decode(ByteBuffer buffer, int position, int limit) {
+
+        if (position + RECORD_HEADER_LENGTH > limit) {
+            return null;
+        }
+
+        int crc = buffer.getInt(position);
+        int bodyLength = buffer.getInt(position + 4);
+
+        if (bodyLength <= 0 || position + RECORD_HEADER_LENGTH + bodyLength > limit) {
+            return null;
+        }
+
+        ByteBuffer body = buffer.duplicate();
+        ((Buffer) body).limit(position + RECORD_HEADER_LENGTH + bodyLength);
+        ((Buffer) body).position(position + RECORD_HEADER_LENGTH);
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(body.duplicate());
+        if ((int) crc32.getValue() != crc) {
+            return null;
+        }
+
+        LogRecord record = new LogRecord();
+        record.length = RECORD_HEADER_LENGTH + bodyLength;
+        record.type = body.get();
+
+        byte[] globalTransactionId = new byte[body.getShort()];
+        body.get(globalTransactionId);
+        byte[] branchQualifier = new byte[body.getShort()];
+        body.get(branchQualifier);
+        record.xid = new TransactionXid(globalTransactionId, branchQualifier);
+
+        if (record.type == PUT) {
+            record.version = body.getLong();
+            record.lastUpdateTime = body.getLong();
+            record.status = body.getInt();
+            record.transactionType = body.getInt();
+            record.retriedCount = body.getInt();
+        }
+
+        record.contentOffset = body.position() - position;
+        return record;
+    }
+
+    // 顺序读取 [position, limit) 范围内的记录，返回有效数据的结束位置
+    private ScanResult scan(LogSegment segment, int position, int limit, RecordVisitor visitor) {
+
+        ByteBuffer buffer = segment.slice(0, limit);
+
+        int current = position;
+
+        while (true) {
+
+            if (current + RECORD_HEADER_LENGTH > limit) {
+                return new ScanResult(current, true);
+            }
+
+            if (buffer.getInt(current) == 0 && buffer.getInt(current + 4) == 0) {
+                return new ScanResult(current, true);
+            }
+
+            LogRecord record = decode(buffer, current, limit);
+            if (record == null) {
+                return new ScanResult(current, false);
+            }
+
+            visitor.visit(record, current);
+            current += record.length;
+        }
+    }
+
+    private static int compareBytes(byte[] left, byte[] right) {
+
+        int length = Math.min(left.length, right.length);
+
+        for (int i = 0; i < length; i++) {
+            int result = (left[i] & 0xff) - (right[i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+
+        return left.length - right.length;
+    }
+
+    private interface RecordVisitor {
+        void visit(LogRecord record, int position);
+    }
+
+    private static class ScanResult {
+
+        private final int position;
+        // 是否正常读到数据末尾，false 表示遇到了不完整的记录
+        private final boolean clean;
+
+        ScanResult(int position, boolean clean) {
+            this.position = position;
+            this.clean = clean;
+        }
+    }
+
+    private static class LogRecord {
+        // 待追加的完整记录，从分段中读取时为 null
+        private byte[] bytes;
+
+        private byte type;
+
+        private TransactionXid xid;
+
+        private int length;
+        // CONTENT 相对记录起始位置的偏移
+        private int contentOffset;
+
+        private long version;
+
+        private long lastUpdateTime;
+
+        private int status;
+
+        private int transactionType;
+
+        private int retriedCount;
+    }
+
+    // 索引项，记录事务最新一条 PUT 记录的位置和事务头
+    // 还未刷盘的索引变更，entry 为 null 表示删除
+    private static class PendingEntry {
+
+        private final long sequence;
+
+        private final Xid xid;
+
+        private final IndexEntry entry;
+
+        PendingEntry(long sequence, Xid xid, IndexEntry entry) {
+            this.sequence = sequence;
+            this.xid = xid;
+            this.entry = entry;
+        }
+    }
+
+    private static class IndexEntry {
+
+        private final long segmentId;
+
+        private final int position;
+
+        private final int length;
+
+        private final int contentOffset;
+
+        private final long version;
+
+        private final long lastUpdateTime;
+
+        private final int status;
+
+        private final int transactionType;
+
+        private final int retriedCount;
+
+        IndexEntry(LogRecord record, long segmentId, int position) {
+            this.segmentId = segmentId;
+            this.position = position;
+            this.length = record.length;
+            this.contentOffset = record.contentOffset;
+            this.version = record.version;
+            this.lastUpdateTime = record.lastUpdateTime;
+            this.status = record.status;
+            this.transactionType = record.transactionType;
+            this.retriedCount = record.retriedCount;
+        }
+
+        TransactionHeader toHeader(TransactionXid xid) {
+
+            TransactionHeader header = new TransactionHeader();
+            header.setXid(xid);
+            header.setStatus(TransactionStatus.valueOf(status));
+            header.setTransactionType(TransactionType.valueOf(transactionType));
+            header.setRetriedCount(retriedCount);
+            header.setLastUpdateTime(new Date(lastUpdateTime));
+            header.setVersion(version);
+            return header;
+        }
+    }
+}
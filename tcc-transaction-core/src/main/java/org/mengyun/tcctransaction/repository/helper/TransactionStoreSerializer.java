@@ -6,57 +6,235 @@ import org.apache.commons.lang3.time.DateUtils;
 import org.mengyun.tcctransaction.SystemException;
 import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.repository.TransactionHeader;
 import org.mengyun.tcctransaction.serializer.TransactionSerializer;
 import org.mengyun.tcctransaction.utils.ByteUtils;
 
+import java.nio.ByteBuffer;
 import java.text.ParseException;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Created by changming.xie on 9/15/16.
+ * <p/>
+ * 支持两种存储格式，读取时自动识别：
+ * 普通格式每个元数据单独一个字段，时间格式化为字符串，并写入 JSON 格式的 CONTENT_VIEW；
+ * 紧凑格式把 STATUS、TRANSACTION_TYPE、RETRIED_COUNT、CREATE_TIME、LAST_UPDATE_TIME 打包为定长二进制的 HEADER 字段，CONTENT_VIEW 可选。
+ * GLOBAL_TX_ID、BRANCH_QUALIFIER、VERSION 在两种格式中保持不变，lua 脚本的乐观锁仍然比较 VERSION 字段。
+ * NEXT_RETRY_TIME 在两种格式中都是单独的字段，没有设置时写入 0。
+ * <p/>
+ * 紧凑格式的记录中如果存在单独的 STATUS、RETRIED_COUNT 字段（控制台修改），以单独的字段为准，下次以紧凑格式更新时这些字段会被删除。
  */
 public class TransactionStoreSerializer {
+
+    public static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
+    // 紧凑格式 HEADER 字段的版本号
+    private static final byte COMPACT_HEADER_VERSION = 1;
+    // version(1) + status(4) + transactionType(4) + retriedCount(4) + createTime(8) + lastUpdateTime(8)
+    private static final int COMPACT_HEADER_LENGTH = 29;
+    // 事务头字段，恢复任务只读取这些字段，不读取 CONTENT 和 CONTENT_VIEW
+    private static final byte[][] HEADER_FIELDS = new byte[][]{
+            "GLOBAL_TX_ID".getBytes(),
+            "BRANCH_QUALIFIER".getBytes(),
+            "STATUS".getBytes(),
+            "TRANSACTION_TYPE".getBytes(),
+            "RETRIED_COUNT".getBytes(),
+            "LAST_UPDATE_TIME".getBytes(),
+            "VERSION".getBytes(),
+            "HEADER".getBytes(),
+            "NEXT_RETRY_TIME".getBytes()};
+    // 普通格式中被紧凑格式 HEADER 替代的字段
+    private static final String[] EXPANDED_HEADER_FIELDS = new String[]{
+            "STATUS",
+            "TRANSACTION_TYPE",
+            "RETRIED_COUNT",
+            "CREATE_TIME",
+            "LAST_UPDATE_TIME"};
+
     // 序列化成 map，value 是每个字段的值
     public static Map<byte[], byte[]> serialize(TransactionSerializer serializer, Transaction transaction) {
+        return serialize(serializer, transaction, false, true);
+    }
+
+    public static Map<byte[], byte[]> serialize(TransactionSerializer serializer, Transaction transaction, boolean compact, boolean contentView) {
 
         Map<byte[], byte[]> map = new HashMap<byte[], byte[]>();
 
         map.put("GLOBAL_TX_ID".getBytes(), transaction.getXid().getGlobalTransactionId());
         map.put("BRANCH_QUALIFIER".getBytes(), transaction.getXid().getBranchQualifier());
-        map.put("STATUS".getBytes(), ByteUtils.intToBytes(transaction.getStatus().getId()));
-        map.put("TRANSACTION_TYPE".getBytes(), ByteUtils.intToBytes(transaction.getTransactionType().getId()));
-        map.put("RETRIED_COUNT".getBytes(), ByteUtils.intToBytes(transaction.getRetriedCount()));
-        map.put("CREATE_TIME".getBytes(), DateFormatUtils.format(transaction.getCreateTime(), "yyyy-MM-dd HH:mm:ss").getBytes());
-        map.put("LAST_UPDATE_TIME".getBytes(), DateFormatUtils.format(transaction.getLastUpdateTime(), "yyyy-MM-dd HH:mm:ss").getBytes());
+
+        if (compact) {
+            map.put("HEADER".getBytes(), serializeHeader(transaction));
+        } else {
+            map.put("STATUS".getBytes(), ByteUtils.intToBytes(transaction.getStatus().getId()));
+            map.put("TRANSACTION_TYPE".getBytes(), ByteUtils.intToBytes(transaction.getTransactionType().getId()));
+            map.put("RETRIED_COUNT".getBytes(), ByteUtils.intToBytes(transaction.getRetriedCount()));
+            map.put("CREATE_TIME".getBytes(), DateFormatUtils.format(transaction.getCreateTime(), DATE_FORMAT).getBytes());
+            map.put("LAST_UPDATE_TIME".getBytes(), DateFormatUtils.format(transaction.getLastUpdateTime(), DATE_FORMAT).getBytes());
+        }
+
         map.put("VERSION".getBytes(), ByteUtils.longToBytes(transaction.getVersion()));
+        map.put("NEXT_RETRY_TIME".getBytes(), ByteUtils.longToBytes(transaction.getNextRetryTime() == null ? 0l : transaction.getNextRetryTime().getTime()));
         map.put("CONTENT".getBytes(), serializer.serialize(transaction));
-        map.put("CONTENT_VIEW".getBytes(), JSON.toJSONString(transaction).getBytes());
+
+        if (contentView) {
+            map.put("CONTENT_VIEW".getBytes(), JSON.toJSONString(transaction).getBytes());
+        }
         return map;
     }
 
     public static Transaction deserialize(TransactionSerializer serializer, Map<byte[], byte[]> map1) {
 
+        Map<String, byte[]> propertyMap = toPropertyMap(map1);
+
+        byte[] content = propertyMap.get("CONTENT");
+        Transaction transaction = serializer.deserialize(content);
+
+        ByteBuffer header = getCompactHeader(propertyMap.get("HEADER"));
+
+        if (header != null) {
+            transaction.setStatus(TransactionStatus.valueOf(header.getInt(1)));
+            transaction.setRetriedCount(header.getInt(9));
+            transaction.setLastUpdateTime(new Date(header.getLong(21)));
+        } else {
+            transaction.setLastUpdateTime(parseDate(propertyMap.get("LAST_UPDATE_TIME")));
+        }
+        // 单独的字段优先，兼容普通格式和控制台对紧凑格式记录的修改
+        if (propertyMap.get("STATUS") != null) {
+            transaction.setStatus(TransactionStatus.valueOf(ByteUtils.bytesToInt(propertyMap.get("STATUS"))));
+        }
+
+        if (propertyMap.get("RETRIED_COUNT") != null) {
+            transaction.setRetriedCount(ByteUtils.bytesToInt(propertyMap.get("RETRIED_COUNT")));
+        }
+
+        transaction.setVersion(ByteUtils.bytesToLong(propertyMap.get("VERSION")));
+        return transaction;
+    }
+
+    /*
+     * 转换成普通格式的字段，值与普通格式相同（时间为格式化后的字符串），供控制台等直接读取 redis hash 的场景使用。
+     * 紧凑格式且没有写入 CONTENT_VIEW 时，返回结果中没有 CONTENT_VIEW
+     * */
+    public static Map<String, byte[]> toExpandedProperties(Map<byte[], byte[]> map1) {
+
+        Map<String, byte[]> propertyMap = toPropertyMap(map1);
+
+        ByteBuffer header = getCompactHeader(propertyMap.remove("HEADER"));
+
+        if (header != null) {
+            putIfAbsent(propertyMap, "STATUS", ByteUtils.intToBytes(header.getInt(1)));
+            putIfAbsent(propertyMap, "TRANSACTION_TYPE", ByteUtils.intToBytes(header.getInt(5)));
+            putIfAbsent(propertyMap, "RETRIED_COUNT", ByteUtils.intToBytes(header.getInt(9)));
+            putIfAbsent(propertyMap, "CREATE_TIME", DateFormatUtils.format(header.getLong(13), DATE_FORMAT).getBytes());
+            putIfAbsent(propertyMap, "LAST_UPDATE_TIME", DateFormatUtils.format(header.getLong(21), DATE_FORMAT).getBytes());
+        }
+
+        return propertyMap;
+    }
+
+    public static byte[][] getHeaderFields() {
+        return HEADER_FIELDS.clone();
+    }
+
+    // 紧凑格式更新时需要删除的普通格式字段，已有记录在下一次更新时转换为紧凑格式
+    public static String[] getExpandedHeaderFields() {
+        return EXPANDED_HEADER_FIELDS.clone();
+    }
+
+    // 按 getHeaderFields() 的顺序反序列化事务头，key 已不存在时返回 null
+    public static TransactionHeader deserializeHeader(List<byte[]> values) {
+
+        if (values == null || values.size() != HEADER_FIELDS.length || values.get(0) == null) {
+            return null;
+        }
+
+        TransactionHeader header = new TransactionHeader();
+        header.setXid(new TransactionXid(values.get(0), values.get(1)));
+
+        ByteBuffer compactHeader = getCompactHeader(values.get(7));
+
+        if (compactHeader != null) {
+            header.setStatus(TransactionStatus.valueOf(compactHeader.getInt(1)));
+            header.setTransactionType(TransactionType.valueOf(compactHeader.getInt(5)));
+            header.setRetriedCount(compactHeader.getInt(9));
+            header.setLastUpdateTime(new Date(compactHeader.getLong(21)));
+        } else {
+            header.setTransactionType(TransactionType.valueOf(ByteUtils.bytesToInt(values.get(3))));
+            header.setLastUpdateTime(parseDate(values.get(5)));
+        }
+
+        if (values.get(2) != null) {
+            header.setStatus(TransactionStatus.valueOf(ByteUtils.bytesToInt(values.get(2))));
+        }
+
+        if (values.get(4) != null) {
+            header.setRetriedCount(ByteUtils.bytesToInt(values.get(4)));
+        }
+
+        header.setVersion(ByteUtils.bytesToLong(values.get(6)));
+
+        if (values.get(8) != null) {
+            long nextRetryTime = ByteUtils.bytesToLong(values.get(8));
+            header.setNextRetryTime(nextRetryTime > 0 ? new Date(nextRetryTime) : null);
+        }
+        return header;
+    }
+
+    private static byte[] serializeHeader(Transaction transaction) {
+
+        ByteBuffer buffer = ByteBuffer.allocate(COMPACT_HEADER_LENGTH);
+
+        buffer.put(COMPACT_HEADER_VERSION);
+        buffer.putInt(transaction.getStatus().getId());
+        buffer.putInt(transaction.getTransactionType().getId());
+        buffer.putInt(transaction.getRetriedCount());
+        buffer.putLong(transaction.getCreateTime().getTime());
+        buffer.putLong(transaction.getLastUpdateTime().getTime());
+
+        return buffer.array();
+    }
+
+    private static ByteBuffer getCompactHeader(byte[] bytes) {
+
+        if (bytes == null) {
+            return null;
+        }
+
+        if (bytes.length != COMPACT_HEADER_LENGTH || bytes[0] != COMPACT_HEADER_VERSION) {
+            throw new SystemException("unsupported transaction header, length:" + bytes.length);
+        }
+
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static Map<String, byte[]> toPropertyMap(Map<byte[], byte[]> map1) {
+
         Map<String, byte[]> propertyMap = new HashMap<String, byte[]>();
 
         for (Map.Entry<byte[], byte[]> entry : map1.entrySet()) {
             propertyMap.put(new String(entry.getKey()), entry.getValue());
         }
 
-        byte[] content = propertyMap.get("CONTENT");
-        Transaction transaction = serializer.deserialize(content);
-        transaction.setStatus(TransactionStatus.valueOf(ByteUtils.bytesToInt(propertyMap.get("STATUS"))));
-        transaction.setRetriedCount(ByteUtils.bytesToInt(propertyMap.get("RETRIED_COUNT")));
+        return propertyMap;
+    }
 
+    private static void putIfAbsent(Map<String, byte[]> propertyMap, String field, byte[] value) {
+        if (propertyMap.get(field) == null) {
+            propertyMap.put(field, value);
+        }
+    }
+
+    private static Date parseDate(byte[] bytes) {
         try {
-            transaction.setLastUpdateTime(DateUtils.parseDate(new String(propertyMap.get("LAST_UPDATE_TIME")), "yyyy-MM-dd HH:mm:ss"));
+            return DateUtils.parseDate(new String(bytes), DATE_FORMAT);
         } catch (ParseException e) {
             throw new SystemException(e);
         }
-
-        transaction.setVersion(ByteUtils.bytesToLong(propertyMap.get("VERSION")));
-        return transaction;
     }
-
-
 }
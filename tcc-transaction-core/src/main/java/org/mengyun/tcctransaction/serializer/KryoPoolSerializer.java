@@ -1,14 +1,21 @@
 package org.mengyun.tcctransaction.serializer;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
 import com.esotericsoftware.kryo.util.Pool;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.objenesis.strategy.StdInstantiatorStrategy;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -21,7 +28,14 @@ public class KryoPoolSerializer<T> implements ObjectSerializer<T> {
 
     protected int initPoolSize = DEFAULT_MAX_POOL_SIZE;
 
-    Pool<Kryo> kryoPool = null;
+    // 每个缓冲区的初始大小
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+    // 超过该大小的缓冲区在归还时丢弃，避免池中长期持有个别大事务的缓冲区
+    public static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    Pool<KryoHolder> kryoPool = null;
 
     public KryoPoolSerializer() {
         init();
@@ -35,9 +49,9 @@ public class KryoPoolSerializer<T> implements ObjectSerializer<T> {
 
     protected void init() {
 
-        kryoPool = new Pool<Kryo>(true,true,initPoolSize) {
+        kryoPool = new Pool<KryoHolder>(true,true,initPoolSize) {
             @Override
-            protected Kryo create() {
+            protected KryoHolder create() {
                 Kryo kryo = new Kryo();
                 kryo.setReferences(true);
                 kryo.setRegistrationRequired(false);
@@ -48,16 +62,16 @@ public class KryoPoolSerializer<T> implements ObjectSerializer<T> {
 
 
                 initHook(kryo);
-                return kryo;
+                return new KryoHolder(kryo);
             }
         };
 
-        List<Kryo> preCreatedKryos = new ArrayList<>();
+        List<KryoHolder> preCreatedKryos = new ArrayList<>();
         for (int i = 0; i < initPoolSize; i++) {
             preCreatedKryos.add(kryoPool.obtain());
         }
 
-        for (Kryo kryo : preCreatedKryos) {
+        for (KryoHolder kryo : preCreatedKryos) {
             kryoPool.free(kryo);
         }
     }
@@ -65,53 +79,125 @@ public class KryoPoolSerializer<T> implements ObjectSerializer<T> {
     @Override
     public byte[] serialize(final T object) {
 
-        Kryo kryo = kryoPool.obtain();
+        KryoHolder holder = kryoPool.obtain();
         try {
 
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            Output output = new Output(byteArrayOutputStream);
+            Output output = holder.output;
+            output.reset();
 
-            kryo.writeClassAndObject(output, object);
-            output.flush();
+            holder.kryo.writeClassAndObject(output, object);
+
+            return output.toBytes();
+
+        } finally {
+            release(holder);
+        }
+    }
+
+    // 通过池中的缓冲区分段写入 outputStream，不生成完整的 byte[]
+    @Override
+    public void serialize(final T object, OutputStream outputStream) throws IOException {
 
-            return byteArrayOutputStream.toByteArray();
+        KryoHolder holder = kryoPool.obtain();
+        try {
+
+            Output output = holder.output;
+            output.setOutputStream(outputStream);
+
+            holder.kryo.writeClassAndObject(output, object);
+            output.flush();
 
+        } catch (KryoException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
         } finally {
-            if(kryo != null) {
-                kryoPool.free(kryo);
+            holder.output.setOutputStream(null);
+            release(holder);
+        }
+    }
+
+    // 从 buffer 当前位置开始直接写入，写入后 buffer 的 position 后移，剩余空间不足时抛出 BufferOverflowException 且 buffer 的 position 不变
+    @Override
+    public int serialize(final T object, ByteBuffer buffer) {
+
+        KryoHolder holder = kryoPool.obtain();
+        try {
+
+            ByteBuffer target = buffer.slice();
+            ByteBufferOutput output = holder.byteBufferOutput;
+            output.setBuffer(target, target.capacity());
+
+            try {
+                holder.kryo.writeClassAndObject(output, object);
+            } catch (KryoException e) {
+                // 序列化器会把 BoundedByteBufferOutput 抛出的 BufferOverflowException 包装为 KryoException
+                if (ExceptionUtils.indexOfType(e, BufferOverflowException.class) != -1) {
+                    throw new BufferOverflowException();
+                }
+                throw e;
             }
+
+            int length = output.position();
+            ((Buffer) buffer).position(buffer.position() + length);
+            return length;
+
+        } finally {
+            holder.byteBufferOutput.setBuffer(ByteBuffer.wrap(EMPTY_BYTES), 0);
+            release(holder);
         }
     }
 
     @Override
     public T deserialize(final byte[] bytes) {
 
-        Kryo kryo = kryoPool.obtain();
+        KryoHolder holder = kryoPool.obtain();
         try {
 
-            ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
-            Input input = new Input(byteArrayInputStream);
+            Input input = holder.input;
+            input.setBuffer(bytes);
 
-            return (T) kryo.readClassAndObject(input);
+            return (T) holder.kryo.readClassAndObject(input);
 
         } finally {
-            if(kryo != null) {
-                kryoPool.free(kryo);
-            }
+            holder.input.setBuffer(EMPTY_BYTES);
+            release(holder);
+        }
+    }
+
+    // 从 buffer 当前位置开始读取，读取后 buffer 的 position 后移
+    @Override
+    public T deserialize(ByteBuffer buffer) {
+
+        KryoHolder holder = kryoPool.obtain();
+        try {
+
+            ByteBufferInput input = holder.byteBufferInput;
+            input.setBuffer(buffer.slice());
+
+            T object = (T) holder.kryo.readClassAndObject(input);
+
+            ((Buffer) buffer).position(buffer.position() + input.position());
+            return object;
+
+        } finally {
+            holder.byteBufferInput.setBuffer(ByteBuffer.wrap(EMPTY_BYTES));
+            release(holder);
         }
     }
 
     @Override
     public T clone(final T object) {
 
-        Kryo kryo = kryoPool.obtain();
+        KryoHolder holder = kryoPool.obtain();
         try {
 
-            return kryo.copy(object);
+            return holder.kryo.copy(object);
 
         } finally {
-            if(kryo != null) {
-                kryoPool.free(kryo);
+            if(holder != null) {
+                kryoPool.free(holder);
             }
         }
     }
@@ -119,4 +205,43 @@ public class KryoPoolSerializer<T> implements ObjectSerializer<T> {
     protected void initHook(Kryo kryo) {
 
     }
+
+    private void release(KryoHolder holder) {
+
+        if (holder.output.getBuffer().length > MAX_POOLED_BUFFER_SIZE) {
+            holder.output.setBuffer(new byte[DEFAULT_BUFFER_SIZE], -1);
+        }
+
+        kryoPool.free(holder);
+    }
+
+    // 池中的 Kryo 实例及其复用的读写缓冲区
+    static class KryoHolder {
+
+        final Kryo kryo;
+
+        final Output output = new Output(DEFAULT_BUFFER_SIZE, -1);
+
+        final Input input = new Input();
+
+        final ByteBufferOutput byteBufferOutput = new BoundedByteBufferOutput();
+
+        final ByteBufferInput byteBufferInput = new ByteBufferInput();
+
+        KryoHolder(Kryo kryo) {
+            this.kryo = kryo;
+        }
+    }
+
+    // 写入目标是调用方的 ByteBuffer，不能扩容，剩余空间不足时直接抛出 BufferOverflowException，不依赖 KryoException 的提示信息判断
+    static class BoundedByteBufferOutput extends ByteBufferOutput {
+
+        @Override
+        protected boolean require(int required) throws KryoException {
+            if (capacity - position < required && outputStream == null) {
+                throw new BufferOverflowException();
+            }
+            return super.require(required);
+        }
+    }
 }
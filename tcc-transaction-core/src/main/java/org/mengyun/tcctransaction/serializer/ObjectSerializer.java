@@ -1,5 +1,9 @@
 package org.mengyun.tcctransaction.serializer;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
 /**
  * Created by changming.xie on 7/22/16. 对象序列化接口
  */
@@ -21,6 +25,42 @@ public interface ObjectSerializer<T> {
      */
     T deserialize(byte[] bytes);
 
+    /**
+     * Serialize the given object to the output stream, the stream is not closed.
+     *
+     * @param t            object to serialize
+     * @param outputStream target stream
+     */
+    default void serialize(T t, OutputStream outputStream) throws IOException {
+        outputStream.write(serialize(t));
+    }
+
+    /**
+     * Serialize the given object into the buffer, starting at its current position.
+     *
+     * @param t      object to serialize
+     * @param buffer target buffer, its position is advanced by the written length
+     * @return the written length
+     * @throws java.nio.BufferOverflowException if there is insufficient space remaining in the buffer
+     */
+    default int serialize(T t, ByteBuffer buffer) {
+        byte[] bytes = serialize(t);
+        buffer.put(bytes);
+        return bytes.length;
+    }
+
+    /**
+     * Deserialize an object from the buffer, starting at its current position.
+     *
+     * @param buffer object binary representation, its position is advanced by the read length
+     * @return the equivalent object instance
+     */
+    default T deserialize(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return deserialize(bytes);
+    }
+
 
     T clone(T object);
 }
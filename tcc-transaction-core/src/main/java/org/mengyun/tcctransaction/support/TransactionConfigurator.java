@@ -2,7 +2,10 @@ package org.mengyun.tcctransaction.support;
 
 
 import org.mengyun.tcctransaction.TransactionManager;
+import org.mengyun.tcctransaction.metrics.NoopTransactionMetrics;
+import org.mengyun.tcctransaction.metrics.TransactionMetrics;
 import org.mengyun.tcctransaction.recovery.RecoverFrequency;
+import org.mengyun.tcctransaction.recovery.ShardedRecoveryCoordinator;
 import org.mengyun.tcctransaction.repository.TransactionRepository;
 
 import java.util.concurrent.locks.Lock;
@@ -19,4 +22,12 @@ public interface TransactionConfigurator {
     RecoverFrequency getRecoverFrequency();
 
     Lock getRecoveryLock();
+
+    default TransactionMetrics getTransactionMetrics() {
+        return NoopTransactionMetrics.INSTANCE;
+    }
+    // 不为空时按 bucket 分片恢复，不再使用 RecoveryLock
+    default ShardedRecoveryCoordinator getShardedRecoveryCoordinator() {
+        return null;
+    }
 }
@@ -8,6 +8,8 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -60,6 +62,11 @@ public class ReflectionUtils {
     }
 
 
+    // 返回类型为 CompletionStage / CompletableFuture 的方法按异步方法处理，try 阶段以返回的 future 完成为结束
+    public static boolean isAsyncReturnType(Class<?> type) {
+        return CompletionStage.class.isAssignableFrom(type) && type.isAssignableFrom(CompletableFuture.class);
+    }
+
     public static Object getNullValue(Class type) {
         // 处理基本类型
         if (boolean.class.equals(type)) {
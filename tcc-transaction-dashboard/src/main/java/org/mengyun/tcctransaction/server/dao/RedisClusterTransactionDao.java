@@ -4,6 +4,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.assertj.core.util.Lists;
 import org.mengyun.tcctransaction.repository.helper.JedisCallback;
 import org.mengyun.tcctransaction.repository.helper.RedisHelper;
+import org.mengyun.tcctransaction.repository.helper.TransactionStoreSerializer;
 import org.mengyun.tcctransaction.server.model.Page;
 import org.mengyun.tcctransaction.server.vo.TransactionVo;
 import org.mengyun.tcctransaction.utils.ByteUtils;
@@ -176,21 +177,25 @@ public class RedisClusterTransactionDao implements TransactionDao {
 
         for (String k : keys) {
 
-            Map<byte[], byte[]> data = cluster.hgetAll(k.getBytes());
+            Map<byte[], byte[]> storedData = cluster.hgetAll(k.getBytes());
 
-            if (data != null && !data.isEmpty()) {
+            if (storedData != null && !storedData.isEmpty()) {
+                // 兼容普通格式和紧凑格式
+                Map<String, byte[]> data = TransactionStoreSerializer.toExpandedProperties(storedData);
 
                 TransactionVo transactionVo = new TransactionVo();
                 transactionVo.setDomain(domain);
 
-                transactionVo.setGlobalTxId(UUID.nameUUIDFromBytes(data.get("GLOBAL_TX_ID".getBytes())).toString());
-                transactionVo.setBranchQualifier(UUID.nameUUIDFromBytes(data.get("BRANCH_QUALIFIER".getBytes())).toString());
-                transactionVo.setStatus(new String(data.get("STATUS".getBytes()), StandardCharsets.UTF_8));
-                transactionVo.setTransactionType(new String(data.get("TRANSACTION_TYPE".getBytes()), StandardCharsets.UTF_8));
-                transactionVo.setRetriedCount(new String(data.get("RETRIED_COUNT".getBytes()), StandardCharsets.UTF_8));
-                transactionVo.setCreateTime(new String(data.get("CREATE_TIME".getBytes()), StandardCharsets.UTF_8));
-                transactionVo.setLastUpdateTime(new String(data.get("LAST_UPDATE_TIME".getBytes()), StandardCharsets.UTF_8));
-                transactionVo.setContentView(new String(data.get("CONTENT_VIEW".getBytes()), StandardCharsets.UTF_8));
+                transactionVo.setGlobalTxId(UUID.nameUUIDFromBytes(data.get("GLOBAL_TX_ID")).toString());
+                transactionVo.setBranchQualifier(UUID.nameUUIDFromBytes(data.get("BRANCH_QUALIFIER")).toString());
+                transactionVo.setStatus(new String(data.get("STATUS"), StandardCharsets.UTF_8));
+                transactionVo.setTransactionType(new String(data.get("TRANSACTION_TYPE"), StandardCharsets.UTF_8));
+                transactionVo.setRetriedCount(new String(data.get("RETRIED_COUNT"), StandardCharsets.UTF_8));
+                transactionVo.setCreateTime(new String(data.get("CREATE_TIME"), StandardCharsets.UTF_8));
+                transactionVo.setLastUpdateTime(new String(data.get("LAST_UPDATE_TIME"), StandardCharsets.UTF_8));
+                if (data.get("CONTENT_VIEW") != null) { // 未写入 CONTENT_VIEW 时不展示
+                    transactionVo.setContentView(new String(data.get("CONTENT_VIEW"), StandardCharsets.UTF_8));
+                }
 
                 result.add(transactionVo);
             }
@@ -4,6 +4,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.mengyun.tcctransaction.repository.helper.JedisCallback;
 import org.mengyun.tcctransaction.repository.helper.RedisHelper;
+import org.mengyun.tcctransaction.repository.helper.TransactionStoreSerializer;
 import org.mengyun.tcctransaction.server.S;
 import org.mengyun.tcctransaction.server.constants.LuaScriptConstant;
 import org.mengyun.tcctransaction.server.model.Page;
@@ -11,6 +12,7 @@ import org.mengyun.tcctransaction.server.vo.TransactionVo;
 import org.mengyun.tcctransaction.utils.ByteUtils;
 import redis.clients.jedis.*;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -209,15 +211,19 @@ public class RedisTransactionDao implements TransactionDao {
                 Pipeline pipeline = jedis.pipelined();
 
                 for (final String key : keys) {
-                    pipeline.hgetAll(key);
+                    pipeline.hgetAll(key.getBytes());
                 }
-
+                // 兼容普通格式和紧凑格式
                 List<Map<String, String>> result = pipeline.syncAndReturnAll().stream()
                         .map(new Function<Object, Map<String, String>>() {
                             @Override
                             public Map<String, String> apply(Object o) {
 
-                                return (Map<String, String>) o;
+                                Map<String, String> data = new HashMap<>();
+                                for (Map.Entry<String, byte[]> entry : TransactionStoreSerializer.toExpandedProperties((Map<byte[], byte[]>) o).entrySet()) {
+                                    data.put(entry.getKey(), new String(entry.getValue(), StandardCharsets.UTF_8));
+                                }
+                                return data;
                             }
                         }).collect(Collectors.toList());
 
@@ -5,4 +5,8 @@ package org.mengyun.tcctransaction.dubbo.constants;
  */
 public class TransactionContextConstants {
     public static final String TRANSACTION_CONTEXT = "TRANSACTION_CONTEXT";
+    // 事务上下文的编码方式，默认 json；所有服务提供方都升级到可读取二进制编码的版本后，再设置为 binary
+    public static final String TRANSACTION_CONTEXT_CODEC_PROPERTY = "tcc.transaction.context.codec";
+
+    public static final String BINARY_CODEC = "binary";
 }
@@ -4,6 +4,7 @@ import com.alibaba.fastjson.JSON;
 import org.apache.dubbo.common.utils.StringUtils;
 import org.apache.dubbo.rpc.RpcContext;
 import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.TransactionContextCodec;
 import org.mengyun.tcctransaction.api.TransactionContextEditor;
 import org.mengyun.tcctransaction.dubbo.constants.TransactionContextConstants;
 
@@ -11,15 +12,26 @@ import java.lang.reflect.Method;
 
 /**
  * Created by changming.xie on 1/19/17. Dubbo 事务上下文编辑器。通过 Dubbo 的隐式传参的方式，避免在 Dubbo Service 接口上声明 TransactionContext 参数，对接口产生一定的入侵。
+ * <p/>
+ * 读取时兼容 JSON 和 TransactionContextCodec 的二进制编码；发送默认使用 JSON，旧版本的服务提供方只能解析 JSON，
+ * 所有服务提供方升级后再通过 -Dtcc.transaction.context.codec=binary 开启二进制编码。
  */
 public class DubboTransactionContextEditor implements TransactionContextEditor {
+
+    private static final boolean BINARY_ENCODING = TransactionContextConstants.BINARY_CODEC.equalsIgnoreCase(
+            System.getProperty(TransactionContextConstants.TRANSACTION_CONTEXT_CODEC_PROPERTY));
+
     @Override
     public TransactionContext get(Object target, Method method, Object[] args) {
 
         String context = RpcContext.getContext().getAttachment(TransactionContextConstants.TRANSACTION_CONTEXT);
 
         if (StringUtils.isNotEmpty(context)) {
-            return JSON.parseObject(context, TransactionContext.class);
+            // JSON 以 { 开头，不会出现在 base64 中
+            if (context.charAt(0) == '{') {
+                return JSON.parseObject(context, TransactionContext.class);
+            }
+            return TransactionContextCodec.decodeFromString(context);
         }
 
         return null;
@@ -28,6 +40,8 @@ public class DubboTransactionContextEditor implements TransactionContextEditor {
     @Override
     public void set(TransactionContext transactionContext, Object target, Method method, Object[] args) {
 
-        RpcContext.getContext().setAttachment(TransactionContextConstants.TRANSACTION_CONTEXT, JSON.toJSONString(transactionContext));
+        String context = BINARY_ENCODING ? TransactionContextCodec.encodeToString(transactionContext) : JSON.toJSONString(transactionContext);
+
+        RpcContext.getContext().setAttachment(TransactionContextConstants.TRANSACTION_CONTEXT, context);
     }
 }
@@ -0,0 +1,244 @@
+package org.mengyun.tcctransaction.micrometer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.mengyun.tcctransaction.executor.ExecutorMetrics;
+import org.mengyun.tcctransaction.executor.TransactionExecutor;
+import org.mengyun.tcctransaction.metrics.RecoveryResult;
+import org.mengyun.tcctransaction.metrics.RepositoryOperation;
+import org.mengyun.tcctransaction.metrics.TransactionMetrics;
+import org.mengyun.tcctransaction.metrics.TransactionOperation;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 基于 Micrometer 的 TransactionMetrics 实现。
+ * <p/>
+ * 指标名称：
+ * <ul>
+ * <li>tcc.transaction：begin / commit / rollback 耗时，tag：operation、outcome</li>
+ * <li>tcc.repository：存储器操作耗时，tag：domain、operation、outcome</li>
+ * <li>tcc.repository.optimistic.lock.conflicts：乐观锁冲突次数，tag：domain</li>
+ * <li>tcc.recovery.page、tcc.recovery.page.size：恢复任务每页的加载耗时和条数，tag：domain</li>
+ * <li>tcc.recovery.transactions：恢复结果计数，tag：domain、result</li>
+ * <li>tcc.recovery.backlog：最近一次恢复扫描到的异常事务数，tag：domain</li>
+ * <li>tcc.recovery.root.status.cache：根事务状态缓存的查询次数，tag：domain、result（hit / miss）</li>
+ * <li>tcc.executor.*：异步执行器的队列长度、活跃数、任务计数和耗时，tag：name</li>
+ * </ul>
+ * 热路径上的 Meter 在首次使用时创建并缓存，记录时不再查找注册表。
+ */
+public class MicrometerTransactionMetrics implements TransactionMetrics {
+
+    private static final String UNKNOWN_DOMAIN = "unknown";
+
+    private final MeterRegistry registry;
+
+    private final Timer[][] transactionTimers;
+
+    private final ConcurrentMap<String, DomainMeters> domainMeters = new ConcurrentHashMap<String, DomainMeters>();
+    // 同名执行器被替换后，已注册的指标读取新的执行器
+    private final ConcurrentMap<String, TransactionExecutor> executors = new ConcurrentHashMap<String, TransactionExecutor>();
+
+    public MicrometerTransactionMetrics(MeterRegistry registry) {
+        this.registry = registry;
+
+        TransactionOperation[] operations = TransactionOperation.values();
+        transactionTimers = new Timer[operations.length][];
+        for (TransactionOperation operation : operations) {
+            transactionTimers[operation.ordinal()] = new Timer[]{
+                    transactionTimer(operation, "failure"),
+                    transactionTimer(operation, "success")};
+        }
+    }
+
+    @Override
+    public void recordTransaction(TransactionOperation operation, long durationNanos, boolean success) {
+        transactionTimers[operation.ordinal()][success ? 1 : 0].record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordRepository(String domain, RepositoryOperation operation, long durationNanos, boolean success) {
+        getDomainMeters(domain).repositoryTimers[operation.ordinal()][success ? 1 : 0].record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordOptimisticLockConflict(String domain) {
+        getDomainMeters(domain).optimisticLockConflicts.increment();
+    }
+
+    @Override
+    public void recordRecoveryPage(String domain, long durationNanos, int size) {
+        DomainMeters meters = getDomainMeters(domain);
+        meters.recoveryPageTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+        meters.recoveryPageSize.record(size);
+    }
+
+    @Override
+    public void recordRecoveryResult(String domain, RecoveryResult result) {
+        getDomainMeters(domain).recoveryResults[result.ordinal()].increment();
+    }
+
+    @Override
+    public void recordRecoveryBacklog(String domain, long backlog) {
+        getDomainMeters(domain).recoveryBacklog.set(backlog);
+    }
+
+    @Override
+    public void recordRootStatusCache(String domain, boolean hit) {
+        getDomainMeters(domain).rootStatusCache[hit ? 1 : 0].increment();
+    }
+
+    @Override
+    public void registerExecutor(TransactionExecutor executor) {
+
+        String name = executor.getMetrics().getName();
+
+        if (executors.put(name, executor) != null) {
+            return;
+        }
+
+        Gauge.builder("tcc.executor.queued", executors, executorValue(name, ExecutorMetrics::getQueueSize))
+                .tag("name", name)
+                .register(registry);
+        Gauge.builder("tcc.executor.active", executors, executorValue(name, ExecutorMetrics::getActiveCount))
+                .tag("name", name)
+                .register(registry);
+
+        executorCounter(name, "submitted", ExecutorMetrics::getSubmittedCount);
+        executorCounter(name, "completed", ExecutorMetrics::getCompletedCount);
+        executorCounter(name, "failed", ExecutorMetrics::getFailedCount);
+        executorCounter(name, "rejected", ExecutorMetrics::getRejectedCount);
+
+        executorTimer(name, "tcc.executor.wait", ExecutorMetrics::getTotalWaitNanos);
+        executorTimer(name, "tcc.executor.execution", ExecutorMetrics::getTotalExecutionNanos);
+    }
+
+    private Timer transactionTimer(TransactionOperation operation, String outcome) {
+        return Timer.builder("tcc.transaction")
+                .tag("operation", tagValue(operation))
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private DomainMeters getDomainMeters(String domain) {
+
+        String key = domain == null ? UNKNOWN_DOMAIN : domain;
+
+        DomainMeters meters = domainMeters.get(key);
+        if (meters == null) {
+            meters = domainMeters.computeIfAbsent(key, DomainMeters::new);
+        }
+        return meters;
+    }
+
+    private ToDoubleFunction<ConcurrentMap<String, TransactionExecutor>> executorValue(String name, ToDoubleFunction<ExecutorMetrics> function) {
+        return executors -> function.applyAsDouble(executors.get(name).getMetrics());
+    }
+
+    private void executorCounter(String name, String state, ToDoubleFunction<ExecutorMetrics> function) {
+        FunctionCounter.builder("tcc.executor.tasks", executors, executorValue(name, function))
+                .tag("name", name)
+                .tag("state", state)
+                .register(registry);
+    }
+
+    // 任务开始执行时记录等待时间，执行完成时记录执行时间，两者都以已完成任务数作为次数
+    private void executorTimer(String name, String meterName, ToDoubleFunction<ExecutorMetrics> totalNanos) {
+        FunctionTimer.builder(meterName, executors,
+                executors -> executors.get(name).getMetrics().getCompletedCount(),
+                executorValue(name, totalNanos),
+                TimeUnit.NANOSECONDS)
+                .tag("name", name)
+                .register(registry);
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+
+    // 单个 domain 下的所有指标
+    private class DomainMeters {
+
+        private final Timer[][] repositoryTimers;
+
+        private final Counter optimisticLockConflicts;
+
+        private final Timer recoveryPageTimer;
+
+        private final DistributionSummary recoveryPageSize;
+
+        private final Counter[] recoveryResults;
+
+        private final AtomicLong recoveryBacklog = new AtomicLong();
+
+        private final Counter[] rootStatusCache;
+
+        DomainMeters(String domain) {
+
+            RepositoryOperation[] operations = RepositoryOperation.values();
+            repositoryTimers = new Timer[operations.length][];
+            for (RepositoryOperation operation : operations) {
+                repositoryTimers[operation.ordinal()] = new Timer[]{
+                        repositoryTimer(domain, operation, "failure"),
+                        repositoryTimer(domain, operation, "success")};
+            }
+
+            optimisticLockConflicts = Counter.builder("tcc.repository.optimistic.lock.conflicts")
+                    .tag("domain", domain)
+                    .register(registry);
+
+            recoveryPageTimer = Timer.builder("tcc.recovery.page")
+                    .tag("domain", domain)
+                    .register(registry);
+
+            recoveryPageSize = DistributionSummary.builder("tcc.recovery.page.size")
+                    .tag("domain", domain)
+                    .register(registry);
+
+            RecoveryResult[] results = RecoveryResult.values();
+            recoveryResults = new Counter[results.length];
+            for (RecoveryResult result : results) {
+                recoveryResults[result.ordinal()] = Counter.builder("tcc.recovery.transactions")
+                        .tag("domain", domain)
+                        .tag("result", tagValue(result))
+                        .register(registry);
+            }
+
+            Gauge.builder("tcc.recovery.backlog", recoveryBacklog, AtomicLong::get)
+                    .tag("domain", domain)
+                    .strongReference(true)
+                    .register(registry);
+
+            rootStatusCache = new Counter[]{
+                    rootStatusCacheCounter(domain, "miss"),
+                    rootStatusCacheCounter(domain, "hit")};
+        }
+
+        private Counter rootStatusCacheCounter(String domain, String result) {
+            return Counter.builder("tcc.recovery.root.status.cache")
+                    .tag("domain", domain)
+                    .tag("result", result)
+                    .register(registry);
+        }
+
+        private Timer repositoryTimer(String domain, RepositoryOperation operation, String outcome) {
+            return Timer.builder("tcc.repository")
+                    .tag("domain", domain)
+                    .tag("operation", tagValue(operation))
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+    }
+}
@@ -1,15 +1,22 @@
 package org.mengyun.tcctransaction.spring.support;
 
 
+import org.mengyun.tcctransaction.FastPathPersister;
+import org.mengyun.tcctransaction.ParallelTerminator;
+import org.mengyun.tcctransaction.executor.TransactionExecutor;
+import org.mengyun.tcctransaction.metrics.TransactionMetrics;
+import org.mengyun.tcctransaction.recovery.AdaptiveRecoveryScheduler;
 import org.mengyun.tcctransaction.recovery.RecoverConfiguration;
 import org.mengyun.tcctransaction.recovery.RecoverFrequency;
 import org.mengyun.tcctransaction.recovery.RecoveryLock;
+import org.mengyun.tcctransaction.recovery.ShardedRecoveryCoordinator;
 import org.mengyun.tcctransaction.repository.TransactionRepository;
 import org.mengyun.tcctransaction.spring.ConfigurableCoordinatorAspect;
 import org.mengyun.tcctransaction.spring.ConfigurableTransactionAspect;
 import org.mengyun.tcctransaction.spring.factory.SpringBeanFactory;
 import org.mengyun.tcctransaction.spring.xml.EnableAspectJAutoProxyConfiguration;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.DependsOn;
@@ -28,6 +35,29 @@ public class TccTransactionConfiguration {
     @Autowired(required = false)
     RecoveryLock recoveryLock;
 
+    @Autowired(required = false)
+    ParallelTerminator parallelTerminator;
+
+    @Autowired(required = false)
+    FastPathPersister fastPathPersister;
+
+    @Autowired(required = false)
+    @Qualifier("asyncTerminatorExecutor")
+    TransactionExecutor asyncTerminatorExecutor;
+
+    @Autowired(required = false)
+    @Qualifier("asyncSaveExecutor")
+    TransactionExecutor asyncSaveExecutor;
+
+    @Autowired(required = false)
+    TransactionMetrics transactionMetrics;
+
+    @Autowired(required = false)
+    AdaptiveRecoveryScheduler adaptiveRecoveryScheduler;
+
+    @Autowired(required = false)
+    ShardedRecoveryCoordinator shardedRecoveryCoordinator;
+
     @Bean("springBeanFactory")
     public SpringBeanFactory getSpringBeanFactory() {
         return new SpringBeanFactory();
@@ -57,6 +87,34 @@ public class TccTransactionConfiguration {
             recoverConfiguration.setRecoveryLock(recoveryLock);
         }
 
+        if (parallelTerminator != null) {
+            recoverConfiguration.setParallelTerminator(parallelTerminator);
+        }
+
+        if (fastPathPersister != null) {
+            recoverConfiguration.setFastPathPersister(fastPathPersister);
+        }
+
+        if (asyncTerminatorExecutor != null) {
+            recoverConfiguration.setAsyncTerminatorExecutor(asyncTerminatorExecutor);
+        }
+
+        if (asyncSaveExecutor != null) {
+            recoverConfiguration.setAsyncSaveExecutor(asyncSaveExecutor);
+        }
+
+        if (transactionMetrics != null) {
+            recoverConfiguration.setTransactionMetrics(transactionMetrics);
+        }
+
+        if (adaptiveRecoveryScheduler != null) {
+            recoverConfiguration.setAdaptiveRecoveryScheduler(adaptiveRecoveryScheduler);
+        }
+
+        if (shardedRecoveryCoordinator != null) {
+            recoverConfiguration.setShardedRecoveryCoordinator(shardedRecoveryCoordinator);
+        }
+
         return recoverConfiguration;
     }
 }
@@ -62,6 +62,34 @@ public class TccTransactionByRegisterDefinitionParser implements BeanDefinitionP
                 recoveryConfigurationDef.getPropertyValues().addPropertyValue("recoveryLock", new RuntimeBeanReference(element.getAttribute("recovery-lock")));
             }
 
+            if (element.hasAttribute("parallel-terminator")) {
+                recoveryConfigurationDef.getPropertyValues().addPropertyValue("parallelTerminator", new RuntimeBeanReference(element.getAttribute("parallel-terminator")));
+            }
+
+            if (element.hasAttribute("fast-path-persister")) {
+                recoveryConfigurationDef.getPropertyValues().addPropertyValue("fastPathPersister", new RuntimeBeanReference(element.getAttribute("fast-path-persister")));
+            }
+
+            if (element.hasAttribute("async-terminator-executor")) {
+                recoveryConfigurationDef.getPropertyValues().addPropertyValue("asyncTerminatorExecutor", new RuntimeBeanReference(element.getAttribute("async-terminator-executor")));
+            }
+
+            if (element.hasAttribute("async-save-executor")) {
+                recoveryConfigurationDef.getPropertyValues().addPropertyValue("asyncSaveExecutor", new RuntimeBeanReference(element.getAttribute("async-save-executor")));
+            }
+
+            if (element.hasAttribute("transaction-metrics")) {
+                recoveryConfigurationDef.getPropertyValues().addPropertyValue("transactionMetrics", new RuntimeBeanReference(element.getAttribute("transaction-metrics")));
+            }
+
+            if (element.hasAttribute("adaptive-recovery-scheduler")) {
+                recoveryConfigurationDef.getPropertyValues().addPropertyValue("adaptiveRecoveryScheduler", new RuntimeBeanReference(element.getAttribute("adaptive-recovery-scheduler")));
+            }
+
+            if (element.hasAttribute("sharded-recovery-coordinator")) {
+                recoveryConfigurationDef.getPropertyValues().addPropertyValue("shardedRecoveryCoordinator", new RuntimeBeanReference(element.getAttribute("sharded-recovery-coordinator")));
+            }
+
             parserContext.registerBeanComponent(new BeanComponentDefinition(recoveryConfigurationDef, RECOVERY_CONFIGURATION));
         }
 
@@ -17,6 +17,11 @@ CREATE TABLE `TCC_TRANSACTION_CAP` (
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
 ALTER TABLE `TCC_TRANSACTION_CAP` ADD `IS_DELETE` tinyint(1) DEFAULT 0 NOT NULL;
+-- 恢复任务按 TRANSACTION_ID 游标分页扫描，按 DOMAIN 定位后顺序读取，LAST_UPDATE_TIME 直接在索引内过滤
+ALTER TABLE `TCC_TRANSACTION_CAP` ADD INDEX `IDX_DOMAIN_ID_UPDATE_TIME` (`DOMAIN`, `TRANSACTION_ID`, `LAST_UPDATE_TIME`);
+-- JdbcTransactionRepository 开启 nextRetryTimeEnabled 时使用，恢复任务只查询已到重试时间的事务，NEXT_RETRY_TIME 和 LAST_UPDATE_TIME 都在索引内过滤
+ALTER TABLE `TCC_TRANSACTION_CAP` ADD `NEXT_RETRY_TIME` datetime DEFAULT NULL;
+ALTER TABLE `TCC_TRANSACTION_CAP` ADD INDEX `IDX_DOMAIN_ID_RETRY_TIME` (`DOMAIN`, `TRANSACTION_ID`, `NEXT_RETRY_TIME`, `LAST_UPDATE_TIME`);
 
 CREATE TABLE `TCC_TRANSACTION_ORD` (
   `TRANSACTION_ID` int(11) NOT NULL AUTO_INCREMENT,
@@ -35,6 +40,11 @@ CREATE TABLE `TCC_TRANSACTION_ORD` (
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
 ALTER TABLE `TCC_TRANSACTION_ORD` ADD `IS_DELETE` tinyint(1) DEFAULT 0 NOT NULL;
+-- 恢复任务按 TRANSACTION_ID 游标分页扫描，按 DOMAIN 定位后顺序读取，LAST_UPDATE_TIME 直接在索引内过滤
+ALTER TABLE `TCC_TRANSACTION_ORD` ADD INDEX `IDX_DOMAIN_ID_UPDATE_TIME` (`DOMAIN`, `TRANSACTION_ID`, `LAST_UPDATE_TIME`);
+-- JdbcTransactionRepository 开启 nextRetryTimeEnabled 时使用，恢复任务只查询已到重试时间的事务，NEXT_RETRY_TIME 和 LAST_UPDATE_TIME 都在索引内过滤
+ALTER TABLE `TCC_TRANSACTION_ORD` ADD `NEXT_RETRY_TIME` datetime DEFAULT NULL;
+ALTER TABLE `TCC_TRANSACTION_ORD` ADD INDEX `IDX_DOMAIN_ID_RETRY_TIME` (`DOMAIN`, `TRANSACTION_ID`, `NEXT_RETRY_TIME`, `LAST_UPDATE_TIME`);
 
 CREATE TABLE `TCC_TRANSACTION_RED` (
   `TRANSACTION_ID` int(11) NOT NULL AUTO_INCREMENT,
@@ -53,6 +63,11 @@ CREATE TABLE `TCC_TRANSACTION_RED` (
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
 ALTER TABLE `TCC_TRANSACTION_RED` ADD `IS_DELETE` tinyint(1) DEFAULT 0 NOT NULL;
+-- 恢复任务按 TRANSACTION_ID 游标分页扫描，按 DOMAIN 定位后顺序读取，LAST_UPDATE_TIME 直接在索引内过滤
+ALTER TABLE `TCC_TRANSACTION_RED` ADD INDEX `IDX_DOMAIN_ID_UPDATE_TIME` (`DOMAIN`, `TRANSACTION_ID`, `LAST_UPDATE_TIME`);
+-- JdbcTransactionRepository 开启 nextRetryTimeEnabled 时使用，恢复任务只查询已到重试时间的事务，NEXT_RETRY_TIME 和 LAST_UPDATE_TIME 都在索引内过滤
+ALTER TABLE `TCC_TRANSACTION_RED` ADD `NEXT_RETRY_TIME` datetime DEFAULT NULL;
+ALTER TABLE `TCC_TRANSACTION_RED` ADD INDEX `IDX_DOMAIN_ID_RETRY_TIME` (`DOMAIN`, `TRANSACTION_ID`, `NEXT_RETRY_TIME`, `LAST_UPDATE_TIME`);
 
 CREATE TABLE `TCC_TRANSACTION_UT` (
   `TRANSACTION_ID` int(11) NOT NULL AUTO_INCREMENT,
@@ -70,4 +85,9 @@ CREATE TABLE `TCC_TRANSACTION_UT` (
   UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
-ALTER TABLE `TCC_TRANSACTION_UT` ADD `IS_DELETE` tinyint(1) DEFAULT 0 NOT NULL;
\ No newline at end of file
+ALTER TABLE `TCC_TRANSACTION_UT` ADD `IS_DELETE` tinyint(1) DEFAULT 0 NOT NULL;
+-- 恢复任务按 TRANSACTION_ID 游标分页扫描，按 DOMAIN 定位后顺序读取，LAST_UPDATE_TIME 直接在索引内过滤
+ALTER TABLE `TCC_TRANSACTION_UT` ADD INDEX `IDX_DOMAIN_ID_UPDATE_TIME` (`DOMAIN`, `TRANSACTION_ID`, `LAST_UPDATE_TIME`);
+-- JdbcTransactionRepository 开启 nextRetryTimeEnabled 时使用，恢复任务只查询已到重试时间的事务，NEXT_RETRY_TIME 和 LAST_UPDATE_TIME 都在索引内过滤
+ALTER TABLE `TCC_TRANSACTION_UT` ADD `NEXT_RETRY_TIME` datetime DEFAULT NULL;
+ALTER TABLE `TCC_TRANSACTION_UT` ADD INDEX `IDX_DOMAIN_ID_RETRY_TIME` (`DOMAIN`, `TRANSACTION_ID`, `NEXT_RETRY_TIME`, `LAST_UPDATE_TIME`);
\ No newline at end of file
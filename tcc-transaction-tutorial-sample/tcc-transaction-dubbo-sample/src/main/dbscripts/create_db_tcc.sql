@@ -18,6 +18,10 @@ CREATE TABLE `TCC_TRANSACTION_CAP` (
   UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
+-- JdbcTransactionRepository 开启 nextRetryTimeEnabled 时使用，恢复任务只查询已到重试时间的事务，NEXT_RETRY_TIME 和 LAST_UPDATE_TIME 都在索引内过滤
+ALTER TABLE `TCC_TRANSACTION_CAP` ADD `NEXT_RETRY_TIME` datetime DEFAULT NULL;
+ALTER TABLE `TCC_TRANSACTION_CAP` ADD INDEX `IDX_DOMAIN_ID_RETRY_TIME` (`DOMAIN`, `TRANSACTION_ID`, `NEXT_RETRY_TIME`, `LAST_UPDATE_TIME`);
+
 CREATE TABLE `TCC_TRANSACTION_ORD` (
   `TRANSACTION_ID` int(11) NOT NULL AUTO_INCREMENT,
   `DOMAIN` varchar(100) DEFAULT NULL,
@@ -34,6 +38,10 @@ CREATE TABLE `TCC_TRANSACTION_ORD` (
   UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
+-- JdbcTransactionRepository 开启 nextRetryTimeEnabled 时使用，恢复任务只查询已到重试时间的事务，NEXT_RETRY_TIME 和 LAST_UPDATE_TIME 都在索引内过滤
+ALTER TABLE `TCC_TRANSACTION_ORD` ADD `NEXT_RETRY_TIME` datetime DEFAULT NULL;
+ALTER TABLE `TCC_TRANSACTION_ORD` ADD INDEX `IDX_DOMAIN_ID_RETRY_TIME` (`DOMAIN`, `TRANSACTION_ID`, `NEXT_RETRY_TIME`, `LAST_UPDATE_TIME`);
+
 CREATE TABLE `TCC_TRANSACTION_RED` (
   `TRANSACTION_ID` int(11) NOT NULL AUTO_INCREMENT,
   `DOMAIN` varchar(100) DEFAULT NULL,
@@ -50,6 +58,10 @@ CREATE TABLE `TCC_TRANSACTION_RED` (
   UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
+-- JdbcTransactionRepository 开启 nextRetryTimeEnabled 时使用，恢复任务只查询已到重试时间的事务，NEXT_RETRY_TIME 和 LAST_UPDATE_TIME 都在索引内过滤
+ALTER TABLE `TCC_TRANSACTION_RED` ADD `NEXT_RETRY_TIME` datetime DEFAULT NULL;
+ALTER TABLE `TCC_TRANSACTION_RED` ADD INDEX `IDX_DOMAIN_ID_RETRY_TIME` (`DOMAIN`, `TRANSACTION_ID`, `NEXT_RETRY_TIME`, `LAST_UPDATE_TIME`);
+
 
 CREATE TABLE `TCC_TRANSACTION_UT` (
   `TRANSACTION_ID` int(11) NOT NULL AUTO_INCREMENT,
@@ -65,4 +77,8 @@ CREATE TABLE `TCC_TRANSACTION_UT` (
   `VERSION` int(11) DEFAULT NULL,
   PRIMARY KEY (`TRANSACTION_ID`),
   UNIQUE KEY `UX_TX_BQ` (`GLOBAL_TX_ID`,`BRANCH_QUALIFIER`)
-) ENGINE=InnoDB DEFAULT CHARSET=utf8;
\ No newline at end of file
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- JdbcTransactionRepository 开启 nextRetryTimeEnabled 时使用，恢复任务只查询已到重试时间的事务，NEXT_RETRY_TIME 和 LAST_UPDATE_TIME 都在索引内过滤
+ALTER TABLE `TCC_TRANSACTION_UT` ADD `NEXT_RETRY_TIME` datetime DEFAULT NULL;
+ALTER TABLE `TCC_TRANSACTION_UT` ADD INDEX `IDX_DOMAIN_ID_RETRY_TIME` (`DOMAIN`, `TRANSACTION_ID`, `NEXT_RETRY_TIME`, `LAST_UPDATE_TIME`);
\ No newline at end of file
@@ -0,0 +1,52 @@
+package org.mengyun.tcctransaction.api;
+
+import com.alibaba.fastjson.JSON;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * TransactionContextCodecTest
+ */
+public class TransactionContextCodecTest {
+
+    @Test
+    public void testEncodeAndDecode() {
+
+        TransactionXid rootXid = new TransactionXid();
+        TransactionContext transactionContext = new TransactionContext(rootXid, new TransactionXid(rootXid.getGlobalTransactionId()),
+                TransactionStatus.CANCELLING.getId(), ParticipantStatus.TRY_SUCCESS.getId());
+        transactionContext.getAttachments().put("tenant", "租户-1");
+
+        String encoded = TransactionContextCodec.encodeToString(transactionContext);
+        Assert.assertTrue(encoded.length() < JSON.toJSONString(transactionContext).length());
+
+        TransactionContext decoded = TransactionContextCodec.decodeFromString(encoded);
+
+        Assert.assertEquals(transactionContext.getXid(), decoded.getXid());
+        Assert.assertEquals(rootXid, decoded.getRootXid());
+        Assert.assertEquals(TransactionStatus.CANCELLING.getId(), decoded.getStatus());
+        Assert.assertEquals(ParticipantStatus.TRY_SUCCESS.getId(), decoded.getParticipantStatus());
+        Assert.assertEquals("租户-1", decoded.getAttachments().get("tenant"));
+    }
+
+    @Test
+    public void testCustomizedXid() {
+
+        TransactionXid rootXid = new TransactionXid("order-1");
+        TransactionContext transactionContext = new TransactionContext(null, rootXid, TransactionStatus.TRYING.getId());
+
+        TransactionContext decoded = TransactionContextCodec.decode(TransactionContextCodec.encode(transactionContext));
+
+        Assert.assertNull(decoded.getRootXid());
+        Assert.assertEquals(rootXid, decoded.getXid());
+        Assert.assertEquals("UniqueIdentity:order-1", decoded.getXid().toString());
+        Assert.assertTrue(decoded.getAttachments().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedVersion() {
+        byte[] content = TransactionContextCodec.encode(new TransactionContext(null, new TransactionXid(), TransactionStatus.TRYING.getId()));
+        content[0] = 2;
+        TransactionContextCodec.decode(content);
+    }
+}
@@ -0,0 +1,57 @@
+package org.mengyun.tcctransaction.api;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * TransactionXidTest
+ */
+public class TransactionXidTest {
+
+    @Test
+    public void testRandomXid() {
+
+        Set<TransactionXid> xids = new HashSet<TransactionXid>();
+
+        for (int i = 0; i < 10000; i++) {
+            TransactionXid xid = new TransactionXid();
+            Assert.assertTrue(xids.add(xid));
+
+            // 和 UUID.randomUUID() 的格式一致
+            UUID uuid = toUUID(xid.getGlobalTransactionId());
+            Assert.assertEquals(4, uuid.version());
+            Assert.assertEquals(2, uuid.variant());
+        }
+    }
+
+    @Test
+    public void testCachedString() {
+
+        TransactionXid xid = new TransactionXid();
+
+        String expected = UUID.nameUUIDFromBytes(xid.getGlobalTransactionId()) + ":" + UUID.nameUUIDFromBytes(xid.getBranchQualifier());
+        Assert.assertEquals(expected, xid.toString());
+        Assert.assertSame(xid.toString(), xid.toString());
+
+        TransactionXid copy = new TransactionXid(xid.getGlobalTransactionId(), xid.getBranchQualifier());
+        Assert.assertEquals(xid, copy);
+        Assert.assertEquals(xid.hashCode(), copy.hashCode());
+
+        // 反序列化时通过 setter 赋值，缓存随之失效
+        copy.setBranchQualifier(new TransactionXid().getBranchQualifier());
+        Assert.assertNotEquals(xid.toString(), copy.toString());
+        Assert.assertNotEquals(xid.hashCode(), copy.hashCode());
+
+        Assert.assertEquals("UniqueIdentity:order-1", new TransactionXid("order-1").toString());
+    }
+
+    private UUID toUUID(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
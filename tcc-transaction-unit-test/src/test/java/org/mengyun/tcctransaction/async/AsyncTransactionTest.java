@@ -0,0 +1,304 @@
+package org.mengyun.tcctransaction.async;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.CancellingException;
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionManager;
+import org.mengyun.tcctransaction.api.Compensable;
+import org.mengyun.tcctransaction.api.NullableTransactionContextEditor;
+import org.mengyun.tcctransaction.api.TransactionContextEditor;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.executor.ExecutorMetrics;
+import org.mengyun.tcctransaction.executor.TransactionExecutor;
+import org.mengyun.tcctransaction.interceptor.CompensableTransactionInterceptor;
+import org.mengyun.tcctransaction.interceptor.ResourceCoordinatorInterceptor;
+import org.mengyun.tcctransaction.interceptor.TransactionMethodJoinPoint;
+import org.mengyun.tcctransaction.repository.MemoryStoreTransactionRepository;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AsyncTransactionTest
+ */
+public class AsyncTransactionTest {
+
+    private static final AtomicInteger confirmCount = new AtomicInteger();
+
+    private static final AtomicInteger cancelCount = new AtomicInteger();
+
+    private static volatile CompletableFuture<String> tryingFuture;
+
+    private static volatile CountDownLatch confirmLatch;
+
+    private MemoryStoreTransactionRepository transactionRepository;
+
+    private TransactionManager transactionManager;
+
+    private CompensableTransactionInterceptor compensableTransactionInterceptor;
+
+    private ResourceCoordinatorInterceptor resourceCoordinatorInterceptor;
+
+    @Before
+    public void setUp() {
+        confirmCount.set(0);
+        cancelCount.set(0);
+        tryingFuture = new CompletableFuture<String>();
+        confirmLatch = new CountDownLatch(1);
+
+        transactionRepository = new MemoryStoreTransactionRepository();
+        transactionManager = new TransactionManager();
+        transactionManager.setTransactionRepository(transactionRepository);
+
+        compensableTransactionInterceptor = new CompensableTransactionInterceptor();
+        compensableTransactionInterceptor.setTransactionManager(transactionManager);
+        resourceCoordinatorInterceptor = new ResourceCoordinatorInterceptor();
+        resourceCoordinatorInterceptor.setTransactionManager(transactionManager);
+    }
+
+    @After
+    public void destroy() {
+        transactionManager.shutdown();
+    }
+
+    @Test
+    public void testCommitAsync() throws Exception {
+
+        Transaction transaction = transactionManager.beginAsync(null).get();
+        // 事务通过参数传递，不注册到当前线程
+        Assert.assertNull(transactionManager.getCurrentTransaction());
+
+        transactionManager.enlistParticipantAsync(transaction, newParticipant(transaction, "confirm", "cancel")).get(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(transactionRepository.findByXid(transaction.getXid()));
+
+        transactionManager.commitAsync(transaction).get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(1, confirmCount.get());
+        Assert.assertNull(transactionRepository.findByXid(transaction.getXid()));
+    }
+
+    @Test
+    public void testRollbackAsyncFailed() throws Exception {
+
+        Transaction transaction = transactionManager.beginAsync(null).get();
+        transactionManager.enlistParticipantAsync(transaction, newParticipant(transaction, "confirm", "fail")).get(5, TimeUnit.SECONDS);
+
+        try {
+            transactionManager.rollbackAsync(transaction).get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof CancellingException);
+        }
+        // 回滚失败的事务保留给恢复任务
+        Assert.assertEquals(TransactionStatus.CANCELLING, transactionRepository.findByXid(transaction.getXid()).getStatus());
+    }
+
+    @Test
+    public void testAsyncRootMethodCommit() throws Throwable {
+
+        CompletableFuture<?> result = invokeAsyncRootMethod();
+
+        Assert.assertFalse(result.isDone());
+        // try 方法返回后事务已从当前线程移除
+        Assert.assertNull(transactionManager.getCurrentTransaction());
+
+        tryingFuture.complete("success");
+
+        Assert.assertEquals("success", result.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, confirmCount.get());
+        Assert.assertEquals(0, cancelCount.get());
+    }
+
+    @Test
+    public void testAsyncRootMethodRollback() throws Throwable {
+
+        CompletableFuture<?> result = invokeAsyncRootMethod();
+
+        tryingFuture.completeExceptionally(new IllegalStateException("try failed"));
+
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertEquals(0, confirmCount.get());
+        Assert.assertEquals(1, cancelCount.get());
+    }
+
+    @Test
+    public void testAsyncRootMethodAsyncConfirm() throws Throwable {
+
+        CompletableFuture<?> result = invokeAsyncRootMethod("tryTransferAsyncConfirm");
+
+        tryingFuture.complete("success");
+
+        // asyncConfirm 时不等待参与者提交完成
+        Assert.assertEquals("success", result.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, confirmCount.get());
+
+        confirmLatch.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (confirmCount.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, confirmCount.get());
+    }
+
+    @Test
+    public void testRejectedAsyncSaveFailsFast() throws Exception {
+
+        final AtomicBoolean shutdown = new AtomicBoolean();
+        transactionManager.setAsyncSaveExecutor(new TransactionExecutor() {
+            @Override
+            public void execute(Runnable task) {
+                throw new RejectedExecutionException("full");
+            }
+
+            @Override
+            public ExecutorMetrics getMetrics() {
+                return null;
+            }
+
+            @Override
+            public void shutdown() {
+                shutdown.set(true);
+            }
+        });
+
+        Transaction transaction = transactionManager.beginAsync(null).get();
+        CompletableFuture<Void> future = transactionManager.enlistParticipantAsync(transaction, newParticipant(transaction, "confirm", "cancel"));
+
+        // 拒绝时不在调用方线程保存
+        Assert.assertTrue(future.isCompletedExceptionally());
+        Assert.assertNull(transactionRepository.findByXid(transaction.getXid()));
+
+        // 外部注入的执行器不由事务管理器关闭
+        transactionManager.shutdown();
+        Assert.assertFalse(shutdown.get());
+    }
+
+    private CompletableFuture<?> invokeAsyncRootMethod() throws Throwable {
+        return invokeAsyncRootMethod("tryTransfer");
+    }
+
+    private CompletableFuture<?> invokeAsyncRootMethod(String methodName) throws Throwable {
+        Method method = AsyncTarget.class.getMethod(methodName, String.class);
+        Object result = compensableTransactionInterceptor.interceptCompensableMethod(
+                new AsyncMethodJoinPoint(new AsyncTarget(), method, new Object[]{"order"}, resourceCoordinatorInterceptor));
+        return (CompletableFuture<?>) result;
+    }
+
+    private Participant newParticipant(Transaction transaction, String confirmMethod, String cancelMethod) {
+        return new Participant(transaction.getRootXid(),
+                new TransactionXid(transaction.getXid().getGlobalTransactionId()),
+                new InvocationContext(AsyncTarget.class, confirmMethod, new Class[]{String.class}, "order"),
+                new InvocationContext(AsyncTarget.class, cancelMethod, new Class[]{String.class}, "order"),
+                NullableTransactionContextEditor.class);
+    }
+
+    public static class AsyncTarget {
+
+        @Compensable(confirmMethod = "confirm", cancelMethod = "cancel")
+        public CompletableFuture<String> tryTransfer(String orderNo) {
+            return tryingFuture;
+        }
+
+        @Compensable(confirmMethod = "awaitConfirm", cancelMethod = "cancel", asyncConfirm = true)
+        public CompletableFuture<String> tryTransferAsyncConfirm(String orderNo) {
+            return tryingFuture;
+        }
+
+        public void confirm(String orderNo) {
+            confirmCount.incrementAndGet();
+        }
+
+        public void awaitConfirm(String orderNo) throws InterruptedException {
+            confirmLatch.await(5, TimeUnit.SECONDS);
+            confirmCount.incrementAndGet();
+        }
+
+        public void cancel(String orderNo) {
+            cancelCount.incrementAndGet();
+        }
+
+        public void fail(String orderNo) {
+            throw new IllegalStateException("cancel failed");
+        }
+    }
+
+    // 模拟 CompensableTransactionAspect -> ResourceCoordinatorAspect -> 业务方法 的调用链
+    private static class AsyncMethodJoinPoint implements TransactionMethodJoinPoint {
+
+        private final Object target;
+
+        private final Method method;
+
+        private final Object[] args;
+
+        private final ResourceCoordinatorInterceptor resourceCoordinatorInterceptor;
+
+        AsyncMethodJoinPoint(Object target, Method method, Object[] args, ResourceCoordinatorInterceptor resourceCoordinatorInterceptor) {
+            this.target = target;
+            this.method = method;
+            this.args = args;
+            this.resourceCoordinatorInterceptor = resourceCoordinatorInterceptor;
+        }
+
+        @Override
+        public Compensable getCompensable() {
+            return method.getAnnotation(Compensable.class);
+        }
+
+        @Override
+        public Class<? extends TransactionContextEditor> getTransactionContextEditorClass() {
+            return getCompensable().transactionContextEditor();
+        }
+
+        @Override
+        public Class<?> getDeclaredClass() {
+            return target.getClass();
+        }
+
+        @Override
+        public Method getMethod() {
+            return method;
+        }
+
+        @Override
+        public Object getTarget() {
+            return target;
+        }
+
+        @Override
+        public Object[] getArgs() {
+            return args;
+        }
+
+        @Override
+        public Object proceed() throws Throwable {
+            return proceed(args);
+        }
+
+        @Override
+        public Object proceed(Object[] args) throws Throwable {
+            if (resourceCoordinatorInterceptor != null) {
+                return resourceCoordinatorInterceptor.interceptTransactionContextMethod(new AsyncMethodJoinPoint(target, method, args, null));
+            }
+            return method.invoke(target, args);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.mengyun.tcctransaction.executor;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TransactionExecutorTest
+ */
+public class TransactionExecutorTest {
+
+    @Test
+    public void testThreadPoolMetrics() throws Exception {
+
+        TransactionExecutor executor = new ThreadPoolTransactionExecutor("test-pool", 2, 16);
+        try {
+            runTasks(executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testThreadPoolRejectAfterSubmitTimeout() throws Exception {
+
+        TransactionExecutor executor = new ThreadPoolTransactionExecutor("test-reject", 1, 1, 60, 50);
+        CountDownLatch blocker = new CountDownLatch(1);
+        try {
+            // 一个任务占用线程，一个任务占满队列
+            executor.execute(block(blocker));
+            executor.execute(block(blocker));
+
+            long start = System.nanoTime();
+            try {
+                executor.execute(block(blocker));
+                Assert.fail();
+            } catch (RejectedExecutionException e) {
+                Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 40);
+            }
+
+            Assert.assertEquals(1, executor.getMetrics().getRejectedCount());
+            Assert.assertEquals(2, executor.getMetrics().getSubmittedCount());
+        } finally {
+            blocker.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testVirtualThreadMetrics() throws Exception {
+
+        Assume.assumeTrue(VirtualThreadTransactionExecutor.isSupported());
+
+        TransactionExecutor executor = new VirtualThreadTransactionExecutor("test-virtual", 2, 16);
+        try {
+            runTasks(executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFallbackToThreadPool() {
+
+        TransactionExecutor executor = TransactionExecutors.newExecutor("test-fallback", 1, 1, true);
+        try {
+            Assert.assertEquals(VirtualThreadTransactionExecutor.isSupported(), executor instanceof VirtualThreadTransactionExecutor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void runTasks(TransactionExecutor executor) throws Exception {
+
+        final CountDownLatch latch = new CountDownLatch(10);
+
+        for (int i = 0; i < 10; i++) {
+            final boolean fail = i % 5 == 0;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (fail) {
+                            throw new IllegalStateException("expected");
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        // 计数在任务返回后更新
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getMetrics().getCompletedCount() < 10 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        ExecutorMetrics metrics = executor.getMetrics();
+        Assert.assertEquals(10, metrics.getSubmittedCount());
+        Assert.assertEquals(10, metrics.getCompletedCount());
+        Assert.assertEquals(2, metrics.getFailedCount());
+        Assert.assertEquals(0, metrics.getRejectedCount());
+    }
+
+    private Runnable block(final CountDownLatch blocker) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,184 @@
+package org.mengyun.tcctransaction.fastpath;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.FastPathPersister;
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionManager;
+import org.mengyun.tcctransaction.api.NullableTransactionContextEditor;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.TransactionContextEditor;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.repository.MemoryStoreTransactionRepository;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * FastPathPersisterTest
+ */
+public class FastPathPersisterTest {
+
+    private CountingTransactionRepository transactionRepository;
+
+    private FastPathPersister fastPathPersister;
+
+    private TransactionManager transactionManager;
+
+    @Before
+    public void setUp() {
+        transactionRepository = new CountingTransactionRepository();
+        fastPathPersister = new FastPathPersister();
+        fastPathPersister.setTransactionRepository(transactionRepository);
+        transactionManager = new TransactionManager();
+        transactionManager.setTransactionRepository(transactionRepository);
+        transactionManager.setFastPathPersister(fastPathPersister);
+    }
+
+    @After
+    public void destroy() {
+        fastPathPersister.shutdown();
+    }
+
+    @Test
+    public void testTryPhaseWritesAreElided() {
+
+        Transaction transaction = transactionManager.begin();
+        try {
+            for (int i = 0; i < 3; i++) {
+                transactionManager.enlistParticipant(newParticipant(transaction));
+            }
+
+            Assert.assertEquals(0, transactionRepository.writeCount.get());
+            Assert.assertNull(transactionRepository.findByXid(transaction.getXid()));
+
+            transactionManager.commit(false);
+        } finally {
+            transactionManager.cleanAfterCompletion(transaction);
+        }
+        // 进入 confirm 前一次 create，confirm 成功后一次 delete
+        Assert.assertEquals(1, transactionRepository.createCount.get());
+        Assert.assertEquals(0, transactionRepository.updateCount.get());
+        Assert.assertEquals(1, transactionRepository.deleteCount.get());
+        Assert.assertNull(transactionRepository.findByXid(transaction.getXid()));
+    }
+
+    @Test
+    public void testSlowTransactionIsPersisted() throws InterruptedException {
+
+        fastPathPersister.setPersistThreshold(50);
+
+        Transaction transaction = transactionManager.begin();
+        try {
+            transactionManager.enlistParticipant(newParticipant(transaction));
+
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(3);
+            while (transactionRepository.findByXid(transaction.getXid()) == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            Transaction persisted = transactionRepository.findByXid(transaction.getXid());
+            Assert.assertNotNull(persisted);
+            Assert.assertEquals(TransactionStatus.TRYING, persisted.getStatus());
+
+            // 已持久化的事务按原有流程更新
+            transactionManager.enlistParticipant(newParticipant(transaction));
+            Assert.assertEquals(1, transactionRepository.updateCount.get());
+        } finally {
+            transactionManager.cleanAfterCompletion(transaction);
+        }
+    }
+
+    @Test
+    public void testTransactionIsPersistedBeforePropagatingParticipant() {
+
+        Transaction transaction = transactionManager.begin();
+        try {
+            transactionManager.enlistParticipant(newParticipant(transaction));
+            Assert.assertEquals(0, transactionRepository.writeCount.get());
+
+            // 远程参与者开始 try 之前根事务已经落库，分支事务恢复时能找到根事务
+            transactionManager.enlistParticipant(newParticipant(transaction, RemoteTransactionContextEditor.class));
+
+            Assert.assertEquals(1, transactionRepository.createCount.get());
+            Transaction persisted = transactionRepository.findByXid(transaction.getXid());
+            Assert.assertNotNull(persisted);
+            Assert.assertEquals(TransactionStatus.TRYING, persisted.getStatus());
+            Assert.assertEquals(2, persisted.getParticipants().size());
+
+            transactionManager.commit(false);
+        } finally {
+            transactionManager.cleanAfterCompletion(transaction);
+        }
+        Assert.assertNull(transactionRepository.findByXid(transaction.getXid()));
+    }
+
+    private Participant newParticipant(Transaction transaction) {
+        return newParticipant(transaction, NullableTransactionContextEditor.class);
+    }
+
+    private Participant newParticipant(Transaction transaction, Class<? extends TransactionContextEditor> transactionContextEditorClass) {
+        return new Participant(transaction.getRootXid(),
+                new TransactionXid(transaction.getXid().getGlobalTransactionId()),
+                new InvocationContext(ParticipantTarget.class, "succeed", new Class[0]),
+                new InvocationContext(ParticipantTarget.class, "succeed", new Class[0]),
+                transactionContextEditorClass);
+    }
+
+    public static class ParticipantTarget {
+
+        public void succeed() {
+        }
+    }
+
+    // 模拟通过 RPC 隐式传参传递事务上下文的编辑器
+    public static class RemoteTransactionContextEditor implements TransactionContextEditor {
+
+        @Override
+        public TransactionContext get(Object target, Method method, Object[] args) {
+            return null;
+        }
+
+        @Override
+        public void set(TransactionContext transactionContext, Object target, Method method, Object[] args) {
+        }
+    }
+
+    private static class CountingTransactionRepository extends MemoryStoreTransactionRepository {
+
+        private final AtomicInteger writeCount = new AtomicInteger();
+
+        private final AtomicInteger createCount = new AtomicInteger();
+
+        private final AtomicInteger updateCount = new AtomicInteger();
+
+        private final AtomicInteger deleteCount = new AtomicInteger();
+
+        @Override
+        protected int doCreate(Transaction transaction) {
+            writeCount.incrementAndGet();
+            createCount.incrementAndGet();
+            return super.doCreate(transaction);
+        }
+
+        @Override
+        protected int doUpdate(Transaction transaction) {
+            writeCount.incrementAndGet();
+            updateCount.incrementAndGet();
+            return super.doUpdate(transaction);
+        }
+
+        @Override
+        protected int doDelete(Transaction transaction) {
+            writeCount.incrementAndGet();
+            deleteCount.incrementAndGet();
+            return super.doDelete(transaction);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.mengyun.tcctransaction.interceptor;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.api.Compensable;
+import org.mengyun.tcctransaction.api.NullableTransactionContextEditor;
+import org.mengyun.tcctransaction.api.ParameterTransactionContextEditor;
+import org.mengyun.tcctransaction.api.TransactionContext;
+import org.mengyun.tcctransaction.api.UniqueIdentity;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * CompensableMethodDescriptorTest
+ */
+public class CompensableMethodDescriptorTest {
+
+    @Test
+    public void testDescriptor() throws Exception {
+
+        Method method = Target.class.getMethod("record", String.class, TransactionContext.class, long.class);
+        CompensableMethodDescriptor descriptor = CompensableMethodDescriptor.of(method);
+
+        Assert.assertSame(descriptor, CompensableMethodDescriptor.of(method));
+        Assert.assertEquals("confirmRecord", descriptor.getCompensable().confirmMethod());
+        Assert.assertEquals(ParameterTransactionContextEditor.class, descriptor.getTransactionContextEditorClass());
+        Assert.assertEquals(1, descriptor.getTransactionContextParamPosition());
+        Assert.assertEquals(0, descriptor.getUniqueIdentityParamPosition());
+        Assert.assertFalse(descriptor.isAsync());
+
+        descriptor = CompensableMethodDescriptor.of(Target.class.getMethod("recordAsync", long.class));
+
+        Assert.assertNull(descriptor.getCompensable());
+        Assert.assertEquals(NullableTransactionContextEditor.class, descriptor.getTransactionContextEditorClass());
+        Assert.assertEquals(-1, descriptor.getTransactionContextParamPosition());
+        Assert.assertEquals(-1, descriptor.getUniqueIdentityParamPosition());
+        Assert.assertTrue(descriptor.isAsync());
+    }
+
+    public static class Target {
+
+        @Compensable(confirmMethod = "confirmRecord", cancelMethod = "cancelRecord")
+        public void record(@UniqueIdentity String orderNo, TransactionContext transactionContext, long amount) {
+        }
+
+        public CompletableFuture<Void> recordAsync(long amount) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
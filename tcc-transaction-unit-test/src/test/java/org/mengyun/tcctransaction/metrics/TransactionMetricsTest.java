@@ -0,0 +1,224 @@
+package org.mengyun.tcctransaction.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionManager;
+import org.mengyun.tcctransaction.TransactionOptimisticLockException;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.executor.ThreadPoolTransactionExecutor;
+import org.mengyun.tcctransaction.executor.TransactionExecutor;
+import org.mengyun.tcctransaction.micrometer.MicrometerTransactionMetrics;
+import org.mengyun.tcctransaction.recovery.RecoverFrequency;
+import org.mengyun.tcctransaction.recovery.RecoveryLock;
+import org.mengyun.tcctransaction.recovery.TransactionRecovery;
+import org.mengyun.tcctransaction.repository.LogStoreTransactionRepository;
+import org.mengyun.tcctransaction.repository.TransactionRepository;
+import org.mengyun.tcctransaction.support.TransactionConfigurator;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * TransactionMetricsTest
+ */
+public class TransactionMetricsTest {
+
+    private static final String DOMAIN = "TCC_METRICS_TEST";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MeterRegistry registry = new SimpleMeterRegistry();
+
+    private MicrometerTransactionMetrics transactionMetrics = new MicrometerTransactionMetrics(registry);
+
+    private LogStoreTransactionRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = new LogStoreTransactionRepository();
+        repository.setLocation(temporaryFolder.getRoot().getAbsolutePath());
+        repository.setDomain(DOMAIN);
+        repository.setCompactionInterval(0);
+        repository.setTransactionMetrics(transactionMetrics);
+        repository.init();
+    }
+
+    @After
+    public void destroy() {
+        repository.close();
+    }
+
+    @Test
+    public void testRepositoryMetrics() {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        repository.create(transaction);
+        repository.findByXid(transaction.getXid());
+
+        transaction.changeStatus(TransactionStatus.CONFIRMING);
+        repository.update(transaction);
+
+        transaction.setVersion(1l);
+        try {
+            repository.update(transaction);
+            Assert.fail();
+        } catch (TransactionOptimisticLockException e) {
+            // expected
+        }
+
+        Assert.assertEquals(1, repositoryCount("create", "success"));
+        Assert.assertEquals(1, repositoryCount("find", "success"));
+        Assert.assertEquals(2, repositoryCount("update", "success"));
+        Assert.assertEquals(1d, registry.get("tcc.repository.optimistic.lock.conflicts").tag("domain", DOMAIN).counter().count(), 0d);
+    }
+
+    @Test
+    public void testTransactionManagerMetrics() {
+
+        TransactionManager transactionManager = new TransactionManager();
+        transactionManager.setTransactionRepository(repository);
+        transactionManager.setTransactionMetrics(transactionMetrics);
+
+        try {
+            Transaction transaction = transactionManager.begin();
+            repository.create(transaction);
+            transactionManager.commit(false);
+            transactionManager.cleanAfterCompletion(transaction);
+
+            Assert.assertEquals(1, registry.get("tcc.transaction").tag("operation", "begin").tag("outcome", "success").timer().count());
+            Assert.assertEquals(1, registry.get("tcc.transaction").tag("operation", "commit").tag("outcome", "success").timer().count());
+            Assert.assertNull(repository.findByXid(transaction.getXid()));
+
+            // 默认执行器在设置指标时注册
+            Assert.assertNotNull(registry.get("tcc.executor.queued").tag("name", "tcc-async-terminator").gauge());
+        } finally {
+            transactionManager.shutdown();
+        }
+    }
+
+    @Test
+    public void testRecoveryMetrics() throws Exception {
+
+        Transaction confirming = new Transaction(TransactionType.ROOT);
+        repository.create(confirming);
+        confirming.changeStatus(TransactionStatus.CONFIRMING);
+        repository.update(confirming);
+
+        Transaction trying = new Transaction(TransactionType.ROOT);
+        repository.create(trying);
+
+        Transaction exhausted = new Transaction(TransactionType.ROOT);
+        exhausted.setRetriedCount(10);
+        repository.create(exhausted);
+
+        Thread.sleep(10);
+
+        TransactionRecovery transactionRecovery = new TransactionRecovery();
+        transactionRecovery.setTransactionConfigurator(new TestConfigurator());
+        transactionRecovery.startRecover();
+
+        Assert.assertEquals(1d, recoveryCount("recovered"), 0d);
+        Assert.assertEquals(1d, recoveryCount("skipped"), 0d);
+        Assert.assertEquals(1d, recoveryCount("max_retry_exceeded"), 0d);
+        Assert.assertEquals(3d, registry.get("tcc.recovery.backlog").tag("domain", DOMAIN).gauge().value(), 0d);
+        // 最后一次查询到空页后结束
+        Assert.assertEquals(2, registry.get("tcc.recovery.page").tag("domain", DOMAIN).timer().count());
+        Assert.assertNull(repository.findByXid(confirming.getXid()));
+    }
+
+    @Test
+    public void testExecutorMetrics() throws Exception {
+
+        TransactionExecutor executor = new ThreadPoolTransactionExecutor("test-metrics", 1, 16);
+        try {
+            transactionMetrics.registerExecutor(executor);
+
+            final CountDownLatch latch = new CountDownLatch(3);
+            for (int i = 0; i < 3; i++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        latch.countDown();
+                    }
+                });
+            }
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            Assert.assertEquals(3d, registry.get("tcc.executor.tasks").tag("name", "test-metrics").tag("state", "submitted").functionCounter().count(), 0d);
+            Assert.assertEquals(0d, registry.get("tcc.executor.tasks").tag("name", "test-metrics").tag("state", "rejected").functionCounter().count(), 0d);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private long repositoryCount(String operation, String outcome) {
+        return registry.get("tcc.repository").tag("domain", DOMAIN).tag("operation", operation).tag("outcome", outcome).timer().count();
+    }
+
+    private double recoveryCount(String result) {
+        return registry.get("tcc.recovery.transactions").tag("domain", DOMAIN).tag("result", result).counter().count();
+    }
+
+    private class TestConfigurator implements TransactionConfigurator {
+
+        @Override
+        public TransactionManager getTransactionManager() {
+            return null;
+        }
+
+        @Override
+        public TransactionRepository getTransactionRepository() {
+            return repository;
+        }
+
+        @Override
+        public RecoverFrequency getRecoverFrequency() {
+            return new RecoverFrequency() {
+                @Override
+                public int getMaxRetryCount() {
+                    return 5;
+                }
+
+                @Override
+                public int getFetchPageSize() {
+                    return 100;
+                }
+
+                @Override
+                public int getRecoverDuration() {
+                    return 0;
+                }
+
+                @Override
+                public String getCronExpression() {
+                    return null;
+                }
+
+                @Override
+                public int getConcurrentRecoveryThreadCount() {
+                    return 2;
+                }
+            };
+        }
+
+        @Override
+        public Lock getRecoveryLock() {
+            return RecoveryLock.DEFAULT_LOCK;
+        }
+
+        @Override
+        public TransactionMetrics getTransactionMetrics() {
+            return transactionMetrics;
+        }
+    }
+}
@@ -0,0 +1,525 @@
+package org.mengyun.tcctransaction.recovery;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.NullableTransactionContextEditor;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.repository.FileSystemTransactionRepository;
+import org.mengyun.tcctransaction.repository.LogStoreTransactionRepository;
+
+import javax.transaction.xa.Xid;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AdaptiveRecoveryTest
+ */
+public class AdaptiveRecoveryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LogStoreTransactionRepository repository;
+
+    private DefaultRecoverFrequency recoverFrequency;
+
+    @Before
+    public void setUp() {
+        repository = new LogStoreTransactionRepository();
+        repository.setLocation(temporaryFolder.getRoot().getAbsolutePath());
+        repository.setDomain("TCC_RECOVERY_TEST");
+        repository.setCompactionInterval(0);
+        repository.init();
+
+        recoverFrequency = new DefaultRecoverFrequency();
+        recoverFrequency.setRecoverDuration(1);
+        recoverFrequency.setMaxRecoverDuration(8);
+    }
+
+    @After
+    public void destroy() {
+        repository.close();
+    }
+
+    @Test
+    public void testRetryDelay() {
+
+        RetryBackoff retryBackoff = new RetryBackoff(recoverFrequency);
+
+        Assert.assertEquals(1000l, retryBackoff.getDelay(0));
+        Assert.assertEquals(2000l, retryBackoff.getDelay(1));
+        Assert.assertEquals(8000l, retryBackoff.getDelay(3));
+        Assert.assertEquals(8000l, retryBackoff.getDelay(30));
+
+        // 默认不退避
+        recoverFrequency.setMaxRecoverDuration(0);
+        Assert.assertEquals(1000l, retryBackoff.getDelay(5));
+    }
+
+    @Test
+    public void testDefaultFixedDelay() {
+
+        // 默认按固定的 recoverDuration 重试，不退避也不抖动
+        RetryBackoff retryBackoff = new RetryBackoff(new DefaultRecoverFrequency());
+
+        Assert.assertEquals(30000l, retryBackoff.getDelay(0));
+        Assert.assertEquals(30000l, retryBackoff.getDelay(5));
+        Assert.assertEquals(30000l, retryBackoff.getJitteredDelay(5));
+    }
+
+    @Test
+    public void testJitteredDelay() {
+
+        recoverFrequency.setRetryJitterRatio(0.5);
+        RetryBackoff retryBackoff = new RetryBackoff(recoverFrequency);
+
+        for (int i = 0; i < 100; i++) {
+            long delay = retryBackoff.getJitteredDelay(1);
+            Assert.assertTrue(delay >= 2000l && delay < 3000l);
+        }
+
+        recoverFrequency.setRetryJitterRatio(0);
+        Assert.assertEquals(2000l, retryBackoff.getJitteredDelay(1));
+    }
+
+    @Test
+    public void testPersistedNextRetryTime() throws Exception {
+
+        FileSystemTransactionRepository fileSystemRepository = new FileSystemTransactionRepository();
+        fileSystemRepository.setDomain(temporaryFolder.newFolder("fs").getAbsolutePath() + File.separator);
+
+        // 存储器按 2 秒的基础间隔计算 nextRetryTime，恢复任务按 1 秒查询
+        DefaultRecoverFrequency storeFrequency = new DefaultRecoverFrequency();
+        storeFrequency.setRecoverDuration(2);
+        storeFrequency.setMaxRecoverDuration(16);
+        storeFrequency.setRetryJitterRatio(0.2);
+        fileSystemRepository.setRetryBackoff(new RetryBackoff(storeFrequency));
+
+        long startTime = System.currentTimeMillis();
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        fileSystemRepository.create(transaction);
+        transaction.changeStatus(TransactionStatus.CONFIRMING);
+        fileSystemRepository.update(transaction);
+
+        Date nextRetryTime = fileSystemRepository.findByXid(transaction.getXid()).getNextRetryTime();
+        Assert.assertTrue(nextRetryTime.getTime() >= startTime + 2000);
+        Assert.assertTrue(nextRetryTime.getTime() <= System.currentTimeMillis() + 2400);
+
+        RecoverConfiguration recoverConfiguration = new RecoverConfiguration();
+        recoverConfiguration.setTransactionRepository(fileSystemRepository);
+        recoverConfiguration.setRecoverFrequency(recoverFrequency);
+
+        TransactionRecovery transactionRecovery = new TransactionRecovery();
+        transactionRecovery.setTransactionConfigurator(recoverConfiguration);
+
+        // 最后更新时间已超过 1 秒，但还没到 nextRetryTime
+        Thread.sleep(1200);
+        Assert.assertEquals(0, transactionRecovery.startRecover());
+        Assert.assertNotNull(fileSystemRepository.findByXid(transaction.getXid()));
+
+        Thread.sleep(Math.max(0, nextRetryTime.getTime() - System.currentTimeMillis() + 100));
+        Assert.assertEquals(1, transactionRecovery.startRecover());
+        Assert.assertNull(fileSystemRepository.findByXid(transaction.getXid()));
+    }
+
+    @Test
+    public void testRetryBackoffIsOptIn() throws Exception {
+
+        RecoverConfiguration recoverConfiguration = new RecoverConfiguration();
+        recoverConfiguration.setTransactionRepository(repository);
+        recoverConfiguration.setRecoverFrequency(recoverFrequency);
+        recoverConfiguration.setAdaptiveRecoveryScheduler(new AdaptiveRecoveryScheduler());
+        recoverConfiguration.init();
+        recoverConfiguration.close();
+
+        // 默认不保存 nextRetryTime，恢复索引仍按最后更新时间排序
+        Assert.assertNull(repository.getRetryBackoff());
+
+        recoverConfiguration.setRetryBackoffEnabled(true);
+        recoverConfiguration.init();
+        recoverConfiguration.close();
+
+        Assert.assertNotNull(repository.getRetryBackoff());
+    }
+
+    @Test
+    public void testNextInterval() {
+
+        AdaptiveRecoveryScheduler scheduler = new AdaptiveRecoveryScheduler();
+        scheduler.setMinInterval(100);
+        scheduler.setMaxInterval(1000);
+
+        Assert.assertEquals(200, scheduler.nextInterval(100, 0));
+        Assert.assertEquals(1000, scheduler.nextInterval(800, 0));
+        Assert.assertEquals(100, scheduler.nextInterval(1000, 3));
+    }
+
+    @Test
+    public void testBackoffByRetriedCount() throws Exception {
+
+        Transaction due = newConfirmingTransaction(0);
+        Transaction delayed = newConfirmingTransaction(2);
+
+        Thread.sleep(1100);
+
+        RecoverConfiguration recoverConfiguration = new RecoverConfiguration();
+        recoverConfiguration.setTransactionRepository(repository);
+        recoverConfiguration.setRecoverFrequency(recoverFrequency);
+
+        TransactionRecovery transactionRecovery = new TransactionRecovery();
+        transactionRecovery.setTransactionConfigurator(recoverConfiguration);
+
+        Assert.assertEquals(1, transactionRecovery.startRecover());
+        Assert.assertNull(repository.findByXid(due.getXid()));
+        Assert.assertNotNull(repository.findByXid(delayed.getXid()));
+
+        Assert.assertEquals(0, transactionRecovery.startRecover());
+    }
+
+    @Test
+    public void testAdaptiveRecoveryScheduler() throws Exception {
+
+        AdaptiveRecoveryScheduler scheduler = new AdaptiveRecoveryScheduler();
+        scheduler.setMinInterval(50);
+        scheduler.setMaxInterval(400);
+
+        recoverFrequency.setRecoverDuration(0);
+
+        RecoverConfiguration recoverConfiguration = new RecoverConfiguration();
+        recoverConfiguration.setTransactionRepository(repository);
+        recoverConfiguration.setRecoverFrequency(recoverFrequency);
+        recoverConfiguration.setAdaptiveRecoveryScheduler(scheduler);
+        recoverConfiguration.init();
+
+        try {
+            Transaction transaction = newConfirmingTransaction(0);
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (repository.findByXid(transaction.getXid()) != null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            Assert.assertNull(repository.findByXid(transaction.getXid()));
+
+            // 没有需要恢复的事务后间隔逐步增大到上限
+            deadline = System.currentTimeMillis() + 5000;
+            while (scheduler.getCurrentInterval() < 400 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            Assert.assertEquals(400, scheduler.getCurrentInterval());
+        } finally {
+            recoverConfiguration.close();
+        }
+    }
+
+    @Test
+    public void testFailedRecoveryKeepsBackingOff() throws Exception {
+
+        AdaptiveRecoveryScheduler scheduler = new AdaptiveRecoveryScheduler();
+        scheduler.setMinInterval(50);
+        scheduler.setMaxInterval(400);
+
+        recoverFrequency.setRecoverDuration(0);
+
+        Transaction transaction = newConfirmingTransaction(repository, 0, "fail");
+
+        RecoverConfiguration recoverConfiguration = new RecoverConfiguration();
+        recoverConfiguration.setTransactionRepository(repository);
+        recoverConfiguration.setRecoverFrequency(recoverFrequency);
+
+        TransactionRecovery transactionRecovery = new TransactionRecovery();
+        transactionRecovery.setTransactionConfigurator(recoverConfiguration);
+
+        // 恢复失败不算恢复成功
+        Thread.sleep(10);
+        Assert.assertEquals(0, transactionRecovery.startRecover());
+        Assert.assertEquals(1, repository.findByXid(transaction.getXid()).getRetriedCount());
+
+        recoverConfiguration.setAdaptiveRecoveryScheduler(scheduler);
+        recoverConfiguration.init();
+
+        try {
+            // 每次恢复都失败时间隔仍然增大到上限
+            long deadline = System.currentTimeMillis() + 5000;
+            while (scheduler.getCurrentInterval() < 400 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            Assert.assertEquals(400, scheduler.getCurrentInterval());
+            Assert.assertTrue(repository.findByXid(transaction.getXid()).getRetriedCount() > 1);
+        } finally {
+            recoverConfiguration.close();
+        }
+    }
+
+    @Test
+    public void testPipelinedRecovery() throws Exception {
+
+        List<Transaction> transactions = new ArrayList<Transaction>();
+        for (int i = 0; i < 23; i++) {
+            transactions.add(newConfirmingTransaction(0));
+        }
+
+        // 每页 5 个，最多 2 个同时在恢复中，需要跨多页预取
+        recoverFrequency.setRecoverDuration(0);
+        recoverFrequency.setFetchPageSize(5);
+        recoverFrequency.setRecoveryWindowSize(2);
+
+        RecoverConfiguration recoverConfiguration = new RecoverConfiguration();
+        recoverConfiguration.setTransactionRepository(repository);
+        recoverConfiguration.setRecoverFrequency(recoverFrequency);
+
+        TransactionRecovery transactionRecovery = new TransactionRecovery();
+        transactionRecovery.setTransactionConfigurator(recoverConfiguration);
+
+        Thread.sleep(10);
+        Assert.assertEquals(23, transactionRecovery.startRecover());
+
+        for (Transaction transaction : transactions) {
+            Assert.assertNull(repository.findByXid(transaction.getXid()));
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testHangingParticipantTimesOut() throws Exception {
+
+        Transaction first = newConfirmingTransaction(repository, 0, "hang");
+        Transaction second = newConfirmingTransaction(repository, 0, "hang");
+
+        // 只有一个窗口，第二个事务等待窗口时第一个事务超时
+        recoverFrequency.setRecoverDuration(0);
+        recoverFrequency.setRecoveryWindowSize(1);
+        recoverFrequency.setRecoveryTaskTimeout(1);
+
+        RecoverConfiguration recoverConfiguration = new RecoverConfiguration();
+        recoverConfiguration.setTransactionRepository(repository);
+        recoverConfiguration.setRecoverFrequency(recoverFrequency);
+
+        TransactionRecovery transactionRecovery = new TransactionRecovery();
+        transactionRecovery.setTransactionConfigurator(recoverConfiguration);
+
+        Thread.sleep(10);
+
+        long startTime = System.currentTimeMillis();
+        Assert.assertEquals(0, transactionRecovery.startRecover());
+        Assert.assertTrue(System.currentTimeMillis() - startTime < 5000);
+
+        Assert.assertNotNull(repository.findByXid(first.getXid()));
+        Assert.assertNotNull(repository.findByXid(second.getXid()));
+
+        // 恢复锁已释放，下次恢复可以继续执行
+        Assert.assertEquals(0, transactionRecovery.startRecover());
+    }
+
+    @Test(timeout = 20000)
+    public void testQueuedTaskTimeoutStartsWhenRun() throws Exception {
+
+        // 单线程执行，后两个任务在队列中等待的时间超过了超时时间，但开始执行后都能在超时前完成
+        ExecutorService previousExecutorService = TransactionRecovery.recoveryExecutorService;
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        TransactionRecovery.recoveryExecutorService = executorService;
+
+        try {
+            List<Transaction> transactions = new ArrayList<Transaction>();
+            for (int i = 0; i < 3; i++) {
+                transactions.add(newConfirmingTransaction(repository, 0, "slow"));
+            }
+
+            recoverFrequency.setRecoverDuration(0);
+            recoverFrequency.setRecoveryWindowSize(3);
+            recoverFrequency.setRecoveryTaskTimeout(1);
+
+            RecoverConfiguration recoverConfiguration = new RecoverConfiguration();
+            recoverConfiguration.setTransactionRepository(repository);
+            recoverConfiguration.setRecoverFrequency(recoverFrequency);
+
+            TransactionRecovery transactionRecovery = new TransactionRecovery();
+            transactionRecovery.setTransactionConfigurator(recoverConfiguration);
+
+            Thread.sleep(10);
+            Assert.assertEquals(3, transactionRecovery.startRecover());
+
+            for (Transaction transaction : transactions) {
+                Assert.assertNull(repository.findByXid(transaction.getXid()));
+            }
+        } finally {
+            TransactionRecovery.recoveryExecutorService = previousExecutorService;
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testUninterruptibleTaskKeepsWindow() throws Exception {
+
+        ExecutorService previousExecutorService = TransactionRecovery.recoveryExecutorService;
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        TransactionRecovery.recoveryExecutorService = executorService;
+
+        ParticipantTarget.startedCount.set(0);
+        ParticipantTarget.release = new CountDownLatch(1);
+
+        try {
+            Transaction first = newConfirmingTransaction(repository, 0, "hangUninterruptibly");
+            Transaction second = newConfirmingTransaction(repository, 0, "hangUninterruptibly");
+
+            // 只有一个窗口，第一个任务被取消后仍占用线程，窗口不归还，第二个任务不会开始执行
+            recoverFrequency.setRecoverDuration(0);
+            recoverFrequency.setRecoveryWindowSize(1);
+            recoverFrequency.setRecoveryTaskTimeout(1);
+
+            RecoverConfiguration recoverConfiguration = new RecoverConfiguration();
+            recoverConfiguration.setTransactionRepository(repository);
+            recoverConfiguration.setRecoverFrequency(recoverFrequency);
+
+            TransactionRecovery transactionRecovery = new TransactionRecovery();
+            transactionRecovery.setTransactionConfigurator(recoverConfiguration);
+
+            Thread.sleep(10);
+
+            long startTime = System.currentTimeMillis();
+            Assert.assertEquals(0, transactionRecovery.startRecover());
+            Assert.assertTrue(System.currentTimeMillis() - startTime < 5000);
+
+            Thread.sleep(200);
+            Assert.assertEquals(1, ParticipantTarget.startedCount.get());
+
+            Assert.assertNotNull(repository.findByXid(first.getXid()));
+            Assert.assertNotNull(repository.findByXid(second.getXid()));
+        } finally {
+            ParticipantTarget.release.countDown();
+            TransactionRecovery.recoveryExecutorService = previousExecutorService;
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBatchLoadRecoverableTransactions() throws Exception {
+
+        final AtomicInteger findCount = new AtomicInteger();
+        final AtomicInteger batchFindCount = new AtomicInteger();
+
+        LogStoreTransactionRepository countingRepository = new LogStoreTransactionRepository() {
+
+            @Override
+            public Transaction findByXid(Xid xid) {
+                findCount.incrementAndGet();
+                return super.findByXid(xid);
+            }
+
+            @Override
+            public Map<Xid, Transaction> findByXids(Collection<Xid> xids) {
+                batchFindCount.incrementAndGet();
+                return super.findByXids(xids);
+            }
+        };
+        countingRepository.setLocation(temporaryFolder.newFolder("counting").getAbsolutePath());
+        countingRepository.setDomain("TCC_RECOVERY_COUNTING_TEST");
+        countingRepository.setCompactionInterval(0);
+        countingRepository.init();
+
+        try {
+            List<Transaction> transactions = new ArrayList<Transaction>();
+            for (int i = 0; i < 3; i++) {
+                transactions.add(newConfirmingTransaction(countingRepository, 0));
+            }
+            // 超过最大重试次数的事务只打印事务头，不加载
+            Transaction exceeded = newConfirmingTransaction(countingRepository, recoverFrequency.getMaxRetryCount() + 1);
+
+            recoverFrequency.setRecoverDuration(0);
+
+            RecoverConfiguration recoverConfiguration = new RecoverConfiguration();
+            recoverConfiguration.setTransactionRepository(countingRepository);
+            recoverConfiguration.setRecoverFrequency(recoverFrequency);
+
+            TransactionRecovery transactionRecovery = new TransactionRecovery();
+            transactionRecovery.setTransactionConfigurator(recoverConfiguration);
+
+            Thread.sleep(10);
+            findCount.set(0);
+            Assert.assertEquals(3, transactionRecovery.startRecover());
+            Assert.assertEquals(0, findCount.get());
+            Assert.assertEquals(1, batchFindCount.get());
+
+            for (Transaction transaction : transactions) {
+                Assert.assertNull(countingRepository.findByXid(transaction.getXid()));
+            }
+            Assert.assertNotNull(countingRepository.findByXid(exceeded.getXid()));
+        } finally {
+            countingRepository.close();
+        }
+    }
+
+    private Transaction newConfirmingTransaction(int retriedCount) {
+        return newConfirmingTransaction(repository, retriedCount);
+    }
+
+    private Transaction newConfirmingTransaction(LogStoreTransactionRepository repository, int retriedCount) {
+        return newConfirmingTransaction(repository, retriedCount, null);
+    }
+
+    // participantMethod 不为空时添加一个执行 ParticipantTarget 对应方法的参与者
+    private Transaction newConfirmingTransaction(LogStoreTransactionRepository repository, int retriedCount, String participantMethod) {
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        transaction.setRetriedCount(retriedCount);
+        if (participantMethod != null) {
+            transaction.enlistParticipant(new Participant(transaction.getRootXid(),
+                    new TransactionXid(transaction.getXid().getGlobalTransactionId()),
+                    new InvocationContext(ParticipantTarget.class, participantMethod, new Class[0]),
+                    new InvocationContext(ParticipantTarget.class, participantMethod, new Class[0]),
+                    NullableTransactionContextEditor.class));
+        }
+        repository.create(transaction);
+        transaction.changeStatus(TransactionStatus.CONFIRMING);
+        repository.update(transaction);
+        return transaction;
+    }
+
+    public static class ParticipantTarget {
+
+        static final AtomicInteger startedCount = new AtomicInteger();
+
+        static volatile CountDownLatch release = new CountDownLatch(1);
+
+        public void fail() {
+            throw new IllegalStateException("participant unavailable");
+        }
+
+        public void hang() throws InterruptedException {
+            // 模拟没有超时设置的远程调用，只有被取消时才返回
+            new CountDownLatch(1).await();
+        }
+
+        public void slow() throws InterruptedException {
+            Thread.sleep(600);
+        }
+
+        public void hangUninterruptibly() {
+            // 模拟不响应中断的调用，取消后仍占用执行线程
+            startedCount.incrementAndGet();
+            while (true) {
+                try {
+                    release.await();
+                    return;
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.mengyun.tcctransaction.recovery;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.micrometer.MicrometerTransactionMetrics;
+import org.mengyun.tcctransaction.repository.LogStoreTransactionRepository;
+
+import javax.transaction.xa.Xid;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BranchRecoveryTest
+ */
+public class BranchRecoveryTest {
+
+    private static final String ROOT_DOMAIN = "TCC_ROOT_RECOVERY_TEST";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private AtomicInteger batchFindCount = new AtomicInteger();
+
+    private LogStoreTransactionRepository rootRepository;
+
+    private LogStoreTransactionRepository branchRepository;
+
+    @Before
+    public void setUp() {
+        rootRepository = new LogStoreTransactionRepository();
+        rootRepository.setLocation(temporaryFolder.getRoot().getAbsolutePath());
+        rootRepository.setDomain(ROOT_DOMAIN);
+        rootRepository.setCompactionInterval(0);
+        rootRepository.init();
+
+        branchRepository = new LogStoreTransactionRepository() {
+
+            @Override
+            public Transaction findByRootXid(Xid transactionXid) {
+                throw new UnsupportedOperationException("root transactions should be loaded in batch");
+            }
+
+            @Override
+            public Map<Xid, Transaction> findByRootXids(Collection<Xid> xids) {
+                batchFindCount.incrementAndGet();
+                return super.findByRootXids(xids);
+            }
+        };
+        branchRepository.setLocation(temporaryFolder.getRoot().getAbsolutePath());
+        branchRepository.setDomain(ROOT_DOMAIN + "_BRANCH");
+        branchRepository.setRootDomain(ROOT_DOMAIN);
+        branchRepository.setCompactionInterval(0);
+        branchRepository.init();
+    }
+
+    @After
+    public void destroy() {
+        branchRepository.close();
+        rootRepository.close();
+    }
+
+    @Test
+    public void testBatchFindRootTransactions() throws Exception {
+
+        Transaction confirmingRoot = newRootTransaction(TransactionStatus.CONFIRMING);
+        Transaction cancellingRoot = newRootTransaction(TransactionStatus.CANCELLING);
+        // 根事务已删除，分支事务回滚
+        TransactionXid deletedRootXid = new TransactionXid();
+
+        List<Transaction> branches = new ArrayList<Transaction>();
+        for (int i = 0; i < 2; i++) {
+            branches.add(newTrySuccessBranch((TransactionXid) confirmingRoot.getXid()));
+            branches.add(newTrySuccessBranch((TransactionXid) cancellingRoot.getXid()));
+            branches.add(newTrySuccessBranch(deletedRootXid));
+        }
+
+        Thread.sleep(10);
+
+        DefaultRecoverFrequency recoverFrequency = new DefaultRecoverFrequency();
+        recoverFrequency.setRecoverDuration(0);
+
+        RecoverConfiguration recoverConfiguration = new RecoverConfiguration();
+        recoverConfiguration.setTransactionRepository(branchRepository);
+        recoverConfiguration.setRecoverFrequency(recoverFrequency);
+
+        TransactionRecovery transactionRecovery = new TransactionRecovery();
+        transactionRecovery.setTransactionConfigurator(recoverConfiguration);
+
+        Assert.assertEquals(6, transactionRecovery.startRecover());
+        Assert.assertEquals(1, batchFindCount.get());
+
+        for (Transaction branch : branches) {
+            Assert.assertNull(branchRepository.findByXid(branch.getXid()));
+        }
+
+        Map<Xid, Transaction> rootTransactions = branchRepository.findByRootXids(Arrays.<Xid>asList(confirmingRoot.getXid(), deletedRootXid));
+        Assert.assertEquals(1, rootTransactions.size());
+        Assert.assertEquals(TransactionStatus.CONFIRMING, rootTransactions.get(confirmingRoot.getXid()).getStatus());
+    }
+
+    @Test
+    public void testCachedRootStatus() throws Exception {
+
+        MeterRegistry registry = new SimpleMeterRegistry();
+
+        DefaultRecoverFrequency recoverFrequency = new DefaultRecoverFrequency();
+        recoverFrequency.setRecoverDuration(0);
+
+        RecoverConfiguration recoverConfiguration = new RecoverConfiguration();
+        recoverConfiguration.setTransactionRepository(branchRepository);
+        recoverConfiguration.setRecoverFrequency(recoverFrequency);
+        recoverConfiguration.setTransactionMetrics(new MicrometerTransactionMetrics(registry));
+
+        TransactionRecovery transactionRecovery = new TransactionRecovery();
+        transactionRecovery.setTransactionConfigurator(recoverConfiguration);
+
+        Transaction root = newRootTransaction(TransactionStatus.CONFIRMING);
+        newTrySuccessBranch((TransactionXid) root.getXid());
+        Thread.sleep(10);
+
+        Assert.assertEquals(1, transactionRecovery.startRecover());
+        Assert.assertEquals(1, batchFindCount.get());
+
+        // 根事务删除后，后续分支事务仍按缓存的 CONFIRMING 状态提交，不再查询根事务
+        rootRepository.delete(root);
+        Transaction branch = newTrySuccessBranch((TransactionXid) root.getXid());
+        Thread.sleep(10);
+
+        Assert.assertEquals(1, transactionRecovery.startRecover());
+        Assert.assertEquals(1, batchFindCount.get());
+        Assert.assertNull(branchRepository.findByXid(branch.getXid()));
+
+        Assert.assertEquals(1, registry.get("tcc.recovery.root.status.cache").tag("result", "hit").counter().count(), 0);
+        Assert.assertEquals(1, registry.get("tcc.recovery.root.status.cache").tag("result", "miss").counter().count(), 0);
+
+        // TRYING 状态的根事务不缓存
+        Transaction tryingRoot = newRootTransaction(TransactionStatus.TRYING);
+        newTrySuccessBranch((TransactionXid) tryingRoot.getXid());
+        Thread.sleep(10);
+
+        Assert.assertEquals(0, transactionRecovery.startRecover());
+        Assert.assertEquals(2, batchFindCount.get());
+
+        tryingRoot.changeStatus(TransactionStatus.CANCELLING);
+        rootRepository.update(tryingRoot);
+
+        Assert.assertEquals(1, transactionRecovery.startRecover());
+        Assert.assertEquals(3, batchFindCount.get());
+    }
+
+    @Test
+    public void testRootStatusCacheEviction() throws Exception {
+
+        RootStatusCache cache = new RootStatusCache(2, 100);
+
+        Xid first = new TransactionXid();
+        Xid second = new TransactionXid();
+        Xid third = new TransactionXid();
+
+        cache.put(first, TransactionStatus.CONFIRMING);
+        cache.put(second, null);
+        Assert.assertNull(cache.get(second).getStatus());
+
+        cache.put(third, TransactionStatus.TRYING);
+        Assert.assertNull(cache.get(third));
+
+        cache.put(third, TransactionStatus.CANCELLING);
+        Assert.assertEquals(2, cache.size());
+        // 最久未访问的 first 被淘汰
+        Assert.assertNull(cache.get(first));
+
+        Thread.sleep(150);
+        Assert.assertNull(cache.get(third));
+    }
+
+    private Transaction newRootTransaction(TransactionStatus status) {
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        rootRepository.create(transaction);
+        transaction.changeStatus(status);
+        rootRepository.update(transaction);
+        return transaction;
+    }
+
+    private Transaction newTrySuccessBranch(TransactionXid rootXid) {
+        Transaction transaction = new Transaction(TransactionType.BRANCH);
+        transaction.setRootXid(rootXid);
+        branchRepository.create(transaction);
+        transaction.changeStatus(TransactionStatus.TRY_SUCCESS);
+        branchRepository.update(transaction);
+        return transaction;
+    }
+}
@@ -0,0 +1,165 @@
+package org.mengyun.tcctransaction.recovery;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.repository.GroupCommitTransactionRepository;
+import org.mengyun.tcctransaction.repository.LogStoreTransactionRepository;
+
+import javax.transaction.xa.Xid;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * ShardedRecoveryTest
+ */
+public class ShardedRecoveryTest {
+
+    private static final String DOMAIN = "TCC_SHARDED_RECOVERY_TEST";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MemoryRecoveryLeaseStore leaseStore = new MemoryRecoveryLeaseStore();
+
+    private LogStoreTransactionRepository logStoreRepository;
+    // 非本地存储器才会分片恢复
+    private GroupCommitTransactionRepository repository;
+
+    @Before
+    public void setUp() {
+        logStoreRepository = new LogStoreTransactionRepository();
+        logStoreRepository.setLocation(temporaryFolder.getRoot().getAbsolutePath());
+        logStoreRepository.setDomain(DOMAIN);
+        logStoreRepository.setCompactionInterval(0);
+        logStoreRepository.init();
+
+        repository = new GroupCommitTransactionRepository();
+        repository.setDelegateTransactionRepository(logStoreRepository);
+        repository.init();
+    }
+
+    @After
+    public void destroy() {
+        repository.close();
+        logStoreRepository.close();
+    }
+
+    @Test
+    public void testBucketAssignment() throws Exception {
+
+        ShardedRecoveryCoordinator nodeA = newCoordinator("A", 8, 200);
+        ShardedRecoveryCoordinator nodeB = newCoordinator("B", 8, 200);
+
+        Assert.assertEquals(8, nodeA.acquireBuckets(DOMAIN).cardinality());
+        // 全部被 A 持有
+        Assert.assertEquals(0, nodeB.acquireBuckets(DOMAIN).cardinality());
+        // A 发现两个节点后释放超出份额的 bucket
+        BitSet bucketsOfA = nodeA.acquireBuckets(DOMAIN);
+        BitSet bucketsOfB = nodeB.acquireBuckets(DOMAIN);
+
+        Assert.assertEquals(4, bucketsOfA.cardinality());
+        Assert.assertEquals(4, bucketsOfB.cardinality());
+        Assert.assertFalse(bucketsOfA.intersects(bucketsOfB));
+
+        // A 宕机，租约过期后由 B 接管
+        Thread.sleep(300);
+        Assert.assertEquals(8, nodeB.acquireBuckets(DOMAIN).cardinality());
+    }
+
+    @Test
+    public void testShutdownLeavesDomain() {
+
+        ShardedRecoveryCoordinator nodeA = newCoordinator("A", 8, 60000);
+        ShardedRecoveryCoordinator nodeB = newCoordinator("B", 8, 60000);
+
+        nodeA.acquireBuckets(DOMAIN);
+        nodeB.acquireBuckets(DOMAIN);
+        Assert.assertEquals(4, nodeA.acquireBuckets(DOMAIN).cardinality());
+        Assert.assertEquals(4, nodeB.acquireBuckets(DOMAIN).cardinality());
+
+        // A 停止时释放 bucket 并注销，B 不需要等待租约过期即可接管全部 bucket
+        nodeA.shutdown();
+
+        Assert.assertEquals(8, nodeB.acquireBuckets(DOMAIN).cardinality());
+        Assert.assertEquals(1, leaseStore.heartbeat(DOMAIN, "B", 60000));
+    }
+
+    @Test
+    public void testShardedRecovery() throws Exception {
+
+        List<Transaction> transactions = new ArrayList<Transaction>();
+        for (int i = 0; i < 20; i++) {
+            Transaction transaction = new Transaction(TransactionType.ROOT);
+            repository.create(transaction);
+            transaction.changeStatus(TransactionStatus.CONFIRMING);
+            repository.update(transaction);
+            transactions.add(transaction);
+        }
+
+        Thread.sleep(10);
+
+        ShardedRecoveryCoordinator nodeA = newCoordinator("A", 4, 60000);
+        ShardedRecoveryCoordinator nodeB = newCoordinator("B", 4, 60000);
+
+        TransactionRecovery recoveryA = newTransactionRecovery(nodeA);
+        TransactionRecovery recoveryB = newTransactionRecovery(nodeB);
+
+        // B 已登记，A 只获取一半的 bucket
+        leaseStore.heartbeat(DOMAIN, "B", 60000);
+
+        int recoveredByA = recoveryA.startRecover();
+        Assert.assertTrue(recoveredByA > 0 && recoveredByA < 20);
+
+        int remaining = 0;
+        for (Transaction transaction : transactions) {
+            if (repository.findByXid(transaction.getXid()) != null) {
+                remaining++;
+            }
+        }
+        Assert.assertEquals(20 - recoveredByA, remaining);
+
+        Assert.assertEquals(remaining, recoveryB.startRecover());
+
+        for (Transaction transaction : transactions) {
+            Assert.assertNull(repository.findByXid(transaction.getXid()));
+        }
+
+        // 同一全局事务的分支与根事务在同一个 bucket
+        Xid rootXid = transactions.get(0).getXid();
+        Xid branchXid = new TransactionXid(rootXid.getGlobalTransactionId());
+        Assert.assertEquals(nodeA.getBucket(rootXid), nodeA.getBucket(branchXid));
+    }
+
+    private ShardedRecoveryCoordinator newCoordinator(String owner, int bucketCount, long leaseDuration) {
+        ShardedRecoveryCoordinator coordinator = new ShardedRecoveryCoordinator();
+        coordinator.setLeaseStore(leaseStore);
+        coordinator.setOwner(owner);
+        coordinator.setBucketCount(bucketCount);
+        coordinator.setLeaseDuration(leaseDuration);
+        return coordinator;
+    }
+
+    private TransactionRecovery newTransactionRecovery(ShardedRecoveryCoordinator coordinator) {
+
+        DefaultRecoverFrequency recoverFrequency = new DefaultRecoverFrequency();
+        recoverFrequency.setRecoverDuration(0);
+
+        RecoverConfiguration recoverConfiguration = new RecoverConfiguration();
+        recoverConfiguration.setTransactionRepository(repository);
+        recoverConfiguration.setRecoverFrequency(recoverFrequency);
+        recoverConfiguration.setShardedRecoveryCoordinator(coordinator);
+
+        TransactionRecovery transactionRecovery = new TransactionRecovery();
+        transactionRecovery.setTransactionConfigurator(recoverConfiguration);
+        return transactionRecovery;
+    }
+}
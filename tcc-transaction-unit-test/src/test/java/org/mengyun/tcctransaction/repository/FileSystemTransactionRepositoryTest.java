@@ -2,11 +2,17 @@ package org.mengyun.tcctransaction.repository;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.serializer.SerializerFeature;
+import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.api.TransactionContext;
 import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.serializer.RegisterableKryoTransactionSerializer;
 
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Date;
@@ -20,11 +26,46 @@ import java.util.Date;
  */
 public class FileSystemTransactionRepositoryTest extends AbstractTransactionRepositoryTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Override
     TransactionRepository doCreateTransactionRepository() {
         return new FileSystemTransactionRepository();
     }
 
+    @Test
+    public void testFailedSerializationKeepsFile() {
+
+        FileSystemTransactionRepository fileRepository = new FileSystemTransactionRepository();
+        fileRepository.setDomain(temporaryFolder.getRoot().getAbsolutePath() + "/");
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        fileRepository.create(transaction);
+
+        // 序列化写出部分内容后失败
+        fileRepository.setSerializer(new RegisterableKryoTransactionSerializer() {
+            @Override
+            public int serialize(Transaction object, ByteBuffer buffer) {
+                buffer.put(new byte[16]);
+                throw new IllegalStateException("serialize failed");
+            }
+        });
+
+        transaction.changeStatus(TransactionStatus.CONFIRMING);
+        try {
+            fileRepository.update(transaction);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // 原有的事务文件没有被改写
+        Transaction found = fileRepository.findByXid(transaction.getXid());
+        Assert.assertEquals(TransactionStatus.TRYING, found.getStatus());
+        Assert.assertEquals(1l, found.getVersion());
+    }
+
     @Test
     public void testGetDomain() {
         final String domain = repository.getDomain();
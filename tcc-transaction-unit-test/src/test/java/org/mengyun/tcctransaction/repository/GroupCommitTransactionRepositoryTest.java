@@ -0,0 +1,117 @@
+package org.mengyun.tcctransaction.repository;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.common.TransactionType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GroupCommitTransactionRepositoryTest
+ */
+public class GroupCommitTransactionRepositoryTest {
+
+    private static final int WRITER_COUNT = 16;
+
+    private CountingTransactionRepository delegate;
+
+    private GroupCommitTransactionRepository repository;
+
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() {
+        delegate = new CountingTransactionRepository();
+        repository = new GroupCommitTransactionRepository();
+        repository.setDelegateTransactionRepository(delegate);
+        repository.setLingerTime(TimeUnit.MILLISECONDS.toMicros(50));
+        repository.init();
+        executorService = Executors.newFixedThreadPool(WRITER_COUNT);
+    }
+
+    @After
+    public void destroy() {
+        executorService.shutdownNow();
+        repository.close();
+    }
+
+    @Test
+    public void testConcurrentWritesAreGroupCommitted() throws Exception {
+
+        List<Transaction> transactions = createConcurrently();
+
+        Assert.assertTrue(delegate.maxBatchSize.get() > 1);
+
+        for (Transaction transaction : transactions) {
+            Transaction found = repository.findByXid(transaction.getXid());
+            Assert.assertNotNull(found);
+            Assert.assertEquals(1L, found.getVersion());
+        }
+
+        for (Transaction transaction : transactions) {
+            Assert.assertEquals(1, repository.update(transaction));
+            Assert.assertEquals(2L, repository.findByXid(transaction.getXid()).getVersion());
+        }
+    }
+
+    @Test
+    public void testBatchFailureRetriedOneByOne() throws Exception {
+
+        delegate.failBatch = true;
+
+        List<Transaction> transactions = createConcurrently();
+
+        for (Transaction transaction : transactions) {
+            Assert.assertNotNull(repository.findByXid(transaction.getXid()));
+        }
+    }
+
+    private List<Transaction> createConcurrently() throws Exception {
+
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        List<Transaction> transactions = new ArrayList<Transaction>();
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+
+        for (int i = 0; i < WRITER_COUNT; i++) {
+            final Transaction transaction = new Transaction(TransactionType.ROOT);
+            transactions.add(transaction);
+            futures.add(executorService.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    startLatch.await();
+                    return repository.create(transaction);
+                }
+            }));
+        }
+
+        startLatch.countDown();
+
+        for (Future<Integer> future : futures) {
+            Assert.assertEquals(Integer.valueOf(1), future.get(5, TimeUnit.SECONDS));
+        }
+
+        return transactions;
+    }
+
+    private static class CountingTransactionRepository extends MemoryStoreTransactionRepository {
+
+        private final AtomicInteger maxBatchSize = new AtomicInteger();
+
+        private volatile boolean failBatch = false;
+
+        @Override
+        protected int[] doCreates(List<Transaction> transactions) {
+            if (failBatch) {
+                throw new TransactionIOException("batch failed");
+            }
+            maxBatchSize.set(Math.max(maxBatchSize.get(), transactions.size()));
+            return super.doCreates(transactions);
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package org.mengyun.tcctransaction.repository;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionOptimisticLockException;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.common.TransactionType;
+
+import javax.transaction.xa.Xid;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * LogStoreTransactionRepositoryTest
+ */
+public class LogStoreTransactionRepositoryTest {
+
+    private static final String DOMAIN = "TCC_LOG_TEST";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LogStoreTransactionRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = newRepository(1024 * 1024);
+    }
+
+    @After
+    public void destroy() {
+        repository.close();
+    }
+
+    @Test
+    public void testCreateUpdateDelete() {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        Assert.assertEquals(1, repository.create(transaction));
+        Assert.assertEquals(0, repository.create(transaction));
+
+        transaction.changeStatus(TransactionStatus.CONFIRMING);
+        repository.update(transaction);
+        Assert.assertEquals(2l, transaction.getVersion());
+
+        Transaction found = repository.findByXid(transaction.getXid());
+        Assert.assertEquals(TransactionStatus.CONFIRMING, found.getStatus());
+        Assert.assertEquals(2l, found.getVersion());
+        Assert.assertEquals(found.getStatus(), repository.findByRootXid(transaction.getXid()).getStatus());
+
+        // 使用旧版本更新失败，且不改变传入事务的版本号
+        found.setVersion(1l);
+        try {
+            repository.update(found);
+            Assert.fail();
+        } catch (TransactionOptimisticLockException e) {
+            Assert.assertEquals(1l, found.getVersion());
+        }
+
+        Assert.assertEquals(1, repository.delete(transaction));
+        Assert.assertEquals(0, repository.delete(transaction));
+        Assert.assertNull(repository.findByXid(transaction.getXid()));
+    }
+
+    @Test
+    public void testBatchOperations() {
+
+        List<Transaction> transactions = new ArrayList<Transaction>();
+        for (int i = 0; i < 3; i++) {
+            transactions.add(new Transaction(TransactionType.ROOT));
+        }
+
+        Assert.assertArrayEquals(new int[]{1, 1, 1}, repository.createAll(transactions));
+
+        List<Xid> xids = new ArrayList<Xid>();
+        for (Transaction transaction : transactions) {
+            xids.add(transaction.getXid());
+        }
+        Assert.assertEquals(3, repository.findByXids(xids).size());
+
+        // 第二个事务的版本号过期，只有它更新失败，不抛出乐观锁异常
+        Transaction stale = repository.findByXid(transactions.get(1).getXid());
+        stale.changeStatus(TransactionStatus.CANCELLING);
+        repository.update(stale);
+
+        for (Transaction transaction : transactions) {
+            transaction.changeStatus(TransactionStatus.CONFIRMING);
+        }
+        int[] results = repository.updateAll(transactions);
+        Assert.assertTrue(results[0] > 0);
+        Assert.assertTrue(results[1] <= 0);
+        Assert.assertTrue(results[2] > 0);
+        Assert.assertEquals(TransactionStatus.CANCELLING, repository.findByXid(transactions.get(1).getXid()).getStatus());
+
+        Assert.assertArrayEquals(new int[]{1, 1}, repository.deleteAll(transactions.subList(0, 2)));
+        Assert.assertEquals(Arrays.asList(transactions.get(2).getXid()), new ArrayList<Xid>(repository.findByXids(xids).keySet()));
+    }
+
+    @Test
+    public void testReopen() {
+
+        Transaction kept = new Transaction(TransactionType.ROOT);
+        Transaction deleted = new Transaction(TransactionType.BRANCH);
+        repository.create(kept);
+        repository.create(deleted);
+        kept.changeStatus(TransactionStatus.CANCELLING);
+        repository.update(kept);
+        repository.delete(deleted);
+
+        repository.close();
+        repository = newRepository(1024 * 1024);
+
+        Transaction found = repository.findByXid(kept.getXid());
+        Assert.assertEquals(TransactionStatus.CANCELLING, found.getStatus());
+        Assert.assertEquals(2l, found.getVersion());
+        Assert.assertNull(repository.findByXid(deleted.getXid()));
+
+        // 重建的索引中版本号正确，可以继续更新
+        found.changeStatus(TransactionStatus.CONFIRMING);
+        repository.update(found);
+        Assert.assertEquals(3l, repository.findByXid(kept.getXid()).getVersion());
+    }
+
+    @Test
+    public void testFindAllUnmodifiedSince() {
+
+        Set<Xid> xids = new HashSet<Xid>();
+        for (int i = 0; i < 25; i++) {
+            Transaction transaction = new Transaction(TransactionType.ROOT);
+            repository.create(transaction);
+            xids.add(transaction.getXid());
+        }
+
+        Date date = new Date(System.currentTimeMillis() + 1000);
+
+        Set<Xid> found = new HashSet<Xid>();
+        String offset = null;
+        int pageCount = 0;
+
+        while (true) {
+            Page<TransactionHeader> page = repository.findAllHeadersUnmodifiedSince(date, offset, 10);
+            if (page.getData().isEmpty()) {
+                break;
+            }
+            for (TransactionHeader header : page.getData()) {
+                Assert.assertEquals(TransactionStatus.TRYING, header.getStatus());
+                Assert.assertEquals(1l, header.getVersion());
+                found.add(header.getXid());
+            }
+            offset = page.getNextOffset();
+            pageCount++;
+        }
+
+        Assert.assertEquals(3, pageCount);
+        Assert.assertEquals(xids, found);
+
+        Assert.assertTrue(repository.findAllUnmodifiedSince(new Date(0), null, 10).getData().isEmpty());
+        Assert.assertEquals(10, repository.findAllUnmodifiedSince(date, null, 10).getData().size());
+    }
+
+    @Test
+    public void testCompact() {
+
+        repository.close();
+        repository = newRepository(4 * 1024);
+
+        List<Transaction> kept = new ArrayList<Transaction>();
+
+        for (int i = 0; i < 200; i++) {
+            Transaction transaction = new Transaction(TransactionType.ROOT);
+            repository.create(transaction);
+            if (i % 20 == 0) {
+                kept.add(transaction);
+            } else {
+                repository.delete(transaction);
+            }
+        }
+
+        File directory = new File(temporaryFolder.getRoot(), DOMAIN);
+        int segmentCount = segmentFiles(directory).size();
+
+        Assert.assertTrue(repository.compact() > 0);
+        Assert.assertTrue(segmentFiles(directory).size() < segmentCount);
+
+        for (Transaction transaction : kept) {
+            Assert.assertNotNull(repository.findByXid(transaction.getXid()));
+        }
+
+        // 压缩后重新打开，已删除的事务不会复活
+        repository.close();
+        repository = newRepository(4 * 1024);
+
+        Page<TransactionHeader> page = repository.findAllHeadersUnmodifiedSince(new Date(System.currentTimeMillis() + 1000), null, 1000);
+        Assert.assertEquals(kept.size(), page.getData().size());
+
+        for (Transaction transaction : kept) {
+            transaction.changeStatus(TransactionStatus.CONFIRMING);
+            repository.update(transaction);
+            Assert.assertEquals(TransactionStatus.CONFIRMING, repository.findByXid(transaction.getXid()).getStatus());
+        }
+    }
+
+    @Test
+    public void testRepairIncompleteRecord() throws Exception {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        repository.create(transaction);
+        repository.close();
+
+        // 模拟崩溃时写了一半的记录
+        File segment = segmentFiles(new File(temporaryFolder.getRoot(), DOMAIN)).get(0);
+        long end = findEnd(segment);
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(end);
+            raf.writeInt(12345);
+            raf.writeInt(100);
+            raf.write(new byte[]{1, 2, 3});
+        }
+
+        repository = newRepository(1024 * 1024);
+        Assert.assertNotNull(repository.findByXid(transaction.getXid()));
+
+        Transaction another = new Transaction(TransactionType.ROOT);
+        repository.create(another);
+
+        repository.close();
+        repository = newRepository(1024 * 1024);
+        Assert.assertNotNull(repository.findByXid(transaction.getXid()));
+        Assert.assertNotNull(repository.findByXid(another.getXid()));
+    }
+
+    @Test
+    public void testConcurrentWrite() throws Exception {
+
+        final List<Transaction> kept = new CopyOnWriteArrayList<Transaction>();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+
+        for (int i = 0; i < 8; i++) {
+            futures.add(executorService.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100; j++) {
+                        Transaction transaction = new Transaction(TransactionType.ROOT);
+                        repository.create(transaction);
+                        transaction.changeStatus(TransactionStatus.CONFIRMING);
+                        repository.update(transaction);
+                        if (j % 10 == 0) {
+                            kept.add(transaction);
+                        } else {
+                            repository.delete(transaction);
+                        }
+                    }
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executorService.shutdown();
+
+        repository.close();
+        repository = newRepository(1024 * 1024);
+
+        Page<TransactionHeader> page = repository.findAllHeadersUnmodifiedSince(new Date(System.currentTimeMillis() + 1000), null, 1000);
+        Assert.assertEquals(kept.size(), page.getData().size());
+        for (TransactionHeader header : page.getData()) {
+            Assert.assertEquals(TransactionStatus.CONFIRMING, header.getStatus());
+            Assert.assertEquals(2l, header.getVersion());
+        }
+    }
+
+    @Test
+    public void testUnflushedVersionIsNotVisible() throws Exception {
+
+        repository.close();
+        repository = new LogStoreTransactionRepository();
+        repository.setLocation(temporaryFolder.getRoot().getAbsolutePath());
+        repository.setDomain(DOMAIN);
+        repository.setCompactionInterval(0);
+        // 每次刷盘前等待，保证更新在刷盘前有足够的时间被读取
+        repository.setFlushIntervalMillis(500);
+        repository.init();
+
+        final Transaction transaction = new Transaction(TransactionType.ROOT);
+        repository.create(transaction);
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            transaction.changeStatus(TransactionStatus.CONFIRMING);
+            Future<Integer> updating = executorService.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return repository.update(transaction);
+                }
+            });
+
+            Thread.sleep(100);
+            Assert.assertFalse(updating.isDone());
+
+            // 刷盘前只能读到已经持久化的版本
+            Transaction found = repository.findByXid(transaction.getXid());
+            Assert.assertEquals(TransactionStatus.TRYING, found.getStatus());
+            Assert.assertEquals(1l, found.getVersion());
+
+            Assert.assertEquals(Integer.valueOf(1), updating.get());
+
+            found = repository.findByXid(transaction.getXid());
+            Assert.assertEquals(TransactionStatus.CONFIRMING, found.getStatus());
+            Assert.assertEquals(2l, found.getVersion());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testReadRootDomain() {
+
+        LogStoreTransactionRepository branchRepository = new LogStoreTransactionRepository();
+        branchRepository.setLocation(temporaryFolder.getRoot().getAbsolutePath());
+        branchRepository.setDomain(DOMAIN + "_BRANCH");
+        branchRepository.setRootDomain(DOMAIN);
+        branchRepository.setCompactionInterval(0);
+
+        try {
+            Transaction root = new Transaction(TransactionType.ROOT);
+            repository.create(root);
+            Assert.assertNotNull(branchRepository.findByRootXid(root.getXid()));
+
+            root.changeStatus(TransactionStatus.CONFIRMING);
+            repository.update(root);
+            Assert.assertEquals(TransactionStatus.CONFIRMING, branchRepository.findByRootXid(root.getXid()).getStatus());
+
+            repository.delete(root);
+            Assert.assertNull(branchRepository.findByRootXid(root.getXid()));
+        } finally {
+            branchRepository.close();
+        }
+    }
+
+    private LogStoreTransactionRepository newRepository(int segmentSize) {
+        LogStoreTransactionRepository logStoreTransactionRepository = new LogStoreTransactionRepository();
+        logStoreTransactionRepository.setLocation(temporaryFolder.getRoot().getAbsolutePath());
+        logStoreTransactionRepository.setDomain(DOMAIN);
+        logStoreTransactionRepository.setSegmentSize(segmentSize);
+        logStoreTransactionRepository.setCompactionInterval(0);
+        logStoreTransactionRepository.setCompactionLiveRatio(0.5d);
+        logStoreTransactionRepository.init();
+        return logStoreTransactionRepository;
+    }
+
+    private List<File> segmentFiles(File directory) {
+        List<File> files = new ArrayList<File>();
+        File[] children = directory.listFiles();
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.getName().endsWith(".log")) {
+                files.add(child);
+            }
+        }
+        return files;
+    }
+
+    // 找到第一个长度为 0 的记录头
+    private long findEnd(File segment) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "r")) {
+            long position = 0;
+            while (true) {
+                raf.seek(position);
+                raf.readInt();
+                int bodyLength = raf.readInt();
+                if (bodyLength == 0) {
+                    return position;
+                }
+                position += 8 + bodyLength;
+            }
+        }
+    }
+}
@@ -2,15 +2,25 @@ package org.mengyun.tcctransaction.repository;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.serializer.SerializerFeature;
+import org.junit.Assert;
 import org.junit.Test;
 import org.mengyun.tcctransaction.Transaction;
 import org.mengyun.tcctransaction.api.TransactionContext;
 import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.repository.helper.RedisHelper;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 
+import javax.transaction.xa.Xid;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * RedisTransactionRepositoryTest
@@ -96,6 +106,108 @@ public class RedisTransactionRepositoryTest extends AbstractTransactionRepositor
         page.getData().forEach(e -> System.out.println(JSON.toJSONString(e, SerializerFeature.PrettyFormat)));
     }
 
+    @Test
+    public void testFindAllUnmodifiedSinceByRecoveryIndex() throws Exception {
+        // 使用单独的存储器和 domain，不影响其他用例的数据和配置
+        RedisTransactionRepository indexedRepository = new RedisTransactionRepository();
+        indexedRepository.setJedisPool(new JedisPool());
+        indexedRepository.setDomain("kang-tcc-recovery-index");
+        indexedRepository.setRecoveryIndexEnabled(true);
+
+        List<Transaction> transactions = new ArrayList<Transaction>();
+
+        try {
+            Set<Xid> expiredXids = new HashSet<Xid>();
+            for (int i = 0; i < 5; i++) {
+                Transaction transaction = new Transaction(TransactionType.ROOT);
+                indexedRepository.create(transaction);
+                transactions.add(transaction);
+                expiredXids.add(transaction.getXid());
+            }
+
+            Thread.sleep(10);
+            final Date date = new Date();
+            Thread.sleep(10);
+
+            Transaction recent = new Transaction(TransactionType.ROOT);
+            indexedRepository.create(recent);
+            transactions.add(recent);
+
+            // 每页 2 个，按 offset 翻页能取到所有早于 date 的事务
+            Set<Xid> foundXids = new HashSet<Xid>();
+            String offset = null;
+            Page<Transaction> page;
+            do {
+                page = indexedRepository.findAllUnmodifiedSince(date, offset, 2);
+                for (Transaction transaction : page.getData()) {
+                    Assert.assertTrue(foundXids.add(transaction.getXid()));
+                }
+                offset = page.getNextOffset();
+            } while (!page.getData().isEmpty());
+
+            Assert.assertEquals(expiredXids, foundXids);
+
+            // 删除事务时同时删除索引
+            Transaction deleted = transactions.get(0);
+            indexedRepository.delete(deleted);
+
+            try (Jedis jedis = indexedRepository.getJedisPool().getResource()) {
+                byte[] indexKey = RedisHelper.getRecoveryIndexKey(indexedRepository.getDomain());
+                Assert.assertNull(jedis.zscore(indexKey, RedisHelper.getRedisKey(indexedRepository.getDomain(), deleted.getXid())));
+                Assert.assertEquals(Long.valueOf(transactions.size() - 1), jedis.zcard(indexKey));
+            }
+
+            Page<Transaction> remaining = indexedRepository.findAllUnmodifiedSince(date, null, 10);
+            Assert.assertEquals(expiredXids.size() - 1, remaining.getData().size());
+        } finally {
+            for (Transaction transaction : transactions) {
+                indexedRepository.delete(transaction);
+            }
+            indexedRepository.close();
+        }
+    }
+
+    @Test
+    public void testDanglingRecoveryIndexEntries() throws Exception {
+
+        RedisTransactionRepository indexedRepository = new RedisTransactionRepository();
+        indexedRepository.setJedisPool(new JedisPool());
+        indexedRepository.setDomain("kang-tcc-recovery-index-dangling");
+        indexedRepository.setRecoveryIndexEnabled(true);
+
+        byte[] indexKey = RedisHelper.getRecoveryIndexKey(indexedRepository.getDomain());
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+
+        try (Jedis jedis = indexedRepository.getJedisPool().getResource()) {
+
+            indexedRepository.create(transaction);
+
+            // 事务已删除但索引还在的成员，排在真实事务之前，且超过一页
+            for (int i = 0; i < 3; i++) {
+                jedis.zadd(indexKey, transaction.getLastUpdateTime().getTime() - 1000 + i,
+                        RedisHelper.getRedisKey(indexedRepository.getDomain(), new TransactionXid()));
+            }
+
+            Thread.sleep(10);
+            Date date = new Date();
+
+            Page<Transaction> page = indexedRepository.findAllUnmodifiedSince(date, null, 2);
+
+            Assert.assertEquals(1, page.getData().size());
+            Assert.assertEquals(transaction.getXid(), page.getData().get(0).getXid());
+            // 悬空的索引成员在读取时被清理
+            Assert.assertEquals(Long.valueOf(1), jedis.zcard(indexKey));
+
+            Assert.assertTrue(indexedRepository.findAllUnmodifiedSince(date, page.getNextOffset(), 2).getData().isEmpty());
+        } finally {
+            indexedRepository.delete(transaction);
+            try (Jedis jedis = indexedRepository.getJedisPool().getResource()) {
+                jedis.del(indexKey);
+            }
+            indexedRepository.close();
+        }
+    }
+
     @Test
     public void testDelete() {
         System.out.println("xid = " + xid);
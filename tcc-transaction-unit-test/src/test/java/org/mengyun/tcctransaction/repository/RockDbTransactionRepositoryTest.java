@@ -2,14 +2,35 @@ package org.mengyun.tcctransaction.repository;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.serializer.SerializerFeature;
+import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mengyun.tcctransaction.SystemException;
 import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.TransactionOptimisticLockException;
 import org.mengyun.tcctransaction.api.TransactionContext;
 import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.serializer.RegisterableKryoTransactionSerializer;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
 
+import javax.transaction.xa.Xid;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * RockDbTransactionRepositoryTest
@@ -20,10 +41,161 @@ import java.util.Date;
  */
 public class RockDbTransactionRepositoryTest extends AbstractTransactionRepositoryTest {
 
+    private static final String DOMAIN = "TCC_ROCKSDB_TEST";
+
+    private static final String LEGACY_DOMAIN = "TCC_ROCKSDB_LEGACY_TEST";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Override
     TransactionRepository doCreateTransactionRepository() {
-        final RocksDbTransactionRepository repository = new RocksDbTransactionRepository();
-        return repository;
+        return newRepository(DOMAIN);
+    }
+
+    @Test
+    public void testConcurrentUpdate() throws Exception {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        repository.create(transaction);
+
+        int threadCount = 8;
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+
+        try {
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+
+            for (int i = 0; i < threadCount; i++) {
+                // 每个线程持有各自读取的副本，版本号相同
+                final Transaction copy = repository.findByXid(transaction.getXid());
+                futures.add(executorService.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        startLatch.await();
+                        copy.changeStatus(TransactionStatus.CONFIRMING);
+                        try {
+                            repository.update(copy);
+                            return true;
+                        } catch (TransactionOptimisticLockException e) {
+                            // 更新失败不改变副本的版本号
+                            Assert.assertEquals(1l, copy.getVersion());
+                            return false;
+                        }
+                    }
+                }));
+            }
+
+            startLatch.countDown();
+
+            int updated = 0;
+            for (Future<Boolean> future : futures) {
+                if (future.get()) {
+                    updated++;
+                }
+            }
+
+            // 同一版本号只能有一个线程更新成功
+            Assert.assertEquals(1, updated);
+
+            Transaction found = repository.findByXid(transaction.getXid());
+            Assert.assertEquals(2l, found.getVersion());
+            Assert.assertEquals(TransactionStatus.CONFIRMING, found.getStatus());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUpdateAllWithStaleTransaction() {
+
+        Transaction first = new Transaction(TransactionType.ROOT);
+        Transaction second = new Transaction(TransactionType.ROOT);
+        Transaction third = new Transaction(TransactionType.ROOT);
+        repository.createAll(Arrays.asList(first, second, third));
+
+        // 其他线程先更新了 second，当前持有的副本成为旧版本
+        Transaction staleSecond = repository.findByXid(second.getXid());
+        second.changeStatus(TransactionStatus.CANCELLING);
+        repository.update(second);
+
+        first.changeStatus(TransactionStatus.CONFIRMING);
+        staleSecond.changeStatus(TransactionStatus.CONFIRMING);
+        third.changeStatus(TransactionStatus.CONFIRMING);
+
+        int[] results = repository.updateAll(Arrays.asList(first, staleSecond, third));
+
+        Assert.assertArrayEquals(new int[]{1, 0, 1}, results);
+        Assert.assertEquals(2l, first.getVersion());
+        Assert.assertEquals(1l, staleSecond.getVersion());
+        Assert.assertEquals(2l, third.getVersion());
+
+        Assert.assertEquals(TransactionStatus.CONFIRMING, repository.findByXid(first.getXid()).getStatus());
+        Assert.assertEquals(TransactionStatus.CONFIRMING, repository.findByXid(third.getXid()).getStatus());
+
+        Transaction foundSecond = repository.findByXid(second.getXid());
+        Assert.assertEquals(TransactionStatus.CANCELLING, foundSecond.getStatus());
+        Assert.assertEquals(2l, foundSecond.getVersion());
+    }
+
+    @Test
+    public void testOpenLegacyDatabase() throws RocksDBException {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        transaction.setVersion(1l);
+        Transaction staleTransaction = new Transaction(TransactionType.ROOT);
+        staleTransaction.setVersion(3l);
+
+        // 按旧版本的格式写入：只有 default 列族，版本号保存在事务内容中
+        String legacyPath = temporaryFolder.getRoot().getAbsolutePath() + "/" + LEGACY_DOMAIN;
+        RegisterableKryoTransactionSerializer serializer = new RegisterableKryoTransactionSerializer();
+        try (Options options = new Options().setCreateIfMissing(true);
+             RocksDB legacyDb = RocksDB.open(options, legacyPath)) {
+            legacyDb.put(transaction.getXid().toString().getBytes(), serializer.serialize(transaction));
+            legacyDb.put(staleTransaction.getXid().toString().getBytes(), serializer.serialize(staleTransaction));
+        }
+
+        RocksDbTransactionRepository legacyRepository = newRepository(LEGACY_DOMAIN);
+
+        try {
+            Assert.assertEquals(1l, legacyRepository.findByXid(transaction.getXid()).getVersion());
+
+            // 没有版本号记录时从事务内容中读取版本号做乐观锁校验
+            transaction.changeStatus(TransactionStatus.CONFIRMING);
+            legacyRepository.update(transaction);
+            Assert.assertEquals(2l, transaction.getVersion());
+
+            staleTransaction.setVersion(1l);
+            Assert.assertArrayEquals(new int[]{0}, legacyRepository.updateAll(Arrays.asList(staleTransaction)));
+
+            Transaction found = legacyRepository.findByXid(transaction.getXid());
+            Assert.assertEquals(TransactionStatus.CONFIRMING, found.getStatus());
+            Assert.assertEquals(2l, found.getVersion());
+        } finally {
+            legacyRepository.close();
+        }
+
+        try (Options options = new Options()) {
+            // 打开后补上了 version 列族，旧版本只打开 default 列族，无法再打开该数据库
+            Assert.assertEquals(2, RocksDB.listColumnFamilies(options, legacyPath).size());
+        }
+    }
+
+    @Test
+    public void testFindByXidsKeyedByRequestedXid() {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        repository.create(transaction);
+
+        // 与存储的 xid 相等但不是同一个对象，结果以请求的 xid 为 key
+        Xid requestedXid = new TransactionXid(transaction.getXid().getGlobalTransactionId(), transaction.getXid().getBranchQualifier());
+        Xid missingXid = new TransactionXid();
+
+        Map<Xid, Transaction> transactions = repository.findByXids(Arrays.asList(requestedXid, missingXid));
+
+        Assert.assertEquals(1, transactions.size());
+        Assert.assertSame(requestedXid, transactions.keySet().iterator().next());
+        Assert.assertEquals(transaction.getXid(), transactions.get(requestedXid).getXid());
     }
 
     @Test
@@ -88,7 +260,8 @@ public class RockDbTransactionRepositoryTest extends AbstractTransactionReposito
         final long epochMilli = begin.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
         final Date date = new Date(epochMilli);
         System.out.println(date);
-        final Page<Transaction> page = repository.findAllUnmodifiedSince(date, "0", 10);
+        // KV 存储的 offset 格式为 "nodeIndex:cursor"，从第一页开始查询时传 null
+        final Page<Transaction> page = repository.findAllUnmodifiedSince(date, null, 10);
         page.getData().forEach(e -> System.out.println(JSON.toJSONString(e, SerializerFeature.PrettyFormat)));
     }
 
@@ -104,4 +277,16 @@ public class RockDbTransactionRepositoryTest extends AbstractTransactionReposito
         }
     }
 
+    private RocksDbTransactionRepository newRepository(String domain) {
+        RocksDbTransactionRepository repository = new RocksDbTransactionRepository();
+        repository.setDomain(domain);
+        repository.setLocation(temporaryFolder.getRoot().getAbsolutePath());
+        try {
+            repository.init();
+        } catch (RocksDBException e) {
+            throw new SystemException(e);
+        }
+        return repository;
+    }
+
 }
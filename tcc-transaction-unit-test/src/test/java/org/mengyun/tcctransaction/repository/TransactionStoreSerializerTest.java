@@ -0,0 +1,117 @@
+package org.mengyun.tcctransaction.repository;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.common.TransactionType;
+import org.mengyun.tcctransaction.repository.helper.TransactionStoreSerializer;
+import org.mengyun.tcctransaction.serializer.RegisterableKryoTransactionSerializer;
+import org.mengyun.tcctransaction.serializer.TransactionSerializer;
+import org.mengyun.tcctransaction.utils.ByteUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TransactionStoreSerializerTest
+ */
+public class TransactionStoreSerializerTest {
+
+    private TransactionSerializer serializer = new RegisterableKryoTransactionSerializer();
+
+    @Test
+    public void testCompactLayout() {
+
+        Transaction transaction = newTransaction();
+        transaction.setNextRetryTime(new Date(transaction.getLastUpdateTime().getTime() + 30000));
+
+        Map<byte[], byte[]> stored = TransactionStoreSerializer.serialize(serializer, transaction, true, false);
+
+        Map<String, byte[]> fields = toStringKeys(stored);
+        Assert.assertNotNull(fields.get("HEADER"));
+        Assert.assertNull(fields.get("STATUS"));
+        Assert.assertNull(fields.get("LAST_UPDATE_TIME"));
+        Assert.assertNull(fields.get("CONTENT_VIEW"));
+
+        Transaction found = TransactionStoreSerializer.deserialize(serializer, stored);
+        Assert.assertEquals(TransactionStatus.CONFIRMING, found.getStatus());
+        Assert.assertEquals(3, found.getRetriedCount());
+        Assert.assertEquals(5l, found.getVersion());
+        Assert.assertEquals(transaction.getLastUpdateTime().getTime(), found.getLastUpdateTime().getTime());
+
+        TransactionHeader header = TransactionStoreSerializer.deserializeHeader(hmget(stored));
+        Assert.assertEquals(transaction.getXid(), header.getXid());
+        Assert.assertEquals(TransactionStatus.CONFIRMING, header.getStatus());
+        Assert.assertEquals(TransactionType.ROOT, header.getTransactionType());
+        Assert.assertEquals(3, header.getRetriedCount());
+        Assert.assertEquals(5l, header.getVersion());
+        Assert.assertEquals(transaction.getNextRetryTime(), header.getNextRetryTime());
+    }
+
+    @Test
+    public void testReadExpandedLayout() {
+
+        Transaction transaction = newTransaction();
+
+        Map<byte[], byte[]> stored = TransactionStoreSerializer.serialize(serializer, transaction);
+
+        Transaction found = TransactionStoreSerializer.deserialize(serializer, stored);
+        Assert.assertEquals(TransactionStatus.CONFIRMING, found.getStatus());
+        Assert.assertEquals(3, found.getRetriedCount());
+        Assert.assertEquals(5l, found.getVersion());
+
+        TransactionHeader header = TransactionStoreSerializer.deserializeHeader(hmget(stored));
+        Assert.assertEquals(TransactionStatus.CONFIRMING, header.getStatus());
+        Assert.assertEquals(TransactionType.ROOT, header.getTransactionType());
+        Assert.assertEquals(3, header.getRetriedCount());
+        Assert.assertNull(header.getNextRetryTime());
+    }
+
+    @Test
+    public void testExpandedFieldOverridesCompactHeader() {
+
+        Map<byte[], byte[]> stored = TransactionStoreSerializer.serialize(serializer, newTransaction(), true, false);
+        // 控制台对紧凑格式记录单独修改 STATUS、RETRIED_COUNT
+        stored.put("STATUS".getBytes(), ByteUtils.intToBytes(TransactionStatus.CANCELLING.getId()));
+        stored.put("RETRIED_COUNT".getBytes(), ByteUtils.intToBytes(0));
+
+        Transaction found = TransactionStoreSerializer.deserialize(serializer, stored);
+        Assert.assertEquals(TransactionStatus.CANCELLING, found.getStatus());
+        Assert.assertEquals(0, found.getRetriedCount());
+
+        Map<String, byte[]> properties = TransactionStoreSerializer.toExpandedProperties(stored);
+        Assert.assertEquals(TransactionStatus.CANCELLING.getId(), ByteUtils.bytesToInt(properties.get("STATUS")));
+        Assert.assertEquals(TransactionType.ROOT.getId(), ByteUtils.bytesToInt(properties.get("TRANSACTION_TYPE")));
+        Assert.assertNotNull(properties.get("CREATE_TIME"));
+        Assert.assertNull(properties.get("HEADER"));
+    }
+
+    private Transaction newTransaction() {
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        transaction.changeStatus(TransactionStatus.CONFIRMING);
+        transaction.setRetriedCount(3);
+        transaction.setVersion(5l);
+        return transaction;
+    }
+
+    private List<byte[]> hmget(Map<byte[], byte[]> stored) {
+        Map<String, byte[]> fields = toStringKeys(stored);
+        List<byte[]> values = new ArrayList<byte[]>();
+        for (byte[] field : TransactionStoreSerializer.getHeaderFields()) {
+            values.add(fields.get(new String(field)));
+        }
+        return values;
+    }
+
+    private Map<String, byte[]> toStringKeys(Map<byte[], byte[]> stored) {
+        Map<String, byte[]> fields = new HashMap<String, byte[]>();
+        for (Map.Entry<byte[], byte[]> entry : stored.entrySet()) {
+            fields.put(new String(entry.getKey()), entry.getValue());
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,114 @@
+package org.mengyun.tcctransaction.serializer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.NullableTransactionContextEditor;
+import org.mengyun.tcctransaction.api.TransactionStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * KryoPoolSerializerTest
+ */
+public class KryoPoolSerializerTest {
+
+    private TransactionSerializer serializer = new RegisterableKryoTransactionSerializer(4);
+
+    @Test
+    public void testByteBufferIsCompatibleWithByteArray() {
+
+        Transaction transaction = newTransaction(3);
+
+        byte[] bytes = serializer.serialize(transaction);
+
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 16);
+        buffer.position(8);
+        int length = serializer.serialize(transaction, buffer);
+
+        Assert.assertEquals(bytes.length, length);
+        Assert.assertEquals(8 + length, buffer.position());
+        Assert.assertArrayEquals(bytes, Arrays.copyOfRange(buffer.array(), 8, 8 + length));
+
+        buffer.flip();
+        buffer.position(8);
+        assertTransaction(transaction, serializer.deserialize(buffer));
+        Assert.assertEquals(8 + length, buffer.position());
+
+        assertTransaction(transaction, serializer.deserialize(directBuffer(bytes)));
+    }
+
+    @Test
+    public void testByteBufferOverflow() {
+
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.position(4);
+
+        try {
+            serializer.serialize(newTransaction(3), buffer);
+            Assert.fail();
+        } catch (BufferOverflowException e) {
+            Assert.assertEquals(4, buffer.position());
+        }
+        // 只差一个字节时在嵌套对象的序列化过程中溢出
+        Transaction transaction = newTransaction(1);
+        ByteBuffer shortBuffer = ByteBuffer.allocate(serializer.serialize(transaction).length - 1);
+        try {
+            serializer.serialize(transaction, shortBuffer);
+            Assert.fail();
+        } catch (BufferOverflowException e) {
+            Assert.assertEquals(0, shortBuffer.position());
+        }
+        // 缓冲区归还后仍可正常使用
+        assertTransaction(transaction, serializer.deserialize(serializer.serialize(transaction)));
+    }
+
+    @Test
+    public void testOutputStream() throws IOException {
+
+        Transaction transaction = newTransaction(500);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        serializer.serialize(transaction, outputStream);
+
+        byte[] bytes = serializer.serialize(transaction);
+        Assert.assertArrayEquals(bytes, outputStream.toByteArray());
+        Assert.assertTrue(bytes.length > KryoPoolSerializer.DEFAULT_BUFFER_SIZE);
+
+        assertTransaction(transaction, serializer.deserialize(outputStream.toByteArray()));
+    }
+
+    private ByteBuffer directBuffer(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    private void assertTransaction(Transaction expected, Transaction actual) {
+        Assert.assertEquals(expected.getXid(), actual.getXid());
+        Assert.assertEquals(expected.getStatus(), actual.getStatus());
+        Assert.assertEquals(expected.getParticipants().size(), actual.getParticipants().size());
+    }
+
+    private Transaction newTransaction(int participantCount) {
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        transaction.changeStatus(TransactionStatus.CONFIRMING);
+        for (int i = 0; i < participantCount; i++) {
+            transaction.enlistParticipant(new Participant(transaction.getRootXid(),
+                    new TransactionXid(transaction.getXid().getGlobalTransactionId()),
+                    new InvocationContext(KryoPoolSerializerTest.class, "confirm", new Class[]{String.class}, "arg" + i),
+                    new InvocationContext(KryoPoolSerializerTest.class, "cancel", new Class[]{String.class}, "arg" + i),
+                    NullableTransactionContextEditor.class));
+        }
+        return transaction;
+    }
+}
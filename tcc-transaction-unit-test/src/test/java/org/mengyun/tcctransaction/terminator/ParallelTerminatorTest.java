@@ -0,0 +1,99 @@
+package org.mengyun.tcctransaction.terminator;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mengyun.tcctransaction.InvocationContext;
+import org.mengyun.tcctransaction.ParallelTerminator;
+import org.mengyun.tcctransaction.Participant;
+import org.mengyun.tcctransaction.Transaction;
+import org.mengyun.tcctransaction.api.NullableTransactionContextEditor;
+import org.mengyun.tcctransaction.api.ParticipantStatus;
+import org.mengyun.tcctransaction.api.TransactionXid;
+import org.mengyun.tcctransaction.common.TransactionType;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ParallelTerminatorTest
+ */
+public class ParallelTerminatorTest {
+
+    private ParallelTerminator parallelTerminator;
+
+    @Before
+    public void setUp() {
+        parallelTerminator = new ParallelTerminator();
+        parallelTerminator.setThreadPoolSize(4);
+        parallelTerminator.setTerminateTimeout(5000);
+        ParticipantTarget.latch = new CountDownLatch(3);
+    }
+
+    @After
+    public void destroy() {
+        parallelTerminator.shutdown();
+    }
+
+    @Test
+    public void testCommitParticipantsConcurrently() {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        for (int i = 0; i < 3; i++) {
+            transaction.enlistParticipant(newParticipant(transaction, "await", "await"));
+        }
+
+        parallelTerminator.commit(transaction);
+
+        for (Participant participant : transaction.getParticipants()) {
+            Assert.assertEquals(ParticipantStatus.CONFIRM_SUCCESS, participant.getStatus());
+        }
+    }
+
+    @Test
+    public void testPartialFailureKeepsSucceededStatus() {
+
+        Transaction transaction = new Transaction(TransactionType.ROOT);
+        transaction.enlistParticipant(newParticipant(transaction, "succeed", "succeed"));
+        transaction.enlistParticipant(newParticipant(transaction, "fail", "fail"));
+
+        try {
+            parallelTerminator.commit(transaction);
+            Assert.fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        Assert.assertEquals(ParticipantStatus.CONFIRM_SUCCESS, transaction.getParticipants().get(0).getStatus());
+        Assert.assertEquals(ParticipantStatus.TRYING, transaction.getParticipants().get(1).getStatus());
+    }
+
+    private Participant newParticipant(Transaction transaction, String confirmMethod, String cancelMethod) {
+        return new Participant(transaction.getRootXid(),
+                new TransactionXid(transaction.getXid().getGlobalTransactionId()),
+                new InvocationContext(ParticipantTarget.class, confirmMethod, new Class[0]),
+                new InvocationContext(ParticipantTarget.class, cancelMethod, new Class[0]),
+                NullableTransactionContextEditor.class);
+    }
+
+    public static class ParticipantTarget {
+
+        static volatile CountDownLatch latch;
+
+        public void await() throws InterruptedException {
+            latch.countDown();
+            // 只有所有参与者同时在执行，才能等到 latch 归零
+            if (!latch.await(3, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("participants are not terminated concurrently");
+            }
+        }
+
+        public void succeed() {
+        }
+
+        public void fail() {
+            throw new IllegalStateException("participant failed");
+        }
+    }
+}